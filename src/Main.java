@@ -1,6 +1,8 @@
 import java.io.IOException;
 
+import controller.ImageClient;
 import controller.ImageController;
+import controller.ImageServer;
 import view.ImageViewer;
 
 /**
@@ -28,8 +30,115 @@ public class Main {
         viewer.showErrorMessage("Invalid argument. "
                 + "Please use '-text' for text mode or no arguments for GUI.");
       }
-    } else if (args.length == 2 && args[0].equals("-file")) {
+    } else if (args[0].equals("-timeout") && args.length == 2) {
+      try {
+        controller.setCommandTimeout(Long.parseLong(args[1]));
+      } catch (IllegalArgumentException e) {
+        viewer.showErrorMessage("Invalid timeout: " + args[1]);
+        return;
+      }
+      controller.openGUIMode();
+    } else if (args[0].equals("-file")) {
+      for (int k = 2; k < args.length; k++) {
+        if (args[k].equals("-lazy")) {
+          controller.setLazyScripts(true);
+        } else if (args[k].equals("-incremental") && k + 1 < args.length) {
+          controller.setIncrementalDirectory(args[++k]);
+        } else if (args[k].equals("-threads") && k + 1 < args.length) {
+          try {
+            controller.setScriptThreads(Integer.parseInt(args[++k]));
+          } catch (IllegalArgumentException e) {
+            viewer.showErrorMessage("Invalid number of threads: " + args[k]);
+            return;
+          }
+        } else if (args[k].equals("-timeout") && k + 1 < args.length) {
+          try {
+            controller.setCommandTimeout(Long.parseLong(args[++k]));
+          } catch (IllegalArgumentException e) {
+            viewer.showErrorMessage("Invalid timeout: " + args[k]);
+            return;
+          }
+        } else {
+          viewer.showErrorMessage("Invalid argument combination."
+              + " Use '-text' or '-file path/to/script/file'");
+          return;
+        }
+      }
       controller.openAndExecuteFile(args[1]);
+    } else if (args[0].equals("-batch") && args.length >= 4) {
+      int workers = Runtime.getRuntime().availableProcessors();
+      for (int k = 4; k < args.length; k++) {
+        if (args[k].equals("-workers") && k + 1 < args.length) {
+          try {
+            workers = Integer.parseInt(args[++k]);
+          } catch (NumberFormatException e) {
+            workers = 0;
+          }
+          if (workers < 1) {
+            viewer.showErrorMessage("Invalid number of workers: " + args[k]);
+            return;
+          }
+        } else if (args[k].equals("-timeout") && k + 1 < args.length) {
+          try {
+            controller.setCommandTimeout(Long.parseLong(args[++k]));
+          } catch (IllegalArgumentException e) {
+            viewer.showErrorMessage("Invalid timeout: " + args[k]);
+            return;
+          }
+        } else {
+          viewer.showErrorMessage("Invalid argument. Use '-batch template inputs output"
+              + " [-workers n] [-timeout ms]'");
+          return;
+        }
+      }
+      controller.runBatch(args[1], args[2], args[3], workers);
+    } else if (args[0].equals("-server")) {
+      int port = ImageServer.DEFAULT_PORT;
+      int workers = Runtime.getRuntime().availableProcessors();
+      long timeout = 0;
+      try {
+        for (int k = 1; k < args.length; k++) {
+          if (args[k].equals("-port") && k + 1 < args.length) {
+            port = Integer.parseInt(args[++k]);
+          } else if (args[k].equals("-workers") && k + 1 < args.length) {
+            workers = Integer.parseInt(args[++k]);
+          } else if (args[k].equals("-timeout") && k + 1 < args.length) {
+            timeout = Long.parseLong(args[++k]);
+            if (timeout < 0) {
+              throw new IllegalArgumentException(args[k]);
+            }
+          } else {
+            throw new IllegalArgumentException(args[k]);
+          }
+        }
+      } catch (IllegalArgumentException e) {
+        viewer.showErrorMessage("Invalid argument."
+            + " Use '-server [-port n] [-workers n] [-timeout ms]'");
+        return;
+      }
+      try (ImageServer server = new ImageServer(port, workers)) {
+        server.setCommandTimeout(timeout);
+        viewer.showString("Listening on port " + server.getPort() + ".");
+        server.serve();
+      }
+    } else if (args[0].equals("-client")) {
+      int port = ImageServer.DEFAULT_PORT;
+      if (args.length == 3 && args[1].equals("-port")) {
+        try {
+          port = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+          port = -1;
+        }
+      } else if (args.length != 1) {
+        port = -1;
+      }
+      if (port < 0 || port > 65535) {
+        viewer.showErrorMessage("Invalid argument. Use '-client [-port n]'");
+        return;
+      }
+      if (ImageClient.run(port, System.in, System.out, System.err) > 0) {
+        System.exit(1);
+      }
     } else {
       viewer.showErrorMessage("Invalid argument combination."
           + " Use '-text' or '-file path/to/script/file'");
@@ -0,0 +1,296 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import controller.commands.ImageCommand;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import model.ImageProcessor;
+import model.Progress;
+import view.ImageViewer;
+
+/**
+ * The AdmissionController class keeps the commands running at the same time within a memory
+ * budget. Before a command runs, the memory it needs is estimated from the sizes of its images,
+ * and the command waits until that much of the budget is free. Commands are admitted in the order
+ * they arrive, so a large command is not held back forever by a stream of small ones; a command
+ * larger than the whole budget is admitted when no other command is running.
+ *
+ * <p>The default budget is set in megabytes by the {@value #BUDGET_PROPERTY} system property, and
+ * is three quarters of the maximum heap otherwise. The controller is safe to use from several
+ * threads, and keeps the number of commands waiting and how long they waited.
+ *
+ * <p>A waiting command checks the {@link Progress} bound to its thread every
+ * {@value #CHECK_MILLIS} milliseconds, so that cancelling it, or running out of time, stops the
+ * wait and lets the commands behind it move on.
+ */
+public class AdmissionController {
+
+  /**
+   * The system property setting the memory budget, in megabytes.
+   */
+  public static final String BUDGET_PROPERTY = "image.memory.budget.mb";
+
+  private static final long CHECK_MILLIS = 50;
+
+  private final long budget;
+  private final Set<Long> abandoned = new HashSet<>();
+  private long inUse;
+  private int running;
+  private int queued;
+  private long nextTicket;
+  private long serving;
+  private long admitted;
+  private long totalWait;
+  private long longestWait;
+
+  /**
+   * Constructs a controller with the given budget.
+   *
+   * @param budget The most bytes the running commands may need together, at least 1.
+   * @throws IllegalArgumentException If the budget is less than 1.
+   */
+  public AdmissionController(long budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("The memory budget should be a positive number.");
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * Returns a new controller with the budget set by the {@value #BUDGET_PROPERTY} system
+   * property, or with three quarters of the maximum heap if it is not set.
+   *
+   * @return The default controller.
+   * @throws NumberFormatException If the property is not a whole number.
+   * @throws IllegalArgumentException If the property is not positive.
+   */
+  public static AdmissionController fromSystemProperty() {
+    String megabytes = System.getProperty(BUDGET_PROPERTY);
+    return new AdmissionController(megabytes == null || megabytes.isEmpty()
+        ? Runtime.getRuntime().maxMemory() / 4 * 3 : Long.parseLong(megabytes) << 20);
+  }
+
+  /**
+   * Wraps a command so that it waits for its memory before it runs, and gives the memory back
+   * when it ends.
+   *
+   * @param command The command.
+   * @return The command, run within the budget.
+   */
+  ImageCommand admit(ImageCommand command) {
+    return new AdmittedCommand(command);
+  }
+
+  /**
+   * Gets the command a wrapped command runs.
+   *
+   * @param command A command, wrapped by {@link #admit} or not.
+   * @return The command it runs.
+   */
+  static ImageCommand unwrap(ImageCommand command) {
+    return command instanceof AdmittedCommand ? ((AdmittedCommand) command).command : command;
+  }
+
+  /**
+   * Waits until the given memory is free and no command that arrived earlier is still waiting,
+   * and then takes it. A command that stops waiting gives up its place in the queue.
+   *
+   * @param bytes The memory the command needs.
+   * @throws InterruptedException If interrupted while waiting.
+   * @throws CancellationException If the progress of the thread is cancelled or runs out of time
+   *                               while waiting.
+   */
+  synchronized void acquire(long bytes) throws InterruptedException {
+    long ticket = nextTicket++;
+    long start = System.nanoTime();
+    Progress progress = Progress.current();
+    queued++;
+    try {
+      while (ticket != serving || (running > 0 && inUse + bytes > budget)) {
+        progress.check();
+        wait(CHECK_MILLIS);
+      }
+    } catch (InterruptedException | CancellationException e) {
+      if (ticket == serving) {
+        advance();
+      } else {
+        abandoned.add(ticket);
+      }
+      notifyAll();
+      throw e;
+    } finally {
+      queued--;
+    }
+    advance();
+    running++;
+    inUse += bytes;
+    admitted++;
+    long waited = (System.nanoTime() - start) / 1_000_000;
+    totalWait += waited;
+    longestWait = Math.max(longestWait, waited);
+    notifyAll();
+  }
+
+  /**
+   * Moves on to the next ticket, skipping those of the commands that stopped waiting.
+   */
+  private void advance() {
+    serving++;
+    while (abandoned.remove(serving)) {
+      serving++;
+    }
+  }
+
+  /**
+   * Gives back the memory of a command that has ended.
+   *
+   * @param bytes The memory the command took.
+   */
+  synchronized void release(long bytes) {
+    running--;
+    inUse -= bytes;
+    notifyAll();
+  }
+
+  /**
+   * Gets the number of commands waiting for memory.
+   *
+   * @return The queue depth.
+   */
+  public synchronized int getQueued() {
+    return queued;
+  }
+
+  /**
+   * Gets the number of commands running.
+   *
+   * @return The number of commands admitted that have not ended.
+   */
+  public synchronized int getRunning() {
+    return running;
+  }
+
+  /**
+   * Gets the memory taken by the running commands.
+   *
+   * @return The estimated number of bytes in use.
+   */
+  public synchronized long getInUse() {
+    return inUse;
+  }
+
+  /**
+   * Gets the number of commands admitted so far.
+   *
+   * @return The number of commands admitted.
+   */
+  public synchronized long getAdmitted() {
+    return admitted;
+  }
+
+  /**
+   * Gets the longest time a command waited for memory.
+   *
+   * @return The longest wait, in milliseconds.
+   */
+  public synchronized long getLongestWait() {
+    return longestWait;
+  }
+
+  /**
+   * Describes the state of the controller in one line.
+   *
+   * @return The queue depth, running commands, memory in use and waiting times.
+   */
+  public synchronized String describe() {
+    return "Memory: " + (inUse >> 20) + " of " + (budget >> 20) + " MB in use, " + running
+        + " running, " + queued + " waiting, " + admitted + " admitted, average wait "
+        + (admitted == 0 ? 0 : totalWait / admitted) + " ms, longest wait " + longestWait + " ms.";
+  }
+
+  /**
+   * The AdmittedCommand class runs a command within the budget of the controller.
+   */
+  private class AdmittedCommand implements ImageCommand {
+
+    private final ImageCommand command;
+
+    /**
+     * Constructs an admitted command.
+     *
+     * @param command The command to run.
+     */
+    AdmittedCommand(ImageCommand command) {
+      this.command = command;
+    }
+
+    /**
+     * Waits for the memory the command needs, runs it and gives the memory back.
+     *
+     * @param processor The {@link ImageProcessor} to perform image processing operations.
+     * @param viewer    The {@link ImageViewer} to display information or images.
+     * @param args      The arguments passed to the command.
+     * @throws IOException If an I/O error occurs during image processing, or if interrupted while
+     *                     waiting for memory.
+     * @throws CancellationException If the command is cancelled or runs out of time, while it
+     *                               waits for memory or while it runs.
+     */
+    @Override
+    public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+        throws IOException {
+      long bytes;
+      try {
+        bytes = Math.max(0, command.estimateMemory(processor, args));
+      } catch (RuntimeException e) {
+        bytes = 0;
+      }
+      try {
+        acquire(bytes);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for memory.", e);
+      }
+      try {
+        command.execute(processor, viewer, args);
+      } finally {
+        release(bytes);
+      }
+    }
+
+    /**
+     * Describes the access of the command.
+     *
+     * @param args The arguments passed to the command.
+     * @return The access of the command, or null if it is not known.
+     */
+    @Override
+    public ImageAccess access(String[] args) {
+      return command.access(args);
+    }
+
+    /**
+     * Checks the arguments of the command.
+     *
+     * @param args The arguments passed to the command.
+     * @return An error message, or null if the arguments are valid.
+     */
+    @Override
+    public String validate(String[] args) {
+      return command.validate(args);
+    }
+
+    /**
+     * Estimates the memory of the command.
+     *
+     * @param processor The {@link ImageProcessor} holding the images.
+     * @param args      The arguments passed to the command.
+     * @return The estimated number of bytes.
+     */
+    @Override
+    public long estimateMemory(ImageProcessor processor, String[] args) {
+      return command.estimateMemory(processor, args);
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.ImageOperations;
+import view.ImageViewer;
+
+/**
+ * The BatchRunner class applies one script to many image files at the same time. The script is a
+ * template in which {@code {input}} stands for the path of an input file, {@code {name}} for its
+ * name without its extension, and {@code {output}} for the output pattern with {@code {name}}
+ * replaced. Every file runs on a worker of a fixed pool, with its own controller and its own
+ * images, so the same image names can be used for every file. The commands of all the files share
+ * one memory budget, so that large images wait for memory instead of running out of it together.
+ */
+class BatchRunner {
+
+  /**
+   * The placeholder standing for the path of the input file.
+   */
+  static final String INPUT = "{input}";
+
+  /**
+   * The placeholder standing for the name of the input file, without its extension.
+   */
+  static final String NAME = "{name}";
+
+  /**
+   * The placeholder standing for the output path of the input file.
+   */
+  static final String OUTPUT = "{output}";
+
+  private static final List<String> EXTENSIONS = Arrays.asList(
+      "ppm", "pgm", "png", "jpg", "jpeg", "qoi", "raw", "haar");
+
+  private final List<String> template;
+  private final String outputPattern;
+  private final int workers;
+  private final AdmissionController admission;
+  private final long timeoutMillis;
+
+  /**
+   * Constructs a batch.
+   *
+   * @param template      The lines of the script template.
+   * @param outputPattern The path of the output of each file, containing {@value #NAME}.
+   * @param workers       The number of files run at the same time.
+   * @param admission     The memory budget the commands of the files share.
+   * @param timeoutMillis The time every command may take, in milliseconds, or 0 for no limit.
+   */
+  BatchRunner(List<String> template, String outputPattern, int workers,
+      AdmissionController admission, long timeoutMillis) {
+    this.template = template;
+    this.outputPattern = outputPattern;
+    this.workers = workers;
+    this.admission = admission;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Finds the input files of a batch: the image files of a directory, or the files whose names
+   * match a glob pattern, such as {@code images/*.png}. Only the last part of a pattern may
+   * contain wildcards.
+   *
+   * @param inputs A directory or a glob pattern.
+   * @return The input files, sorted by path.
+   * @throws IOException If the directory cannot be read.
+   */
+  static List<Path> findInputs(String inputs) throws IOException {
+    int separator = Math.max(inputs.lastIndexOf('/'), inputs.lastIndexOf('\\'));
+    String pattern = inputs.substring(separator + 1);
+    boolean glob = pattern.matches(".*[*?\\[{].*");
+    Path directory = glob ? Paths.get(separator < 0 ? "." : inputs.substring(0, separator + 1))
+        : Paths.get(inputs);
+    List<Path> files = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return files;
+    }
+    PathMatcher matcher = glob ? FileSystems.getDefault().getPathMatcher("glob:" + pattern)
+        : null;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        if (Files.isRegularFile(entry) && (glob ? matcher.matches(entry.getFileName())
+            : EXTENSIONS.contains(extension(entry).toLowerCase(Locale.ROOT)))) {
+          files.add(entry);
+        }
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  /**
+   * Runs the script on every input file, each on its own images, and waits for all of them.
+   *
+   * @param inputs The input files.
+   * @return The result of every file, in the order of the inputs.
+   * @throws InterruptedException If interrupted while waiting for the files.
+   */
+  List<Result> run(List<Path> inputs) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, inputs.size()));
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (Path input : inputs) {
+        futures.add(pool.submit(() -> runFile(input)));
+      }
+      List<Result> results = new ArrayList<>();
+      for (int k = 0; k < futures.size(); k++) {
+        try {
+          results.add(futures.get(k).get());
+        } catch (ExecutionException e) {
+          results.add(new Result(inputs.get(k).toString(), 0, failureOf(e.getCause())));
+        }
+      }
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the script on one input file, with its own controller and images. The file fails if
+   * the script has errors, if a command shows an error or if a command throws, even an error
+   * such as running out of memory, which only fails this file.
+   *
+   * @param input The input file.
+   * @return The result of the file.
+   */
+  private Result runFile(Path input) {
+    long start = System.nanoTime();
+    String fileName = input.getFileName().toString();
+    String name = fileName.contains(".")
+        ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+    String output = outputPattern.replace(NAME, name);
+    RecordingViewer viewer = new RecordingViewer();
+    String failure;
+    try {
+      Path parent = Paths.get(output).toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      List<String> lines = new ArrayList<>();
+      for (String line : template) {
+        lines.add(line.replace(INPUT, input.toString()).replace(OUTPUT, output)
+            .replace(NAME, name));
+      }
+      ImageController controller = new ImageController(viewer, ImageOperations.isolated());
+      controller.setAdmission(admission);
+      controller.setCommandTimeout(timeoutMillis);
+      controller.runPlan(controller.compileLines(lines));
+      failure = firstError(viewer);
+    } catch (Throwable e) {
+      failure = failureOf(e);
+    }
+    return new Result(input.toString(), (System.nanoTime() - start) / 1_000_000, failure);
+  }
+
+  /**
+   * Describes why a file failed from what its script threw.
+   *
+   * @param thrown The exception or error thrown.
+   * @return The message of an exception, or the kind and message of an error.
+   */
+  private static String failureOf(Throwable thrown) {
+    return thrown instanceof Error || thrown.getMessage() == null ? thrown.toString()
+        : thrown.getMessage();
+  }
+
+  /**
+   * Gets the first error message shown by a script.
+   *
+   * @param viewer The viewer the script ran with.
+   * @return The first error message, or null if there was none.
+   */
+  private static String firstError(RecordingViewer viewer) {
+    for (int k = 0; k < viewer.getMessages().size(); k++) {
+      if (viewer.getErrors().get(k)) {
+        return viewer.getMessages().get(k);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the extension of a file name.
+   *
+   * @param file The file.
+   * @return The extension, without its dot, or an empty string if there is none.
+   */
+  private static String extension(Path file) {
+    String fileName = file.getFileName().toString();
+    int dot = fileName.lastIndexOf('.');
+    return dot < 0 ? "" : fileName.substring(dot + 1);
+  }
+
+  /**
+   * Shows the result of every file, and then a summary of the batch and of its memory use.
+   *
+   * @param results The results of the files.
+   * @param millis  The time the whole batch took, in milliseconds.
+   * @param viewer  The viewer to show the results in.
+   */
+  void report(List<Result> results, long millis, ImageViewer viewer) {
+    int failed = 0;
+    for (Result result : results) {
+      if (result.getFailure() == null) {
+        viewer.showString(result.getInput() + ": " + result.getMillis() + " ms");
+      } else {
+        failed++;
+        viewer.showErrorMessage(result.getInput() + ": failed after " + result.getMillis()
+            + " ms: " + result.getFailure());
+      }
+    }
+    viewer.showString("Batch of " + results.size() + " files on " + workers + " workers: "
+        + (results.size() - failed) + " succeeded, " + failed + " failed, in " + millis + " ms.");
+    viewer.showString(admission.describe());
+  }
+
+  /**
+   * The result of running the script on one input file.
+   */
+  static class Result {
+
+    private final String input;
+    private final long millis;
+    private final String failure;
+
+    /**
+     * Constructs the result of a file.
+     *
+     * @param input   The path of the input file.
+     * @param millis  The time the file took, in milliseconds.
+     * @param failure The first error of the file, or null if it succeeded.
+     */
+    Result(String input, long millis, String failure) {
+      this.input = input;
+      this.millis = millis;
+      this.failure = failure;
+    }
+
+    /**
+     * Gets the path of the input file.
+     *
+     * @return The path.
+     */
+    String getInput() {
+      return input;
+    }
+
+    /**
+     * Gets the time the file took.
+     *
+     * @return The time, in milliseconds.
+     */
+    long getMillis() {
+      return millis;
+    }
+
+    /**
+     * Gets the first error of the file.
+     *
+     * @return The error, or null if the file succeeded.
+     */
+    String getFailure() {
+      return failure;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import controller.commands.ImageCommand;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import model.ImageProcessor;
+import model.Progress;
+import view.ImageViewer;
+
+/**
+ * The CommandMonitor class runs commands so that they can be stopped while they run, and shows
+ * how far they have got. Every command gets a {@link Progress} of its own, bound to the thread
+ * running it, with the time limit set on the monitor; the operations of the command check it
+ * after every row, and report the percentage done to the viewer of the monitor as it changes.
+ *
+ * <p>A command that is cancelled, or runs out of time, throws a {@link CancellationException}
+ * naming the command, and stores no result. The monitor is safe to use from several threads, and
+ * {@link #cancel()} stops every command it is running.
+ */
+class CommandMonitor {
+
+  private final ImageViewer viewer;
+  private final Set<Progress> running = ConcurrentHashMap.newKeySet();
+  private volatile long timeoutMillis;
+
+  /**
+   * Constructs a monitor.
+   *
+   * @param viewer The viewer to show the progress of the commands in.
+   */
+  CommandMonitor(ImageViewer viewer) {
+    this.viewer = viewer;
+  }
+
+  /**
+   * Sets the time every command may take.
+   *
+   * @param timeoutMillis The time, in milliseconds, or 0 for no limit.
+   * @throws IllegalArgumentException If the time is negative.
+   */
+  void setTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("The timeout should not be negative.");
+    }
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Gets the time every command may take.
+   *
+   * @return The time, in milliseconds, or 0 for no limit.
+   */
+  long getTimeout() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Stops every command running, within one row of its work.
+   *
+   * @return The number of commands that were asked to stop.
+   */
+  int cancel() {
+    int cancelled = 0;
+    for (Progress progress : running) {
+      progress.cancel();
+      cancelled++;
+    }
+    return cancelled;
+  }
+
+  /**
+   * Wraps a command so that it runs with a progress of its own.
+   *
+   * @param command The command.
+   * @return The command, run so that it can be stopped.
+   */
+  ImageCommand monitor(ImageCommand command) {
+    return new MonitoredCommand(command);
+  }
+
+  /**
+   * Gets the command a wrapped command runs.
+   *
+   * @param command A command, wrapped by {@link #monitor} or not.
+   * @return The command it runs.
+   */
+  static ImageCommand unwrap(ImageCommand command) {
+    return command instanceof MonitoredCommand ? ((MonitoredCommand) command).command : command;
+  }
+
+  /**
+   * The MonitoredCommand class runs a command with a progress of its own.
+   */
+  private class MonitoredCommand implements ImageCommand {
+
+    private final ImageCommand command;
+
+    /**
+     * Constructs a monitored command.
+     *
+     * @param command The command to run.
+     */
+    MonitoredCommand(ImageCommand command) {
+      this.command = command;
+    }
+
+    /**
+     * Runs the command with a new progress bound to the current thread, and unbinds it when the
+     * command ends.
+     *
+     * @param processor The {@link ImageProcessor} to perform image processing operations.
+     * @param viewer    The {@link ImageViewer} to display information or images.
+     * @param args      The arguments passed to the command.
+     * @throws IOException If an I/O error occurs during image processing.
+     * @throws CancellationException If the command is cancelled or runs out of time.
+     */
+    @Override
+    public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+        throws IOException {
+      String name = args.length == 0 ? "" : args[0];
+      Progress progress = new Progress(timeoutMillis,
+          percent -> CommandMonitor.this.viewer.showProgress(name, percent));
+      running.add(progress);
+      Progress previous = Progress.bind(progress);
+      try {
+        command.execute(processor, viewer, args);
+      } catch (CancellationException e) {
+        // Parallel operations rethrow a copy of the exception, holding the original as its cause.
+        Throwable reason = e;
+        while (reason.getMessage() == null && reason.getCause() != null) {
+          reason = reason.getCause();
+        }
+        throw new CancellationException(name + ": " + reason.getMessage());
+      } finally {
+        Progress.bind(previous);
+        running.remove(progress);
+      }
+    }
+
+    /**
+     * Describes the access of the command.
+     *
+     * @param args The arguments passed to the command.
+     * @return The access of the command, or null if it is not known.
+     */
+    @Override
+    public ImageAccess access(String[] args) {
+      return command.access(args);
+    }
+
+    /**
+     * Checks the arguments of the command.
+     *
+     * @param args The arguments passed to the command.
+     * @return An error message, or null if the arguments are valid.
+     */
+    @Override
+    public String validate(String[] args) {
+      return command.validate(args);
+    }
+
+    /**
+     * Estimates the memory of the command.
+     *
+     * @param processor The {@link ImageProcessor} holding the images.
+     * @param args      The arguments passed to the command.
+     * @return The estimated number of bytes.
+     */
+    @Override
+    public long estimateMemory(ImageProcessor processor, String[] args) {
+      return command.estimateMemory(processor, args);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ImageClient class sends commands to an {@link ImageServer} and shows the messages sent back,
+ * so that a running server can be fed from a shell pipeline. Commands are sent as they are read,
+ * while the messages of earlier commands are still coming back.
+ */
+public class ImageClient {
+
+  /**
+   * Sends every line of the input to the server on the given port, and shows the messages of the
+   * commands until the server has answered all of them.
+   *
+   * @param port The port of the server on the loopback address.
+   * @param in   The commands, one per line.
+   * @param out  The stream to show the messages of the commands in.
+   * @param err  The stream to show the error messages of the commands in.
+   * @return The number of error messages shown.
+   * @throws IOException If the server cannot be reached or the connection fails.
+   */
+  public static int run(int port, InputStream in, PrintStream out, PrintStream err)
+      throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      Thread sender = new Thread(() -> send(in, socket));
+      sender.setDaemon(true);
+      sender.start();
+      BufferedReader responses = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      int errors = 0;
+      String line;
+      while ((line = responses.readLine()) != null) {
+        if (line.startsWith("OUT ")) {
+          out.println(line.substring(4));
+        } else if (line.startsWith("ERR ")) {
+          err.println(line.substring(4));
+          errors++;
+        }
+      }
+      return errors;
+    }
+  }
+
+  /**
+   * Sends the lines of the input to the server, and then ends the session.
+   *
+   * @param in     The commands, one per line.
+   * @param socket The connection to the server.
+   */
+  private static void send(InputStream in, Socket socket) {
+    try {
+      BufferedReader commands = new BufferedReader(new InputStreamReader(in,
+          StandardCharsets.UTF_8));
+      Writer server = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      String line;
+      while ((line = commands.readLine()) != null) {
+        server.write(line + "\n");
+        server.flush();
+      }
+      socket.shutdownOutput();
+    } catch (IOException e) {
+      // The server closed the session; the messages it sent show why.
+    }
+  }
+}
@@ -4,7 +4,9 @@ import controller.commands.BlueComponentImageCommand;
 import controller.commands.BlurImageCommand;
 import controller.commands.BrightenImageCommand;
 import controller.commands.ColorCorrectImageCommand;
+import controller.commands.CompareImageCommand;
 import controller.commands.CompressImageCommand;
+import controller.commands.CompressSweepImageCommand;
 import controller.commands.GreenComponentImageCommand;
 import controller.commands.GreyscaleImageCommand;
 import controller.commands.HistogramImageCommand;
@@ -14,6 +16,7 @@ import controller.commands.IntensityComponentImageCommand;
 import controller.commands.LevelsAdjustment;
 import controller.commands.LoadImageCommand;
 import controller.commands.LumaComponentImageCommand;
+import controller.commands.MaterializeImageCommand;
 import controller.commands.RedComponentImageCommand;
 import controller.commands.RgbCombineImageCommand;
 import controller.commands.RgbSplitImageCommand;
@@ -21,21 +24,31 @@ import controller.commands.SaveImageCommand;
 import controller.commands.ScriptExecutionCommand;
 import controller.commands.SepiaImageCommand;
 import controller.commands.SharpenImageCommand;
+import controller.commands.ThumbnailImageCommand;
 import controller.commands.ValueComponentImageCommand;
 import controller.commands.VerticalFlipImageCommand;
+import controller.io.StepCache;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import model.CachingImageProcessor;
 import model.Image;
+import model.ImageConversion;
 import model.ImageOperations;
 import model.ImageProcessor;
+import model.ResultCache;
 import view.GUIViewer;
 import view.ImageViewer;
 
@@ -47,9 +60,17 @@ public class ImageController implements ImageControllerInterface {
 
   private final Scanner scanner;
   private final ImageProcessor processor;
+  private final ResultCache resultCache;
   private final Map<String, ImageCommand> commandMap;
   private final ImageViewer viewer;
+  private final Map<String, ScriptPlan> plans = new HashMap<>();
   private GUIViewer guiViewer;
+  private ExecutorService guiCommands;
+  private int scriptThreads = 1;
+  private boolean lazyScripts;
+  private StepCache incrementalCache;
+  private AdmissionController admission;
+  private final CommandMonitor monitor;
 
   /**
    * Creates an ImageController instance. A map that associates command names with corresponding
@@ -58,9 +79,23 @@ public class ImageController implements ImageControllerInterface {
    * @param viewer The ImageViewer to display messages and images.
    */
   public ImageController(ImageViewer viewer) {
+    this(viewer, new ImageOperations());
+  }
+
+  /**
+   * Creates an ImageController instance working on the images of the given processor, such as
+   * one with its own images, so that several controllers can run scripts at the same time.
+   *
+   * @param viewer     The ImageViewer to display messages and images.
+   * @param operations The image processor holding the images.
+   */
+  public ImageController(ImageViewer viewer, ImageProcessor operations) {
     this.viewer = viewer;
+    this.monitor = new CommandMonitor(viewer);
     this.scanner = new Scanner(System.in);
-    this.processor = new ImageOperations();
+    this.resultCache = ResultCache.fromSystemProperty();
+    this.processor = resultCache == null ? operations
+        : new CachingImageProcessor(operations, resultCache);
 
     commandMap = new HashMap<>();
     commandMap.put("load", new LoadImageCommand());
@@ -84,27 +119,239 @@ public class ImageController implements ImageControllerInterface {
     commandMap.put("color-correct", new ColorCorrectImageCommand());
     commandMap.put("levels-adjust", new LevelsAdjustment());
     commandMap.put("compress", new CompressImageCommand());
-    commandMap.put("-file", new ScriptExecutionCommand());
+    commandMap.put("compress-sweep", new CompressSweepImageCommand());
+    commandMap.put("compare", new CompareImageCommand());
+    commandMap.put("thumbnail", new ThumbnailImageCommand());
+    commandMap.put("materialize", new MaterializeImageCommand());
+    commandMap.put("-file", new ScriptExecutionCommand(this));
+  }
+
+  /**
+   * Sets the number of threads scripts are run on. With more than one thread, commands of a
+   * script that do not depend on each other run at the same time, and their output is still shown
+   * in the order of the script.
+   *
+   * @param scriptThreads The number of threads, at least 1.
+   * @throws IllegalArgumentException If the number of threads is less than 1.
+   */
+  public void setScriptThreads(int scriptThreads) {
+    if (scriptThreads < 1) {
+      throw new IllegalArgumentException("The number of threads should be a positive number.");
+    }
+    this.scriptThreads = scriptThreads;
+  }
+
+  /**
+   * Sets whether scripts are run lazily. A lazy script only runs the commands whose results are
+   * saved, compared or materialized, directly or through other commands; images that are never
+   * used are not computed, and are not available after the script.
+   *
+   * @param lazyScripts Whether to run scripts lazily.
+   */
+  public void setLazyScripts(boolean lazyScripts) {
+    this.lazyScripts = lazyScripts;
+  }
+
+  /**
+   * Sets the directory in which the results of script commands are kept, so that running a script
+   * again skips the commands whose arguments and inputs have not changed, including saves of
+   * files that are already up to date.
+   *
+   * @param directory The directory of the results, or null to run every command.
+   */
+  public void setIncrementalDirectory(String directory) {
+    this.incrementalCache = directory == null ? null : new StepCache(Paths.get(directory));
+  }
+
+  /**
+   * Sets the memory budget commands run within. Every command then waits until the memory it is
+   * estimated to need is free, so that controllers sharing the budget do not run out of memory
+   * together. The results of operations are not remembered while there is a budget, since the
+   * memory they hold is not part of it.
+   *
+   * @param admission The budget to share, or null to run every command at once.
+   */
+  public void setAdmission(AdmissionController admission) {
+    this.admission = admission;
+    if (processor instanceof CachingImageProcessor) {
+      ((CachingImageProcessor) processor).setCache(admission == null ? resultCache : null);
+    }
   }
 
   /**
-   * Runs a script file containing a series of image processing commands.
+   * Sets the time every command may take. A command that takes longer stops within one row of
+   * its work, and shows an error instead of storing a result; a script stops at that command.
+   *
+   * @param timeoutMillis The time, in milliseconds, or 0 for no limit.
+   * @throws IllegalArgumentException If the time is negative.
+   */
+  public void setCommandTimeout(long timeoutMillis) {
+    monitor.setTimeout(timeoutMillis);
+  }
+
+  /**
+   * Stops the commands this controller is running, from another thread, within one row of their
+   * work. The script they belong to stops with them.
+   *
+   * @return The number of commands that were asked to stop.
+   */
+  public int cancel() {
+    return monitor.cancel();
+  }
+
+  /**
+   * Wraps a command so that it can be stopped and shows its progress, and, when there is a
+   * memory budget, waits for its memory before it runs. The command is monitored while it waits,
+   * so that cancelling it or running out of time also stops the wait.
+   *
+   * @param command The command.
+   * @return The wrapped command.
+   */
+  private ImageCommand wrap(ImageCommand command) {
+    // A nested script only runs commands that wait for memory themselves; if it counted as
+    // running, a command larger than the budget would wait for it forever.
+    return monitor.monitor(admission == null || command instanceof ScriptExecutionCommand
+        ? command : admission.admit(command));
+  }
+
+  /**
+   * Runs a script file containing a series of image processing commands. The script is compiled
+   * first, and is not run at all if it has errors. Compiled scripts are kept, so running an
+   * unchanged script again does not read and check it again.
    *
    * @param scriptFilePath The path to the script file.
    * @throws IOException If there is an error reading the script file.
    */
   public void runScript(String scriptFilePath) throws IOException {
-    try (BufferedReader reader = new BufferedReader(new FileReader(scriptFilePath))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.startsWith("#")) {
-          continue;
-        }
-        viewer.showString(line);
-        executeCommand(line);
-      }
+    try {
+      runPlan(compileScript(scriptFilePath));
     } catch (IOException e) {
       viewer.showErrorMessage("Error reading the script file: " + e.getMessage());
+    } catch (CancellationException e) {
+      viewer.showErrorMessage(e.getMessage());
+    }
+  }
+
+  /**
+   * Compiles a script file, or returns the plan compiled before if the file has not changed
+   * since.
+   *
+   * @param scriptFilePath The path to the script file.
+   * @return The compiled script.
+   * @throws IOException If there is an error reading the script file.
+   */
+  public ScriptPlan compileScript(String scriptFilePath) throws IOException {
+    String key = Paths.get(scriptFilePath).toAbsolutePath().normalize().toString();
+    ScriptPlan plan = plans.get(key);
+    if (plan == null || !plan.isCurrent()) {
+      plan = ScriptPlan.compile(scriptFilePath, commandMap);
+      plans.put(key, plan);
+    }
+    return plan;
+  }
+
+  /**
+   * Compiles the lines of a script that is not read from a file.
+   *
+   * @param lines The lines of the script.
+   * @return The compiled script.
+   */
+  ScriptPlan compileLines(List<String> lines) {
+    return ScriptPlan.compile(lines, commandMap);
+  }
+
+  /**
+   * Runs a script template on many image files at the same time, each with its own images, and
+   * shows how long every file took, which files failed and why. In the template, {input} stands
+   * for the path of an input file, {name} for its name without its extension, and {output} for
+   * the output pattern with {name} replaced. The files share the memory budget of this
+   * controller, or the default budget if it has none, and their commands have the same time
+   * limit as the commands of this controller.
+   *
+   * @param templatePath  The path to the script template.
+   * @param inputs        A directory of images, or a glob pattern such as images/*.png.
+   * @param outputPattern The output path of each file, containing {name}.
+   * @param workers       The number of files run at the same time, at least 1.
+   * @throws IllegalArgumentException If the number of workers is less than 1.
+   */
+  public void runBatch(String templatePath, String inputs, String outputPattern, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers should be a positive number.");
+    }
+    if (!outputPattern.contains(BatchRunner.NAME)) {
+      viewer.showErrorMessage("The output pattern must contain " + BatchRunner.NAME + ".");
+      return;
+    }
+    List<String> template;
+    List<Path> files;
+    try {
+      template = Files.readAllLines(Paths.get(templatePath));
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error reading the script file: " + e.getMessage());
+      return;
+    }
+    try {
+      files = BatchRunner.findInputs(inputs);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error reading the input directory: " + e.getMessage());
+      return;
+    }
+    if (files.isEmpty()) {
+      viewer.showErrorMessage("No input files found in " + inputs + ".");
+      return;
+    }
+    long start = System.nanoTime();
+    BatchRunner batch = new BatchRunner(template, outputPattern, workers,
+        admission != null ? admission : AdmissionController.fromSystemProperty(),
+        monitor.getTimeout());
+    try {
+      List<BatchRunner.Result> results = batch.run(files);
+      batch.report(results, (System.nanoTime() - start) / 1_000_000, viewer);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      viewer.showErrorMessage("The batch was interrupted.");
+    }
+  }
+
+  /**
+   * Runs a compiled script, after checking that it has no errors and that the images and files
+   * it needs exist. The same plan can be run any number of times, on other images. When scripts
+   * are run lazily, only the commands whose results are used are run, and when they are run
+   * incrementally, the commands whose results are kept from an earlier run are skipped. On one
+   * thread, upcoming loads are read ahead and saves are written behind the other commands.
+   *
+   * @param plan The compiled script.
+   * @throws IOException If a command fails with an I/O error.
+   * @throws CancellationException If a command is cancelled or runs out of time.
+   */
+  public void runPlan(ScriptPlan plan) throws IOException {
+    if (!plan.check(processor, viewer)) {
+      return;
+    }
+    List<ScriptPlan.Step> steps = plan.getSteps();
+    if (lazyScripts) {
+      steps = plan.getLiveSteps();
+      viewer.showString("Lazy evaluation: running " + steps.size() + " of "
+          + plan.getSteps().size() + " commands.");
+    }
+    List<ScriptPlan.Step> wrapped = new ArrayList<>();
+    for (ScriptPlan.Step step : steps) {
+      wrapped.add(step.withCommand(wrap(step.getCommand())));
+    }
+    steps = wrapped;
+    IncrementalBuild build = null;
+    if (incrementalCache != null) {
+      build = new IncrementalBuild(incrementalCache);
+      steps = build.wrap(steps);
+    }
+    if (scriptThreads > 1) {
+      new ScriptScheduler(processor, viewer, scriptThreads).run(steps);
+    } else {
+      new PipelinedRunner(processor, viewer).run(steps);
+    }
+    if (build != null) {
+      viewer.showString("Incremental run: " + build.getSkipped() + " of " + steps.size()
+          + " commands were up to date.");
     }
   }
 
@@ -117,18 +364,7 @@ public class ImageController implements ImageControllerInterface {
   private void imageToBufferedImage(Image sourceImage, String destImage) {
     try {
       if (sourceImage != null) {
-        int height = sourceImage.getHeight();
-        int width = sourceImage.getWidth();
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        WritableRaster raster = image.getRaster();
-        for (int i = 0; i < height; i++) {
-          for (int j = 0; j < width; j++) {
-            int[] pixelArray = sourceImage.getImage(i, j);
-            if (pixelArray != null) {
-              raster.setPixel(j, i, pixelArray);
-            }
-          }
-        }
+        BufferedImage image = ImageConversion.toBufferedImage(sourceImage);
         guiViewer.displayImage(image, destImage);
       }
     } catch (NullPointerException e) {
@@ -145,18 +381,7 @@ public class ImageController implements ImageControllerInterface {
   private void imageToBufferedImageHistogram(Image sourceImage) {
     try {
       if (sourceImage != null) {
-        int height = sourceImage.getHeight();
-        int width = sourceImage.getWidth();
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        WritableRaster raster = image.getRaster();
-        for (int i = 0; i < height; i++) {
-          for (int j = 0; j < width; j++) {
-            int[] pixelArray = sourceImage.getImage(i, j);
-            if (pixelArray != null) {
-              raster.setPixel(j, i, pixelArray);
-            }
-          }
-        }
+        BufferedImage image = ImageConversion.toBufferedImage(sourceImage);
         guiViewer.displayHistogram(image);
       }
     } catch (NullPointerException e) {
@@ -596,16 +821,19 @@ public class ImageController implements ImageControllerInterface {
     String[] command = cmd.split(" ");
     String commandName = command[0].toLowerCase();
     if (commandName.equals("-file")) {
-      ImageCommand fileCommand = commandMap.get(commandName);
-      if (fileCommand != null) {
-        fileCommand.execute(processor, viewer, command);
+      if (command.length < 2) {
+        viewer.showErrorMessage("No script file provided.");
       } else {
-        viewer.showErrorMessage("Unknown command: " + commandName);
+        runScript(command[1]);
       }
     } else {
       ImageCommand imageCommand = commandMap.get(commandName);
       if (imageCommand != null) {
-        imageCommand.execute(processor, viewer, command);
+        try {
+          wrap(imageCommand).execute(processor, viewer, command);
+        } catch (CancellationException e) {
+          viewer.showErrorMessage(e.getMessage());
+        }
       } else {
         viewer.showErrorMessage("Unknown command: " + commandName);
       }
@@ -615,22 +843,51 @@ public class ImageController implements ImageControllerInterface {
   /**
    * Opens the graphical user interface (GUI) mode by initializing a new {@code GUIViewer}. Also
    * sets up various action listeners for GUI components. The method associates the GUIViewer with
-   * the main viewer, enabling interaction with the GUI.
+   * the main viewer, enabling interaction with the GUI. Processed images are kept packed in
+   * buffered images, so they are displayed without being copied.
    */
 
   public void openGUIMode() {
     viewer.showString("GUI Mode Opened.");
-    this.guiViewer = new GUIViewer(getLoadActionListener(), getHistogramActionLister(),
-        getRedActionListener(), getGreenActionListener(), getBlueActionListener(),
-        getLumaActionListener(), getHorizontalFlipActionListener(), getVerticalFlipActionListener(),
-        getCompressActionListener(), getBlurActionListener(), getSharpenActionListener(),
-        getBrightenActionListener(), getColorCorrectActionListener(),
-        getAdjustLevelActionListener(), getGreyActionListener(), getSepiaActionListener(),
-        getSaveActionListener());
+    processor.setPackedImages(true);
+    guiCommands = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "gui-commands");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.guiViewer = new GUIViewer(inBackground(getLoadActionListener()),
+        inBackground(getHistogramActionLister()), inBackground(getRedActionListener()),
+        inBackground(getGreenActionListener()), inBackground(getBlueActionListener()),
+        inBackground(getLumaActionListener()), inBackground(getHorizontalFlipActionListener()),
+        inBackground(getVerticalFlipActionListener()), inBackground(getCompressActionListener()),
+        inBackground(getBlurActionListener()), inBackground(getSharpenActionListener()),
+        inBackground(getBrightenActionListener()), inBackground(getColorCorrectActionListener()),
+        inBackground(getAdjustLevelActionListener()), inBackground(getGreyActionListener()),
+        inBackground(getSepiaActionListener()), inBackground(getSaveActionListener()),
+        e -> cancel());
     viewer.setGUIViewer(guiViewer);
 
   }
 
+  /**
+   * Runs the command of a button on the GUI thread of the controller rather than on the event
+   * dispatch thread, so that the window keeps painting its progress and the cancel button can
+   * stop the command. Commands run one at a time, in the order their buttons were pressed, and
+   * the progress bar is emptied when each of them ends.
+   *
+   * @param action The listener of the button.
+   * @return A listener that runs the action in the background.
+   */
+  private ActionListener inBackground(ActionListener action) {
+    return e -> guiCommands.execute(() -> {
+      try {
+        action.actionPerformed(e);
+      } finally {
+        guiViewer.resetProgress();
+      }
+    });
+  }
+
   /**
    * Opens and executes a script file specified by the given file name. This method displays the
    * script file entry in the viewer and runs the script using the {@code runScript} method.
@@ -0,0 +1,265 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import model.ImageOperations;
+import view.ImageViewer;
+
+/**
+ * The ImageServer class keeps one process running and runs commands and scripts sent to it over a
+ * local TCP connection, so that jobs do not pay for starting a new process every time. It only
+ * listens on the loopback address. Every connection is a session with its own controller and its
+ * own images, and the commands of a session run in order. The commands of all sessions run on a
+ * fixed pool of workers, so that many sessions do not run more commands at once than there are
+ * processors, and within one memory budget, so that commands on large images wait for memory
+ * instead of running the server out of it.
+ *
+ * <p>A client sends one command per line, as in text mode, including {@code -file} to run a
+ * script, and {@code exit} to end its session. The messages of a command are sent back as they are
+ * shown, one line each, starting with {@code OUT} or {@code ERR}, and a line {@code DONE} follows
+ * the last message of every command. The line {@code status} sends back the state of the memory
+ * budget: the memory in use, the commands running and waiting, and how long they waited.
+ *
+ * <p>While a command runs, lines {@code PROGRESS <percent> <command>} tell how far it has got.
+ * Commands are read while earlier ones run, so the line {@code cancel} stops the command of the
+ * session that is running at once, within one row of its work; it fails with an error, and the
+ * commands sent after it still run. Commands that take longer than the time limit of the server
+ * fail the same way.
+ */
+public class ImageServer implements Closeable {
+
+  /**
+   * The port the server listens on when none is given.
+   */
+  public static final int DEFAULT_PORT = 7171;
+
+  private final ServerSocket socket;
+  private final ExecutorService sessions = Executors.newCachedThreadPool();
+  private final ExecutorService workers;
+  private final AdmissionController admission = AdmissionController.fromSystemProperty();
+  private volatile long timeoutMillis;
+
+  /**
+   * Starts listening for sessions on the loopback address.
+   *
+   * @param port    The port to listen on, or 0 for any free port.
+   * @param workers The number of commands run at the same time, at least 1.
+   * @throws IOException If the port cannot be listened on.
+   * @throws IllegalArgumentException If the number of workers is less than 1.
+   */
+  public ImageServer(int port, int workers) throws IOException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers should be a positive number.");
+    }
+    this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.workers = Executors.newFixedThreadPool(workers);
+  }
+
+  /**
+   * Gets the port the server listens on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return socket.getLocalPort();
+  }
+
+  /**
+   * Sets the time every command may take.
+   *
+   * @param timeoutMillis The time, in milliseconds, or 0 for no limit.
+   * @throws IllegalArgumentException If the time is negative.
+   */
+  public void setCommandTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("The timeout should not be negative.");
+    }
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Accepts sessions until the server is closed, running each on a thread of its own.
+   *
+   * @throws IOException If accepting a connection fails for another reason than the server
+   *                     being closed.
+   */
+  public void serve() throws IOException {
+    while (!socket.isClosed()) {
+      Socket client;
+      try {
+        client = socket.accept();
+      } catch (SocketException e) {
+        if (socket.isClosed()) {
+          return;
+        }
+        throw e;
+      }
+      sessions.submit(() -> session(client));
+    }
+  }
+
+  /**
+   * Stops accepting sessions and stops the sessions and commands still running.
+   *
+   * @throws IOException If the listening socket cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    socket.close();
+    sessions.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  /**
+   * Runs the commands of one session, in order, on the workers, until the client ends the
+   * session or disconnects. Lines are read while the commands run, so that a command can be
+   * cancelled, and the session ends when the commands read before its end have finished.
+   *
+   * @param client The connection of the session.
+   */
+  private void session(Socket client) {
+    try (Socket connection = client;
+         BufferedReader in = new BufferedReader(new InputStreamReader(
+             connection.getInputStream(), StandardCharsets.UTF_8));
+         Writer out = new OutputStreamWriter(connection.getOutputStream(),
+             StandardCharsets.UTF_8)) {
+      SessionViewer viewer = new SessionViewer(out);
+      ImageController controller = new ImageController(viewer, ImageOperations.isolated());
+      controller.setAdmission(admission);
+      controller.setCommandTimeout(timeoutMillis);
+      CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+      try {
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("exit")) {
+          if (line.isBlank() || line.startsWith("#")) {
+            continue;
+          }
+          if (line.equals("cancel")) {
+            controller.cancel();
+            continue;
+          }
+          String command = line;
+          last = last.thenRunAsync(() -> run(controller, viewer, command), workers);
+        }
+      } finally {
+        try {
+          last.get();
+        } catch (ExecutionException | CancellationException e) {
+          // The workers were stopped by closing the server.
+        }
+      }
+    } catch (IOException e) {
+      // The client disconnected; its session ends.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Runs one command of a session and ends its messages. Anything the command throws, errors
+   * such as running out of memory included, is reported as the failure of that command alone, so
+   * that the commands after it still run.
+   *
+   * @param controller The controller of the session.
+   * @param viewer     The viewer of the session.
+   * @param command    The command.
+   */
+  private void run(ImageController controller, SessionViewer viewer, String command) {
+    try {
+      if (command.equals("status")) {
+        viewer.showString(admission.describe());
+      } else {
+        controller.executeCommand(command);
+      }
+    } catch (Throwable e) {
+      viewer.showErrorMessage("Command failed: "
+          + (e instanceof Error || e.getMessage() == null ? e.toString() : e.getMessage()));
+    }
+    viewer.send("DONE", null);
+  }
+
+  /**
+   * The SessionViewer class sends the messages of a session to its client as they are shown.
+   */
+  private static class SessionViewer extends ImageViewer {
+
+    private final Writer out;
+
+    /**
+     * Constructs a viewer sending messages to a client.
+     *
+     * @param out The connection to the client.
+     */
+    SessionViewer(Writer out) {
+      super(System.out);
+      this.out = out;
+    }
+
+    /**
+     * Sends a message to the client.
+     *
+     * @param s The message.
+     */
+    @Override
+    public void showString(String s) {
+      send("OUT", s);
+    }
+
+    /**
+     * Sends an error message to the client.
+     *
+     * @param errorMessage The error message.
+     */
+    @Override
+    public void showErrorMessage(String errorMessage) {
+      send("ERR", errorMessage);
+    }
+
+    /**
+     * Sends how far a command has got to the client.
+     *
+     * @param command The name of the command.
+     * @param percent The percentage of the command done, between 0 and 100.
+     */
+    @Override
+    public void showProgress(String command, int percent) {
+      send("PROGRESS", percent + " " + command);
+    }
+
+    /**
+     * Sends a message, one line at a time, each starting with a tag. Messages that cannot be sent
+     * because the client has disconnected are dropped.
+     *
+     * @param tag     The tag of the message.
+     * @param message The message, or null to send the tag alone.
+     */
+    synchronized void send(String tag, String message) {
+      try {
+        if (message == null) {
+          out.write(tag + "\n");
+        } else {
+          for (String line : message.split("\r?\n", -1)) {
+            out.write(tag + " " + line + "\n");
+          }
+        }
+        out.flush();
+      } catch (IOException e) {
+        // The session ends when its next command is read.
+      }
+    }
+  }
+}
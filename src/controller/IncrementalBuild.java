@@ -0,0 +1,337 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import controller.commands.ImageCommand;
+import controller.io.StepCache;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.HaarCoefficients;
+import model.Image;
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The IncrementalBuild class runs the commands of a script the way make does: every command gets a
+ * fingerprint made of its arguments and the fingerprints of the images and files it reads, and a
+ * command whose fingerprint has results in a {@link StepCache} is not run again. Its images are
+ * mapped from the cache, its Haar coefficients restored and its messages shown as if it had run.
+ * A {@code save} whose image is unchanged and whose file has not been touched since is skipped the
+ * same way.
+ *
+ * <p>An image or file written by an earlier command of the same run takes its fingerprint from
+ * that command, so changing one line of a script only runs that line and the lines that depend on
+ * it. Anything else a command reads is fingerprinted when the command starts: an image by the hash
+ * of its pixels, and a file by its size and modification time. Commands whose access is not known,
+ * and commands that show an error, are always run and never stored.
+ */
+class IncrementalBuild {
+
+  private static final String VERSION = "1";
+
+  private final StepCache cache;
+  private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+  private final AtomicInteger skipped = new AtomicInteger();
+
+  /**
+   * Constructs an incremental build keeping its results in the given cache.
+   *
+   * @param cache The cache of the results of commands.
+   */
+  IncrementalBuild(StepCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Wraps the commands of a script so that they are skipped when their results are cached.
+   *
+   * @param steps The steps of the script, in order.
+   * @return The steps, running through the cache.
+   */
+  List<ScriptPlan.Step> wrap(List<ScriptPlan.Step> steps) {
+    List<ScriptPlan.Step> wrapped = new ArrayList<>();
+    for (ScriptPlan.Step step : steps) {
+      ImageAccess access = step.getAccess();
+      wrapped.add(step.withCommand(access == null ? new BarrierCommand(step.getCommand())
+          : new CachedCommand(step.getCommand(), access)));
+    }
+    return wrapped;
+  }
+
+  /**
+   * Gets the command a wrapped command runs.
+   *
+   * @param command A command, wrapped by {@link #wrap} or not.
+   * @return The command it runs.
+   */
+  static ImageCommand unwrap(ImageCommand command) {
+    if (command instanceof CachedCommand) {
+      return ((CachedCommand) command).command;
+    }
+    return command instanceof BarrierCommand ? ((BarrierCommand) command).command : command;
+  }
+
+  /**
+   * Gets the number of commands skipped so far because their results were cached.
+   *
+   * @return The number of commands skipped.
+   */
+  int getSkipped() {
+    return skipped.get();
+  }
+
+  /**
+   * Computes the fingerprint of a command from its arguments and the current fingerprints of
+   * what it reads.
+   *
+   * @param processor The image processor the command runs on.
+   * @param args      The arguments of the command.
+   * @param access    The access of the command.
+   * @return The fingerprint, as hexadecimal digits.
+   * @throws IOException If a file the command reads cannot be read.
+   */
+  private String fingerprint(ImageProcessor processor, String[] args, ImageAccess access)
+      throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    update(digest, VERSION);
+    update(digest, String.valueOf(args.length));
+    for (String arg : args) {
+      update(digest, arg);
+    }
+    for (String key : access.getReads()) {
+      update(digest, key);
+      update(digest, current(processor, key));
+    }
+    byte[] hash = digest.digest();
+    StringBuilder hex = new StringBuilder();
+    for (int k = 0; k < 20; k++) {
+      hex.append(String.format("%02x", hash[k]));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Gets the fingerprint of an image or file: the fingerprint of the command that wrote it in this
+   * run, or else one taken from its current contents.
+   *
+   * @param processor The image processor holding the images.
+   * @param key       The key of the image or file.
+   * @return The fingerprint.
+   * @throws IOException If the file cannot be read.
+   */
+  private String current(ImageProcessor processor, String key) throws IOException {
+    String fingerprint = fingerprints.get(key);
+    if (fingerprint != null) {
+      return fingerprint;
+    }
+    String imageName = ImageAccess.imageName(key);
+    if (imageName != null) {
+      Image image = processor.getImage(imageName);
+      return image == null ? "missing" : "content " + Long.toHexString(image.contentHash());
+    }
+    String filePath = ImageAccess.filePath(key);
+    if (!Files.exists(Paths.get(filePath))) {
+      return "missing";
+    }
+    BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath),
+        BasicFileAttributes.class);
+    return "file " + attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+  }
+
+  /**
+   * Adds a string to a digest, followed by a separator that no argument contains.
+   *
+   * @param digest The digest.
+   * @param value  The string.
+   */
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /**
+   * Checks that every pixel of an image fits in a byte, so that it can be stored as a raw file
+   * without changing it.
+   *
+   * @param image The image.
+   * @return true if the image can be stored exactly.
+   */
+  private static boolean isStorable(Image image) {
+    if (image.getHeight() == 0 || image.getWidth() == 0) {
+      return false;
+    }
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        for (int value : image.getImage(i, j)) {
+          if (value < 0 || value > 255) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The CachedCommand class runs a command whose access is known through the cache.
+   */
+  private class CachedCommand implements ImageCommand {
+
+    private final ImageCommand command;
+    private final ImageAccess access;
+    private final List<String> imageNames = new ArrayList<>();
+    private final List<String> files = new ArrayList<>();
+
+    /**
+     * Constructs a cached command.
+     *
+     * @param command The command to run when its results are not cached.
+     * @param access  The access of the command.
+     */
+    CachedCommand(ImageCommand command, ImageAccess access) {
+      this.command = command;
+      this.access = access;
+      for (String key : access.getWrites()) {
+        if (ImageAccess.imageName(key) != null) {
+          imageNames.add(ImageAccess.imageName(key));
+        } else {
+          files.add(ImageAccess.filePath(key));
+        }
+      }
+    }
+
+    /**
+     * Restores the results of the command from the cache, or runs it and stores its results.
+     * Either way, what it writes is given the fingerprint of the command, so that the commands
+     * reading it are fingerprinted by this one.
+     *
+     * @param processor The {@link ImageProcessor} to perform image processing operations.
+     * @param viewer    The {@link ImageViewer} to display information or images.
+     * @param args      The arguments passed to the command.
+     * @throws IOException If an I/O error occurs during image processing.
+     */
+    @Override
+    public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+        throws IOException {
+      String fingerprint = fingerprint(processor, args, access);
+      StepCache.Entry entry;
+      try {
+        entry = cache.get(fingerprint);
+      } catch (IOException | RuntimeException e) {
+        entry = null;
+      }
+      if (entry != null && entry.getImages().size() == imageNames.size()) {
+        for (int k = 0; k < imageNames.size(); k++) {
+          processor.addImage(imageNames.get(k), entry.getImages().get(k));
+          if (entry.getCoefficients().get(k) != null) {
+            processor.addCoefficients(imageNames.get(k), entry.getCoefficients().get(k));
+          }
+        }
+        for (int k = 0; k < entry.getMessages().size(); k++) {
+          if (entry.getErrors().get(k)) {
+            viewer.showErrorMessage(entry.getMessages().get(k));
+          } else {
+            viewer.showString(entry.getMessages().get(k));
+          }
+        }
+        skipped.incrementAndGet();
+      } else {
+        run(processor, viewer, args, fingerprint);
+      }
+      int k = 0;
+      for (String key : access.getWrites()) {
+        fingerprints.put(key, fingerprint + "/" + k++);
+      }
+    }
+
+    /**
+     * Runs the command and stores its results, unless it showed an error or produced an image
+     * that cannot be stored exactly. Failing to store the results does not fail the command.
+     *
+     * @param processor   The image processor to run the command on.
+     * @param viewer      The viewer to show the output of the command in.
+     * @param args        The arguments of the command.
+     * @param fingerprint The fingerprint of the command.
+     * @throws IOException If the command fails with an I/O error.
+     */
+    private void run(ImageProcessor processor, ImageViewer viewer, String[] args,
+                     String fingerprint) throws IOException {
+      RecordingViewer output = new RecordingViewer();
+      try {
+        command.execute(processor, output, args);
+      } finally {
+        output.replay(viewer);
+      }
+      if (output.hasErrors()) {
+        return;
+      }
+      List<Image> images = new ArrayList<>();
+      List<HaarCoefficients> coefficients = new ArrayList<>();
+      for (String imageName : imageNames) {
+        Image image = processor.getImage(imageName);
+        if (image == null || !isStorable(image)) {
+          return;
+        }
+        images.add(image);
+        coefficients.add(processor.getCoefficients(imageName));
+      }
+      try {
+        cache.put(fingerprint, new StepCache.Entry(images, coefficients, files,
+            output.getMessages(), output.getErrors()));
+      } catch (IOException e) {
+        // The results are only kept to save time later.
+      }
+    }
+  }
+
+  /**
+   * The BarrierCommand class runs a command whose access is not known. Since it may have changed
+   * any image or file, the fingerprints of the commands before it are forgotten, and the commands
+   * after it are fingerprinted by what they read.
+   */
+  private class BarrierCommand implements ImageCommand {
+
+    private final ImageCommand command;
+
+    /**
+     * Constructs a barrier command.
+     *
+     * @param command The command to run.
+     */
+    BarrierCommand(ImageCommand command) {
+      this.command = command;
+    }
+
+    /**
+     * Runs the command and forgets the fingerprints of the commands before it.
+     *
+     * @param processor The {@link ImageProcessor} to perform image processing operations.
+     * @param viewer    The {@link ImageViewer} to display information or images.
+     * @param args      The arguments passed to the command.
+     * @throws IOException If an I/O error occurs during image processing.
+     */
+    @Override
+    public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+        throws IOException {
+      try {
+        command.execute(processor, viewer, args);
+      } finally {
+        fingerprints.clear();
+      }
+    }
+  }
+}
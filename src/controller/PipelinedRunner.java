@@ -0,0 +1,313 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import controller.commands.ImageCommand;
+import controller.commands.LoadImageCommand;
+import controller.commands.SaveImageCommand;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.HaarCoefficients;
+import model.Image;
+import model.ImageOperations;
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The PipelinedRunner class runs the commands of a script one after another, like a plain run,
+ * but overlaps reading and writing files with the other commands. Upcoming {@code load} commands
+ * are run ahead of time on a small pool of I/O threads, into images of their own, and their images
+ * are only added when the script reaches them. A {@code save} runs on the same pool on the image
+ * it is given when the script reaches it; since operations never change an image once it is
+ * stored but store a new one, the image cannot change while it is written, even if its name is
+ * reused.
+ *
+ * <p>A command waits for the saves still writing a file it reads or writes, and a command whose
+ * access is not known waits for every save. A load is only run ahead if no command before it
+ * writes its file, and never before a command whose access is not known. The output of every
+ * command is shown in the order of the script, and the run ends when every save has finished.
+ */
+class PipelinedRunner {
+
+  private static final int IO_THREADS = 2;
+  private static final int PREFETCH_LIMIT = 2;
+
+  private final ImageProcessor processor;
+  private final ImageViewer viewer;
+  private final List<RecordingViewer> outputs = new ArrayList<>();
+  private final List<Future<?>> pending = new ArrayList<>();
+  private int shown;
+
+  /**
+   * Constructs a pipelined runner.
+   *
+   * @param processor The image processor to run the commands on.
+   * @param viewer    The viewer to show the output of the commands in.
+   */
+  PipelinedRunner(ImageProcessor processor, ImageViewer viewer) {
+    this.processor = processor;
+    this.viewer = viewer;
+  }
+
+  /**
+   * Runs the commands, reading files ahead and writing them behind, and waits for every save to
+   * finish. If a command fails, the saves started before it still finish and the output of the
+   * commands up to it is shown before the failure is thrown.
+   *
+   * @param steps The steps of the script, in order.
+   * @throws IOException If a command fails with an I/O error.
+   */
+  void run(List<ScriptPlan.Step> steps) throws IOException {
+    boolean[] prefetchable = prefetchable(steps);
+    Map<Integer, Future<Prefetch>> prefetched = new HashMap<>();
+    Map<String, Future<?>> writing = new HashMap<>();
+    ExecutorService io = Executors.newFixedThreadPool(IO_THREADS);
+    int next = 0;
+    try {
+      for (int k = 0; k < steps.size(); k++) {
+        ScriptPlan.Step step = steps.get(k);
+        ImageAccess access = step.getAccess();
+        next = Math.max(next, k + 1);
+        while (access != null && next < steps.size() && prefetched.size() < PREFETCH_LIMIT
+            && steps.get(next).getAccess() != null) {
+          if (prefetchable[next]) {
+            ScriptPlan.Step load = steps.get(next);
+            prefetched.put(next, io.submit(() -> prefetch(load)));
+          }
+          next++;
+        }
+
+        RecordingViewer output = new RecordingViewer();
+        output.showString(step.getLine());
+        outputs.add(output);
+        Future<?> save = null;
+        if (access == null) {
+          for (Future<?> future : pending) {
+            await(future);
+          }
+          writing.clear();
+          step.execute(processor, output);
+        } else {
+          Set<String> keys = new HashSet<>(access.getReads());
+          keys.addAll(access.getWrites());
+          for (String key : keys) {
+            Future<?> future = writing.remove(key);
+            if (future != null) {
+              await(future);
+            }
+          }
+          Future<Prefetch> load = prefetched.remove(k);
+          if (load != null) {
+            await(load).addTo(processor, output);
+          } else if (commandOf(step) instanceof SaveImageCommand) {
+            ImageProcessor snapshot = snapshot(access);
+            if (snapshot == null) {
+              step.execute(processor, output);
+            } else {
+              save = io.submit(() -> {
+                step.execute(snapshot, output);
+                return null;
+              });
+              for (String key : access.getWrites()) {
+                writing.put(key, save);
+              }
+            }
+          } else {
+            step.execute(processor, output);
+          }
+        }
+        pending.add(save);
+        show();
+      }
+      for (Future<?> future : pending) {
+        await(future);
+      }
+    } finally {
+      for (Future<Prefetch> load : prefetched.values()) {
+        load.cancel(true);
+      }
+      for (Future<?> future : pending) {
+        try {
+          await(future);
+        } catch (IOException | RuntimeException e) {
+          // The first failure is the one thrown.
+        }
+      }
+      io.shutdown();
+      while (shown < outputs.size()) {
+        outputs.get(shown++).replay(viewer);
+      }
+    }
+  }
+
+  /**
+   * Finds the loads that can run ahead of time: those that read a file no command before them
+   * writes.
+   *
+   * @param steps The steps of the script, in order.
+   * @return For every step, whether it is a load that can run ahead.
+   */
+  private static boolean[] prefetchable(List<ScriptPlan.Step> steps) {
+    boolean[] prefetchable = new boolean[steps.size()];
+    Set<String> written = new HashSet<>();
+    for (int k = 0; k < steps.size(); k++) {
+      ImageAccess access = steps.get(k).getAccess();
+      if (access == null) {
+        continue;
+      }
+      prefetchable[k] = commandOf(steps.get(k)) instanceof LoadImageCommand
+          && access.getReads().stream().noneMatch(written::contains);
+      written.addAll(access.getWrites());
+    }
+    return prefetchable;
+  }
+
+  /**
+   * Gets the command a step runs, without the wrappers that skip it when its results are cached,
+   * monitor it and wait for its memory.
+   *
+   * @param step The step.
+   * @return The command of the step.
+   */
+  static ImageCommand commandOf(ScriptPlan.Step step) {
+    return AdmissionController.unwrap(CommandMonitor.unwrap(
+        IncrementalBuild.unwrap(step.getCommand())));
+  }
+
+  /**
+   * Runs a load into images of its own.
+   *
+   * @param load The load step.
+   * @return The images and output of the load.
+   * @throws IOException If the load fails with an I/O error.
+   */
+  private static Prefetch prefetch(ScriptPlan.Step load) throws IOException {
+    ImageOperations images = ImageOperations.isolated();
+    RecordingViewer output = new RecordingViewer();
+    load.execute(images, output);
+    return new Prefetch(images, load.getAccess(), output);
+  }
+
+  /**
+   * Registers the images a save reads, with their Haar coefficients, in images of its own. Only
+   * the references are copied, not the pixels: the snapshot holds the images the save is given
+   * only because operations never change an image once it is registered, but register a new one
+   * under the name. An operation changing a registered image in place would change the snapshot
+   * while it is written.
+   *
+   * @param access The access of the save.
+   * @return The copied images, or null if one of them does not exist.
+   */
+  private ImageProcessor snapshot(ImageAccess access) {
+    ImageOperations snapshot = ImageOperations.isolated();
+    for (String key : access.getReads()) {
+      String imageName = ImageAccess.imageName(key);
+      if (imageName != null) {
+        Image image = processor.getImage(imageName);
+        if (image == null) {
+          return null;
+        }
+        snapshot.addImage(imageName, image);
+        HaarCoefficients coefficients = processor.getCoefficients(imageName);
+        if (coefficients != null) {
+          snapshot.addCoefficients(imageName, coefficients);
+        }
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Shows the output of the commands that have finished, in order, up to the first that has
+   * not.
+   */
+  private void show() {
+    while (shown < pending.size()
+        && (pending.get(shown) == null || pending.get(shown).isDone())) {
+      outputs.get(shown++).replay(viewer);
+    }
+  }
+
+  /**
+   * Waits for a command run on the I/O threads, throwing its failure as its own.
+   *
+   * @param future The command, or null for a command that was not.
+   * @param <T>    The type of the result of the command.
+   * @return The result of the command.
+   * @throws IOException If the command failed with an I/O error.
+   */
+  private static <T> T await(Future<T> future) throws IOException {
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a file.", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * The images and output of a load run ahead of time.
+   */
+  private static class Prefetch {
+
+    private final ImageProcessor images;
+    private final ImageAccess access;
+    private final RecordingViewer output;
+
+    /**
+     * Constructs the results of a load.
+     *
+     * @param images The images the load added.
+     * @param access The access of the load.
+     * @param output The output of the load.
+     */
+    Prefetch(ImageProcessor images, ImageAccess access, RecordingViewer output) {
+      this.images = images;
+      this.access = access;
+      this.output = output;
+    }
+
+    /**
+     * Adds the images of the load, with their Haar coefficients, to an image processor, and
+     * shows the output of the load.
+     *
+     * @param processor The image processor to add the images to.
+     * @param viewer    The viewer to show the output in.
+     */
+    void addTo(ImageProcessor processor, ImageViewer viewer) {
+      for (String key : access.getWrites()) {
+        String imageName = ImageAccess.imageName(key);
+        Image image = imageName == null ? null : images.getImage(imageName);
+        if (image != null) {
+          processor.addImage(imageName, image);
+          HaarCoefficients coefficients = images.getCoefficients(imageName);
+          if (coefficients != null) {
+            processor.addCoefficients(imageName, coefficients);
+          }
+        }
+      }
+      output.replay(viewer);
+    }
+  }
+}
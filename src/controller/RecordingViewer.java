@@ -0,0 +1,87 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import view.ImageViewer;
+
+/**
+ * The RecordingViewer class keeps the messages shown by a command, so that they can be shown
+ * later, in order, in another viewer.
+ */
+class RecordingViewer extends ImageViewer {
+
+  private final List<String> messages = new ArrayList<>();
+  private final List<Boolean> errors = new ArrayList<>();
+
+  /**
+   * Constructs an empty RecordingViewer.
+   */
+  RecordingViewer() {
+    super(System.out);
+  }
+
+  /**
+   * Records a message.
+   *
+   * @param s The message.
+   */
+  @Override
+  public void showString(String s) {
+    messages.add(s);
+    errors.add(false);
+  }
+
+  /**
+   * Records an error message.
+   *
+   * @param errorMessage The error message.
+   */
+  @Override
+  public void showErrorMessage(String errorMessage) {
+    messages.add(errorMessage);
+    errors.add(true);
+  }
+
+  /**
+   * Gets the recorded messages.
+   *
+   * @return The messages, in the order they were recorded.
+   */
+  List<String> getMessages() {
+    return Collections.unmodifiableList(messages);
+  }
+
+  /**
+   * Gets which of the recorded messages are error messages.
+   *
+   * @return For every message, in order, whether it is an error message.
+   */
+  List<Boolean> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * Checks whether an error message was recorded.
+   *
+   * @return true if any of the recorded messages is an error message.
+   */
+  boolean hasErrors() {
+    return errors.contains(true);
+  }
+
+  /**
+   * Shows the recorded messages in another viewer, in the order they were recorded.
+   *
+   * @param viewer The viewer to show the messages in.
+   */
+  void replay(ImageViewer viewer) {
+    for (int k = 0; k < messages.size(); k++) {
+      if (errors.get(k)) {
+        viewer.showErrorMessage(messages.get(k));
+      } else {
+        viewer.showString(messages.get(k));
+      }
+    }
+  }
+}
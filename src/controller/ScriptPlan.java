@@ -0,0 +1,312 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import controller.commands.ImageCommand;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The ScriptPlan class is a script compiled before it is run: every line is split once into the
+ * command it names and its arguments, the arguments are parsed and checked, binding every
+ * command to them so that it does not parse them again when it runs, and the images and files the
+ * script needs from outside are collected. All the errors of a script are reported, with their
+ * lines, before any of its commands is run, so that a mistake at the end of a long script is found
+ * without running the rest of it first.
+ *
+ * <p>A plan records the size and modification time of its script file, so that it can be kept and
+ * run again, on other images, for as long as the script does not change.
+ */
+public class ScriptPlan {
+
+  private final Path source;
+  private final long size;
+  private final long modified;
+  private final List<Step> steps = new ArrayList<>();
+  private final List<String> errors = new ArrayList<>();
+  private final Map<String, Integer> inputs = new LinkedHashMap<>();
+
+  /**
+   * Compiles the lines of a script.
+   *
+   * @param source     The path of the script file, or null if it is not read from a file.
+   * @param size       The size of the script file when it was read.
+   * @param modified   The modification time of the script file when it was read.
+   * @param lines      The lines of the script, comments included.
+   * @param commandMap The commands, by name.
+   */
+  private ScriptPlan(Path source, long size, long modified, List<String> lines,
+                     Map<String, ImageCommand> commandMap) {
+    this.source = source;
+    this.size = size;
+    this.modified = modified;
+    Set<String> written = new HashSet<>();
+    boolean accessKnown = true;
+    for (int k = 0; k < lines.size(); k++) {
+      String line = lines.get(k);
+      if (line.startsWith("#") || line.isBlank()) {
+        continue;
+      }
+      int lineNumber = k + 1;
+      String[] args = line.split(" ");
+      ImageCommand command = commandMap.get(args[0].toLowerCase());
+      if (command == null) {
+        errors.add("Line " + lineNumber + ": Unknown command: " + args[0].toLowerCase());
+        continue;
+      }
+      ImageCommand bound;
+      ImageAccess access;
+      try {
+        bound = command.bind(args);
+        access = command.access(args);
+      } catch (IllegalArgumentException e) {
+        errors.add("Line " + lineNumber + ": " + e.getMessage());
+        continue;
+      } catch (RuntimeException e) {
+        errors.add("Line " + lineNumber + ": Invalid arguments for " + args[0].toLowerCase()
+            + ".");
+        continue;
+      }
+      if (access == null) {
+        accessKnown = false;
+      } else if (accessKnown) {
+        for (String key : access.getReads()) {
+          if (!written.contains(key)) {
+            inputs.putIfAbsent(key, lineNumber);
+          }
+        }
+        written.addAll(access.getWrites());
+      }
+      steps.add(new Step(line, bound, args, access));
+    }
+  }
+
+  /**
+   * Reads and compiles a script file.
+   *
+   * @param scriptFilePath The path of the script file.
+   * @param commandMap     The commands, by name.
+   * @return The compiled script.
+   * @throws IOException If the script file cannot be read.
+   */
+  static ScriptPlan compile(String scriptFilePath, Map<String, ImageCommand> commandMap)
+      throws IOException {
+    try (BufferedReader reader = new BufferedReader(new FileReader(scriptFilePath))) {
+      Path source = Paths.get(scriptFilePath);
+      BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+      List<String> lines = new ArrayList<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+      return new ScriptPlan(source, attributes.size(),
+          attributes.lastModifiedTime().toMillis(), lines, commandMap);
+    }
+  }
+
+  /**
+   * Compiles the lines of a script that is not read from a file.
+   *
+   * @param lines      The lines of the script, comments included.
+   * @param commandMap The commands, by name.
+   * @return The compiled script.
+   */
+  static ScriptPlan compile(List<String> lines, Map<String, ImageCommand> commandMap) {
+    return new ScriptPlan(null, -1, -1, lines, commandMap);
+  }
+
+  /**
+   * Checks whether the script file is unchanged since it was compiled.
+   *
+   * @return true if the script file has the size and modification time it had when compiled,
+   *         and false for a script not read from a file.
+   */
+  public boolean isCurrent() {
+    if (source == null) {
+      return false;
+    }
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+      return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the errors found while compiling the script.
+   *
+   * @return The errors, each starting with its line, in the order of the script.
+   */
+  public List<String> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * Gets the commands of the script.
+   *
+   * @return The steps of the script, in order, without the lines that have errors.
+   */
+  List<Step> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * Gets the commands of the script whose results are used, leaving out those that only compute
+   * images that are never saved, compared, materialized or read by another command that is
+   * kept. Commands that write files or no images at all are always kept, and so is every command
+   * before a command whose access is not known, since it may read anything.
+   *
+   * @return The steps of the script that are needed, in order.
+   */
+  List<Step> getLiveSteps() {
+    List<Step> live = new ArrayList<>();
+    Set<String> needed = new HashSet<>();
+    boolean keepAll = false;
+    for (int k = steps.size() - 1; k >= 0; k--) {
+      Step step = steps.get(k);
+      ImageAccess access = step.getAccess();
+      if (access == null) {
+        keepAll = true;
+      } else if (!keepAll && !isSink(access)
+          && access.getWrites().stream().noneMatch(needed::contains)) {
+        continue;
+      } else {
+        needed.removeAll(access.getWrites());
+        needed.addAll(access.getReads());
+      }
+      live.add(step);
+    }
+    Collections.reverse(live);
+    return live;
+  }
+
+  /**
+   * Checks whether a command has an effect beyond the images it writes: it writes a file, or
+   * writes no image at all and only shows its results.
+   *
+   * @param access The access of the command.
+   * @return true if the command must run even when no image it writes is used.
+   */
+  private static boolean isSink(ImageAccess access) {
+    return access.getWrites().stream().allMatch(key -> ImageAccess.imageName(key) == null);
+  }
+
+  /**
+   * Checks that the script can be run: that it has no errors, and that the images it reads
+   * before writing them are loaded and the files it reads before writing them exist. Images and
+   * files used after a command whose access is not known are not checked. Every problem is shown
+   * in the viewer.
+   *
+   * @param processor The image processor the script is to run on.
+   * @param viewer    The viewer to show the problems in.
+   * @return true if the script can be run.
+   */
+  boolean check(ImageProcessor processor, ImageViewer viewer) {
+    List<String> problems = new ArrayList<>(errors);
+    for (Map.Entry<String, Integer> input : inputs.entrySet()) {
+      String imageName = ImageAccess.imageName(input.getKey());
+      String filePath = ImageAccess.filePath(input.getKey());
+      if (imageName != null && processor.getImage(imageName) == null) {
+        problems.add("Line " + input.getValue() + ": Image " + imageName + " not found.");
+      } else if (filePath != null && !Files.exists(Paths.get(filePath))) {
+        problems.add("Line " + input.getValue() + ": File " + filePath + " not found!");
+      }
+    }
+    for (String problem : problems) {
+      viewer.showErrorMessage(problem);
+    }
+    if (!problems.isEmpty()) {
+      viewer.showErrorMessage("The script was not run.");
+    }
+    return problems.isEmpty();
+  }
+
+  /**
+   * A command of the script, with its arguments already split, checked and bound to it.
+   */
+  static class Step {
+
+    private final String line;
+    private final ImageCommand command;
+    private final String[] args;
+    private final ImageAccess access;
+
+    /**
+     * Constructs a step.
+     *
+     * @param line    The text of the line.
+     * @param command The command the line names, bound to its arguments.
+     * @param args    The arguments of the command, with its name at args[0].
+     * @param access  The access of the command, or null if it is not known.
+     */
+    Step(String line, ImageCommand command, String[] args, ImageAccess access) {
+      this.line = line;
+      this.command = command;
+      this.args = args;
+      this.access = access;
+    }
+
+    /**
+     * Gets the text of the line of the command.
+     *
+     * @return The line.
+     */
+    String getLine() {
+      return line;
+    }
+
+    /**
+     * Gets the command the line names.
+     *
+     * @return The command.
+     */
+    ImageCommand getCommand() {
+      return command;
+    }
+
+    /**
+     * Returns this step running another command, such as one wrapping the command of the step,
+     * with the same line, arguments and access.
+     *
+     * @param other The command to run instead.
+     * @return The new step.
+     */
+    Step withCommand(ImageCommand other) {
+      return new Step(line, other, args, access);
+    }
+
+    /**
+     * Gets what the command reads and writes.
+     *
+     * @return The access of the command, or null if it is not known.
+     */
+    ImageAccess getAccess() {
+      return access;
+    }
+
+    /**
+     * Executes the command on a copy of its arguments, so that the step can be run again.
+     *
+     * @param processor The image processor to run the command on.
+     * @param viewer    The viewer to show the output of the command in.
+     * @throws IOException If the command fails with an I/O error.
+     */
+    void execute(ImageProcessor processor, ImageViewer viewer) throws IOException {
+      command.execute(processor, viewer, args.clone());
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package controller;
+
+import controller.commands.ImageAccess;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The ScriptScheduler class runs the commands of a script on a bounded pool of threads, running
+ * commands that do not depend on each other at the same time.
+ *
+ * <p>The steps of a compiled script are first arranged in a graph. A step depends on the last earlier step
+ * that writes an image or file it reads (read after write), on the last earlier step that writes
+ * an image or file it writes (write after write), and on every step since then that reads an image
+ * or file it writes (write after read), so that reused names keep their meaning. Steps whose
+ * access is not known depend on every earlier step, and every later step depends on them. Steps
+ * that write a file also depend on every earlier step, so that no file is written once an earlier
+ * step has failed.
+ *
+ * <p>The output of every step is recorded while it runs and shown in the order of the script once
+ * all the steps before it are done, so the output is the same as when the script is run one line
+ * at a time. If a step fails, the steps after it are not started and the failure is reported after
+ * the output of the steps before it, as it would be when running one line at a time. Later steps
+ * that do not depend on the failed step and only change images may already be running; they are
+ * left to finish, their images are kept and their output is not shown.
+ */
+class ScriptScheduler {
+
+  private final ImageProcessor processor;
+  private final ImageViewer viewer;
+  private final int threads;
+
+  /**
+   * Constructs a ScriptScheduler.
+   *
+   * @param processor The image processor the commands operate on.
+   * @param viewer    The viewer the output of the commands is shown in.
+   * @param threads   The number of threads to run commands on, at least 1.
+   */
+  ScriptScheduler(ImageProcessor processor, ImageViewer viewer, int threads) {
+    this.processor = processor;
+    this.viewer = viewer;
+    this.threads = threads;
+  }
+
+  /**
+   * Runs the steps of a compiled script.
+   *
+   * @param planned The steps of the script, in order.
+   * @throws IOException If a command fails with an I/O error; the commands after it are not run.
+   */
+  void run(List<ScriptPlan.Step> planned) throws IOException {
+    List<Step> steps = arrange(planned);
+    AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      for (Step step : steps) {
+        CompletableFuture<?>[] dependencies = step.dependencies.stream()
+            .map(futures::get).toArray(CompletableFuture[]::new);
+        futures.add(CompletableFuture.allOf(dependencies)
+            .thenRunAsync(() -> step.run(firstFailure), pool));
+      }
+      for (int k = 0; k < steps.size(); k++) {
+        try {
+          futures.get(k).join();
+        } catch (CompletionException e) {
+          steps.get(k).output.replay(viewer);
+          Throwable cause = e.getCause();
+          if (cause instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) cause).getCause();
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw e;
+        }
+        steps.get(k).output.replay(viewer);
+      }
+    } finally {
+      firstFailure.accumulateAndGet(-1, Math::min);
+      pool.shutdown();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Finds the dependencies between the steps of a script.
+   *
+   * @param planned The steps of the script, in order.
+   * @return The steps with their dependencies, in the order of the script.
+   */
+  private List<Step> arrange(List<ScriptPlan.Step> planned) {
+    List<Step> steps = new ArrayList<>();
+    Map<String, Integer> lastWriters = new HashMap<>();
+    Map<String, List<Integer>> readers = new HashMap<>();
+    int barrier = -1;
+    int lastFileWriter = -1;
+    for (int k = 0; k < planned.size(); k++) {
+      Step step = new Step(k, planned.get(k));
+      ImageAccess access = step.planned.getAccess();
+      if (access == null) {
+        for (int previous = barrier + 1; previous < k; previous++) {
+          step.dependencies.add(previous);
+        }
+        if (barrier >= 0) {
+          step.dependencies.add(barrier);
+        }
+        barrier = k;
+        lastWriters.clear();
+        readers.clear();
+      } else {
+        if (barrier >= 0) {
+          step.dependencies.add(barrier);
+        }
+        for (String key : access.getReads()) {
+          if (lastWriters.containsKey(key)) {
+            step.dependencies.add(lastWriters.get(key));
+          }
+        }
+        for (String key : access.getWrites()) {
+          if (lastWriters.containsKey(key)) {
+            step.dependencies.add(lastWriters.get(key));
+          }
+          step.dependencies.addAll(readers.getOrDefault(key, List.of()));
+        }
+        if (access.getWrites().stream().anyMatch(key -> ImageAccess.filePath(key) != null)) {
+          for (int previous = Math.max(0, Math.max(barrier, lastFileWriter)); previous < k;
+              previous++) {
+            step.dependencies.add(previous);
+          }
+          lastFileWriter = k;
+        }
+        step.dependencies.remove(k);
+        for (String key : access.getReads()) {
+          readers.computeIfAbsent(key, name -> new ArrayList<>()).add(k);
+        }
+        for (String key : access.getWrites()) {
+          lastWriters.put(key, k);
+          readers.remove(key);
+        }
+      }
+      steps.add(step);
+    }
+    return steps;
+  }
+
+  /**
+   * A command of the script, with the steps it depends on and the output it produced.
+   */
+  private class Step {
+
+    private final int index;
+    private final ScriptPlan.Step planned;
+    private final TreeSet<Integer> dependencies = new TreeSet<>();
+    private final RecordingViewer output = new RecordingViewer();
+
+    /**
+     * Constructs a step.
+     *
+     * @param index   The position of the command in the script.
+     * @param planned The compiled command.
+     */
+    Step(int index, ScriptPlan.Step planned) {
+      this.index = index;
+      this.planned = planned;
+    }
+
+    /**
+     * Runs the command of the step, recording its output, unless an earlier step failed.
+     *
+     * @param firstFailure The position of the first step that failed so far.
+     */
+    void run(AtomicInteger firstFailure) {
+      if (firstFailure.get() < index) {
+        return;
+      }
+      output.showString(planned.getLine());
+      try {
+        planned.execute(processor, output);
+      } catch (IOException e) {
+        firstFailure.accumulateAndGet(index, Math::min);
+        throw new UncheckedIOException(e);
+      } catch (RuntimeException | Error e) {
+        firstFailure.accumulateAndGet(index, Math::min);
+        throw e;
+      }
+    }
+  }
+}
@@ -27,4 +27,26 @@ public class BlueComponentImageCommand implements ImageCommand {
     processor.createColorComponent(args[1], args[2], 2);
     viewer.showString("Blue Component of Image Created.");
   }
+
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 3 ? null : ImageAccess.transform(args[1], args[2]);
+  }
+
+  /**
+   * Checks that the command is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return CommandArguments.count(args, 3, "blue-component <sourceImageName> <destImageName>");
+  }
 }
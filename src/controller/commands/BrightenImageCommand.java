@@ -9,7 +9,23 @@ import view.ImageViewer;
  * The {@code BrightenImageCommand} class represents a command to adjust the brightness of an image.
  * It uses {@link ImageProcessor}. It implements the {@link ImageCommand} interface.
  */
-public class BrightenImageCommand implements ImageCommand {
+public class BrightenImageCommand extends ParsedCommand<Integer> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public BrightenImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param increment The brightness change.
+   */
+  private BrightenImageCommand(Integer increment) {
+    super(increment);
+  }
 
   /**
    * Executes the command to adjust the brightness of an image.
@@ -20,24 +36,54 @@ public class BrightenImageCommand implements ImageCommand {
    *                  args[1] - the brightness adjustment value (an integer)
    *                  args[2] - the source image name
    *                  args[3] - the destination image name
-   * @throws IOException           If an I/O error occurs during image processing.
-   * @throws NumberFormatException If the brightness adjustment value is not a valid integer.
+   * @param increment The brightness change.
+   * @throws IOException If an I/O error occurs during image processing.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
-          throws IOException, NumberFormatException {
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      Integer increment) throws IOException {
+    processor.adjustBrightness(increment, args[2], args[3]);
+    viewer.showString("Image Brightened by " + args[1]);
+  }
+
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 4 ? null : ImageAccess.transform(args[2], args[3]);
+  }
+
+  /**
+   * Parses the brightness change of the command, and checks that it is given the names of its
+   * images.
+   *
+   * @param args The arguments passed to the command.
+   * @return The brightness change.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Integer parse(String[] args) {
+    CommandArguments.require(CommandArguments.count(args, 4,
+        "brighten <increment> <sourceImageName> <destImageName>"));
     try {
-      int brightnessChange = Integer.parseInt(args[1]);
-
-      if (brightnessChange != 0) {
-        processor.adjustBrightness(brightnessChange, args[2], args[3]);
-        viewer.showString("Image Brightened by " + args[1]);
-      } else {
-        processor.adjustBrightness(brightnessChange, args[2], args[3]);
-        viewer.showString("Image Brightened by " + args[1]);
-      }
+      return Integer.parseInt(args[1]);
     } catch (NumberFormatException e) {
-      viewer.showErrorMessage("Brightness Change is not entered.");
+      throw new IllegalArgumentException("Brightness Change is not entered.");
     }
   }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param increment The brightness change.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Integer increment) {
+    return new BrightenImageCommand(increment);
+  }
 }
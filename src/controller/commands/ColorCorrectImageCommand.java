@@ -9,7 +9,23 @@ import view.ImageViewer;
  * The {@code ColorCorrectImageCommand} class represents a command to perform color correction.
  * It uses a {@link ImageProcessor}. It implements the {@link ImageCommand} interface.
  */
-public class ColorCorrectImageCommand implements ImageCommand {
+public class ColorCorrectImageCommand extends ParsedCommand<CommandArguments.Split> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public ColorCorrectImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param split The part of the image the command is applied to.
+   */
+  private ColorCorrectImageCommand(CommandArguments.Split split) {
+    super(split);
+  }
 
   /**
    * Executes the command to perform color correction on an image.
@@ -22,27 +38,62 @@ public class ColorCorrectImageCommand implements ImageCommand {
    *                  Additional optional argument (args[3]) to specify the split value.
    *                  The split value should be a non-negative integer.
    *                  If not provided or invalid, default is used.
-   * @throws IOException           If an I/O error occurs during image processing.
-   * @throws NumberFormatException If the split value is not a valid integer.
+   * @param split     The part of the image the command is applied to.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      CommandArguments.Split split) throws IOException {
+    processor.colorCorrectImage(args[1], args[2], split.getMode(), split.getPercentage());
+    viewer.showString(split.isSplit() ? "Image is color corrected with split."
+        : "Image is color corrected.");
+  }
+
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 3 ? null : ImageAccess.transform(args[1], args[2]);
+  }
+
+  /**
+   * Parses the names of the images of the command, and the split value if it is split.
+   *
+   * @param args The arguments passed to the command.
+   * @return The part of the image the command is applied to.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  CommandArguments.Split parse(String[] args) {
+    return CommandArguments.split(args, 3,
+        "color-correct <sourceImageName> <destImageName> [split <percentage>]");
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param split The part of the image the command is applied to.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(CommandArguments.Split split) {
+    return new ColorCorrectImageCommand(split);
+  }
+
+  /**
+   * Estimates the memory of the command: the result, and when the command is split, the whole
+   * filtered image the result is taken from.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
-          throws IOException, NumberFormatException {
-    if (args.length > 3) {
-      try {
-        if (Integer.parseInt(args[(args.length - 1)]) >= 0) {
-          processor.colorCorrectImage(args[1], args[2],
-                  "split", Integer.parseInt(args[(args.length - 1)]));
-          viewer.showString("Image is color corrected with split.");
-        } else {
-          viewer.showErrorMessage("Split value cannot be negative.");
-        }
-      } catch (NumberFormatException e) {
-        viewer.showErrorMessage("Invalid split value. Please provide a valid number.");
-      }
-    } else if (args.length == 3) {
-      processor.colorCorrectImage(args[1], args[2], "no-split", 0);
-      viewer.showString("Image is color corrected.");
-    }
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    return (args.length > 3 ? 2 : 1) * super.estimateMemory(processor, args);
   }
 }
@@ -0,0 +1,208 @@
+package controller.commands;
+
+import model.HaarCoefficients;
+import model.Image;
+import model.ImageProcessor;
+
+/**
+ * The {@code CommandArguments} class holds the argument checks and parsing shared by the commands,
+ * and the estimates of the memory they need.
+ */
+final class CommandArguments {
+
+  private CommandArguments() {
+  }
+
+  /**
+   * Checks that a command has exactly the given number of arguments.
+   *
+   * @param args  The arguments passed to the command, with the command name at args[0].
+   * @param count The number of arguments, the command name included.
+   * @param usage The usage of the command, starting with its name.
+   * @return An error message, or null if the number of arguments is right.
+   */
+  static String count(String[] args, int count, String usage) {
+    return args.length == count ? null : invalid(usage);
+  }
+
+  /**
+   * Fails the parsing of the arguments of a command with the error found by a check, if any.
+   *
+   * @param error An error message, or null if the check passed.
+   * @throws IllegalArgumentException If there is an error, with its message.
+   */
+  static void require(String error) {
+    if (error != null) {
+      throw new IllegalArgumentException(error);
+    }
+  }
+
+  /**
+   * Parses the arguments of a command that may be applied to part of the image only, by ending
+   * it with "split" and the percentage of the width to apply it to.
+   *
+   * @param args  The arguments passed to the command, with the command name at args[0].
+   * @param count The number of arguments without the split, the command name included.
+   * @param usage The usage of the command, starting with its name.
+   * @return The part of the image the command is applied to.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  static Split split(String[] args, int count, String usage) {
+    if (args.length < count) {
+      throw new IllegalArgumentException(invalid(usage));
+    }
+    if (args.length == count) {
+      return Split.NONE;
+    }
+    int percentage;
+    try {
+      percentage = Integer.parseInt(args[args.length - 1]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid split value. Please provide a valid number.");
+    }
+    if (percentage < 0) {
+      throw new IllegalArgumentException("Split value cannot be negative.");
+    }
+    return new Split("split", percentage);
+  }
+
+  /**
+   * Parses a percentage between 0 and 100.
+   *
+   * @param value The argument.
+   * @return The percentage.
+   * @throws IllegalArgumentException If the argument is not a valid percentage.
+   */
+  static double percentage(String value) {
+    double percentage;
+    try {
+      percentage = Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Invalid compression percentage. Please provide a valid number.");
+    }
+    if (percentage < 0 || percentage > 100) {
+      throw new IllegalArgumentException(
+          "The Compression Percentage should be between 0 and 100.");
+    }
+    return percentage;
+  }
+
+  /**
+   * Builds the message of a command used with the wrong arguments.
+   *
+   * @param usage The usage of the command, starting with its name.
+   * @return The error message.
+   */
+  static String invalid(String usage) {
+    return "Invalid '" + usage.split(" ")[0] + "' command. Use " + usage + ".";
+  }
+
+  /**
+   * Gets the estimated size of the largest image a command reads.
+   *
+   * @param processor The image processor holding the images.
+   * @param access    The access of the command, or null if it is not known.
+   * @return The estimated size in bytes, or 0 if the command reads no image that exists.
+   */
+  static long largestImage(ImageProcessor processor, ImageAccess access) {
+    Image image = largestRead(processor, access);
+    return image == null ? 0 : image.estimatedSize();
+  }
+
+  /**
+   * Gets the estimated size of the Haar coefficients of the largest image a command reads.
+   *
+   * @param processor The image processor holding the images.
+   * @param access    The access of the command, or null if it is not known.
+   * @return The estimated size in bytes, or 0 if the command reads no image that exists.
+   */
+  static long coefficientsOf(ImageProcessor processor, ImageAccess access) {
+    Image image = largestRead(processor, access);
+    return image == null ? 0 : HaarCoefficients.estimatedSize(image.getHeight(),
+        image.getWidth());
+  }
+
+  /**
+   * Counts the images a command writes.
+   *
+   * @param access The access of the command, or null if it is not known.
+   * @return The number of images written.
+   */
+  static long imagesWritten(ImageAccess access) {
+    return access == null ? 0
+        : access.getWrites().stream().filter(key -> ImageAccess.imageName(key) != null).count();
+  }
+
+  /**
+   * Finds the largest image a command reads.
+   *
+   * @param processor The image processor holding the images.
+   * @param access    The access of the command, or null if it is not known.
+   * @return The image with the most pixels, or null if the command reads no image that exists.
+   */
+  private static Image largestRead(ImageProcessor processor, ImageAccess access) {
+    Image largest = null;
+    if (access != null) {
+      for (String key : access.getReads()) {
+        String imageName = ImageAccess.imageName(key);
+        Image image = imageName == null ? null : processor.getImage(imageName);
+        if (image != null && (largest == null || (long) image.getHeight() * image.getWidth()
+            > (long) largest.getHeight() * largest.getWidth())) {
+          largest = image;
+        }
+      }
+    }
+    return largest;
+  }
+
+  /**
+   * The part of the width of an image a command is applied to: all of it, or the given
+   * percentage, the rest being copied unchanged.
+   */
+  static final class Split {
+
+    static final Split NONE = new Split("no-split", 0);
+
+    private final String mode;
+    private final int percentage;
+
+    /**
+     * Constructs a split.
+     *
+     * @param mode       "split" to apply the command to part of the image, or "no-split".
+     * @param percentage The percentage of the width the command is applied to.
+     */
+    private Split(String mode, int percentage) {
+      this.mode = mode;
+      this.percentage = percentage;
+    }
+
+    /**
+     * Gets the mode of the split, as the image processor takes it.
+     *
+     * @return "split" or "no-split".
+     */
+    String getMode() {
+      return mode;
+    }
+
+    /**
+     * Gets the percentage of the width the command is applied to.
+     *
+     * @return The percentage, or 0 if the command is applied to the whole image.
+     */
+    int getPercentage() {
+      return percentage;
+    }
+
+    /**
+     * Tells whether the command is applied to part of the image only.
+     *
+     * @return true if the image is split.
+     */
+    boolean isSplit() {
+      return this != NONE;
+    }
+  }
+}
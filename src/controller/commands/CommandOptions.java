@@ -0,0 +1,87 @@
+package controller.commands;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code CommandOptions} class parses the optional {@code -name value...} flags that may
+ * follow a command name, before its regular arguments. Only flags known to the command are
+ * consumed; parsing stops at the first argument that is not one of them.
+ */
+class CommandOptions {
+
+  private final Map<String, String[]> values = new HashMap<>();
+  private final String[] arguments;
+
+  /**
+   * Parses the leading flags of a command.
+   *
+   * @param args  The arguments passed to the command, with the command name at args[0].
+   * @param arity The known flags of the command, mapped to the number of values each one takes.
+   * @throws IllegalArgumentException If a flag is not followed by enough values.
+   */
+  CommandOptions(String[] args, Map<String, Integer> arity) {
+    int index = 1;
+    while (index < args.length && arity.containsKey(args[index].toLowerCase())) {
+      String name = args[index].toLowerCase();
+      int count = arity.get(name);
+      if (index + count >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + name + ".");
+      }
+      values.put(name, Arrays.copyOfRange(args, index + 1, index + 1 + count));
+      index += count + 1;
+    }
+    arguments = new String[args.length - index + 1];
+    arguments[0] = args[0];
+    System.arraycopy(args, index, arguments, 1, args.length - index);
+  }
+
+  /**
+   * Checks whether a flag was given.
+   *
+   * @param name The flag, including its leading dash.
+   * @return true if the flag was given.
+   */
+  boolean has(String name) {
+    return values.containsKey(name);
+  }
+
+  /**
+   * Returns the values of a flag.
+   *
+   * @param name The flag, including its leading dash.
+   * @return The values of the flag, or null if it was not given.
+   */
+  String[] get(String name) {
+    return values.get(name);
+  }
+
+  /**
+   * Returns the values of a flag parsed as integers.
+   *
+   * @param name The flag, including its leading dash.
+   * @return The values of the flag as integers, or null if it was not given.
+   * @throws NumberFormatException If a value is not a valid integer.
+   */
+  int[] getInts(String name) {
+    String[] raw = values.get(name);
+    if (raw == null) {
+      return null;
+    }
+    int[] parsed = new int[raw.length];
+    for (int i = 0; i < raw.length; i++) {
+      parsed[i] = Integer.parseInt(raw[i]);
+    }
+    return parsed;
+  }
+
+  /**
+   * Returns the arguments that follow the flags, with the command name kept at index 0.
+   *
+   * @return The remaining arguments of the command.
+   */
+  String[] arguments() {
+    return arguments;
+  }
+}
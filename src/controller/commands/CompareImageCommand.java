@@ -0,0 +1,71 @@
+package controller.commands;
+
+import java.io.IOException;
+
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The {@code CompareImageCommand} class represents a command to measure how close an image is to
+ * a reference image, as PSNR and SSIM. It is using an {@link ImageProcessor}.
+ * It implements the {@link ImageCommand} interface.
+ */
+public class CompareImageCommand implements ImageCommand {
+
+  /**
+   * Executes the command to compare two images.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command. Expects two arguments:
+   *                  args[1] - the reference image name
+   *                  args[2] - the name of the image to compare with the reference
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+          throws IOException {
+    if (args.length < 3) {
+      viewer.showErrorMessage("Invalid 'compare' command. Use compare <referenceImageName> "
+              + "<imageName>.");
+      return;
+    }
+    for (int i = 1; i < 3; i++) {
+      if (processor.getImage(args[i]) == null) {
+        viewer.showErrorMessage("Image " + args[i] + " not found.");
+        return;
+      }
+    }
+    if (processor.getImage(args[1]).getHeight() != processor.getImage(args[2]).getHeight()
+            || processor.getImage(args[1]).getWidth() != processor.getImage(args[2]).getWidth()) {
+      viewer.showErrorMessage("The images must have the same dimensions.");
+      return;
+    }
+    viewer.showString(String.format("PSNR: %.2f dB",
+            processor.measureQuality("psnr", args[1], args[2])));
+    viewer.showString(String.format("SSIM: %.4f",
+            processor.measureQuality("ssim", args[1], args[2])));
+  }
+
+  /**
+   * Describes the command as reading the two images it compares.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 3 ? null : new ImageAccess().readsImages(args[1], args[2]);
+  }
+
+  /**
+   * Checks that the command is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return CommandArguments.count(args, 3, "compare <referenceImageName> <imageName>");
+  }
+}
@@ -2,6 +2,7 @@ package controller.commands;
 
 import java.io.IOException;
 
+import model.CompressionResult;
 import model.ImageProcessor;
 import view.ImageViewer;
 
@@ -10,7 +11,23 @@ import view.ImageViewer;
  * It is using an {@link ImageProcessor}.
  * It implements the {@link ImageCommand} interface.
  */
-public class CompressImageCommand implements ImageCommand {
+public class CompressImageCommand extends ParsedCommand<CompressImageCommand.Target> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public CompressImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param target The percentage, or the metric and target quality.
+   */
+  private CompressImageCommand(Target target) {
+    super(target);
+  }
 
   /**
    * Executes the command to compress an image.
@@ -21,23 +38,138 @@ public class CompressImageCommand implements ImageCommand {
    *                  args[1] - the compression percentage (a double between 0 and 100)
    *                  args[2] - the source image name
    *                  args[3] - the destination image name
-   * @throws IOException           If an I/O error occurs during image processing.
-   * @throws NumberFormatException If the compression percentage is not a valid double.
+   *                  Alternatively, args[1] may be "psnr" or "ssim" followed by the target
+   *                  quality, the source image name and the destination image name, to compress
+   *                  as much as the target allows.
+   * @param target    The percentage, or the metric and target quality.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      Target target) throws IOException {
+    if (target.metric != null) {
+      compressToQuality(processor, viewer, args, target.metric, target.value);
+      return;
+    }
+    processor.compressImage(target.value, args[2], args[3]);
+    viewer.showString("Successfully Compressed the Image.");
+  }
+
+  /**
+   * Compresses an image as much as possible while meeting a target PSNR or SSIM.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command: the metric, the target quality, the
+   *                  source image name and the destination image name.
+   * @param metric    The metric, "psnr" or "ssim".
+   * @param target    The target quality.
+   */
+  private void compressToQuality(ImageProcessor processor, ImageViewer viewer, String[] args,
+      String metric, double target) {
+    if (processor.getImage(args[3]) == null) {
+      viewer.showErrorMessage("Image " + args[3] + " not found.");
+      return;
+    }
+    CompressionResult result = processor.compressToQuality(metric, target, args[3], args[4]);
+    viewer.showString(String.format("Compression %.2f%%: kept %d of %d coefficients, "
+                    + "%s %.4f", result.getPercentage(), result.getKeptCoefficients(),
+            result.getTotalCoefficients(), metric.toUpperCase(),
+            processor.measureQuality(metric, args[3], args[4])));
+    viewer.showString("Successfully Compressed the Image.");
+  }
+
+  /**
+   * Describes the command as reading the source image and writing the compressed image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
-          throws IOException, NumberFormatException {
-    try {
-      double compressionPercentage = Double.parseDouble(args[1]);
-
-      if (compressionPercentage < 0 || compressionPercentage > 100 || args[1].isBlank()) {
-        viewer.showErrorMessage("The Compression Percentage should be between 0 and 100.");
-      } else {
-        processor.compressImage(compressionPercentage, args[2], args[3]);
-        viewer.showString("Successfully Compressed the Image.");
+  public ImageAccess access(String[] args) {
+    if (args.length > 1 && ("psnr".equalsIgnoreCase(args[1])
+        || "ssim".equalsIgnoreCase(args[1]))) {
+      return args.length < 5 ? null : ImageAccess.transform(args[3], args[4]);
+    }
+    return args.length < 4 ? null : ImageAccess.transform(args[2], args[3]);
+  }
+
+  /**
+   * Parses the percentage of the command, or its metric and target quality, and checks that it
+   * is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return The percentage, or the metric and target quality.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Target parse(String[] args) {
+    if (args.length > 1 && ("psnr".equalsIgnoreCase(args[1])
+        || "ssim".equalsIgnoreCase(args[1]))) {
+      CommandArguments.require(CommandArguments.count(args, 5,
+          "compress <psnr|ssim> <targetQuality> <sourceImageName> <destImageName>"));
+      String metric = args[1].toLowerCase();
+      double quality;
+      try {
+        quality = Double.parseDouble(args[2]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Invalid target quality. Please provide a valid number.");
+      }
+      if ("ssim".equals(metric) && (quality < -1 || quality > 1)) {
+        throw new IllegalArgumentException("The target SSIM should be between -1 and 1.");
       }
-    } catch (NumberFormatException e) {
-      viewer.showErrorMessage("Invalid compression percentage. Please provide a valid number.");
+      return new Target(metric, quality);
+    }
+    CommandArguments.require(CommandArguments.count(args, 4,
+        "compress <percentage> <sourceImageName> <destImageName>"));
+    return new Target(null, CommandArguments.percentage(args[1]));
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param target The percentage, or the metric and target quality.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Target target) {
+    return new CompressImageCommand(target);
+  }
+
+  /**
+   * Estimates the memory of the command: the compressed image, the Haar coefficients of the
+   * source, which are padded to a square whose side is a power of two, the thresholded copy of
+   * the coefficients and the sorted magnitudes the threshold is picked from.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    return super.estimateMemory(processor, args)
+        + 3 * CommandArguments.coefficientsOf(processor, access(args));
+  }
+
+  /**
+   * The compression asked for: a percentage of the coefficients to drop, or a metric and the
+   * quality it should meet.
+   */
+  static final class Target {
+
+    private final String metric;
+    private final double value;
+
+    /**
+     * Constructs the arguments of a compression.
+     *
+     * @param metric The metric, "psnr" or "ssim", or null to compress by a percentage.
+     * @param value  The percentage, or the target quality.
+     */
+    private Target(String metric, double value) {
+      this.metric = metric;
+      this.value = value;
     }
   }
 }
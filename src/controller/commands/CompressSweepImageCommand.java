@@ -0,0 +1,134 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.util.List;
+
+import model.CompressionResult;
+import model.ImageOperations;
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The {@code CompressSweepImageCommand} class represents a command to compress an image at
+ * several compression percentages and report the size and error of each result. It is using an
+ * {@link ImageProcessor}. It implements the {@link ImageCommand} interface.
+ */
+public class CompressSweepImageCommand extends ParsedCommand<double[]> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public CompressSweepImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param percentages The compression percentages.
+   */
+  private CompressSweepImageCommand(double[] percentages) {
+    super(percentages);
+  }
+
+  /**
+   * Executes the command to compress an image at several compression percentages.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command. Expects at least two arguments:
+   *                  args[1] - comma separated compression percentages, each between 0 and 100
+   *                  args[2] - the source image name
+   *                  Additional optional argument (args[3]) to store each compressed image as
+   *                  args[3]-percentage. If not provided, only the measurements are shown.
+   * @param percentages The compression percentages.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      double[] percentages) throws IOException {
+    if (processor.getImage(args[2]) == null) {
+      viewer.showErrorMessage("Image " + args[2] + " not found.");
+      return;
+    }
+
+    String[] values = args[1].split(",");
+    String destImagePrefix = args.length > 3 ? args[3] : null;
+    List<CompressionResult> results
+            = processor.compressSweep(percentages, args[2], destImagePrefix);
+    for (int i = 0; i < results.size(); i++) {
+      CompressionResult result = results.get(i);
+      viewer.showString(String.format("Compression %s%%: kept %d of %d coefficients, "
+                      + "PSNR %.2f dB", values[i], result.getKeptCoefficients(),
+              result.getTotalCoefficients(), result.getPsnr()));
+    }
+    viewer.showString("Compression Sweep Completed.");
+  }
+
+  /**
+   * Describes the command as reading the source image. The names of the images stored with a
+   * prefix depend on the percentages, so the access of the command is then not known.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length == 3 ? new ImageAccess().readsImages(args[2]) : null;
+  }
+
+  /**
+   * Parses the percentages of the command, and checks that it is given the name of its source
+   * image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The compression percentages.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  double[] parse(String[] args) {
+    if (args.length != 3 && args.length != 4) {
+      throw new IllegalArgumentException(CommandArguments.invalid(
+          "compress-sweep <percentage,percentage,...> <sourceImageName> [<destImagePrefix>]"));
+    }
+    String[] values = args[1].split(",");
+    double[] percentages = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      percentages[i] = CommandArguments.percentage(values[i]);
+    }
+    return percentages;
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param percentages The compression percentages.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(double[] percentages) {
+    return new CompressSweepImageCommand(percentages);
+  }
+
+  /**
+   * Estimates the memory of the command: the Haar coefficients of the source and their sorted
+   * magnitudes, and a thresholded copy of the coefficients and the compressed image for every
+   * percentage when they are stored, or for every percentage compressed at the same time when
+   * they are only measured.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    if (args.length < 3) {
+      return 0;
+    }
+    ImageAccess source = new ImageAccess().readsImages(args[2]);
+    int percentages = args[1].split(",").length;
+    int live = args.length > 3 ? percentages : ImageOperations.sweepParallelism(percentages);
+    return (2 + live) * CommandArguments.coefficientsOf(processor, source)
+        + live * CommandArguments.largestImage(processor, source);
+  }
+}
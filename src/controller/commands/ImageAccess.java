@@ -0,0 +1,140 @@
+package controller.commands;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The ImageAccess class describes the named images and the files a command reads and writes. Two
+ * commands whose accesses do not conflict, meaning that neither writes something the other reads
+ * or writes, can run in either order or at the same time with the same result.
+ *
+ * <p>Images and files are both identified by keys: the name of an image, or the absolute path of
+ * a file, each with its own prefix so that they never clash.
+ */
+public class ImageAccess {
+
+  private static final String IMAGE_PREFIX = "image:";
+  private static final String FILE_PREFIX = "file:";
+
+  private final Set<String> reads = new LinkedHashSet<>();
+  private final Set<String> writes = new LinkedHashSet<>();
+
+  /**
+   * Describes a command that reads one image and writes another, possibly the same one.
+   *
+   * @param sourceImageName The name of the image read.
+   * @param destImageName   The name of the image written.
+   * @return The access of the command.
+   */
+  public static ImageAccess transform(String sourceImageName, String destImageName) {
+    return new ImageAccess().readsImages(sourceImageName).writesImages(destImageName);
+  }
+
+  /**
+   * Adds images that the command reads.
+   *
+   * @param imageNames The names of the images.
+   * @return This access.
+   */
+  public ImageAccess readsImages(String... imageNames) {
+    for (String imageName : imageNames) {
+      reads.add(imageKey(imageName));
+    }
+    return this;
+  }
+
+  /**
+   * Adds images that the command writes.
+   *
+   * @param imageNames The names of the images.
+   * @return This access.
+   */
+  public ImageAccess writesImages(String... imageNames) {
+    for (String imageName : imageNames) {
+      writes.add(imageKey(imageName));
+    }
+    return this;
+  }
+
+  /**
+   * Adds a file that the command reads.
+   *
+   * @param filePath The path of the file.
+   * @return This access.
+   */
+  public ImageAccess readsFile(String filePath) {
+    reads.add(fileKey(filePath));
+    return this;
+  }
+
+  /**
+   * Adds a file that the command writes.
+   *
+   * @param filePath The path of the file.
+   * @return This access.
+   */
+  public ImageAccess writesFile(String filePath) {
+    writes.add(fileKey(filePath));
+    return this;
+  }
+
+  /**
+   * Gets the keys of the images and files the command reads.
+   *
+   * @return The keys read, in the order they were added.
+   */
+  public Set<String> getReads() {
+    return Collections.unmodifiableSet(reads);
+  }
+
+  /**
+   * Gets the keys of the images and files the command writes.
+   *
+   * @return The keys written, in the order they were added.
+   */
+  public Set<String> getWrites() {
+    return Collections.unmodifiableSet(writes);
+  }
+
+  /**
+   * Gets the name of the image identified by a key.
+   *
+   * @param key The key of an image or a file.
+   * @return The name of the image, or null if the key identifies a file.
+   */
+  public static String imageName(String key) {
+    return key.startsWith(IMAGE_PREFIX) ? key.substring(IMAGE_PREFIX.length()) : null;
+  }
+
+  /**
+   * Gets the absolute path of the file identified by a key.
+   *
+   * @param key The key of an image or a file.
+   * @return The path of the file, or null if the key identifies an image.
+   */
+  public static String filePath(String key) {
+    return key.startsWith(FILE_PREFIX) ? key.substring(FILE_PREFIX.length()) : null;
+  }
+
+  /**
+   * Gets the key of a named image.
+   *
+   * @param imageName The name of the image.
+   * @return The key of the image.
+   */
+  private static String imageKey(String imageName) {
+    return IMAGE_PREFIX + imageName;
+  }
+
+  /**
+   * Gets the key of a file, from its absolute normalized path.
+   *
+   * @param filePath The path of the file.
+   * @return The key of the file.
+   */
+  private static String fileKey(String filePath) {
+    return FILE_PREFIX + Paths.get(filePath).toAbsolutePath().normalize();
+  }
+}
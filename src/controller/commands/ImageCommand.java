@@ -21,4 +21,64 @@ public interface ImageCommand {
    * @throws IOException If an I/O error occurs during image processing.
    */
   void execute(ImageProcessor processor, ImageViewer viewer, String[] args) throws IOException;
+
+  /**
+   * Describes the images and files the command reads and writes when executed with the given
+   * arguments, so that a script can run commands that do not depend on each other at the same
+   * time. Commands that do not know their access, or that receive invalid arguments, return
+   * null and are run alone, after every command before them and before every command after them.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if it is not known.
+   */
+  default ImageAccess access(String[] args) {
+    return null;
+  }
+
+  /**
+   * Checks the arguments of the command without executing it, so that a script can be checked
+   * as a whole before any of its commands is run. Only the arguments themselves are checked:
+   * whether the images and files they name exist is only known when the command is run.
+   *
+   * @param args The arguments passed to the command.
+   * @return A message describing what is wrong with the arguments, or null if they are valid.
+   */
+  default String validate(String[] args) {
+    return null;
+  }
+
+  /**
+   * Checks the arguments of the command and binds it to them, so that a script can parse the
+   * arguments of its commands once, when it is compiled. The bound command is executed with the
+   * same arguments, and does not parse them again. Commands whose arguments are only names of
+   * images and files return themselves.
+   *
+   * @param args The arguments passed to the command.
+   * @return The command bound to its arguments.
+   * @throws IllegalArgumentException If the arguments are not valid, with the message
+   *                                  {@link #validate(String[])} returns.
+   */
+  default ImageCommand bind(String[] args) {
+    String error = validate(args);
+    if (error != null) {
+      throw new IllegalArgumentException(error);
+    }
+    return this;
+  }
+
+  /**
+   * Estimates the most memory the command allocates while it runs on the images it is given, so
+   * that commands can be held back until there is enough memory for them. By default, every image
+   * the command writes is assumed to be as large as the largest image it reads.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes, or 0 if the command allocates little or its access is
+   *         not known.
+   */
+  default long estimateMemory(ImageProcessor processor, String[] args) {
+    ImageAccess access = access(args);
+    return CommandArguments.largestImage(processor, access)
+        * CommandArguments.imagesWritten(access);
+  }
 }
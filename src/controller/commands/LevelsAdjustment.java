@@ -9,11 +9,27 @@ import view.ImageViewer;
  * The {@code LevelsAdjustment} class represents a command to perform levels adjustment on an image.
  * It is using an {@link ImageProcessor}. It implements the {@link ImageCommand} interface.
  */
-public class LevelsAdjustment implements ImageCommand {
+public class LevelsAdjustment extends ParsedCommand<LevelsAdjustment.Levels> {
 
   private static final int MIN_BOUND = 0;
   private static final int MAX_BOUND = 255;
 
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public LevelsAdjustment() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param levels The black, mid and white points, and the split.
+   */
+  private LevelsAdjustment(Levels levels) {
+    super(levels);
+  }
+
   /**
    * Executes the command to perform levels adjustment on an image.
    *
@@ -28,43 +44,105 @@ public class LevelsAdjustment implements ImageCommand {
    *                  Additional optional argument (args[6]) to specify the split value.
    *                  The split value should be a non-negative integer.
    *                  If not provided or invalid, default is used.
-   * @throws IOException           If an I/O error occurs during image processing.
-   * @throws NumberFormatException If the split value is not a valid integer.
+   * @param levels    The black, mid and white points, and the split.
+   * @throws IOException If an I/O error occurs during image processing.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
-          throws IOException, NumberFormatException {
-    if (args[1].isBlank() || args[2].isBlank() || args[3].isBlank()) {
-      viewer.showErrorMessage("Missing b or m or w value.");
-      return;
-    }
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      Levels levels) throws IOException {
+    CommandArguments.Split split = levels.split;
+    processor.adjustLevels(levels.black, levels.mid, levels.white, args[4], args[5],
+        split.getMode(), split.getPercentage());
+    viewer.showString("Level Adjustment is completed on image.");
+  }
 
-    int b = Integer.parseInt(args[1]);
-    int m = Integer.parseInt(args[2]);
-    int w = Integer.parseInt(args[3]);
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 6 ? null : ImageAccess.transform(args[4], args[5]);
+  }
 
+  /**
+   * Parses the black, mid and white points of the command and the split value if it is split,
+   * and checks that it is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return The black, mid and white points, and the split.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Levels parse(String[] args) {
+    CommandArguments.Split split = CommandArguments.split(args, 6,
+        "levels-adjust <b> <m> <w> <sourceImageName> <destImageName> [split <percentage>]");
+    int b;
+    int m;
+    int w;
+    try {
+      b = Integer.parseInt(args[1]);
+      m = Integer.parseInt(args[2]);
+      w = Integer.parseInt(args[3]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Missing b or m or w value.");
+    }
     if (b < MIN_BOUND || b >= m || m >= w || w > MAX_BOUND) {
-      viewer.showErrorMessage("Invalid input: Ensure 0 <= b < m < w <= 255.");
-      return;
+      throw new IllegalArgumentException("Invalid input: Ensure 0 <= b < m < w <= 255.");
     }
+    return new Levels(b, m, w, split);
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param levels The black, mid and white points, and the split.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Levels levels) {
+    return new LevelsAdjustment(levels);
+  }
+
+  /**
+   * Estimates the memory of the command: the result, and when the command is split, the whole
+   * filtered image the result is taken from.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    return (args.length > 6 ? 2 : 1) * super.estimateMemory(processor, args);
+  }
+
+  /**
+   * The black, mid and white points of a levels adjustment, and the part of the image it is
+   * applied to.
+   */
+  static final class Levels {
+
+    private final int black;
+    private final int mid;
+    private final int white;
+    private final CommandArguments.Split split;
 
-    if (args.length > 6) {
-      try {
-        if (Integer.parseInt(args[(args.length - 1)]) >= 0) {
-          processor.adjustLevels(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
-                  Integer.parseInt(args[3]), args[4], args[5],
-                  "split", Integer.parseInt(args[(args.length - 1)]));
-          viewer.showString("Level Adjustment is completed on image.");
-        } else {
-          viewer.showErrorMessage("Split value cannot be negative.");
-        }
-      } catch (NumberFormatException e) {
-        viewer.showErrorMessage("Invalid split value. Please provide a valid number.");
-      }
-    } else if (args.length == 6) {
-      processor.adjustLevels(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
-              Integer.parseInt(args[3]), args[4], args[5], "no-split", 0);
-      viewer.showString("Level Adjustment is completed on image.");
+    /**
+     * Constructs the arguments of a levels adjustment.
+     *
+     * @param black The black point.
+     * @param mid   The mid point.
+     * @param white The white point.
+     * @param split The part of the image the adjustment is applied to.
+     */
+    private Levels(int black, int mid, int white, CommandArguments.Split split) {
+      this.black = black;
+      this.mid = mid;
+      this.white = white;
+      this.split = split;
     }
   }
 }
@@ -1,15 +1,26 @@
 package controller.commands;
 
-import java.awt.Color;
+import controller.io.DecodeCache;
+import controller.io.HaarFormat;
+import controller.io.PpmReader;
+import controller.io.QoiFormat;
+import controller.io.RawImageFormat;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.Iterator;
+import java.util.Map;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import model.HaarCoefficients;
 import model.Image;
+import model.ImageConversion;
 import model.ImageProcessor;
 import view.ImageViewer;
 
@@ -18,7 +29,40 @@ import view.ImageViewer;
  * then adds it to the image processor using an {@link ImageProcessor}. It implements the
  * {@link ImageCommand} interface.
  */
-public class LoadImageCommand implements ImageCommand {
+public class LoadImageCommand extends ParsedCommand<LoadImageCommand.Request> {
+
+  private static final Map<String, Integer> OPTIONS =
+      Map.of("-level", 1, "-subsample", 2, "-region", 4);
+
+  private final DecodeCache cache;
+
+  /**
+   * Constructs a LoadImageCommand that keeps decoded images in the cache named by the
+   * {@value DecodeCache#DIRECTORY_PROPERTY} system property, if it is set.
+   */
+  public LoadImageCommand() {
+    this(DecodeCache.fromSystemProperty());
+  }
+
+  /**
+   * Constructs a LoadImageCommand that keeps decoded images in the given cache.
+   *
+   * @param cache The cache of decoded images, or null to always decode them.
+   */
+  public LoadImageCommand(DecodeCache cache) {
+    this(cache, null);
+  }
+
+  /**
+   * Constructs a LoadImageCommand bound to parsed arguments.
+   *
+   * @param cache   The cache of decoded images, or null to always decode them.
+   * @param request The file, name and options parsed from the arguments.
+   */
+  private LoadImageCommand(DecodeCache cache, Request request) {
+    super(request);
+    this.cache = cache;
+  }
 
   /**
    * Executes the command to load an image from the specified file path. Adds it to the image
@@ -27,82 +71,176 @@ public class LoadImageCommand implements ImageCommand {
    * @param processor The {@link ImageProcessor} to perform image processing operations.
    * @param viewer    The {@link ImageViewer} to display information or images.
    * @param args      The arguments passed to the command. Expects three arguments: args[1] - the
-   *                  file path to the image args[2] - the name to assign to the loaded image
+   *                  file path to the image args[2] - the name to assign to the loaded image.
+   *                  The path may be preceded by "-level N" to load a haar file as a thumbnail
+   *                  scaled down by a factor of 2^N, "-subsample sx sy" to keep only every
+   *                  sx-th column and every sy-th row, and "-region x y width height" to keep
+   *                  only the given rectangle, x being a column and y a row. Only the pixels kept
+   *                  are decoded.
+   * @param request   The file, name and options parsed from the arguments.
    * @throws IOException If an I/O error occurs during file reading or image processing.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args, Request request)
       throws IOException {
-    if (args.length < 3) {
-      viewer.showErrorMessage("The 'load' command is invalid."
-          + " Please use valid file formats such as ppm, png, jpg, or jpeg.");
-      return;
-    }
-
-    String imagePath = String.join(" ",
-        Arrays.copyOfRange(args, 1, args.length - 1));
-    String imageName = args[args.length - 1];
+    int level = request.level;
+    ImageReadParam param = request.param;
+    String imagePath = request.imagePath;
+    String imageName = request.imageName;
 
     if (imagePath.endsWith(".ppm")) {
-      ppmImageLoader(processor, viewer, imagePath, imageName);
+      ppmImageLoader(processor, viewer, imagePath, imageName, param);
       viewer.showString("PPM Image Loaded.");
-    } else {
+    } else if (imagePath.endsWith(".pgm")) {
+      ppmImageLoader(processor, viewer, imagePath, imageName, param);
+      viewer.showString("PGM Image Loaded.");
+    } else if (imagePath.toLowerCase().endsWith(".qoi")) {
+      if (qoiImageLoader(processor, viewer, imagePath, imageName)) {
+        viewer.showString("QOI Image Loaded.");
+      }
+    } else if (imagePath.toLowerCase().endsWith(".raw")) {
+      if (rawImageLoader(processor, viewer, imagePath, imageName)) {
+        viewer.showString("RAW Image Loaded.");
+      }
+    } else if (imagePath.toLowerCase().endsWith(".haar")) {
+      if (haarImageLoader(processor, viewer, imagePath, imageName, level)) {
+        viewer.showString("HAAR Image Loaded.");
+      }
+    } else if (param == null) {
       ioImageLoader(processor, viewer, imagePath, imageName);
       viewer.showString("IO Image Loaded.");
+    } else if (ioImageLoader(processor, viewer, imagePath, imageName, param)) {
+      viewer.showString("IO Image Loaded.");
     }
   }
 
   /**
-   * Loads a PPM image from the specified file path. Adds it to the image processor with the given
-   * image name.
+   * Loads a PPM or PGM image, plain or binary, from the specified file path. Adds it to the image
+   * processor with the given image name.
    *
    * @param processor The {@link ImageProcessor} to perform image processing operations.
    * @param viewer    The {@link ImageViewer} to display information or images.
    * @param filePath  The file path to the PPM image file.
    * @param imageName The name to assign to the loaded PPM image.
-   * @throws IOException If an error occurs during file reading or image processing.
    */
   public void ppmImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
-      String imageName) throws IOException {
-    Scanner sc;
+      String imageName) {
+    ppmImageLoader(processor, viewer, filePath, imageName, null);
+  }
+
+  /**
+   * Loads part of a PPM or PGM image, plain or binary, from the specified file path, as described
+   * by the source region and subsampling of the given parameters. Adds it to the image processor
+   * with the given image name.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param filePath  The file path to the PPM image file.
+   * @param imageName The name to assign to the loaded PPM image.
+   * @param param     The parameters describing the pixels to load, or null to load them all.
+   */
+  public void ppmImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
+      String imageName, ImageReadParam param) {
+    Image pixel;
     try {
-      sc = new Scanner(new FileInputStream(filePath));
+      pixel = new PpmReader().read(filePath, param);
     } catch (FileNotFoundException e) {
       viewer.showErrorMessage("File " + filePath + " not found!");
       return;
+    } catch (IOException e) {
+      viewer.showErrorMessage(e.getMessage());
+      return;
     }
-    StringBuilder builder = new StringBuilder();
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s + System.lineSeparator());
-      }
+    processor.addImage(imageName, pixel);
+  }
+
+  /**
+   * Loads a QOI image from the specified file path. Adds it to the image processor with the given
+   * image name.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param filePath  The file path to the QOI image file.
+   * @param imageName The name to assign to the loaded image.
+   * @return true if the image was loaded, false if an error was shown instead.
+   */
+  public boolean qoiImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
+      String imageName) {
+    try {
+      processor.addImage(imageName, new QoiFormat().read(filePath));
+    } catch (FileNotFoundException e) {
+      viewer.showErrorMessage("File " + filePath + " not found!");
+      return false;
+    } catch (IOException e) {
+      viewer.showErrorMessage(e.getMessage());
+      return false;
     }
-    sc = new Scanner(builder.toString());
-    String token = sc.next();
-    if (!token.equals("P3")) {
-      viewer.showErrorMessage("Invalid PPM file: plain RAW file should begin with P3");
-    }
-    int width = sc.nextInt();
-
-    int height = sc.nextInt();
-    int maxValue = sc.nextInt();
-    Image pixel = new Image(height, width);
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int redComponentOfImage = sc.nextInt();
-        int greenComponentOfImage = sc.nextInt();
-        int blueComponentOfImage = sc.nextInt();
-        pixel.setImage(i, j, redComponentOfImage, greenComponentOfImage, blueComponentOfImage);
-      }
+    return true;
+  }
+
+  /**
+   * Loads an uncompressed RAW image from the specified file path, by mapping the file into memory
+   * after checking its checksum. Adds it to the image processor with the given image name.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param filePath  The file path to the RAW image file.
+   * @param imageName The name to assign to the loaded image.
+   * @return true if the image was loaded, false if an error was shown instead.
+   */
+  public boolean rawImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
+      String imageName) {
+    try {
+      processor.addImage(imageName, new RawImageFormat().read(filePath));
+    } catch (FileNotFoundException e) {
+      viewer.showErrorMessage("File " + filePath + " not found!");
+      return false;
+    } catch (IOException e) {
+      viewer.showErrorMessage(e.getMessage());
+      return false;
     }
-    processor.addImage(imageName, pixel);
+    return true;
+  }
 
+  /**
+   * Loads an image stored as sparse Haar wavelet coefficients from the specified file path. The
+   * coefficients are inverse transformed into an image, and both are added to the image processor
+   * with the given image name. Lossless files are reconstructed exactly and only the image is
+   * added. A positive level stops the decoding that many resolution levels
+   * early, which gives a thumbnail scaled down by a factor of 2^level.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param filePath  The file path to the HAAR image file.
+   * @param imageName The name to assign to the loaded image.
+   * @param level     The number of resolution levels to drop, 0 for the full image.
+   * @return true if the image was loaded, false if an error was shown instead.
+   */
+  public boolean haarImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
+      String imageName, int level) {
+    HaarFormat format = new HaarFormat();
+    try {
+      if (format.isLossless(filePath)) {
+        processor.addImage(imageName, format.readLossless(filePath).toImage(level));
+      } else {
+        HaarCoefficients coefficients = format.read(filePath, level);
+        processor.addImage(imageName, coefficients.toImage());
+        processor.addCoefficients(imageName, coefficients);
+      }
+    } catch (FileNotFoundException e) {
+      viewer.showErrorMessage("File " + filePath + " not found!");
+      return false;
+    } catch (IOException e) {
+      viewer.showErrorMessage(e.getMessage());
+      return false;
+    }
+    return true;
   }
 
   /**
    * Loads an IO image from the specified file path. Adds it to the image processor with the given
-   * image name.
+   * image name. When a cache is used, an image decoded before from the same unchanged file is
+   * mapped from the cache instead of being decoded again, and a newly decoded image is cached.
    *
    * @param processor The {@link ImageProcessor} to perform image processing operations.
    * @param viewer    The {@link ImageViewer} to display information or images.
@@ -112,20 +250,255 @@ public class LoadImageCommand implements ImageCommand {
    */
   public void ioImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
       String imageName) throws IOException {
-    File file = new File(filePath);
-    BufferedImage img = ImageIO.read(file);
-    Image pixel = new Image(img.getHeight(), img.getWidth());
-    for (int y = 0; y < img.getHeight(); y++) {
-      for (int x = 0; x < img.getWidth(); x++) {
-        int iopixel = img.getRGB(x, y);
-        Color color = new Color(iopixel, true);
-        int redComponentOfImage = color.getRed();
-        int greenComponentOfImage = color.getGreen();
-        int blueComponentOfImage = color.getBlue();
-        pixel.setImage(y, x, redComponentOfImage, greenComponentOfImage, blueComponentOfImage);
+    Image pixel = null;
+    if (cache != null) {
+      try {
+        pixel = cache.get(filePath);
+      } catch (IOException e) {
+        // An unreadable entry is decoded again and replaced.
+      }
+    }
+    if (pixel == null) {
+      BasicFileAttributes source = null;
+      if (cache != null) {
+        try {
+          source = DecodeCache.attributes(filePath);
+        } catch (IOException e) {
+          // The decoder reports a missing file.
+        }
+      }
+      File file = new File(filePath);
+      BufferedImage img = ImageIO.read(file);
+      pixel = ImageConversion.fromBufferedImage(img);
+      if (source != null) {
+        try {
+          cache.put(filePath, source, pixel);
+        } catch (IOException e) {
+          // The image is loaded even if it cannot be cached.
+        }
       }
     }
     processor.addImage(imageName, pixel);
+  }
+
+  /**
+   * Loads part of an IO image from the specified file path, as described by the source region and
+   * subsampling of the given parameters, so that the decoder only decodes and stores the pixels
+   * kept. The region is clipped to the image in parameters of their own, so that the given ones,
+   * which a bound command reuses for every file it loads, are left unchanged. Adds it to the image
+   * processor with the given image name. The decode cache, which holds whole images, is not used.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param filePath  The file path to the image file.
+   * @param imageName The name to assign to the loaded image.
+   * @param param     The parameters describing the pixels to load.
+   * @return true if the image was loaded, false if an error was shown instead.
+   * @throws IOException If an error occurs during file reading or image processing.
+   */
+  public boolean ioImageLoader(ImageProcessor processor, ImageViewer viewer, String filePath,
+      String imageName, ImageReadParam param) throws IOException {
+    File file = new File(filePath);
+    if (!file.isFile()) {
+      viewer.showErrorMessage("File " + filePath + " not found!");
+      return false;
+    }
+    BufferedImage img;
+    try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        viewer.showErrorMessage("Unsupported image format: " + filePath);
+        return false;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        Rectangle bounds = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+        ImageReadParam clipped = new ImageReadParam();
+        clipped.setSourceSubsampling(param.getSourceXSubsampling(),
+            param.getSourceYSubsampling(), 0, 0);
+        if (param.getSourceRegion() != null) {
+          Rectangle region = bounds.intersection(param.getSourceRegion());
+          if (region.isEmpty()) {
+            viewer.showErrorMessage("The region lies outside the image.");
+            return false;
+          }
+          clipped.setSourceRegion(region);
+        }
+        img = reader.read(0, clipped);
+      } finally {
+        reader.dispose();
+      }
+    }
+    processor.addImage(imageName, ImageConversion.fromBufferedImage(img));
+    return true;
+  }
 
+  /**
+   * Describes the command as reading the image file and writing the loaded image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    try {
+      args = new CommandOptions(args, OPTIONS).arguments();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (args.length < 3) {
+      return null;
+    }
+    return new ImageAccess()
+        .readsFile(String.join(" ", Arrays.copyOfRange(args, 1, args.length - 1)))
+        .writesImages(args[args.length - 1]);
+  }
+
+  /**
+   * Parses the options of the command and checks that they apply to the file loaded, and that
+   * the command is given a file and the name of the image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The file, name and options parsed from the arguments.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Request parse(String[] args) {
+    int level;
+    int[] subsampling;
+    int[] region;
+    try {
+      CommandOptions options = new CommandOptions(args, OPTIONS);
+      args = options.arguments();
+      level = options.has("-level") ? options.getInts("-level")[0] : 0;
+      subsampling = options.getInts("-subsample");
+      region = options.getInts("-region");
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid 'load' option. " + e.getMessage());
+    }
+    if (level < 0) {
+      throw new IllegalArgumentException("The level should be a non-negative number.");
+    }
+    if (subsampling != null && (subsampling[0] < 1 || subsampling[1] < 1)) {
+      throw new IllegalArgumentException("The subsampling factors should be positive numbers.");
+    }
+    if (region != null && (region[0] < 0 || region[1] < 0 || region[2] < 1 || region[3] < 1)) {
+      throw new IllegalArgumentException(
+          "The region should have a non-negative position and a positive size.");
+    }
+    if (args.length < 3) {
+      throw new IllegalArgumentException("The 'load' command is invalid."
+          + " Please use valid file formats such as ppm, pgm, png, jpg, jpeg, qoi, raw or haar.");
+    }
+    String imagePath = String.join(" ", Arrays.copyOfRange(args, 1, args.length - 1));
+    String lowerPath = imagePath.toLowerCase();
+    if (level > 0 && !lowerPath.endsWith(".haar")) {
+      throw new IllegalArgumentException("The -level option is only supported for haar files.");
+    }
+    if ((subsampling != null || region != null) && (lowerPath.endsWith(".qoi")
+        || lowerPath.endsWith(".raw") || lowerPath.endsWith(".haar"))) {
+      throw new IllegalArgumentException(
+          "The -subsample and -region options are not supported for qoi, raw or haar files.");
+    }
+    ImageReadParam param = null;
+    if (subsampling != null || region != null) {
+      param = new ImageReadParam();
+      if (subsampling != null) {
+        param.setSourceSubsampling(subsampling[0], subsampling[1], 0, 0);
+      }
+      if (region != null) {
+        param.setSourceRegion(new Rectangle(region[0], region[1], region[2], region[3]));
+      }
+    }
+    return new Request(imagePath, args[args.length - 1], level, param);
+  }
+
+  /**
+   * Creates a LoadImageCommand with the same cache bound to parsed arguments.
+   *
+   * @param request The file, name and options parsed from the arguments.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Request request) {
+    return new LoadImageCommand(cache, request);
+  }
+
+  /**
+   * Estimates the memory of the command from the size of the image in the header of its file:
+   * the decoded image, and the decoder's own copy of it for PNG and JPEG files, or the Haar
+   * coefficients for {@code .haar} files. Raw files are mapped rather than read into memory.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes, or 0 if the file cannot be read.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    ImageAccess access = access(args);
+    if (access == null) {
+      return 0;
+    }
+    String filePath = ImageAccess.filePath(access.getReads().iterator().next());
+    String lowerCase = filePath.toLowerCase();
+    try {
+      if (lowerCase.endsWith(".raw")) {
+        return 0;
+      } else if (lowerCase.endsWith(".ppm") || lowerCase.endsWith(".pgm")) {
+        int[] size = new PpmReader().readSize(filePath);
+        return Image.estimatedSize(size[0], size[1]);
+      } else if (lowerCase.endsWith(".qoi")) {
+        int[] size = new QoiFormat().readSize(filePath);
+        return Image.estimatedSize(size[0], size[1]);
+      } else if (lowerCase.endsWith(".haar")) {
+        int[] size = new HaarFormat().readSize(filePath);
+        return Image.estimatedSize(size[0], size[1])
+            + HaarCoefficients.estimatedSize(size[0], size[1]);
+      }
+      try (ImageInputStream input = ImageIO.createImageInputStream(new File(filePath))) {
+        Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+          return 0;
+        }
+        ImageReader reader = readers.next();
+        try {
+          reader.setInput(input, true, true);
+          int height = reader.getHeight(0);
+          int width = reader.getWidth(0);
+          return Image.estimatedSize(height, width) + 4L * height * width;
+        } finally {
+          reader.dispose();
+        }
+      }
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * The file and name of the image a load command reads, and the options it reads it with.
+   */
+  static final class Request {
+
+    private final String imagePath;
+    private final String imageName;
+    private final int level;
+    private final ImageReadParam param;
+
+    /**
+     * Constructs the arguments of a load command.
+     *
+     * @param imagePath The path of the file.
+     * @param imageName The name of the image.
+     * @param level     The level of a haar file, or 0.
+     * @param param     The region and subsampling to read, or null to read every pixel.
+     */
+    private Request(String imagePath, String imageName, int level, ImageReadParam param) {
+      this.imagePath = imagePath;
+      this.imageName = imageName;
+      this.level = level;
+      this.param = param;
+    }
   }
 }
@@ -0,0 +1,65 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The {@code MaterializeImageCommand} class represents a command that marks images as results of
+ * a script, so that they are computed even when a script is run lazily and the images are not
+ * saved. It implements the {@link ImageCommand} interface.
+ */
+public class MaterializeImageCommand implements ImageCommand {
+
+  /**
+   * Executes the command to check that the images have been computed.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command. Expects at least one argument:
+   *                  args[1] onwards - the names of the images to materialize
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+          throws IOException {
+    if (args.length < 2) {
+      viewer.showErrorMessage(CommandArguments.invalid(
+              "materialize <imageName> [<imageName>...]"));
+      return;
+    }
+    for (int i = 1; i < args.length; i++) {
+      if (processor.getImage(args[i]) == null) {
+        viewer.showErrorMessage("Image " + args[i] + " not found.");
+      } else {
+        viewer.showString("Image " + args[i] + " materialized.");
+      }
+    }
+  }
+
+  /**
+   * Describes the command as reading the images it materializes.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 2 ? null
+        : new ImageAccess().readsImages(Arrays.copyOfRange(args, 1, args.length));
+  }
+
+  /**
+   * Checks that the command is given the names of the images to materialize.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return args.length < 2 ? CommandArguments.invalid("materialize <imageName> [<imageName>...]")
+        : null;
+  }
+}
@@ -0,0 +1,115 @@
+package controller.commands;
+
+import java.io.IOException;
+
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The {@code ParsedCommand} class is the base of the commands whose arguments hold more than the
+ * names of images and files, such as numbers and options. Their arguments are parsed and checked
+ * in one place, {@link #parse(String[])}, which gives both the message returned by
+ * {@link #validate(String[])} and the values the command runs with.
+ *
+ * <p>A script binds every command to its arguments when it is compiled, so the arguments are
+ * parsed once; the bound command runs without parsing them again. A command that is not bound,
+ * such as one entered in text mode, parses its arguments when it is executed.
+ *
+ * @param <T> The values parsed from the arguments.
+ */
+abstract class ParsedCommand<T> implements ImageCommand {
+
+  private final T arguments;
+
+  /**
+   * Constructs a command, bound to parsed arguments or not.
+   *
+   * @param arguments The values parsed from the arguments the command is bound to, or null to
+   *                  parse the arguments it is executed with.
+   */
+  ParsedCommand(T arguments) {
+    this.arguments = arguments;
+  }
+
+  /**
+   * Parses and checks the arguments of the command.
+   *
+   * @param args The arguments passed to the command.
+   * @return The values parsed from the arguments.
+   * @throws IllegalArgumentException If the arguments are not valid, with a message describing
+   *                                  what is wrong with them.
+   */
+  abstract T parse(String[] args);
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param arguments The values parsed from the arguments.
+   * @return The bound command.
+   */
+  abstract ImageCommand withArguments(T arguments);
+
+  /**
+   * Executes the command with its parsed arguments.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command.
+   * @param arguments The values parsed from the arguments.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  abstract void execute(ImageProcessor processor, ImageViewer viewer, String[] args, T arguments)
+      throws IOException;
+
+  /**
+   * Executes the command with the arguments it is bound to, or parses the arguments it is given
+   * and shows what is wrong with them if they are not valid.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+      throws IOException {
+    T parsed = arguments;
+    if (parsed == null) {
+      try {
+        parsed = parse(args);
+      } catch (IllegalArgumentException e) {
+        viewer.showErrorMessage(e.getMessage());
+        return;
+      }
+    }
+    execute(processor, viewer, args, parsed);
+  }
+
+  /**
+   * Checks the arguments of the command by parsing them.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    try {
+      parse(args);
+      return null;
+    } catch (IllegalArgumentException e) {
+      return e.getMessage();
+    }
+  }
+
+  /**
+   * Parses the arguments of the command and binds a command of the same kind to them.
+   *
+   * @param args The arguments passed to the command.
+   * @return The bound command.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  public ImageCommand bind(String[] args) {
+    return withArguments(parse(args));
+  }
+}
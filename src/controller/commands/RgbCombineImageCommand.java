@@ -29,4 +29,28 @@ public class RgbCombineImageCommand implements ImageCommand {
     processor.rgbCombine(args[1], args[2], args[3], args[4]);
     viewer.showString("Image Combined.");
   }
+
+  /**
+   * Describes the command as reading the three component images and writing the combined image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 5 ? null
+        : new ImageAccess().readsImages(args[2], args[3], args[4]).writesImages(args[1]);
+  }
+
+  /**
+   * Checks that the command is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return CommandArguments.count(args, 5,
+        "rgb-combine <destImageName> <redImageName> <greenImageName> <blueImageName>");
+  }
 }
@@ -29,4 +29,29 @@ public class RgbSplitImageCommand implements ImageCommand {
     processor.rgbSplit(args[1], args[2], args[3], args[4]);
     viewer.showString("Image Splitted into its Red, Green, and Blue Components.");
   }
+
+  /**
+   * Describes the command as reading the full-color image and writing the three component
+   * images.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 5 ? null
+        : new ImageAccess().readsImages(args[1]).writesImages(args[2], args[3], args[4]);
+  }
+
+  /**
+   * Checks that the command is given the names of its images.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return CommandArguments.count(args, 5,
+        "rgb-split <sourceImageName> <redImageName> <greenImageName> <blueImageName>");
+  }
 }
@@ -1,22 +1,48 @@
 package controller.commands;
 
-import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import controller.io.HaarFormat;
+import controller.io.JpegWriter;
+import controller.io.PngWriter;
+import controller.io.PpmWriter;
+import controller.io.QoiFormat;
+import controller.io.RawImageFormat;
 import java.io.IOException;
 import java.util.Arrays;
-import javax.imageio.ImageIO;
+import java.util.List;
+import java.util.Map;
+import model.HaarCoefficients;
 import model.Image;
+import model.ImageConversion;
 import model.ImageProcessor;
+import model.LiftingCoefficients;
 import view.ImageViewer;
 
 /**
  * The {@code SaveImageCommand} class represents a command to save an image to an output path. It
  * implements the {@link ImageCommand} interface.
  */
-public class SaveImageCommand implements ImageCommand {
+public class SaveImageCommand extends ParsedCommand<SaveImageCommand.Request> {
+
+  private static final Map<String, Integer> OPTIONS =
+      Map.of("-binary", 0, "-quality", 1, "-deflate", 1, "-filter", 1, "-threads", 1);
+  private static final List<String> EXTENSIONS =
+      List.of(".ppm", ".pgm", ".png", ".jpg", ".jpeg", ".qoi", ".raw", ".haar");
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public SaveImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param request The file, image and writers parsed from the arguments.
+   */
+  private SaveImageCommand(Request request) {
+    super(request);
+  }
 
   /**
    * Executes the command to save an image to a specified output path.
@@ -25,24 +51,49 @@ public class SaveImageCommand implements ImageCommand {
    * @param viewer    The {@link ImageViewer} to display information or images.
    * @param args      The arguments passed to the command. Expects three arguments: args[1] - the
    *                  output path where the image should be saved args[2] - the name of the image to
-   *                  save
+   *                  save. The path may be preceded by options: "-binary" to save a ppm file in
+   *                  the binary (P6) dialect, pgm files being always binary (P5); "-quality q" to
+   *                  set the JPEG quality between 0 and 1; "-deflate level" and "-filter name" to
+   *                  set the PNG deflate level between 0 and 9 and the PNG row filter;
+   *                  "-threads n" to encode a PNG file with n threads, instead of one
+   *                  per processor for large images and one otherwise.
+   * @param request   The file, image and writers parsed from the arguments.
    * @throws IOException If an I/O error occurs during image processing or saving.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args, Request request)
       throws IOException {
-    if (args.length < 3) {
-      viewer.showErrorMessage("Invalid 'save' command. "
-          + "Please use valid file formats such as ppm, png, jpg, or jpeg.");
-      return;
-    }
+    save(processor, viewer, request.outputPath, request.imageName, request.binary,
+        request.pngWriter, request.jpegWriter);
+    viewer.showString("Image Saved.");
+  }
 
-    String outputPath = String.join(" ",
-        Arrays.copyOfRange(args, 1, args.length - 1));
-    String imageName = args[args.length - 1];
+  /**
+   * Creates the writer for png files configured by the options of the command.
+   *
+   * @param options The options of the command.
+   * @return The writer for png files.
+   * @throws IllegalArgumentException If an option value is not valid.
+   */
+  private static PngWriter pngWriter(CommandOptions options) {
+    int level = options.has("-deflate")
+        ? options.getInts("-deflate")[0] : PngWriter.DEFAULT_LEVEL;
+    String filter = options.has("-filter") ? options.get("-filter")[0] : PngWriter.DEFAULT_FILTER;
+    return options.has("-threads")
+        ? new PngWriter(level, filter, options.getInts("-threads")[0])
+        : new PngWriter(level, filter);
+  }
 
-    save(processor, viewer, outputPath, imageName);
-    viewer.showString("Image Saved.");
+  /**
+   * Creates the writer for jpg and jpeg files configured by the options of the command.
+   *
+   * @param options The options of the command.
+   * @return The writer for jpg and jpeg files.
+   * @throws IllegalArgumentException If an option value is not valid.
+   */
+  private static JpegWriter jpegWriter(CommandOptions options) {
+    return options.has("-quality")
+        ? new JpegWriter(Float.parseFloat(options.get("-quality")[0])) : new JpegWriter();
   }
 
   /**
@@ -50,19 +101,33 @@ public class SaveImageCommand implements ImageCommand {
    *
    * @param destImageName   The name of the destination image file.
    * @param sourceImageName The name of the source image.
+   * @param binary          Whether to save a ppm file in the binary dialect.
+   * @param pngWriter       The writer for png files.
+   * @param jpegWriter      The writer for jpg and jpeg files.
    */
-  private void save(ImageProcessor processor, ImageViewer viewer,
-      String destImageName, String sourceImageName) {
+  private void save(ImageProcessor processor, ImageViewer viewer, String destImageName,
+      String sourceImageName, boolean binary, PngWriter pngWriter, JpegWriter jpegWriter) {
     Image sourceImage = processor.getImageImage(sourceImageName);
-    if (destImageName.toLowerCase().endsWith(".ppm")) {
+    if (destImageName.toLowerCase().endsWith(".ppm") && binary) {
+      saveBinaryImage(viewer, sourceImage, destImageName, false);
+    } else if (destImageName.toLowerCase().endsWith(".ppm")) {
       savePPMImage(viewer, sourceImage, destImageName);
-    } else if (destImageName.toLowerCase().endsWith(".png")
-        || destImageName.toLowerCase().endsWith(".jpg")
+    } else if (destImageName.toLowerCase().endsWith(".pgm")) {
+      saveBinaryImage(viewer, sourceImage, destImageName, true);
+    } else if (destImageName.toLowerCase().endsWith(".png")) {
+      savePNGImage(viewer, sourceImage, destImageName, pngWriter);
+    } else if (destImageName.toLowerCase().endsWith(".jpg")
         || destImageName.toLowerCase().endsWith(".jpeg")) {
-      savePNGorJPEGImage(viewer, sourceImage, destImageName);
+      saveJPEGImage(viewer, sourceImage, destImageName, jpegWriter);
+    } else if (destImageName.toLowerCase().endsWith(".qoi")) {
+      saveQOIImage(viewer, sourceImage, destImageName);
+    } else if (destImageName.toLowerCase().endsWith(".raw")) {
+      saveRawImage(viewer, sourceImage, destImageName);
+    } else if (destImageName.toLowerCase().endsWith(".haar")) {
+      saveHaarImage(processor, viewer, sourceImageName, destImageName);
     } else {
       viewer.showErrorMessage("Unsupported image format. "
-          + "Can only save PPM, PNG, JPG or JPEG images.");
+          + "Can only save PPM, PGM, PNG, JPG, JPEG, QOI, RAW or HAAR images.");
     }
   }
 
@@ -73,58 +138,227 @@ public class SaveImageCommand implements ImageCommand {
    * @param filePath The path to the file where the image will be saved.
    */
   private void savePPMImage(ImageViewer viewer, Image pixel, String filePath) {
-    int width = pixel.getWidth();
-    int height = pixel.getHeight();
     try {
-      BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
-      writer.write("P3\n");
-      writer.write(width + " " + height + "\n");
-      int maxValue = 255;
-      writer.write(maxValue + "\n");
-
-      pixel.getImage(width, height);
-
-      for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-          int[] pixelArray = pixel.getImage(i, j);
-          if (pixelArray != null) {
-            writer.write(pixelArray[0] + " " + pixelArray[1] + " " + pixelArray[2] + " ");
-          }
-        }
-        writer.write("\n");
+      new PpmWriter().writePlain(pixel, filePath);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Saves an image in the binary PPM (P6) or PGM (P5) format to the specified file.
+   *
+   * @param pixel     The image to be saved.
+   * @param filePath  The path to the file where the image will be saved.
+   * @param greyscale Whether to save only the red channel as a PGM file.
+   */
+  private void saveBinaryImage(ImageViewer viewer, Image pixel, String filePath,
+      boolean greyscale) {
+    try {
+      if (greyscale) {
+        new PpmWriter().writeGreyscale(pixel, filePath);
+      } else {
+        new PpmWriter().writeBinary(pixel, filePath);
       }
-      writer.close();
     } catch (IOException e) {
       viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
     }
   }
 
   /**
-   * Saves an image in PNG or JPEG format to the specified file.
+   * Saves an image in the QOI format to the specified file.
+   *
+   * @param pixel    The image to be saved in QOI format.
+   * @param filePath The path to the file where the image will be saved.
+   */
+  private void saveQOIImage(ImageViewer viewer, Image pixel, String filePath) {
+    try {
+      new QoiFormat().write(pixel, filePath);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Saves an image uncompressed in the RAW format to the specified file.
    *
-   * @param pixel    The image to be saved in PNG or JPEG format.
+   * @param pixel    The image to be saved in RAW format.
    * @param filePath The path to the file where the image will be saved.
    */
-  private void savePNGorJPEGImage(ImageViewer viewer, Image pixel, String filePath) {
-    int height = pixel.getHeight();
-    int width = pixel.getWidth();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    WritableRaster raster = image.getRaster();
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int[] pixelArray = pixel.getImage(i, j);
-        if (pixelArray != null) {
-          raster.setPixel(j, i, pixelArray);
-        }
+  private void saveRawImage(ImageViewer viewer, Image pixel, String filePath) {
+    try {
+      new RawImageFormat().write(pixel, filePath);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Saves an image as sparse Haar wavelet coefficients to the specified file. The coefficients
+   * kept by a previous compression are reused. Any other image is archived without loss using the
+   * integer lifting transformation.
+   *
+   * @param imageName The name of the image to be saved.
+   * @param filePath  The path to the file where the image will be saved.
+   */
+  private void saveHaarImage(ImageProcessor processor, ImageViewer viewer, String imageName,
+      String filePath) {
+    HaarCoefficients coefficients = processor.getCoefficients(imageName);
+    try {
+      if (coefficients == null) {
+        new HaarFormat().write(LiftingCoefficients.transform(processor.getImageImage(imageName)),
+            filePath);
+      } else {
+        new HaarFormat().write(coefficients, filePath);
       }
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
     }
+  }
+
+  /**
+   * Saves an image in PNG format to the specified file.
+   *
+   * @param pixel     The image to be saved in PNG format.
+   * @param filePath  The path to the file where the image will be saved.
+   * @param pngWriter The writer holding the deflate level and row filter to use.
+   */
+  private void savePNGImage(ImageViewer viewer, Image pixel, String filePath,
+      PngWriter pngWriter) {
     try {
-      File outputFile = new File(filePath);
-      ImageIO.write(image, "png", outputFile);
+      pngWriter.write(ImageConversion.toBufferedImage(pixel), filePath);
     } catch (IOException e) {
       viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
     }
+  }
 
+  /**
+   * Saves an image in JPEG format to the specified file.
+   *
+   * @param pixel      The image to be saved in JPEG format.
+   * @param filePath   The path to the file where the image will be saved.
+   * @param jpegWriter The writer holding the quality to use.
+   */
+  private void saveJPEGImage(ImageViewer viewer, Image pixel, String filePath,
+      JpegWriter jpegWriter) {
+    try {
+      jpegWriter.write(ImageConversion.toBufferedImage(pixel), filePath);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error while saving the image: " + e.getMessage());
+    }
   }
 
+  /**
+   * Describes the command as reading the saved image and writing the image file.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    try {
+      args = new CommandOptions(args, OPTIONS).arguments();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (args.length < 3) {
+      return null;
+    }
+    return new ImageAccess().readsImages(args[args.length - 1])
+        .writesFile(String.join(" ", Arrays.copyOfRange(args, 1, args.length - 1)));
+  }
+
+  /**
+   * Parses the options of the command into the writers it saves with, and checks that the
+   * command is given the name of the image and a file in a supported format.
+   *
+   * @param args The arguments passed to the command.
+   * @return The file, image and writers parsed from the arguments.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Request parse(String[] args) {
+    CommandOptions options;
+    PngWriter pngWriter;
+    JpegWriter jpegWriter;
+    try {
+      options = new CommandOptions(args, OPTIONS);
+      pngWriter = pngWriter(options);
+      jpegWriter = jpegWriter(options);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid 'save' option. Please provide a valid number.");
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid 'save' option. " + e.getMessage());
+    }
+    args = options.arguments();
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Invalid 'save' command. "
+          + "Please use valid file formats such as ppm, pgm, png, jpg, jpeg, qoi, raw or haar.");
+    }
+    String outputPath = String.join(" ", Arrays.copyOfRange(args, 1, args.length - 1));
+    for (String extension : EXTENSIONS) {
+      if (outputPath.toLowerCase().endsWith(extension)) {
+        return new Request(outputPath, args[args.length - 1], options.has("-binary"),
+            pngWriter, jpegWriter);
+      }
+    }
+    throw new IllegalArgumentException("Unsupported image format. "
+        + "Can only save PPM, PGM, PNG, JPG, JPEG, QOI, RAW or HAAR images.");
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param request The file, image and writers parsed from the arguments.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Request request) {
+    return new SaveImageCommand(request);
+  }
+
+  /**
+   * Estimates the memory of the command: a copy of the image, of about four bytes per pixel,
+   * that the encoders work from.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes, or 0 if the image does not exist.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    ImageAccess access = access(args);
+    Image image = access == null ? null : processor.getImage(args[args.length - 1]);
+    return image == null ? 0 : 4L * image.getHeight() * image.getWidth();
+  }
+
+  /**
+   * The file and image a save command writes, and the writers it writes them with.
+   */
+  static final class Request {
+
+    private final String outputPath;
+    private final String imageName;
+    private final boolean binary;
+    private final PngWriter pngWriter;
+    private final JpegWriter jpegWriter;
+
+    /**
+     * Constructs the arguments of a save command.
+     *
+     * @param outputPath The path of the file.
+     * @param imageName  The name of the image.
+     * @param binary     Whether to save a ppm file in the binary dialect.
+     * @param pngWriter  The writer for png files.
+     * @param jpegWriter The writer for jpg and jpeg files.
+     */
+    private Request(String outputPath, String imageName, boolean binary, PngWriter pngWriter,
+        JpegWriter jpegWriter) {
+      this.outputPath = outputPath;
+      this.imageName = imageName;
+      this.binary = binary;
+      this.pngWriter = pngWriter;
+      this.jpegWriter = jpegWriter;
+    }
+  }
 }
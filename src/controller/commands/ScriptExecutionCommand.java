@@ -3,15 +3,37 @@ package controller.commands;
 import java.io.IOException;
 
 import controller.ImageController;
+import controller.ScriptPlan;
 import model.ImageProcessor;
 import view.ImageViewer;
 
 /**
  * The {@code ScriptExecutionCommand} class represents a command to execute a script file.
- * It implements the {@link ImageCommand} interface.
+ * It implements the {@link ImageCommand} interface. A script run from a line of another script
+ * runs on the controller of that script, with its images, memory budget, time limit and
+ * cancellation, and its failures stop the script that runs it.
  */
 public class ScriptExecutionCommand implements ImageCommand {
 
+  private final ImageController controller;
+
+  /**
+   * Constructs a command running scripts on a new controller over the images it is given.
+   */
+  public ScriptExecutionCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command running scripts on the given controller.
+   *
+   * @param controller The controller to run the scripts on, or null to use a new controller over
+   *                   the images the command is given.
+   */
+  public ScriptExecutionCommand(ImageController controller) {
+    this.controller = controller;
+  }
+
   /**
    * Executes the command to run a script file.
    *
@@ -20,6 +42,8 @@ public class ScriptExecutionCommand implements ImageCommand {
    * @param args      The arguments passed to the command. Expects at least two arguments:
    *                  args[1] - the script file name to execute
    * @throws IOException If an I/O error occurs during script execution.
+   * @throws java.util.concurrent.CancellationException If a command of the script is cancelled
+   *                                                    or runs out of time.
    */
   @Override
   public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
@@ -29,6 +53,28 @@ public class ScriptExecutionCommand implements ImageCommand {
       return;
     }
     String scriptFileName = args[1];
-    new ImageController(viewer).runScript(scriptFileName);
+    if (controller == null) {
+      new ImageController(viewer, processor).runScript(scriptFileName);
+      return;
+    }
+    ScriptPlan plan;
+    try {
+      plan = controller.compileScript(scriptFileName);
+    } catch (IOException e) {
+      viewer.showErrorMessage("Error reading the script file: " + e.getMessage());
+      return;
+    }
+    controller.runPlan(plan);
+  }
+
+  /**
+   * Checks that the command is given a script file.
+   *
+   * @param args The arguments passed to the command.
+   * @return An error message, or null if the arguments are valid.
+   */
+  @Override
+  public String validate(String[] args) {
+    return args.length < 2 ? "No script file provided." : null;
   }
 }
@@ -9,7 +9,23 @@ import view.ImageViewer;
  * The {@code SepiaImageCommand} class represents a command to apply sepia tone to an image.
  * It implements the {@link ImageCommand} interface.
  */
-public class SepiaImageCommand implements ImageCommand {
+public class SepiaImageCommand extends ParsedCommand<CommandArguments.Split> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public SepiaImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param split The part of the image the command is applied to.
+   */
+  private SepiaImageCommand(CommandArguments.Split split) {
+    super(split);
+  }
 
   /**
    * Executes the command to apply sepia tone to an image.
@@ -21,28 +37,62 @@ public class SepiaImageCommand implements ImageCommand {
    *                  args[2] - the destination image name
    *                  Optional: args[3] - "split" or "no-split" to indicate whether to split
    *                  args[4] - the split value (positive integer) for parallel processing
+   * @param split     The part of the image the command is applied to.
    * @throws IOException If an I/O error occurs during image processing.
    */
   @Override
-  public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
-          throws IOException {
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      CommandArguments.Split split) throws IOException {
     double[][] sepiaMatrix = {{0.393, 0.769, 0.189}, {0.349, 0.686, 0.168}, {0.272, 0.534, 0.131}};
+    processor.graySepia(args[1], args[2], split.getMode(), split.getPercentage(), sepiaMatrix);
+    viewer.showString("Image Tone Changed to Sepia.");
+  }
+
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 3 ? null : ImageAccess.transform(args[1], args[2]);
+  }
 
-    if (args.length > 3) {
-      try {
-        if (Integer.parseInt(args[(args.length - 1)]) >= 0) {
-          processor.graySepia(args[1], args[2], "split",
-                  Integer.parseInt(args[(args.length - 1)]), sepiaMatrix);
-          viewer.showString("Image Tone Changed to Sepia.");
-        } else {
-          viewer.showErrorMessage("Split value cannot be negative.");
-        }
-      } catch (NumberFormatException e) {
-        viewer.showErrorMessage("Invalid split value. Please provide a valid number.");
-      }
-    } else if (args.length == 3) {
-      processor.graySepia(args[1], args[2], "no-split", 0, sepiaMatrix);
-      viewer.showString("Image Tone Changed to Sepia.");
-    }
+  /**
+   * Parses the names of the images of the command, and the split value if it is split.
+   *
+   * @param args The arguments passed to the command.
+   * @return The part of the image the command is applied to.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  CommandArguments.Split parse(String[] args) {
+    return CommandArguments.split(args, 3,
+        "sepia <sourceImageName> <destImageName> [split <percentage>]");
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param split The part of the image the command is applied to.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(CommandArguments.Split split) {
+    return new SepiaImageCommand(split);
+  }
+
+  /**
+   * Estimates the memory of the command: the result, and when the command is split, the whole
+   * filtered image the result is taken from.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    return (args.length > 3 ? 2 : 1) * super.estimateMemory(processor, args);
   }
 }
@@ -0,0 +1,115 @@
+package controller.commands;
+
+import java.io.IOException;
+
+import model.ImageProcessor;
+import view.ImageViewer;
+
+/**
+ * The {@code ThumbnailImageCommand} class represents a command to create a thumbnail of an image
+ * from its Haar wavelet coefficients. It is using an {@link ImageProcessor}.
+ * It implements the {@link ImageCommand} interface.
+ */
+public class ThumbnailImageCommand extends ParsedCommand<Integer> {
+
+  /**
+   * Constructs a command that parses the arguments it is executed with.
+   */
+  public ThumbnailImageCommand() {
+    this(null);
+  }
+
+  /**
+   * Constructs a command bound to parsed arguments.
+   *
+   * @param level The level of the thumbnail.
+   */
+  private ThumbnailImageCommand(Integer level) {
+    super(level);
+  }
+
+  /**
+   * Executes the command to create a thumbnail of an image.
+   *
+   * @param processor The {@link ImageProcessor} to perform image processing operations.
+   * @param viewer    The {@link ImageViewer} to display information or images.
+   * @param args      The arguments passed to the command. Expects three arguments:
+   *                  args[1] - the level, the thumbnail is scaled down by a factor of 2^level
+   *                  args[2] - the source image name
+   *                  args[3] - the destination image name
+   * @param level     The level of the thumbnail.
+   * @throws IOException If an I/O error occurs during image processing.
+   */
+  @Override
+  void execute(ImageProcessor processor, ImageViewer viewer, String[] args,
+      Integer level) throws IOException {
+    if (processor.getImage(args[2]) == null) {
+      viewer.showErrorMessage("Image " + args[2] + " not found.");
+    } else {
+      processor.createThumbnail(level, args[2], args[3]);
+      viewer.showString("Thumbnail Created.");
+    }
+  }
+
+  /**
+   * Describes the command as reading the source image and writing the destination image.
+   *
+   * @param args The arguments passed to the command.
+   * @return The access of the command, or null if the arguments are invalid.
+   */
+  @Override
+  public ImageAccess access(String[] args) {
+    return args.length < 4 ? null : ImageAccess.transform(args[2], args[3]);
+  }
+
+  /**
+   * Parses the non-negative level of the command, and checks that it is given the names of its
+   * images.
+   *
+   * @param args The arguments passed to the command.
+   * @return The level of the thumbnail.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  @Override
+  Integer parse(String[] args) {
+    CommandArguments.require(CommandArguments.count(args, 4,
+        "thumbnail <level> <sourceImageName> <destImageName>"));
+    int level;
+    try {
+      level = Integer.parseInt(args[1]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid level. Please provide a valid number.");
+    }
+    if (level < 0) {
+      throw new IllegalArgumentException("The level should be a non-negative number.");
+    }
+    return level;
+  }
+
+  /**
+   * Creates a command of the same kind bound to parsed arguments.
+   *
+   * @param level The level of the thumbnail.
+   * @return The bound command.
+   */
+  @Override
+  ImageCommand withArguments(Integer level) {
+    return new ThumbnailImageCommand(level);
+  }
+
+  /**
+   * Estimates the memory of the command: the thumbnail, and the Haar coefficients of the source
+   * when none were kept with it.
+   *
+   * @param processor The {@link ImageProcessor} holding the images.
+   * @param args      The arguments passed to the command.
+   * @return The estimated number of bytes.
+   */
+  @Override
+  public long estimateMemory(ImageProcessor processor, String[] args) {
+    ImageAccess access = access(args);
+    long coefficients = access == null || processor.getCoefficients(args[2]) != null ? 0
+        : CommandArguments.coefficientsOf(processor, access);
+    return super.estimateMemory(processor, args) + coefficients;
+  }
+}
@@ -0,0 +1,209 @@
+package controller.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import model.Image;
+
+/**
+ * The DecodeCache class keeps decoded images in a directory as {@code .raw} files, so that loading
+ * an unchanged compressed image again, even in a later run, only maps the raw file instead of
+ * decoding the image. Entries are named after the absolute path of the source file and record its
+ * size and modification time; an entry whose source has changed since is ignored and replaced.
+ * Entries are written to a temporary file and moved into place, so a partly written entry is never
+ * read.
+ *
+ * <p>The entries together take at most a given number of bytes. Reading an entry marks it as used,
+ * and once an entry is written, the entries used least recently are deleted until the cache fits.
+ *
+ * <p>The default cache is enabled by setting the {@value #DIRECTORY_PROPERTY} system property to
+ * the directory to keep it in; its size is set in megabytes by the {@value #CAPACITY_PROPERTY}
+ * system property, and is 1024 megabytes otherwise.
+ */
+public class DecodeCache {
+
+  /**
+   * The system property naming the directory of the default cache.
+   */
+  public static final String DIRECTORY_PROPERTY = "image.cache.dir";
+
+  /**
+   * The system property setting the size of the default cache, in megabytes.
+   */
+  public static final String CAPACITY_PROPERTY = "image.cache.mb";
+
+  private static final long DEFAULT_CAPACITY_MB = 1024;
+
+  private final Path directory;
+  private final long capacity;
+  private final RawImageFormat format = new RawImageFormat();
+
+  /**
+   * Constructs a cache of the default size kept in the given directory, which is created when
+   * needed.
+   *
+   * @param directory The directory holding the entries of the cache.
+   */
+  public DecodeCache(Path directory) {
+    this(directory, DEFAULT_CAPACITY_MB << 20);
+  }
+
+  /**
+   * Constructs a cache kept in the given directory, which is created when needed.
+   *
+   * @param directory The directory holding the entries of the cache.
+   * @param capacity  The most bytes the entries take together.
+   */
+  public DecodeCache(Path directory, long capacity) {
+    this.directory = directory;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the cache kept in the directory named by the {@value #DIRECTORY_PROPERTY} system
+   * property, of the size set by the {@value #CAPACITY_PROPERTY} system property.
+   *
+   * @return The default cache, or null if the directory is not set.
+   * @throws NumberFormatException If the size is not a whole number.
+   */
+  public static DecodeCache fromSystemProperty() {
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null || directory.isEmpty()) {
+      return null;
+    }
+    String megabytes = System.getProperty(CAPACITY_PROPERTY);
+    long capacity = megabytes == null || megabytes.isEmpty()
+        ? DEFAULT_CAPACITY_MB : Long.parseLong(megabytes);
+    return new DecodeCache(Paths.get(directory), capacity << 20);
+  }
+
+  /**
+   * Reads the size and modification time of a source file, to be read before the file is decoded
+   * and given to {@link #put}, so that an entry never records a file newer than its pixels.
+   *
+   * @param filePath The path of the source file.
+   * @return The attributes of the file.
+   * @throws IOException If the attributes of the file cannot be read.
+   */
+  public static BasicFileAttributes attributes(String filePath) throws IOException {
+    return Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+  }
+
+  /**
+   * Returns the cached image decoded from a file, if the file has not changed since.
+   *
+   * @param filePath The path of the source file.
+   * @return The cached image, backed by a mapping of its entry, or null if there is none.
+   * @throws IOException If the source file or the entry cannot be read.
+   */
+  public Image get(String filePath) throws IOException {
+    Path entry = entry(filePath);
+    if (!Files.isRegularFile(entry)) {
+      return null;
+    }
+    BasicFileAttributes source = attributes(filePath);
+    Image image = format.read(entry, source.size(), source.lastModifiedTime().toMillis());
+    if (image != null) {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    return image;
+  }
+
+  /**
+   * Caches the image decoded from a file, replacing any previous entry of the file, and deletes
+   * the entries used least recently while the cache is over its size.
+   *
+   * @param filePath The path of the source file.
+   * @param source   The attributes of the source file, read before it was decoded.
+   * @param image    The decoded image.
+   * @throws IOException If the entry cannot be written.
+   */
+  public void put(String filePath, BasicFileAttributes source, Image image) throws IOException {
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+    try {
+      format.write(image, temporary, source.size(), source.lastModifiedTime().toMillis());
+      Files.move(temporary, entry(filePath), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    evict();
+  }
+
+  /**
+   * Deletes the entries used least recently until the entries fit in the size of the cache.
+   * Entries that cannot be deleted, such as ones still mapped on some systems, are skipped.
+   *
+   * @throws IOException If the directory cannot be listed.
+   */
+  private void evict() throws IOException {
+    List<Path> entries = new ArrayList<>();
+    List<BasicFileAttributes> attributes = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.raw")) {
+      for (Path entry : stream) {
+        try {
+          BasicFileAttributes entryAttributes = Files.readAttributes(entry,
+              BasicFileAttributes.class);
+          entries.add(entry);
+          attributes.add(entryAttributes);
+          total += entryAttributes.size();
+        } catch (IOException e) {
+          // An entry deleted meanwhile no longer counts.
+        }
+      }
+    }
+    if (total <= capacity) {
+      return;
+    }
+    List<Integer> order = new ArrayList<>();
+    for (int k = 0; k < entries.size(); k++) {
+      order.add(k);
+    }
+    order.sort(Comparator.comparing(k -> attributes.get(k).lastModifiedTime()));
+    for (int k : order) {
+      if (total <= capacity) {
+        break;
+      }
+      try {
+        Files.deleteIfExists(entries.get(k));
+        total -= attributes.get(k).size();
+      } catch (IOException e) {
+        // The entry stays, and the next one is deleted instead.
+      }
+    }
+  }
+
+  /**
+   * Gets the path of the entry of a source file, named after a hash of its absolute path.
+   *
+   * @param filePath The path of the source file.
+   * @return The path of the entry.
+   */
+  private Path entry(String filePath) {
+    String key = Paths.get(filePath).toAbsolutePath().normalize().toString();
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder name = new StringBuilder();
+      for (int k = 0; k < 16; k++) {
+        name.append(String.format("%02x", digest[k]));
+      }
+      return directory.resolve(name.append(".raw").toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
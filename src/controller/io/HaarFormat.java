@@ -0,0 +1,441 @@
+package controller.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import model.HaarCoefficients;
+import model.LiftingCoefficients;
+
+/**
+ * The HaarFormat class reads and writes the {@code .haar} file format, which stores the Haar
+ * wavelet coefficients of an image sparsely.
+ *
+ * <p>The file starts with an uncompressed header: the magic bytes {@code HAAR}, a version byte,
+ * a mode byte, the original height and width, the padded size and the quantization step. The
+ * coefficients follow as a deflate compressed stream. They are quantized to integer multiples of
+ * the step and visited from the coarsest to the finest resolution: the top left coefficient of
+ * every channel first, then for every resolution the three detail blocks of each channel. Every
+ * non-zero coefficient is written as the number of zeros before it plus one, followed by its
+ * zigzag encoded value, both as variable length integers. A single zero ends the stream.
+ *
+ * <p>Lossless files use a second mode. Their header holds only the height and width, and the
+ * integer coefficients of a {@link LiftingCoefficients} transformation follow, channel by channel
+ * in row order, with the same run length and variable length integer coding.
+ */
+public class HaarFormat {
+
+  /**
+   * The default quantization step applied to coefficients when they are written.
+   */
+  public static final double DEFAULT_STEP = 0.5;
+
+  private static final byte[] MAGIC = {'H', 'A', 'A', 'R'};
+  private static final int VERSION = 1;
+  private static final int MODE_QUANTIZED = 0;
+  private static final int MODE_LOSSLESS = 1;
+  private static final int MAX_PIXELS = 400_000_000;
+
+  /**
+   * Writes Haar coefficients to a file using the default quantization step.
+   *
+   * @param coefficients The coefficients to write.
+   * @param filePath     The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(HaarCoefficients coefficients, String filePath) throws IOException {
+    write(coefficients, filePath, DEFAULT_STEP);
+  }
+
+  /**
+   * Writes Haar coefficients to a file, quantizing them with the given step.
+   *
+   * @param coefficients The coefficients to write.
+   * @param filePath     The path of the file to write.
+   * @param step         The quantization step, a positive number.
+   * @throws IOException If the file cannot be written.
+   * @throws IllegalArgumentException If the step is not a positive finite number.
+   */
+  public void write(HaarCoefficients coefficients, String filePath, double step)
+          throws IOException {
+    if (!isValidStep(step)) {
+      throw new IllegalArgumentException("The quantization step should be a positive number.");
+    }
+    try (DataOutputStream header = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filePath)))) {
+      header.write(MAGIC);
+      header.writeByte(VERSION);
+      header.writeByte(MODE_QUANTIZED);
+      header.writeInt(coefficients.getHeight());
+      header.writeInt(coefficients.getWidth());
+      header.writeInt(coefficients.getSize());
+      header.writeDouble(step);
+
+      Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+      try {
+        DeflaterOutputStream payload = new DeflaterOutputStream(header, deflater, 1 << 16);
+        VarIntWriter writer = new VarIntWriter(payload);
+        double[][][] channels = {coefficients.getChannel(0), coefficients.getChannel(1),
+            coefficients.getChannel(2)};
+        int size = coefficients.getSize();
+        long run = 0;
+        for (double[][] channel : channels) {
+          long q = Math.round(channel[0][0] / step);
+          if (q != 0) {
+            writer.write(run + 1);
+            writer.write(zigzag(q));
+            run = 0;
+          } else {
+            run++;
+          }
+        }
+        for (int s = 1; s < size; s *= 2) {
+          for (double[][] channel : channels) {
+            for (int i = 0; i < 2 * s; i++) {
+              double[] row = channel[i];
+              for (int j = i < s ? s : 0; j < 2 * s; j++) {
+                long q = Math.round(row[j] / step);
+                if (q != 0) {
+                  writer.write(run + 1);
+                  writer.write(zigzag(q));
+                  run = 0;
+                } else {
+                  run++;
+                }
+              }
+            }
+          }
+        }
+        writer.write(0);
+        writer.flush();
+        payload.finish();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Writes integer Haar coefficients to a file without any loss.
+   *
+   * @param coefficients The coefficients to write.
+   * @param filePath     The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(LiftingCoefficients coefficients, String filePath) throws IOException {
+    try (DataOutputStream header = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filePath)))) {
+      header.write(MAGIC);
+      header.writeByte(VERSION);
+      header.writeByte(MODE_LOSSLESS);
+      header.writeInt(coefficients.getHeight());
+      header.writeInt(coefficients.getWidth());
+
+      Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+      try {
+        DeflaterOutputStream payload = new DeflaterOutputStream(header, deflater, 1 << 16);
+        VarIntWriter writer = new VarIntWriter(payload);
+        long run = 0;
+        for (int c = 0; c < 3; c++) {
+          for (int[] row : coefficients.getChannel(c)) {
+            for (int value : row) {
+              if (value != 0) {
+                writer.write(run + 1);
+                writer.write(zigzag(value));
+                run = 0;
+              } else {
+                run++;
+              }
+            }
+          }
+        }
+        writer.write(0);
+        writer.flush();
+        payload.finish();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Checks whether a file holds lossless integer coefficients rather than quantized ones.
+   *
+   * @param filePath The path of the file to check.
+   * @return true if the file was written in lossless mode.
+   * @throws IOException If the file cannot be read or is not a valid {@code .haar} file.
+   */
+  public boolean isLossless(String filePath) throws IOException {
+    try (DataInputStream header = new DataInputStream(new FileInputStream(filePath))) {
+      return readMode(header) == MODE_LOSSLESS;
+    }
+  }
+
+  /**
+   * Reads lossless integer Haar coefficients from a file.
+   *
+   * @param filePath The path of the file to read.
+   * @return The coefficients stored in the file.
+   * @throws IOException If the file cannot be read or is not a lossless {@code .haar} file.
+   */
+  public LiftingCoefficients readLossless(String filePath) throws IOException {
+    try (DataInputStream header = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(filePath), 1 << 16))) {
+      if (readMode(header) != MODE_LOSSLESS) {
+        throw new IOException("Invalid HAAR file: not a lossless file.");
+      }
+      int height = header.readInt();
+      int width = header.readInt();
+      if (height <= 0 || width <= 0 || (long) height * width > MAX_PIXELS) {
+        throw new IOException("Invalid HAAR file: bad dimensions.");
+      }
+
+      Inflater inflater = new Inflater();
+      try {
+        VarIntReader reader = new VarIntReader(new InflaterInputStream(header, inflater));
+        int[][][] channels = new int[3][height][width];
+        long run = reader.read() - 1;
+        for (int[][] channel : channels) {
+          for (int[] row : channel) {
+            for (int j = 0; j < width && run >= 0; j++) {
+              if (run == 0) {
+                row[j] = (int) unzigzag(reader.read());
+                run = reader.read() - 1;
+              } else {
+                run--;
+              }
+            }
+          }
+        }
+        return new LiftingCoefficients(height, width, channels);
+      } finally {
+        inflater.end();
+      }
+    }
+  }
+
+  /**
+   * Reads Haar coefficients from a file.
+   *
+   * @param filePath The path of the file to read.
+   * @return The coefficients stored in the file.
+   * @throws IOException If the file cannot be read or is not a valid {@code .haar} file.
+   */
+  public HaarCoefficients read(String filePath) throws IOException {
+    return read(filePath, 0);
+  }
+
+  /**
+   * Reads the coefficients of a thumbnail from a file, scaled down by a factor of two for every
+   * level. Only the coarse coefficients at the start of the stream are decoded; the rest of the
+   * file is not read.
+   *
+   * @param filePath The path of the file to read.
+   * @param level    The number of resolution levels to drop.
+   * @return The coefficients of the thumbnail.
+   * @throws IOException If the file cannot be read or is not a valid {@code .haar} file.
+   */
+  public HaarCoefficients read(String filePath, int level) throws IOException {
+    try (DataInputStream header = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(filePath), 1 << 16))) {
+      if (readMode(header) != MODE_QUANTIZED) {
+        throw new IOException("Invalid HAAR file: not a quantized file.");
+      }
+      int height = header.readInt();
+      int width = header.readInt();
+      int size = header.readInt();
+      double step = header.readDouble();
+      if (height <= 0 || width <= 0 || size < Math.max(height, width)
+              || Integer.bitCount(size) != 1 || (long) size * size > MAX_PIXELS) {
+        throw new IOException("Invalid HAAR file: bad dimensions.");
+      }
+      if (!isValidStep(step)) {
+        throw new IOException("Invalid HAAR file: bad quantization step.");
+      }
+
+      Inflater inflater = new Inflater();
+      try {
+        VarIntReader reader = new VarIntReader(new InflaterInputStream(header, inflater));
+        level = Math.max(0, Math.min(level, HaarCoefficients.maxLevel(size)));
+        int side = size >> level;
+        double[][][] channels = new double[3][side][side];
+        long run = reader.read() - 1;
+        for (double[][] channel : channels) {
+          if (run == 0) {
+            channel[0][0] = unzigzag(reader.read()) * step;
+            run = reader.read() - 1;
+          } else if (run > 0) {
+            run--;
+          }
+        }
+        for (int s = 1; s < side && run >= 0; s *= 2) {
+          for (double[][] channel : channels) {
+            for (int i = 0; i < 2 * s; i++) {
+              double[] row = channel[i];
+              for (int j = i < s ? s : 0; j < 2 * s; j++) {
+                if (run == 0) {
+                  row[j] = unzigzag(reader.read()) * step;
+                  run = reader.read() - 1;
+                } else if (run > 0) {
+                  run--;
+                }
+              }
+            }
+          }
+        }
+        if (level > 0) {
+          return HaarCoefficients.scaleDown(height, width, channels, level);
+        }
+        return new HaarCoefficients(height, width, size, channels);
+      } finally {
+        inflater.end();
+      }
+    }
+  }
+
+  /**
+   * Reads the size of the image stored in a file from its header, without reading its
+   * coefficients.
+   *
+   * @param filePath The path of the file to read.
+   * @return The height and the width of the image.
+   * @throws IOException If the file cannot be read or is not a valid {@code .haar} file.
+   */
+  public int[] readSize(String filePath) throws IOException {
+    try (DataInputStream header = new DataInputStream(new FileInputStream(filePath))) {
+      readMode(header);
+      int height = header.readInt();
+      int width = header.readInt();
+      if (height <= 0 || width <= 0 || (long) height * width > MAX_PIXELS) {
+        throw new IOException("Invalid HAAR file: bad dimensions.");
+      }
+      return new int[]{height, width};
+    }
+  }
+
+  /**
+   * Checks that a quantization step is a positive finite number.
+   *
+   * @param step The quantization step.
+   * @return true if the step is valid.
+   */
+  private static boolean isValidStep(double step) {
+    return step > 0 && !Double.isInfinite(step);
+  }
+
+  /**
+   * Reads and checks the magic bytes and version at the start of a file.
+   *
+   * @param header The stream positioned at the start of the file.
+   * @return The mode of the file.
+   * @throws IOException If the file is not a valid {@code .haar} file.
+   */
+  private static int readMode(DataInputStream header) throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    header.readFully(magic);
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (magic[i] != MAGIC[i]) {
+        throw new IOException("Invalid HAAR file: missing HAAR header.");
+      }
+    }
+    int version = header.readUnsignedByte();
+    int mode = header.readUnsignedByte();
+    if (version != VERSION || (mode != MODE_QUANTIZED && mode != MODE_LOSSLESS)) {
+      throw new IOException("Unsupported HAAR file version " + version + " mode " + mode + ".");
+    }
+    return mode;
+  }
+
+  /**
+   * Maps a signed value to an unsigned one so that small magnitudes get short encodings.
+   *
+   * @param value The signed value.
+   * @return The zigzag encoded value.
+   */
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Reverts the zigzag encoding of a value.
+   *
+   * @param value The zigzag encoded value.
+   * @return The signed value.
+   */
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Writes unsigned variable length integers, seven bits per byte, through a byte buffer.
+   */
+  private static class VarIntWriter {
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+
+    VarIntWriter(OutputStream out) {
+      this.out = out;
+    }
+
+    void write(long value) throws IOException {
+      if (position > buffer.length - 10) {
+        flush();
+      }
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void flush() throws IOException {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+
+  /**
+   * Reads unsigned variable length integers, seven bits per byte, through a byte buffer.
+   */
+  private static class VarIntReader {
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+    private int limit;
+
+    VarIntReader(InputStream in) {
+      this.in = in;
+    }
+
+    long read() throws IOException {
+      long value = 0;
+      int shift = 0;
+      while (true) {
+        if (position == limit) {
+          limit = in.read(buffer, 0, buffer.length);
+          position = 0;
+          if (limit <= 0) {
+            throw new EOFException("Invalid HAAR file: truncated coefficient data.");
+          }
+        }
+        byte b = buffer[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+        shift += 7;
+      }
+    }
+  }
+}
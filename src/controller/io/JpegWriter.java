@@ -0,0 +1,77 @@
+package controller.io;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * The JpegWriter class writes images as JPEG files through an {@link ImageWriter}, with a chosen
+ * compression quality.
+ */
+public class JpegWriter {
+
+  /**
+   * The compression quality used when none is given.
+   */
+  public static final float DEFAULT_QUALITY = 0.9f;
+
+  private final float quality;
+
+  /**
+   * Constructs a JpegWriter with the default compression quality.
+   */
+  public JpegWriter() {
+    this(DEFAULT_QUALITY);
+  }
+
+  /**
+   * Constructs a JpegWriter with the given compression quality.
+   *
+   * @param quality The compression quality, from 0 for the smallest files to 1 for the best
+   *                quality.
+   * @throws IllegalArgumentException If the quality is not between 0 and 1.
+   */
+  public JpegWriter(float quality) {
+    if (!(quality >= 0 && quality <= 1)) {
+      throw new IllegalArgumentException("The JPEG quality should be between 0 and 1.");
+    }
+    this.quality = quality;
+  }
+
+  /**
+   * Writes an image as a JPEG file.
+   *
+   * @param image    The image to write, without alpha.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written or no JPEG writer is available.
+   */
+  public void write(BufferedImage image, String filePath) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    if (!writers.hasNext()) {
+      throw new IOException("No JPEG writer is available.");
+    }
+    ImageWriter writer = writers.next();
+    File file = new File(filePath);
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Cannot replace " + filePath + ".");
+    }
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+      if (out == null) {
+        throw new IOException("Cannot write " + filePath + ".");
+      }
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+}
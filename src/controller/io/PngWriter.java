@@ -0,0 +1,573 @@
+package controller.io;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The PngWriter class writes images as 8 bit RGB PNG files with a chosen deflate level and row
+ * filter, so that file size can be traded for encoding speed. Low levels and simple filters
+ * encode fastest; level 9 with the adaptive filter gives the smallest files.
+ *
+ * <p>The supported filters are "none", "sub", "up", "average" and "paeth", which apply the same
+ * PNG filter to every row, and "adaptive", which picks for every row the filter whose output has
+ * the smallest sum of absolute values.
+ *
+ * <p>With more than one thread, the rows are split into blocks of about 128 KiB that are filtered
+ * and deflated concurrently, in the manner of pigz. Every block is compressed as raw deflate data
+ * primed with the last 32 KiB of the block before it as a preset dictionary, and ends on a byte
+ * boundary with a sync flush, except the last one, which ends the stream. The blocks are then
+ * joined behind a zlib header, followed by the Adler-32 checksum of all the filtered rows, and
+ * written as a single IDAT chunk that any standard decoder reads.
+ *
+ * <p>Unless a number of threads is given, images of at least {@value #PARALLEL_PIXELS} pixels are
+ * encoded with one thread per processor, and smaller ones with a single thread. The blocks are
+ * encoded on a pool of daemon threads shared by every writer, one per processor, so a write does
+ * not start threads of its own; asking for more threads than there are processors splits the
+ * image into as many parts, which the pool encodes as fast as it can.
+ */
+public class PngWriter {
+
+  /**
+   * The deflate level used when none is given.
+   */
+  public static final int DEFAULT_LEVEL = 6;
+
+  /**
+   * The filter used when none is given.
+   */
+  public static final String DEFAULT_FILTER = "adaptive";
+
+  /**
+   * The number of pixels from which an image is encoded with several threads, unless a number of
+   * threads is given.
+   */
+  public static final int PARALLEL_PIXELS = 1 << 20;
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final String[] FILTERS = {"none", "sub", "up", "average", "paeth"};
+  private static final int ADAPTIVE = -1;
+  private static final int CHUNK_LIMIT = 1 << 16;
+  private static final int BLOCK_SIZE = 1 << 17;
+  private static final int DICTIONARY_SIZE = 1 << 15;
+  private static final ExecutorService ENCODERS = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(), task -> {
+    Thread thread = new Thread(task, "png-encoder");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final int level;
+  private final int filter;
+  private final int threads;
+
+  /**
+   * Constructs a PngWriter with the default deflate level and filter, which chooses the number of
+   * threads from the size of the image.
+   */
+  public PngWriter() {
+    this(DEFAULT_LEVEL, DEFAULT_FILTER);
+  }
+
+  /**
+   * Constructs a PngWriter with the given deflate level and filter, which chooses the number of
+   * threads from the size of the image.
+   *
+   * @param level  The deflate level, from 0 for no compression to 9 for the best compression.
+   * @param filter The name of the row filter.
+   * @throws IllegalArgumentException If the level or the filter is not supported.
+   */
+  public PngWriter(int level, String filter) {
+    this(level, filterType(filter), 0);
+  }
+
+  /**
+   * Constructs a PngWriter with the given deflate level, filter and number of threads.
+   *
+   * @param level   The deflate level, from 0 for no compression to 9 for the best compression.
+   * @param filter  The name of the row filter.
+   * @param threads The number of threads that filter and deflate blocks of rows concurrently.
+   * @throws IllegalArgumentException If the level, the filter or the number of threads is not
+   *                                  supported.
+   */
+  public PngWriter(int level, String filter, int threads) {
+    this(level, filterType(filter), threads);
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads should be at least 1.");
+    }
+  }
+
+  /**
+   * Constructs a PngWriter with the given deflate level, filter type and number of threads.
+   *
+   * @param level   The deflate level, from 0 for no compression to 9 for the best compression.
+   * @param filter  The row filter type, or {@link #ADAPTIVE}.
+   * @param threads The number of threads, or 0 to choose it from the size of the image.
+   * @throws IllegalArgumentException If the level is not supported.
+   */
+  private PngWriter(int level, int filter, int threads) {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("The deflate level should be between 0 and 9.");
+    }
+    this.level = level;
+    this.filter = filter;
+    this.threads = threads;
+  }
+
+  /**
+   * Writes an image as a PNG file. Only the red, green and blue channels are written.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(BufferedImage image, String filePath) throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+
+    try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filePath), CHUNK_LIMIT + 12))) {
+      out.write(SIGNATURE);
+      byte[] header = new byte[13];
+      putInt(header, 0, width);
+      putInt(header, 4, height);
+      header[8] = 8;
+      header[9] = 2;
+      writeChunk(out, "IHDR", header, header.length);
+
+      int workers = threads > 0 ? threads
+          : (long) width * height >= PARALLEL_PIXELS
+          ? Runtime.getRuntime().availableProcessors() : 1;
+      if (workers > 1) {
+        writeParallel(image, out, workers);
+      } else {
+        writeSequential(image, out);
+      }
+      writeChunk(out, "IEND", new byte[0], 0);
+    }
+  }
+
+  /**
+   * Filters and deflates the rows one after the other into IDAT chunks of at most 64 KiB.
+   *
+   * @param image The image to write.
+   * @param out   The stream to write the chunks to.
+   * @throws IOException If the chunks cannot be written.
+   */
+  private void writeSequential(BufferedImage image, DataOutputStream out) throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    Deflater deflater = new Deflater(level);
+    try {
+      DeflaterOutputStream idat = new DeflaterOutputStream(new ChunkOutputStream(out), deflater,
+              CHUNK_LIMIT);
+      int[] rgb = new int[width];
+      byte[] previous = new byte[width * 3];
+      byte[] current = new byte[width * 3];
+      byte[][] filtered = new byte[FILTERS.length][width * 3 + 1];
+      for (int i = 0; i < height; i++) {
+        readRow(image, i, rgb, current);
+        idat.write(filterRow(current, previous, filtered));
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+      }
+      idat.close();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Filters and deflates blocks of rows concurrently and writes them as a single IDAT chunk.
+   *
+   * @param image   The image to write.
+   * @param out     The stream to write the chunk to.
+   * @param workers The number of threads encoding blocks at the same time.
+   * @throws IOException If the chunk cannot be written or a block cannot be encoded.
+   */
+  private void writeParallel(BufferedImage image, DataOutputStream out, int workers)
+          throws IOException {
+    int height = image.getHeight();
+    int rowsPerBlock = Math.max(1, BLOCK_SIZE / (image.getWidth() * 3 + 1));
+    int blockCount = (height + rowsPerBlock - 1) / rowsPerBlock;
+    byte[][] filtered = new byte[blockCount][];
+    byte[][] compressed = new byte[blockCount][];
+
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int k = 0; k < blockCount; k++) {
+      int block = k;
+      tasks.add(() -> {
+        filtered[block] = filterBlock(image, block * rowsPerBlock,
+                Math.min(height, (block + 1) * rowsPerBlock));
+        return null;
+      });
+    }
+    runAll(tasks, workers);
+    tasks.clear();
+    for (int k = 0; k < blockCount; k++) {
+      int block = k;
+      tasks.add(() -> {
+        compressed[block] = deflateBlock(filtered[block],
+                block > 0 ? filtered[block - 1] : null, block == blockCount - 1);
+        return null;
+      });
+    }
+    runAll(tasks, workers);
+
+    Adler32 adler = new Adler32();
+    long length = 6;
+    for (int k = 0; k < blockCount; k++) {
+      adler.update(filtered[k]);
+      length += compressed[k].length;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("The image is too large for a single IDAT chunk.");
+    }
+    int flags = (level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3) << 6;
+    flags += 31 - (0x7800 + flags) % 31;
+    byte[] header = {0x78, (byte) flags};
+    byte[] trailer = new byte[4];
+    putInt(trailer, 0, (int) adler.getValue());
+
+    byte[] typeBytes = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(header);
+    for (byte[] block : compressed) {
+      crc.update(block);
+    }
+    crc.update(trailer);
+    out.writeInt((int) length);
+    out.write(typeBytes);
+    out.write(header);
+    for (byte[] block : compressed) {
+      out.write(block);
+    }
+    out.write(trailer);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Filters a range of rows into one array, each row starting with its filter type byte.
+   *
+   * @param image The image to read the rows from.
+   * @param top   The first row of the range.
+   * @param end   The row after the last row of the range.
+   * @return The filtered rows.
+   */
+  private byte[] filterBlock(BufferedImage image, int top, int end) {
+    int width = image.getWidth();
+    int rowLength = width * 3;
+    byte[] block = new byte[(end - top) * (rowLength + 1)];
+    int[] rgb = new int[width];
+    byte[] previous = new byte[rowLength];
+    byte[] current = new byte[rowLength];
+    byte[][] filtered = new byte[FILTERS.length][rowLength + 1];
+    if (top > 0) {
+      readRow(image, top - 1, rgb, previous);
+    }
+    for (int i = top; i < end; i++) {
+      readRow(image, i, rgb, current);
+      System.arraycopy(filterRow(current, previous, filtered), 0, block,
+              (i - top) * (rowLength + 1), rowLength + 1);
+      byte[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return block;
+  }
+
+  /**
+   * Deflates a block of filtered rows as raw deflate data.
+   *
+   * @param block    The filtered rows to compress.
+   * @param previous The filtered rows of the block before, whose end primes the compressor, or
+   *                 null for the first block.
+   * @param last     Whether this block ends the deflate stream.
+   * @return The compressed block, ending on a byte boundary.
+   */
+  private byte[] deflateBlock(byte[] block, byte[] previous, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (previous != null) {
+        int length = Math.min(DICTIONARY_SIZE, previous.length);
+        deflater.setDictionary(previous, previous.length - length, length);
+      }
+      deflater.setInput(block);
+      ByteArrayOutputStream result = new ByteArrayOutputStream(block.length / 2 + 64);
+      byte[] buffer = new byte[CHUNK_LIMIT];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int count = deflater.deflate(buffer);
+          result.write(buffer, 0, count);
+        }
+      } else {
+        int count;
+        do {
+          count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          result.write(buffer, 0, count);
+        } while (count == buffer.length || !deflater.needsInput());
+      }
+      return result.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Runs tasks on the shared encoding threads, at most a given number at the same time, and waits
+   * for all of them to finish.
+   *
+   * @param tasks   The tasks to run.
+   * @param workers The most tasks run at the same time.
+   * @throws IOException If a task fails or the wait is interrupted.
+   */
+  private static void runAll(List<Callable<Void>> tasks, int workers) throws IOException {
+    AtomicInteger next = new AtomicInteger();
+    List<Callable<Void>> loops = new ArrayList<>();
+    for (int k = Math.min(workers, tasks.size()); k > 0; k--) {
+      loops.add(() -> {
+        for (int task = next.getAndIncrement(); task < tasks.size();
+             task = next.getAndIncrement()) {
+          tasks.get(task).call();
+        }
+        return null;
+      });
+    }
+    try {
+      for (Future<Void> future : ENCODERS.invokeAll(loops)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding the image.", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error while encoding the image: " + e.getCause().getMessage(),
+              e.getCause());
+    }
+  }
+
+  /**
+   * Reads a row of an image as interleaved red, green and blue samples.
+   *
+   * @param image  The image to read.
+   * @param row    The index of the row.
+   * @param rgb    Scratch space for the packed pixels of the row.
+   * @param target The array to write the samples to.
+   */
+  private static void readRow(BufferedImage image, int row, int[] rgb, byte[] target) {
+    int width = image.getWidth();
+    image.getRGB(0, row, width, 1, rgb, 0, width);
+    for (int j = 0, index = 0; j < width; j++) {
+      target[index++] = (byte) (rgb[j] >> 16);
+      target[index++] = (byte) (rgb[j] >> 8);
+      target[index++] = (byte) rgb[j];
+    }
+  }
+
+  /**
+   * Filters a row of samples with the configured filter.
+   *
+   * @param current  The samples of the row.
+   * @param previous The samples of the row above, all zero for the first row.
+   * @param filtered Scratch rows, one per filter, each starting with the filter type byte.
+   * @return The filtered row, starting with its filter type byte.
+   */
+  private byte[] filterRow(byte[] current, byte[] previous, byte[][] filtered) {
+    if (filter != ADAPTIVE) {
+      applyFilter(filter, current, previous, filtered[filter]);
+      return filtered[filter];
+    }
+    int best = 0;
+    long bestSum = Long.MAX_VALUE;
+    for (int type = 0; type < FILTERS.length; type++) {
+      long sum = applyFilter(type, current, previous, filtered[type]);
+      if (sum < bestSum) {
+        bestSum = sum;
+        best = type;
+      }
+    }
+    return filtered[best];
+  }
+
+  /**
+   * Applies one PNG filter to a row of samples.
+   *
+   * @param type     The filter type, from 0 for none to 4 for Paeth.
+   * @param current  The samples of the row.
+   * @param previous The samples of the row above.
+   * @param target   The row to write the filter type and the filtered samples to.
+   * @return The sum of the absolute values of the filtered samples, read as signed bytes.
+   */
+  private static long applyFilter(int type, byte[] current, byte[] previous, byte[] target) {
+    target[0] = (byte) type;
+    long sum = 0;
+    for (int k = 0; k < current.length; k++) {
+      int x = current[k] & 0xFF;
+      int a = k >= 3 ? current[k - 3] & 0xFF : 0;
+      int b = previous[k] & 0xFF;
+      int c = k >= 3 ? previous[k - 3] & 0xFF : 0;
+      int predicted;
+      switch (type) {
+        case 1:
+          predicted = a;
+          break;
+        case 2:
+          predicted = b;
+          break;
+        case 3:
+          predicted = (a + b) >>> 1;
+          break;
+        case 4:
+          predicted = paeth(a, b, c);
+          break;
+        default:
+          predicted = 0;
+          break;
+      }
+      byte value = (byte) (x - predicted);
+      target[k + 1] = value;
+      sum += Math.abs(value);
+    }
+    return sum;
+  }
+
+  /**
+   * Predicts a sample from its left, upper and upper left neighbours with the Paeth predictor.
+   *
+   * @param a The sample to the left.
+   * @param b The sample above.
+   * @param c The sample above and to the left.
+   * @return The neighbour closest to a + b - c.
+   */
+  private static int paeth(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    }
+    return pb <= pc ? b : c;
+  }
+
+  /**
+   * Maps a filter name to its PNG filter type.
+   *
+   * @param filter The name of the filter.
+   * @return The filter type, or {@link #ADAPTIVE}.
+   * @throws IllegalArgumentException If the filter is not supported.
+   */
+  private static int filterType(String filter) {
+    if (DEFAULT_FILTER.equalsIgnoreCase(filter)) {
+      return ADAPTIVE;
+    }
+    for (int type = 0; type < FILTERS.length; type++) {
+      if (FILTERS[type].equalsIgnoreCase(filter)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown PNG filter: " + filter + ".");
+  }
+
+  /**
+   * Writes a PNG chunk: its length, type, data and CRC.
+   *
+   * @param out    The stream to write to.
+   * @param type   The four letter chunk type.
+   * @param data   The chunk data.
+   * @param length The number of data bytes to write.
+   * @throws IOException If the chunk cannot be written.
+   */
+  private static void writeChunk(DataOutputStream out, String type, byte[] data, int length)
+          throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Stores a big endian integer in a byte array.
+   *
+   * @param target The array to write to.
+   * @param offset The position of the first byte.
+   * @param value  The value to store.
+   */
+  private static void putInt(byte[] target, int offset, int value) {
+    target[offset] = (byte) (value >>> 24);
+    target[offset + 1] = (byte) (value >>> 16);
+    target[offset + 2] = (byte) (value >>> 8);
+    target[offset + 3] = (byte) value;
+  }
+
+  /**
+   * Collects compressed bytes and writes them as IDAT chunks of at most 64 KiB each.
+   */
+  private static class ChunkOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte[] buffer = new byte[CHUNK_LIMIT];
+    private int position;
+
+    ChunkOutputStream(DataOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (position == buffer.length) {
+        flushChunk();
+      }
+      buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (position == buffer.length) {
+          flushChunk();
+        }
+        int count = Math.min(length, buffer.length - position);
+        System.arraycopy(bytes, offset, buffer, position, count);
+        position += count;
+        offset += count;
+        length -= count;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flushChunk();
+    }
+
+    private void flushChunk() throws IOException {
+      if (position > 0) {
+        writeChunk(out, "IDAT", buffer, position);
+        position = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,299 @@
+package controller.io;
+
+import java.awt.Rectangle;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.imageio.ImageReadParam;
+import model.Image;
+
+/**
+ * The PpmReader class reads PPM and PGM files, both in the plain (P3, P2) and in the binary (P6,
+ * P5) dialects. Plain files are streamed through a fixed size buffer and the numbers are parsed
+ * directly from its bytes, so memory use does not depend on the size of the file beyond the image
+ * itself. Comments, which start with {@code #} and run to the end of the line, may appear anywhere
+ * whitespace may. The samples of binary files are read through a memory mapping of the file, one
+ * row at a time in bulk. Greyscale samples are copied to all three channels, and sample values are
+ * kept as they are, whatever the maximum value in the header. A region of the image, subsampled,
+ * can be read instead of the whole image.
+ */
+public class PpmReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  /**
+   * Reads a PPM or PGM image from a file.
+   *
+   * @param filePath The path of the file to read.
+   * @return The image stored in the file.
+   * @throws java.io.FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read or is not a valid PPM or PGM file.
+   */
+  public Image read(String filePath) throws IOException {
+    return read(filePath, null);
+  }
+
+  /**
+   * Reads the size of a PPM or PGM image from the header of a file, without reading its pixels.
+   *
+   * @param filePath The path of the file to read.
+   * @return The height and the width of the image.
+   * @throws java.io.FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read or is not a valid PPM or PGM file.
+   */
+  public int[] readSize(String filePath) throws IOException {
+    try (FileInputStream in = new FileInputStream(filePath)) {
+      channel = in.getChannel();
+      buffer.clear().flip();
+      int type = nextType();
+      int width = nextInt();
+      int height = nextInt();
+      if (width <= 0 || height <= 0) {
+        throw new IOException("Invalid PPM file: bad dimensions.");
+      }
+      return new int[]{height, width};
+    } finally {
+      channel = null;
+    }
+  }
+
+  /**
+   * Reads part of a PPM or PGM image from a file, as described by the source region and the
+   * source subsampling factors of the given parameters. The region is clipped to the image, and
+   * only the pixels kept are stored; the rows of binary files that are skipped are not read at
+   * all. Subsampling offsets and the other parameters are ignored.
+   *
+   * @param filePath The path of the file to read.
+   * @param param    The parameters describing the pixels to read, or null to read them all.
+   * @return The image made of the pixels read.
+   * @throws java.io.FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read, is not a valid PPM or PGM file, or the region
+   *                     lies outside the image.
+   */
+  public Image read(String filePath, ImageReadParam param) throws IOException {
+    try (FileInputStream in = new FileInputStream(filePath)) {
+      channel = in.getChannel();
+      buffer.clear().flip();
+      int type = nextType();
+      int width = nextInt();
+      int height = nextInt();
+      int maxValue = nextInt();
+      if (width <= 0 || height <= 0) {
+        throw new IOException("Invalid PPM file: bad dimensions.");
+      }
+      if (maxValue <= 0 || maxValue > 65535) {
+        throw new IOException("Invalid PPM file: bad maximum value.");
+      }
+      Rectangle region = new Rectangle(0, 0, width, height);
+      int stepX = 1;
+      int stepY = 1;
+      if (param != null) {
+        if (param.getSourceRegion() != null) {
+          region = region.intersection(param.getSourceRegion());
+        }
+        stepX = param.getSourceXSubsampling();
+        stepY = param.getSourceYSubsampling();
+      }
+      if (region.isEmpty()) {
+        throw new IOException("The region lies outside the image.");
+      }
+      boolean greyscale = type == '2' || type == '5';
+      Image image = new Image((region.height + stepY - 1) / stepY,
+              (region.width + stepX - 1) / stepX);
+      if (type == '5' || type == '6') {
+        readBinary(image, width, height, greyscale, maxValue > 255, region, stepX, stepY);
+      } else {
+        readPlain(image, width, greyscale, region, stepX, stepY);
+      }
+      return image;
+    } finally {
+      channel = null;
+    }
+  }
+
+  /**
+   * Reads the samples of a plain file into an image. Every sample up to the last row kept has to
+   * be parsed, but only the pixels kept are stored.
+   *
+   * @param image     The image to fill.
+   * @param width     The width of the image in the file.
+   * @param greyscale Whether the file holds one sample per pixel instead of three.
+   * @param region    The region of the file to read.
+   * @param stepX     The distance between the columns kept.
+   * @param stepY     The distance between the rows kept.
+   * @throws IOException If the file cannot be read or holds an invalid sample.
+   */
+  private void readPlain(Image image, int width, boolean greyscale, Rectangle region, int stepX,
+          int stepY) throws IOException {
+    int lastRow = region.y + (image.getHeight() - 1) * stepY;
+    for (int i = 0; i <= lastRow; i++) {
+      boolean keepRow = i >= region.y && (i - region.y) % stepY == 0;
+      for (int j = 0; j < width; j++) {
+        int red = nextInt();
+        int green = greyscale ? red : nextInt();
+        int blue = greyscale ? red : nextInt();
+        if (keepRow && j >= region.x && j < region.x + region.width
+                && (j - region.x) % stepX == 0) {
+          image.setImage((i - region.y) / stepY, (j - region.x) / stepX, red, green, blue);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the samples of a binary file into an image, through a memory mapping of the rows that
+   * are kept. The single whitespace character after the header has already been consumed.
+   *
+   * @param image     The image to fill.
+   * @param width     The width of the image in the file.
+   * @param height    The height of the image in the file.
+   * @param greyscale Whether the file holds one sample per pixel instead of three.
+   * @param wide      Whether every sample takes two bytes, most significant first.
+   * @param region    The region of the file to read.
+   * @param stepX     The distance between the columns kept.
+   * @param stepY     The distance between the rows kept.
+   * @throws IOException If the file cannot be read or is too short.
+   */
+  private void readBinary(Image image, int width, int height, boolean greyscale, boolean wide,
+          Rectangle region, int stepX, int stepY) throws IOException {
+    int samples = greyscale ? 1 : 3;
+    int pixelLength = samples * (wide ? 2 : 1);
+    long rowLength = (long) width * pixelLength;
+    long offset = channel.position() - buffer.remaining();
+    if (rowLength * height > Integer.MAX_VALUE) {
+      throw new IOException("Invalid PPM file: image too large.");
+    }
+    if (channel.size() - offset < rowLength * height) {
+      throw new IOException("Invalid PPM file: unexpected end of file.");
+    }
+    int rows = image.getHeight();
+    int columns = image.getWidth();
+    MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+            offset + region.y * rowLength, ((long) (rows - 1) * stepY + 1) * rowLength);
+    byte[] row = new byte[region.width * pixelLength];
+    for (int i = 0; i < rows; i++) {
+      data.get((int) (i * stepY * rowLength + region.x * pixelLength), row);
+      for (int j = 0; j < columns; j++) {
+        int[] pixel = image.getImage(i, j);
+        int index = j * stepX * pixelLength;
+        for (int c = 0; c < samples; c++) {
+          if (wide) {
+            pixel[c] = (row[index] & 0xFF) << 8 | (row[index + 1] & 0xFF);
+            index += 2;
+          } else {
+            pixel[c] = row[index++] & 0xFF;
+          }
+        }
+        if (greyscale) {
+          pixel[1] = pixel[0];
+          pixel[2] = pixel[0];
+        }
+      }
+    }
+  }
+
+  /**
+   * Parses the magic number at the start of the file, which has to be followed by whitespace or a
+   * comment.
+   *
+   * @return The type of the file: '2', '3', '5' or '6'.
+   * @throws IOException If the file does not begin with a supported magic number.
+   */
+  private int nextType() throws IOException {
+    int type = nextByte() == 'P' ? nextByte() : 0;
+    if (type != '2' && type != '3' && type != '5' && type != '6') {
+      throw new IOException("Invalid PPM file: should begin with P3 or P6, "
+              + "or with P2 or P5 for greyscale");
+    }
+    int b = nextByte();
+    if (b == '#') {
+      buffer.position(buffer.position() - 1);
+    } else if (!isWhitespace(b)) {
+      throw new IOException("Invalid PPM file: unexpected character '" + (char) b
+              + "' after P" + (char) type + ".");
+    }
+    return type;
+  }
+
+  /**
+   * Parses the next non-negative decimal number, skipping whitespace and comments before it.
+   *
+   * @return The parsed number.
+   * @throws IOException If the file ends or another character is found before a number.
+   */
+  private int nextInt() throws IOException {
+    int b = nextByte();
+    while (true) {
+      if (b == '#') {
+        while (b != '\n' && b != '\r') {
+          b = nextByte();
+        }
+      } else if (isWhitespace(b)) {
+        b = nextByte();
+      } else {
+        break;
+      }
+    }
+    if (b < '0' || b > '9') {
+      throw new IOException("Invalid PPM file: unexpected character '" + (char) b + "'.");
+    }
+    int value = 0;
+    while (b >= '0' && b <= '9') {
+      value = value * 10 + (b - '0');
+      if (!buffer.hasRemaining() && !fill()) {
+        return value;
+      }
+      b = buffer.get() & 0xFF;
+    }
+    if (b == '#') {
+      buffer.position(buffer.position() - 1);
+    } else if (!isWhitespace(b)) {
+      throw new IOException("Invalid PPM file: unexpected character '" + (char) b + "'.");
+    }
+    return value;
+  }
+
+  /**
+   * Checks whether a byte is a whitespace character that separates PPM tokens.
+   *
+   * @param b The byte to check.
+   * @return true if the byte is whitespace.
+   */
+  private static boolean isWhitespace(int b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+  }
+
+  /**
+   * Returns the next byte of the file.
+   *
+   * @return The next byte, as an unsigned value.
+   * @throws IOException If the file ends.
+   */
+  private int nextByte() throws IOException {
+    if (!buffer.hasRemaining() && !fill()) {
+      throw new IOException("Invalid PPM file: unexpected end of file.");
+    }
+    return buffer.get() & 0xFF;
+  }
+
+  /**
+   * Refills the buffer from the file.
+   *
+   * @return false if the end of the file was reached.
+   * @throws IOException If the file cannot be read.
+   */
+  private boolean fill() throws IOException {
+    buffer.clear();
+    int read;
+    do {
+      read = channel.read(buffer);
+    } while (read == 0);
+    buffer.flip();
+    return read > 0;
+  }
+}
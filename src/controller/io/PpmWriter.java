@@ -0,0 +1,191 @@
+package controller.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import model.Image;
+
+/**
+ * The PpmWriter class writes images as plain PPM (P3) files, as binary PPM (P6) files, or as binary
+ * PGM (P5) files for single channel images. The samples are formatted or packed into a large,
+ * reused byte buffer, many rows at a time, which is handed to the file channel in bulk. Plain
+ * samples are formatted with a lookup table of the digits of every value up to 999, so no strings
+ * are built per pixel. Binary sample values are clamped between 0 and 255.
+ */
+public class PpmWriter {
+
+  private static final int CHUNK_SIZE = 1 << 20;
+  private static final int MAX_SAMPLE_LENGTH = 12;
+  private static final int TABLE_SIZE = 1000;
+  private static final byte[] DIGITS = new byte[TABLE_SIZE * 3];
+  private static final byte[] DIGIT_COUNTS = new byte[TABLE_SIZE];
+
+  static {
+    for (int value = 0; value < TABLE_SIZE; value++) {
+      String digits = Integer.toString(value);
+      DIGIT_COUNTS[value] = (byte) digits.length();
+      for (int k = 0; k < digits.length(); k++) {
+        DIGITS[value * 3 + k] = (byte) digits.charAt(k);
+      }
+    }
+  }
+
+  /**
+   * Writes an image as a plain PPM (P3) file. Every row of pixels is written on its own line, each
+   * sample followed by a space.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void writePlain(Image image, String filePath) throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    byte[] header = ("P3\n" + width + " " + height + "\n255\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    try (FileOutputStream out = new FileOutputStream(filePath)) {
+      FileChannel channel = out.getChannel();
+      writeFully(channel, ByteBuffer.wrap(header));
+      byte[] chunk = new byte[CHUNK_SIZE];
+      ByteBuffer buffer = ByteBuffer.wrap(chunk);
+      int index = 0;
+      for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) {
+          if (index > CHUNK_SIZE - 3 * MAX_SAMPLE_LENGTH - 1) {
+            buffer.clear().limit(index);
+            writeFully(channel, buffer);
+            index = 0;
+          }
+          int[] pixel = image.getImage(i, j);
+          for (int c = 0; c < 3; c++) {
+            index = formatSample(pixel[c], chunk, index);
+            chunk[index++] = ' ';
+          }
+        }
+        if (index == CHUNK_SIZE) {
+          buffer.clear().limit(index);
+          writeFully(channel, buffer);
+          index = 0;
+        }
+        chunk[index++] = '\n';
+      }
+      buffer.clear().limit(index);
+      writeFully(channel, buffer);
+    }
+  }
+
+  /**
+   * Writes an image as a binary PPM (P6) file.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void writeBinary(Image image, String filePath) throws IOException {
+    write(image, filePath, false);
+  }
+
+  /**
+   * Writes the red channel of an image as a binary PGM (P5) file. Single channel images, such as
+   * the components of an image, hold the same value in all three channels.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void writeGreyscale(Image image, String filePath) throws IOException {
+    write(image, filePath, true);
+  }
+
+  /**
+   * Writes the header and the samples of a binary file.
+   *
+   * @param image     The image to write.
+   * @param filePath  The path of the file to write.
+   * @param greyscale Whether to write one sample per pixel instead of three.
+   * @throws IOException If the file cannot be written.
+   */
+  private void write(Image image, String filePath, boolean greyscale) throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int samples = greyscale ? 1 : 3;
+    int rowLength = width * samples;
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / rowLength);
+    byte[] header = ((greyscale ? "P5\n" : "P6\n") + width + " " + height + "\n255\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    try (FileOutputStream out = new FileOutputStream(filePath)) {
+      FileChannel channel = out.getChannel();
+      writeFully(channel, ByteBuffer.wrap(header));
+      byte[] chunk = new byte[Math.min(rowsPerChunk, height) * rowLength];
+      ByteBuffer buffer = ByteBuffer.wrap(chunk);
+      for (int top = 0; top < height; top += rowsPerChunk) {
+        int bottom = Math.min(height, top + rowsPerChunk);
+        int index = 0;
+        for (int i = top; i < bottom; i++) {
+          for (int j = 0; j < width; j++) {
+            int[] pixel = image.getImage(i, j);
+            for (int c = 0; c < samples; c++) {
+              chunk[index++] = (byte) Math.max(0, Math.min(255, pixel[c]));
+            }
+          }
+        }
+        buffer.clear().limit(index);
+        writeFully(channel, buffer);
+      }
+    }
+  }
+
+  /**
+   * Formats a sample as decimal digits into a byte array.
+   *
+   * @param value  The sample value.
+   * @param target The array to write to.
+   * @param index  The position to start writing at.
+   * @return The position after the last digit written.
+   */
+  private static int formatSample(int value, byte[] target, int index) {
+    if (value >= 0 && value < TABLE_SIZE) {
+      int offset = value * 3;
+      int count = DIGIT_COUNTS[value];
+      target[index] = DIGITS[offset];
+      if (count > 1) {
+        target[index + 1] = DIGITS[offset + 1];
+        if (count > 2) {
+          target[index + 2] = DIGITS[offset + 2];
+        }
+      }
+      return index + count;
+    }
+    long remaining = value;
+    if (remaining < 0) {
+      target[index++] = '-';
+      remaining = -remaining;
+    }
+    int end = index;
+    for (long rest = remaining; rest >= 10; rest /= 10) {
+      end++;
+    }
+    for (int k = end; k >= index; k--) {
+      target[k] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    return end + 1;
+  }
+
+  /**
+   * Writes all the remaining bytes of a buffer to a channel.
+   *
+   * @param channel The channel to write to.
+   * @param buffer  The bytes to write.
+   * @throws IOException If the bytes cannot be written.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,301 @@
+package controller.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import model.Image;
+
+/**
+ * The QoiFormat class reads and writes images in the QOI ("Quite OK Image") format, a lossless
+ * format that is much faster to encode and decode than PNG while compressing nearly as well. Every
+ * pixel is stored as a run of the previous pixel, a reference into a table of 64 recently seen
+ * pixels, a small difference from the previous pixel, or its full value.
+ *
+ * <p>Both directions stream the pixels of the image straight through a fixed size byte buffer that
+ * is exchanged with the file channel in bulk, with no intermediate image. Images are written with
+ * three channels; sample values are clamped between 0 and 255. Files with four channels are read
+ * too, and their alpha channel is dropped.
+ */
+public class QoiFormat {
+
+  private static final byte[] MAGIC = {'q', 'o', 'i', 'f'};
+  private static final int HEADER_SIZE = 14;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int MAX_OP_SIZE = 5;
+  private static final int MAX_PIXELS = 400_000_000;
+  private static final int MAX_RUN = 62;
+  private static final byte[] END_MARKER = {0, 0, 0, 0, 0, 0, 0, 1};
+
+  private static final int OP_INDEX = 0x00;
+  private static final int OP_DIFF = 0x40;
+  private static final int OP_LUMA = 0x80;
+  private static final int OP_RUN = 0xC0;
+  private static final int OP_RGB = 0xFE;
+  private static final int OP_RGBA = 0xFF;
+  private static final int OP_MASK = 0xC0;
+
+  /**
+   * Writes an image as a QOI file.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(Image image, String filePath) throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    byte[] chunk = new byte[BUFFER_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    buffer.put(MAGIC).putInt(width).putInt(height).put((byte) 3).put((byte) 0);
+    int index = buffer.position();
+
+    try (FileOutputStream out = new FileOutputStream(filePath)) {
+      FileChannel channel = out.getChannel();
+      int[] seen = new int[64];
+      int previous = 0xFF000000;
+      int run = 0;
+      for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) {
+          if (index > BUFFER_SIZE - MAX_OP_SIZE) {
+            writeFully(channel, buffer, index);
+            index = 0;
+          }
+          int[] pixel = image.getImage(i, j);
+          int red = clamp(pixel[0]);
+          int green = clamp(pixel[1]);
+          int blue = clamp(pixel[2]);
+          int current = 0xFF000000 | red << 16 | green << 8 | blue;
+          if (current == previous) {
+            run++;
+            if (run == MAX_RUN) {
+              chunk[index++] = (byte) (OP_RUN | (run - 1));
+              run = 0;
+            }
+            continue;
+          }
+          if (run > 0) {
+            chunk[index++] = (byte) (OP_RUN | (run - 1));
+            run = 0;
+          }
+          int position = hash(current);
+          if (seen[position] == current) {
+            chunk[index++] = (byte) (OP_INDEX | position);
+          } else {
+            seen[position] = current;
+            int dr = (byte) (red - (previous >> 16 & 0xFF));
+            int dg = (byte) (green - (previous >> 8 & 0xFF));
+            int db = (byte) (blue - (previous & 0xFF));
+            int drg = dr - dg;
+            int dbg = db - dg;
+            if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+              chunk[index++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+            } else if (dg >= -32 && dg <= 31 && drg >= -8 && drg <= 7
+                && dbg >= -8 && dbg <= 7) {
+              chunk[index++] = (byte) (OP_LUMA | (dg + 32));
+              chunk[index++] = (byte) ((drg + 8) << 4 | (dbg + 8));
+            } else {
+              chunk[index++] = (byte) OP_RGB;
+              chunk[index++] = (byte) red;
+              chunk[index++] = (byte) green;
+              chunk[index++] = (byte) blue;
+            }
+          }
+          previous = current;
+        }
+      }
+      if (run > 0) {
+        chunk[index++] = (byte) (OP_RUN | (run - 1));
+      }
+      if (index > BUFFER_SIZE - END_MARKER.length) {
+        writeFully(channel, buffer, index);
+        index = 0;
+      }
+      System.arraycopy(END_MARKER, 0, chunk, index, END_MARKER.length);
+      writeFully(channel, buffer, index + END_MARKER.length);
+    }
+  }
+
+  /**
+   * Reads the size of an image from the header of a QOI file, without decoding its pixels.
+   *
+   * @param filePath The path of the file to read.
+   * @return The height and the width of the image.
+   * @throws java.io.FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read or is not a valid QOI file.
+   */
+  public int[] readSize(String filePath) throws IOException {
+    try (FileInputStream in = new FileInputStream(filePath)) {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+      buffer.flip();
+      fill(in.getChannel(), buffer, HEADER_SIZE);
+      byte[] magic = new byte[MAGIC.length];
+      buffer.get(magic);
+      long width = buffer.getInt() & 0xFFFFFFFFL;
+      long height = buffer.getInt() & 0xFFFFFFFFL;
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Invalid QOI file: should begin with qoif.");
+      }
+      if (width == 0 || height == 0 || width * height > MAX_PIXELS) {
+        throw new IOException("Invalid QOI file: bad dimensions.");
+      }
+      return new int[]{(int) height, (int) width};
+    }
+  }
+
+  /**
+   * Reads an image from a QOI file.
+   *
+   * @param filePath The path of the file to read.
+   * @return The image stored in the file.
+   * @throws java.io.FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read or is not a valid QOI file.
+   */
+  public Image read(String filePath) throws IOException {
+    try (FileInputStream in = new FileInputStream(filePath)) {
+      FileChannel channel = in.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      byte[] chunk = buffer.array();
+      buffer.flip();
+      fill(channel, buffer, HEADER_SIZE);
+      byte[] magic = new byte[MAGIC.length];
+      buffer.get(magic);
+      long width = buffer.getInt() & 0xFFFFFFFFL;
+      long height = buffer.getInt() & 0xFFFFFFFFL;
+      int channels = buffer.get();
+      buffer.get();
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Invalid QOI file: should begin with qoif.");
+      }
+      if (width == 0 || height == 0 || width * height > MAX_PIXELS) {
+        throw new IOException("Invalid QOI file: bad dimensions.");
+      }
+      if (channels != 3 && channels != 4) {
+        throw new IOException("Invalid QOI file: bad number of channels.");
+      }
+
+      Image image = new Image((int) height, (int) width);
+      int[] seen = new int[64];
+      int current = 0xFF000000;
+      int run = 0;
+      for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) {
+          if (run > 0) {
+            run--;
+          } else {
+            if (buffer.remaining() < MAX_OP_SIZE) {
+              fill(channel, buffer, 1);
+            }
+            int index = buffer.position();
+            int op = chunk[index++] & 0xFF;
+            if (op == OP_RGB) {
+              current = 0xFF000000 | (chunk[index] & 0xFF) << 16
+                  | (chunk[index + 1] & 0xFF) << 8 | chunk[index + 2] & 0xFF;
+              index += 3;
+            } else if (op == OP_RGBA) {
+              current = (chunk[index + 3] & 0xFF) << 24 | (chunk[index] & 0xFF) << 16
+                  | (chunk[index + 1] & 0xFF) << 8 | chunk[index + 2] & 0xFF;
+              index += 4;
+            } else if ((op & OP_MASK) == OP_INDEX) {
+              current = seen[op];
+            } else if ((op & OP_MASK) == OP_DIFF) {
+              current = add(current, (op >> 4 & 3) - 2, (op >> 2 & 3) - 2, (op & 3) - 2);
+            } else if ((op & OP_MASK) == OP_LUMA) {
+              int second = chunk[index++] & 0xFF;
+              int dg = (op & 0x3F) - 32;
+              current = add(current, dg + (second >> 4) - 8, dg, dg + (second & 0x0F) - 8);
+            } else {
+              run = op & 0x3F;
+            }
+            if (index > buffer.limit()) {
+              throw new IOException("Invalid QOI file: unexpected end of file.");
+            }
+            buffer.position(index);
+            seen[hash(current)] = current;
+          }
+          int[] pixel = image.getImage(i, j);
+          pixel[0] = current >> 16 & 0xFF;
+          pixel[1] = current >> 8 & 0xFF;
+          pixel[2] = current & 0xFF;
+        }
+      }
+      return image;
+    }
+  }
+
+  /**
+   * Computes the position of a pixel in the table of recently seen pixels.
+   *
+   * @param argb The pixel, packed as alpha, red, green and blue bytes.
+   * @return The position in the table, between 0 and 63.
+   */
+  private static int hash(int argb) {
+    return ((argb >> 16 & 0xFF) * 3 + (argb >> 8 & 0xFF) * 5 + (argb & 0xFF) * 7
+        + (argb >>> 24) * 11) & 63;
+  }
+
+  /**
+   * Adds differences to the channels of a pixel, wrapping around within each channel.
+   *
+   * @param argb  The pixel, packed as alpha, red, green and blue bytes.
+   * @param red   The difference of the red channel.
+   * @param green The difference of the green channel.
+   * @param blue  The difference of the blue channel.
+   * @return The new pixel, with the same alpha.
+   */
+  private static int add(int argb, int red, int green, int blue) {
+    return argb & 0xFF000000 | ((argb >> 16) + red & 0xFF) << 16
+        | ((argb >> 8) + green & 0xFF) << 8 | (argb + blue & 0xFF);
+  }
+
+  /**
+   * Clamps a sample value between 0 and 255.
+   *
+   * @param value The sample value.
+   * @return The clamped value.
+   */
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+
+  /**
+   * Moves the unread bytes of a buffer to its start and reads more of the file after them, until
+   * at least the given number of bytes, and a whole operation if possible, can be read.
+   *
+   * @param channel The channel to read from.
+   * @param buffer  The buffer to refill.
+   * @param minimum The number of bytes needed.
+   * @throws IOException If the file cannot be read or ends before the minimum.
+   */
+  private static void fill(FileChannel channel, ByteBuffer buffer, int minimum)
+      throws IOException {
+    buffer.compact();
+    int read = 0;
+    while (read >= 0 && buffer.position() < Math.max(minimum, MAX_OP_SIZE)) {
+      read = channel.read(buffer);
+    }
+    buffer.flip();
+    if (buffer.remaining() < minimum) {
+      throw new IOException("Invalid QOI file: unexpected end of file.");
+    }
+  }
+
+  /**
+   * Writes the first bytes of a buffer to a channel.
+   *
+   * @param channel The channel to write to.
+   * @param buffer  The buffer holding the bytes.
+   * @param length  The number of bytes to write.
+   * @throws IOException If the bytes cannot be written.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, int length)
+      throws IOException {
+    buffer.clear().limit(length);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
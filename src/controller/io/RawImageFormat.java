@@ -0,0 +1,255 @@
+package controller.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import model.Image;
+import model.MappedImage;
+
+/**
+ * The RawImageFormat class reads and writes the {@code .raw} file format, which stores the pixels
+ * of an image uncompressed so that a file can be memory mapped and used as the storage of a
+ * {@link MappedImage} directly, with no decoding.
+ *
+ * <p>The file starts with a header of 40 bytes: the magic bytes {@code RAWI}, a version byte, a
+ * channel layout byte, two reserved bytes, the height and width, the CRC-32 checksum of the pixel
+ * bytes, four reserved bytes, and the size and modification time of the file the image was
+ * decoded from, or zeros. The pixels follow, three interleaved bytes of red, green and blue per
+ * pixel, row after row. Sample values are clamped between 0 and 255 when written.
+ *
+ * <p>Files are mapped privately: changes made to a loaded image are never written back.
+ */
+public class RawImageFormat {
+
+  private static final byte[] MAGIC = {'R', 'A', 'W', 'I'};
+  private static final int VERSION = 1;
+  private static final int LAYOUT_RGB8 = 1;
+  private static final int HEADER_SIZE = 40;
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  /**
+   * Writes an image to a raw file that was not decoded from another file.
+   *
+   * @param image    The image to write.
+   * @param filePath The path of the file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(Image image, String filePath) throws IOException {
+    write(image, Paths.get(filePath), 0, 0);
+  }
+
+  /**
+   * Writes an image to a raw file, recording the size and modification time of the file it was
+   * decoded from.
+   *
+   * @param image          The image to write.
+   * @param path           The path of the file to write.
+   * @param sourceSize     The size of the source file in bytes.
+   * @param sourceModified The modification time of the source file, in milliseconds.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(Image image, Path path, long sourceSize, long sourceModified)
+          throws IOException {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int rowLength = width * 3;
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(1, rowLength));
+    if ((long) height * rowLength > Integer.MAX_VALUE - HEADER_SIZE) {
+      throw new IOException("The image is too large for a raw file.");
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      channel.position(HEADER_SIZE);
+      CRC32 checksum = new CRC32();
+      byte[] chunk = new byte[Math.min(rowsPerChunk, height) * rowLength];
+      ByteBuffer buffer = ByteBuffer.wrap(chunk);
+      for (int top = 0; top < height; top += rowsPerChunk) {
+        int bottom = Math.min(height, top + rowsPerChunk);
+        int index = 0;
+        for (int i = top; i < bottom; i++) {
+          for (int j = 0; j < width; j++) {
+            int[] pixel = image.getImage(i, j);
+            chunk[index++] = (byte) Math.max(0, Math.min(255, pixel[0]));
+            chunk[index++] = (byte) Math.max(0, Math.min(255, pixel[1]));
+            chunk[index++] = (byte) Math.max(0, Math.min(255, pixel[2]));
+          }
+        }
+        checksum.update(chunk, 0, index);
+        buffer.clear().limit(index);
+        writeFully(channel, buffer);
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.put(MAGIC).put((byte) VERSION).put((byte) LAYOUT_RGB8).putShort((short) 0);
+      header.putInt(height).putInt(width).putInt((int) checksum.getValue()).putInt(0);
+      header.putLong(sourceSize).putLong(sourceModified);
+      header.flip();
+      channel.position(0);
+      writeFully(channel, header);
+    }
+  }
+
+  /**
+   * Reads an image from a raw file, after checking the checksum of its pixels.
+   *
+   * @param filePath The path of the file to read.
+   * @return The image, backed by a private mapping of the file.
+   * @throws FileNotFoundException If the file does not exist.
+   * @throws IOException If the file cannot be read or is not a valid raw file.
+   */
+  public Image read(String filePath) throws IOException {
+    try {
+      return read(Paths.get(filePath), true, -1, -1);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(filePath);
+    }
+  }
+
+  /**
+   * Reads an image from a raw file if it was decoded from a file of the given size and
+   * modification time. The checksum is not checked, so that only the header of the file is read.
+   *
+   * @param path           The path of the file to read.
+   * @param sourceSize     The size of the source file in bytes.
+   * @param sourceModified The modification time of the source file, in milliseconds.
+   * @return The image, backed by a private mapping of the file, or null if the file was decoded
+   *         from a different version of the source file.
+   * @throws IOException If the file cannot be read or is not a valid raw file.
+   */
+  public Image read(Path path, long sourceSize, long sourceModified) throws IOException {
+    return read(path, false, sourceSize, sourceModified);
+  }
+
+  /**
+   * Reads the header of a raw file and maps its pixels.
+   *
+   * @param path           The path of the file to read.
+   * @param verify         Whether to check the checksum of the pixels.
+   * @param sourceSize     The expected source size, or -1 to accept any.
+   * @param sourceModified The expected source modification time, or -1 to accept any.
+   * @return The image, or null if the source size or modification time do not match.
+   * @throws IOException If the file cannot be read or is not a valid raw file.
+   */
+  private Image read(Path path, boolean verify, long sourceSize, long sourceModified)
+          throws IOException {
+    try (FileChannel channel = open(path)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      if (!readFully(channel, header)) {
+        throw new IOException("Invalid RAW file: unexpected end of file.");
+      }
+      header.flip();
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      int version = header.get();
+      int layout = header.get();
+      header.getShort();
+      int height = header.getInt();
+      int width = header.getInt();
+      int checksum = header.getInt();
+      header.getInt();
+      long size = header.getLong();
+      long modified = header.getLong();
+      if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+        throw new IOException("Invalid RAW file: should begin with RAWI, version 1.");
+      }
+      if (layout != LAYOUT_RGB8) {
+        throw new IOException("Invalid RAW file: unsupported channel layout.");
+      }
+      long length = (long) height * width * 3;
+      if (height <= 0 || width <= 0 || length > Integer.MAX_VALUE - HEADER_SIZE) {
+        throw new IOException("Invalid RAW file: bad dimensions.");
+      }
+      if (channel.size() < HEADER_SIZE + length) {
+        throw new IOException("Invalid RAW file: unexpected end of file.");
+      }
+      if ((sourceSize >= 0 && size != sourceSize)
+              || (sourceModified >= 0 && modified != sourceModified)) {
+        return null;
+      }
+
+      ByteBuffer pixels = map(channel, HEADER_SIZE + length);
+      if (verify) {
+        CRC32 actual = new CRC32();
+        actual.update(pixels.duplicate().position(HEADER_SIZE));
+        if ((int) actual.getValue() != checksum) {
+          throw new IOException("Invalid RAW file: checksum mismatch.");
+        }
+      }
+      return new MappedImage(height, width, pixels, HEADER_SIZE);
+    }
+  }
+
+  /**
+   * Opens a file for reading, and for writing too when allowed, which a private mapping needs.
+   *
+   * @param path The path of the file to open.
+   * @return The open channel.
+   * @throws IOException If the file cannot be opened.
+   */
+  private static FileChannel open(Path path) throws IOException {
+    try {
+      return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (AccessDeniedException e) {
+      return FileChannel.open(path, StandardOpenOption.READ);
+    }
+  }
+
+  /**
+   * Maps the start of a file privately, or copies it into memory when the file cannot be written.
+   *
+   * @param channel The channel of the file.
+   * @param length  The number of bytes to map.
+   * @return The buffer holding the bytes of the file.
+   * @throws IOException If the file cannot be read.
+   */
+  private static ByteBuffer map(FileChannel channel, long length) throws IOException {
+    try {
+      return channel.map(FileChannel.MapMode.PRIVATE, 0, length);
+    } catch (NonWritableChannelException e) {
+      ByteBuffer copy = ByteBuffer.allocate((int) length);
+      channel.position(0);
+      readFully(channel, copy);
+      return copy;
+    }
+  }
+
+  /**
+   * Reads bytes from a channel until a buffer is full or the channel ends.
+   *
+   * @param channel The channel to read from.
+   * @param buffer  The buffer to fill.
+   * @return true if the buffer was filled.
+   * @throws IOException If the bytes cannot be read.
+   */
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes all the remaining bytes of a buffer to a channel.
+   *
+   * @param channel The channel to write to.
+   * @param buffer  The bytes to write.
+   * @throws IOException If the bytes cannot be written.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
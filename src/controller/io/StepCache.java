@@ -0,0 +1,369 @@
+package controller.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import model.HaarCoefficients;
+import model.Image;
+
+/**
+ * The StepCache class keeps the results of script commands in a directory, so that a later run of
+ * a script can skip a command whose inputs and arguments have not changed. The results of a
+ * command are stored under its fingerprint: the images it produced as {@code .raw} files, the
+ * Haar coefficients it kept with them, the messages it showed, and the size and modification time
+ * of every file it wrote. Results whose files have been changed or removed since are ignored.
+ *
+ * <p>Every file of an entry is written to a temporary file and moved into place, and the record
+ * of the entry is written last, so a partly written entry is never read.
+ */
+public class StepCache {
+
+  private static final String HEADER = "image-step 1";
+
+  private final Path directory;
+  private final RawImageFormat format = new RawImageFormat();
+
+  /**
+   * Constructs a cache kept in the given directory, which is created when needed.
+   *
+   * @param directory The directory holding the entries of the cache.
+   */
+  public StepCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the results stored under a fingerprint, if the files the command wrote still have
+   * the size and modification time they had after it ran.
+   *
+   * @param fingerprint The fingerprint of the command.
+   * @return The results, with the images backed by mappings of their entries, or null if there
+   *         are none.
+   * @throws IOException If the entry cannot be read or is not valid.
+   */
+  public Entry get(String fingerprint) throws IOException {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(directory.resolve(fingerprint + ".step"), StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+      throw new IOException("Invalid step record: " + fingerprint);
+    }
+    List<Image> images = new ArrayList<>();
+    List<HaarCoefficients> coefficients = new ArrayList<>();
+    List<String> files = new ArrayList<>();
+    List<String> messages = new ArrayList<>();
+    List<Boolean> errors = new ArrayList<>();
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(" ", 4);
+      if (fields[0].equals("image") && fields.length == 2) {
+        int k = images.size();
+        Image image = format.read(entry(fingerprint, k, ".raw"), 0, 0);
+        if (image == null) {
+          return null;
+        }
+        images.add(image);
+        coefficients.add(fields[1].equals("1") ? readCoefficients(entry(fingerprint, k, ".coef"))
+            : null);
+      } else if (fields[0].equals("file") && fields.length == 4) {
+        if (!isUnchanged(fields[3], Long.parseLong(fields[1]), Long.parseLong(fields[2]))) {
+          return null;
+        }
+        files.add(fields[3]);
+      } else if (fields[0].equals("message") && fields.length >= 2) {
+        messages.add(unescape(line.substring(fields[0].length() + fields[1].length() + 2)));
+        errors.add(fields[1].equals("E"));
+      } else {
+        throw new IOException("Invalid step record: " + fingerprint);
+      }
+    }
+    return new Entry(images, coefficients, files, messages, errors);
+  }
+
+  /**
+   * Stores the results of a command under its fingerprint, replacing any previous entry. The size
+   * and modification time of the files it wrote are read now, so the command must have finished.
+   *
+   * @param fingerprint The fingerprint of the command.
+   * @param entry       The results of the command.
+   * @throws IOException If a file the command wrote cannot be read or the entry cannot be
+   *                     written.
+   */
+  public void put(String fingerprint, Entry entry) throws IOException {
+    Files.createDirectories(directory);
+    StringBuilder record = new StringBuilder(HEADER).append('\n');
+    for (int k = 0; k < entry.images.size(); k++) {
+      Path temporary = Files.createTempFile(directory, "image", ".tmp");
+      try {
+        format.write(entry.images.get(k), temporary, 0, 0);
+        move(temporary, entry(fingerprint, k, ".raw"));
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+      HaarCoefficients coefficients = entry.coefficients.get(k);
+      if (coefficients != null) {
+        writeCoefficients(coefficients, fingerprint, k);
+      }
+      record.append("image ").append(coefficients == null ? 0 : 1).append('\n');
+    }
+    for (String file : entry.files) {
+      BasicFileAttributes attributes = Files.readAttributes(Paths.get(file),
+          BasicFileAttributes.class);
+      record.append("file ").append(attributes.size()).append(' ')
+          .append(attributes.lastModifiedTime().toMillis()).append(' ').append(file).append('\n');
+    }
+    for (int k = 0; k < entry.messages.size(); k++) {
+      record.append("message ").append(entry.errors.get(k) ? 'E' : 'O').append(' ')
+          .append(escape(entry.messages.get(k))).append('\n');
+    }
+    Path temporary = Files.createTempFile(directory, "step", ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        writer.write(record.toString());
+      }
+      move(temporary, directory.resolve(fingerprint + ".step"));
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Checks that a file has the given size and modification time.
+   *
+   * @param file     The path of the file.
+   * @param size     The expected size in bytes.
+   * @param modified The expected modification time, in milliseconds.
+   * @return true if the file exists and has the given size and modification time.
+   */
+  private static boolean isUnchanged(String file, long size, long modified) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(Paths.get(file),
+          BasicFileAttributes.class);
+      return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes Haar coefficients to an entry, storing only the coefficients that are not zero, with
+   * their exact values.
+   *
+   * @param coefficients The coefficients to write.
+   * @param fingerprint  The fingerprint of the command.
+   * @param k            The position of the image the coefficients belong to.
+   * @throws IOException If the entry cannot be written.
+   */
+  private void writeCoefficients(HaarCoefficients coefficients, String fingerprint, int k)
+      throws IOException {
+    Path temporary = Files.createTempFile(directory, "coefficients", ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        int size = coefficients.getSize();
+        out.writeInt(coefficients.getHeight());
+        out.writeInt(coefficients.getWidth());
+        out.writeInt(size);
+        for (int c = 0; c < 3; c++) {
+          double[][] channel = coefficients.getChannel(c);
+          int count = 0;
+          for (double[] row : channel) {
+            for (double value : row) {
+              count += value != 0 ? 1 : 0;
+            }
+          }
+          out.writeInt(count);
+          for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+              if (channel[i][j] != 0) {
+                out.writeInt(i * size + j);
+                out.writeDouble(channel[i][j]);
+              }
+            }
+          }
+        }
+      }
+      move(temporary, entry(fingerprint, k, ".coef"));
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads Haar coefficients written by {@link #writeCoefficients}.
+   *
+   * @param path The path of the entry.
+   * @return The coefficients.
+   * @throws IOException If the entry cannot be read or is not valid.
+   */
+  private static HaarCoefficients readCoefficients(Path path) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      int height = in.readInt();
+      int width = in.readInt();
+      int size = in.readInt();
+      if (height <= 0 || width <= 0 || size < Math.max(height, width)
+          || (long) size * size > Integer.MAX_VALUE) {
+        throw new IOException("Invalid coefficients file: bad dimensions.");
+      }
+      double[][][] channels = new double[3][size][size];
+      for (int c = 0; c < 3; c++) {
+        int count = in.readInt();
+        for (int n = 0; n < count; n++) {
+          int index = in.readInt();
+          if (index < 0 || index >= size * size) {
+            throw new IOException("Invalid coefficients file: bad index.");
+          }
+          channels[c][index / size][index % size] = in.readDouble();
+        }
+      }
+      return new HaarCoefficients(height, width, size, channels);
+    }
+  }
+
+  /**
+   * Gets the path of a file of an entry.
+   *
+   * @param fingerprint The fingerprint of the command.
+   * @param k           The position of the image the file belongs to.
+   * @param extension   The extension of the file.
+   * @return The path of the file.
+   */
+  private Path entry(String fingerprint, int k, String extension) {
+    return directory.resolve(fingerprint + "-" + k + extension);
+  }
+
+  /**
+   * Moves a temporary file into place.
+   *
+   * @param temporary The temporary file.
+   * @param target    The path of the entry.
+   * @throws IOException If the file cannot be moved.
+   */
+  private static void move(Path temporary, Path target) throws IOException {
+    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Escapes the backslashes and line breaks of a message, so that it fits on one line.
+   *
+   * @param message The message.
+   * @return The escaped message.
+   */
+  private static String escape(String message) {
+    return message.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  /**
+   * Reverses {@link #escape}.
+   *
+   * @param escaped The escaped message.
+   * @return The message.
+   */
+  private static String unescape(String escaped) {
+    StringBuilder message = new StringBuilder();
+    for (int k = 0; k < escaped.length(); k++) {
+      char c = escaped.charAt(k);
+      if (c == '\\' && k + 1 < escaped.length()) {
+        char next = escaped.charAt(++k);
+        message.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        message.append(c);
+      }
+    }
+    return message.toString();
+  }
+
+  /**
+   * The results of a command: the images it produced, the Haar coefficients kept with them, the
+   * files it wrote and the messages it showed.
+   */
+  public static class Entry {
+
+    private final List<Image> images;
+    private final List<HaarCoefficients> coefficients;
+    private final List<String> files;
+    private final List<String> messages;
+    private final List<Boolean> errors;
+
+    /**
+     * Constructs the results of a command.
+     *
+     * @param images       The images produced, in the order the command writes them.
+     * @param coefficients The Haar coefficients kept with each image, or null for an image that
+     *                     has none.
+     * @param files        The absolute paths of the files written.
+     * @param messages     The messages shown, in order.
+     * @param errors       For every message, whether it is an error message.
+     */
+    public Entry(List<Image> images, List<HaarCoefficients> coefficients, List<String> files,
+                 List<String> messages, List<Boolean> errors) {
+      this.images = images;
+      this.coefficients = coefficients;
+      this.files = files;
+      this.messages = messages;
+      this.errors = errors;
+    }
+
+    /**
+     * Gets the images produced.
+     *
+     * @return The images, in the order the command writes them.
+     */
+    public List<Image> getImages() {
+      return Collections.unmodifiableList(images);
+    }
+
+    /**
+     * Gets the Haar coefficients kept with the images.
+     *
+     * @return The coefficients of each image, or null for an image that has none.
+     */
+    public List<HaarCoefficients> getCoefficients() {
+      return Collections.unmodifiableList(coefficients);
+    }
+
+    /**
+     * Gets the files written.
+     *
+     * @return The absolute paths of the files.
+     */
+    public List<String> getFiles() {
+      return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Gets the messages shown.
+     *
+     * @return The messages, in order.
+     */
+    public List<String> getMessages() {
+      return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Gets which of the messages shown are error messages.
+     *
+     * @return For every message, in order, whether it is an error message.
+     */
+    public List<Boolean> getErrors() {
+      return Collections.unmodifiableList(errors);
+    }
+  }
+}
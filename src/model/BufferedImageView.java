@@ -0,0 +1,172 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * The BufferedImageView class is an {@link Image} whose pixels live in the packed integer array
+ * of a {@link BufferedImage} of type {@link BufferedImage#TYPE_INT_RGB}. Reading and writing the
+ * image reads and writes the buffered image directly, so it can be displayed or saved without
+ * copying its pixels.
+ *
+ * <p>Each channel is stored in eight bits, so values written to the image are clamped between 0
+ * and 255. The arrays returned by {@link #getImage(int, int)} are copies of the pixel: changing
+ * them does not change the image. The buffered image must not be changed directly once the hash of
+ * the content of the image is computed.
+ */
+public class BufferedImageView extends Image {
+
+  private final BufferedImage bufferedImage;
+  private final int[] data;
+  private final int height;
+  private final int width;
+
+  /**
+   * Constructs a black image of the specified height and width, backed by a new buffered image.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   */
+  public BufferedImageView(int height, int width) {
+    this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+  }
+
+  /**
+   * Constructs an image backed by the given buffered image, without copying its pixels. Changes
+   * to either one are visible in the other.
+   *
+   * @param bufferedImage A buffered image of type {@link BufferedImage#TYPE_INT_RGB} that is not
+   *                      a sub-image of a larger one.
+   * @throws IllegalArgumentException If the buffered image cannot be wrapped.
+   */
+  public BufferedImageView(BufferedImage bufferedImage) {
+    super();
+    WritableRaster raster = bufferedImage.getRaster();
+    if (bufferedImage.getType() != BufferedImage.TYPE_INT_RGB
+            || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+            || raster.getDataBuffer().getOffset() != 0
+            || ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride()
+            != bufferedImage.getWidth()) {
+      throw new IllegalArgumentException("Only whole TYPE_INT_RGB images can be wrapped.");
+    }
+    this.bufferedImage = bufferedImage;
+    this.data = ((DataBufferInt) raster.getDataBuffer()).getData();
+    this.height = bufferedImage.getHeight();
+    this.width = bufferedImage.getWidth();
+  }
+
+  /**
+   * Sets the RGB values for a pixel at the specified position (x, y), clamped between 0 and 255.
+   *
+   * @param x The x-coordinate of the pixel.
+   * @param y The y-coordinate of the pixel.
+   * @param r The red component value (0-255).
+   * @param g The green component value (0-255).
+   * @param b The blue component value (0-255).
+   */
+  @Override
+  public void setImage(int x, int y, int r, int g, int b) {
+    if (x >= 0 && x < height && y >= 0 && y < width) {
+      data[x * width + y] = clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+      contentChanged();
+    }
+  }
+
+  /**
+   * Retrieves a copy of the RGB values for a pixel at the specified position (x, y).
+   *
+   * @param x The x-coordinate of the pixel.
+   * @param y The y-coordinate of the pixel.
+   * @return An integer array representing the RGB values [r, g, b] of the pixel.
+   */
+  @Override
+  public int[] getImage(int x, int y) {
+    if (x >= 0 && x < height && y >= 0 && y < width) {
+      int rgb = data[x * width + y];
+      return new int[]{(rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF};
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the RGB values of a row of the image into an array straight from the packed pixels.
+   *
+   * @param x      The x-coordinate of the row.
+   * @param target The array to fill, of at least three values per pixel of the row.
+   */
+  @Override
+  public void readRow(int x, int[] target) {
+    for (int y = 0, k = 0; y < width; y++, k += 3) {
+      int rgb = data[x * width + y];
+      target[k] = (rgb >> 16) & 0xFF;
+      target[k + 1] = (rgb >> 8) & 0xFF;
+      target[k + 2] = rgb & 0xFF;
+    }
+  }
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return The height of the image.
+   */
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return The width of the image.
+   */
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets an estimate of the memory used by the pixels of the image, in bytes.
+   *
+   * @return The estimated size of the image.
+   */
+  @Override
+  public long estimatedSize() {
+    return (long) height * width * 4;
+  }
+
+  /**
+   * Computes the hash of the content of the image straight from the packed pixels.
+   *
+   * @return The hash of the content of the image, before its final mixing.
+   */
+  @Override
+  protected long computeContentHash() {
+    long hash = mixSize(height, width);
+    for (int rgb : data) {
+      hash = mixPixel(hash, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+    return hash;
+  }
+
+  /**
+   * Gets the buffered image that holds the pixels of this image. It is not copied.
+   *
+   * @return The backing buffered image.
+   */
+  public BufferedImage getBufferedImage() {
+    return bufferedImage;
+  }
+
+  /**
+   * Clamps a channel value between 0 and 255.
+   *
+   * @param value The value to clamp.
+   * @return The clamped value.
+   */
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
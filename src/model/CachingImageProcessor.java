@@ -0,0 +1,414 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CachingImageProcessor class is an {@link ImageProcessor} that remembers the results of the
+ * operations of another processor in a {@link ResultCache}. An operation applied again with the
+ * same parameters to images with the same content, under any names, stores the remembered images
+ * under the destination names instead of computing them, without copying them.
+ *
+ * <p>The images stored by the processor are shared with the cache, so they must not be changed
+ * in place; a changed image is noticed by its version and its results are dropped. Compressed
+ * images and thumbnails keep their Haar coefficients for as long as the memory allows. Thumbnails
+ * of images that have coefficients, and operations that return measurements, are not cached.
+ */
+public class CachingImageProcessor implements ImageProcessor {
+
+  private final ImageProcessor delegate;
+  private volatile ResultCache cache;
+  private boolean packedImages;
+
+  /**
+   * Constructs a processor caching the results of another one.
+   *
+   * @param delegate The processor that computes the results.
+   * @param cache    The cache of results, or null to run every operation.
+   */
+  public CachingImageProcessor(ImageProcessor delegate, ResultCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  /**
+   * Sets the cache the results are remembered in.
+   *
+   * @param cache The cache of results, or null to run every operation.
+   */
+  public void setCache(ResultCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Chooses how the images produced by the operations store their pixels. Packed and plain
+   * results are cached apart.
+   *
+   * @param packedImages true to produce packed images, false for plain images.
+   */
+  @Override
+  public void setPackedImages(boolean packedImages) {
+    this.packedImages = packedImages;
+    delegate.setPackedImages(packedImages);
+  }
+
+  /**
+   * Splits the source image into its RGB channels, or stores the channels split before.
+   *
+   * @param sourceImageName    The name of the source image.
+   * @param destRedImageName   The name of the destination image for the red channel.
+   * @param destGreenImageName The name of the destination image for the green channel.
+   * @param destBlueImageName  The name of the destination image for the blue channel.
+   */
+  @Override
+  public void rgbSplit(String sourceImageName, String destRedImageName,
+                       String destGreenImageName, String destBlueImageName) {
+    cached("rgb-split", new String[]{sourceImageName},
+        new String[]{destRedImageName, destGreenImageName, destBlueImageName}, false,
+        () -> delegate.rgbSplit(sourceImageName, destRedImageName, destGreenImageName,
+            destBlueImageName));
+  }
+
+  /**
+   * Combines three channel images into one, or stores the image combined before.
+   *
+   * @param destImageName        The name of the combined image.
+   * @param sourceRedImageName   The name of the red channel image.
+   * @param sourceBlueImageName  The name of the second channel image.
+   * @param sourceGreenImageName The name of the third channel image.
+   */
+  @Override
+  public void rgbCombine(String destImageName, String sourceRedImageName,
+                         String sourceBlueImageName, String sourceGreenImageName) {
+    cached("rgb-combine", new String[]{sourceRedImageName, sourceBlueImageName,
+        sourceGreenImageName}, new String[]{destImageName}, false,
+        () -> delegate.rgbCombine(destImageName, sourceRedImageName, sourceBlueImageName,
+            sourceGreenImageName));
+  }
+
+  /**
+   * Applies a convolution filter to the source image, or stores the image filtered before.
+   *
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the filtered image.
+   * @param kernel          The convolution kernel.
+   * @param splitKeyword    "split" to filter only part of the image.
+   * @param splitPercentage The percentage of the width to filter.
+   */
+  @Override
+  public void applyConvolutionFilter(String sourceImageName, String destImageName,
+                                     double[][] kernel, String splitKeyword,
+                                     int splitPercentage) {
+    cached("convolve " + Arrays.deepToString(kernel) + " " + splitKeyword + " "
+        + splitPercentage, new String[]{sourceImageName}, new String[]{destImageName}, false,
+        () -> delegate.applyConvolutionFilter(sourceImageName, destImageName, kernel,
+            splitKeyword, splitPercentage));
+  }
+
+  /**
+   * Adds an image under a name, or removes the image of the name when null.
+   *
+   * @param imageName The name of the image.
+   * @param pixel     The image.
+   */
+  @Override
+  public void addImage(String imageName, Image pixel) {
+    delegate.addImage(imageName, pixel);
+  }
+
+  /**
+   * Plots the histogram of the source image, or stores the histogram plotted before.
+   *
+   * @param sourceImage   The name of the source image.
+   * @param destImageName The name of the histogram image.
+   */
+  @Override
+  public void plotHistogram(String sourceImage, String destImageName) {
+    cached("histogram", new String[]{sourceImage}, new String[]{destImageName}, false,
+        () -> delegate.plotHistogram(sourceImage, destImageName));
+  }
+
+  /**
+   * Color corrects the source image, or stores the image corrected before.
+   *
+   * @param sourceImage     The name of the source image.
+   * @param destImageName   The name of the corrected image.
+   * @param splitKeyword    "split" to correct only part of the image.
+   * @param splitPercentage The percentage of the width to correct.
+   */
+  @Override
+  public void colorCorrectImage(String sourceImage, String destImageName, String splitKeyword,
+                                int splitPercentage) {
+    cached("color-correct " + splitKeyword + " " + splitPercentage,
+        new String[]{sourceImage}, new String[]{destImageName}, false,
+        () -> delegate.colorCorrectImage(sourceImage, destImageName, splitKeyword,
+            splitPercentage));
+  }
+
+  /**
+   * Adjusts the levels of the source image, or stores the image adjusted before.
+   *
+   * @param shadow          The black point.
+   * @param mid             The mid point.
+   * @param highlight       The white point.
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the adjusted image.
+   * @param splitKeyword    "split" to adjust only part of the image.
+   * @param splitPercentage The percentage of the width to adjust.
+   */
+  @Override
+  public void adjustLevels(int shadow, int mid, int highlight, String sourceImageName,
+                           String destImageName, String splitKeyword, int splitPercentage) {
+    cached("levels " + shadow + " " + mid + " " + highlight + " " + splitKeyword + " "
+        + splitPercentage, new String[]{sourceImageName}, new String[]{destImageName}, false,
+        () -> delegate.adjustLevels(shadow, mid, highlight, sourceImageName, destImageName,
+            splitKeyword, splitPercentage));
+  }
+
+  /**
+   * Compresses the source image, or stores the image compressed before with its coefficients.
+   *
+   * @param compressionPercentage The percentage of compression to be applied.
+   * @param sourceImageName       The name of the source image.
+   * @param destImageName         The name of the compressed image.
+   */
+  @Override
+  public void compressImage(Double compressionPercentage, String sourceImageName,
+                            String destImageName) {
+    cached("compress " + compressionPercentage, new String[]{sourceImageName},
+        new String[]{destImageName}, true,
+        () -> delegate.compressImage(compressionPercentage, sourceImageName, destImageName));
+  }
+
+  /**
+   * Compresses the source image at several percentages, without caching.
+   *
+   * @param percentages     The compression percentages to apply.
+   * @param sourceImageName The name of the source image.
+   * @param destImagePrefix The prefix of the compressed image names, or null.
+   * @return The size and error of the compressed image for each percentage.
+   */
+  @Override
+  public List<CompressionResult> compressSweep(double[] percentages, String sourceImageName,
+                                               String destImagePrefix) {
+    return delegate.compressSweep(percentages, sourceImageName, destImagePrefix);
+  }
+
+  /**
+   * Compresses the source image to a target quality, without caching.
+   *
+   * @param metric          "psnr" or "ssim".
+   * @param target          The target quality.
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the compressed image.
+   * @return The size and error of the compressed image.
+   */
+  @Override
+  public CompressionResult compressToQuality(String metric, double target,
+                                             String sourceImageName, String destImageName) {
+    return delegate.compressToQuality(metric, target, sourceImageName, destImageName);
+  }
+
+  /**
+   * Measures how close an image is to a reference image, without caching.
+   *
+   * @param metric             "psnr" or "ssim".
+   * @param referenceImageName The name of the reference image.
+   * @param imageName          The name of the image to measure.
+   * @return The measured quality.
+   */
+  @Override
+  public double measureQuality(String metric, String referenceImageName, String imageName) {
+    return delegate.measureQuality(metric, referenceImageName, imageName);
+  }
+
+  /**
+   * Creates a thumbnail of the source image, or stores the thumbnail created before when the
+   * source has no coefficients.
+   *
+   * @param level           The number of resolution levels to drop.
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the thumbnail image.
+   */
+  @Override
+  public void createThumbnail(int level, String sourceImageName, String destImageName) {
+    if (delegate.getCoefficients(sourceImageName) != null) {
+      delegate.createThumbnail(level, sourceImageName, destImageName);
+      return;
+    }
+    cached("thumbnail " + level, new String[]{sourceImageName}, new String[]{destImageName},
+        true, () -> delegate.createThumbnail(level, sourceImageName, destImageName));
+  }
+
+  /**
+   * Associates Haar coefficients with an image name.
+   *
+   * @param imageName    The name of the image.
+   * @param coefficients The Haar coefficients of the image.
+   */
+  @Override
+  public void addCoefficients(String imageName, HaarCoefficients coefficients) {
+    delegate.addCoefficients(imageName, coefficients);
+  }
+
+  /**
+   * Retrieves the Haar coefficients kept for an image.
+   *
+   * @param imageName The name of the image.
+   * @return The coefficients, or null if none are kept.
+   */
+  @Override
+  public HaarCoefficients getCoefficients(String imageName) {
+    return delegate.getCoefficients(imageName);
+  }
+
+  /**
+   * Applies a color matrix to the source image, or stores the image transformed before.
+   *
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the transformed image.
+   * @param splitKeyword    "split" to transform only part of the image.
+   * @param splitPercentage The percentage of the width to transform.
+   * @param grayscaleMatrix The color matrix.
+   */
+  @Override
+  public void graySepia(String sourceImageName, String destImageName, String splitKeyword,
+                        int splitPercentage, double[][] grayscaleMatrix) {
+    cached("matrix " + Arrays.deepToString(grayscaleMatrix) + " " + splitKeyword + " "
+        + splitPercentage, new String[]{sourceImageName}, new String[]{destImageName}, false,
+        () -> delegate.graySepia(sourceImageName, destImageName, splitKeyword, splitPercentage,
+            grayscaleMatrix));
+  }
+
+  /**
+   * Brightens the source image, or stores the image brightened before.
+   *
+   * @param change          The value added to every channel.
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the brightened image.
+   */
+  @Override
+  public void adjustBrightness(int change, String sourceImageName, String destImageName) {
+    cached("brighten " + change, new String[]{sourceImageName}, new String[]{destImageName},
+        false, () -> delegate.adjustBrightness(change, sourceImageName, destImageName));
+  }
+
+  /**
+   * Extracts a color channel of the source image, or stores the channel extracted before.
+   *
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the channel image.
+   * @param componentIndex  The index of the channel.
+   */
+  @Override
+  public void createColorComponent(String sourceImageName, String destImageName,
+                                   int componentIndex) {
+    cached("color-component " + componentIndex, new String[]{sourceImageName},
+        new String[]{destImageName}, false,
+        () -> delegate.createColorComponent(sourceImageName, destImageName, componentIndex));
+  }
+
+  /**
+   * Extracts a weighted component of the source image, or stores the component extracted
+   * before.
+   *
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the component image.
+   * @param coefficients    The weights of the channels.
+   */
+  @Override
+  public void createComponent(String sourceImageName, String destImageName,
+                              double[] coefficients) {
+    cached("component " + Arrays.toString(coefficients), new String[]{sourceImageName},
+        new String[]{destImageName}, false,
+        () -> delegate.createComponent(sourceImageName, destImageName, coefficients));
+  }
+
+  /**
+   * Flips the source image, or stores the image flipped before.
+   *
+   * @param sourceImageName The name of the source image.
+   * @param destImageName   The name of the flipped image.
+   * @param isHorizontal    true to flip horizontally, false vertically.
+   */
+  @Override
+  public void flipImage(String sourceImageName, String destImageName, boolean isHorizontal) {
+    cached("flip " + isHorizontal, new String[]{sourceImageName}, new String[]{destImageName},
+        false, () -> delegate.flipImage(sourceImageName, destImageName, isHorizontal));
+  }
+
+  /**
+   * Retrieves an image by name.
+   *
+   * @param sourceImageName The name of the image.
+   * @return The image, or null if there is none.
+   */
+  @Override
+  public Image getImageImage(String sourceImageName) {
+    return delegate.getImageImage(sourceImageName);
+  }
+
+  /**
+   * Retrieves an image by name.
+   *
+   * @param sourceImageName The name of the image.
+   * @return The image, or null if there is none.
+   */
+  @Override
+  public Image getImage(String sourceImageName) {
+    return delegate.getImage(sourceImageName);
+  }
+
+  /**
+   * Stores the remembered results of an operation under the destination names, or runs the
+   * operation and remembers its results. The operation is run as is when an input image is
+   * missing, so that it fails as it would without the cache.
+   *
+   * @param operation    The operation and its parameters.
+   * @param sources      The names of the input images.
+   * @param destinations The names of the images produced.
+   * @param coefficients Whether the operation keeps Haar coefficients with its only result.
+   * @param compute      Runs the operation.
+   */
+  private void cached(String operation, String[] sources, String[] destinations,
+                      boolean coefficients, Runnable compute) {
+    ResultCache cache = this.cache;
+    if (cache == null) {
+      compute.run();
+      return;
+    }
+    StringBuilder key = new StringBuilder(operation).append(packedImages ? " packed" : "");
+    for (String source : sources) {
+      Image image = delegate.getImage(source);
+      if (image == null) {
+        compute.run();
+        return;
+      }
+      key.append(' ').append(Long.toHexString(image.contentHash()));
+    }
+
+    ResultCache.Entry entry = cache.get(key.toString());
+    if (entry != null) {
+      Image[] images = entry.getImages();
+      for (int k = 0; k < destinations.length; k++) {
+        delegate.addImage(destinations[k], images[k]);
+      }
+      HaarCoefficients kept = entry.getCoefficients();
+      if (kept != null) {
+        delegate.addCoefficients(destinations[0], kept);
+      }
+      return;
+    }
+
+    compute.run();
+    Image[] images = new Image[destinations.length];
+    for (int k = 0; k < destinations.length; k++) {
+      images[k] = delegate.getImage(destinations[k]);
+      if (images[k] == null) {
+        return;
+      }
+    }
+    cache.put(key.toString(), new ResultCache.Entry(images,
+        coefficients ? delegate.getCoefficients(destinations[0]) : null));
+  }
+}
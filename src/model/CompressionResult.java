@@ -0,0 +1,65 @@
+package model;
+
+/**
+ * The CompressionResult class describes the outcome of compressing an image at one compression
+ * percentage: how many Haar coefficients were kept and how close the result is to the source.
+ */
+public class CompressionResult {
+
+  private final double percentage;
+  private final long keptCoefficients;
+  private final long totalCoefficients;
+  private final double psnr;
+
+  /**
+   * Constructs a CompressionResult object.
+   *
+   * @param percentage        The compression percentage that was applied.
+   * @param keptCoefficients  The number of non-zero coefficients left after thresholding.
+   * @param totalCoefficients The total number of coefficients across the three channels.
+   * @param psnr              The PSNR of the compressed image against the source, in decibels.
+   */
+  public CompressionResult(double percentage, long keptCoefficients, long totalCoefficients,
+                           double psnr) {
+    this.percentage = percentage;
+    this.keptCoefficients = keptCoefficients;
+    this.totalCoefficients = totalCoefficients;
+    this.psnr = psnr;
+  }
+
+  /**
+   * Gets the compression percentage that was applied.
+   *
+   * @return The compression percentage.
+   */
+  public double getPercentage() {
+    return percentage;
+  }
+
+  /**
+   * Gets the number of non-zero coefficients left after thresholding.
+   *
+   * @return The number of kept coefficients.
+   */
+  public long getKeptCoefficients() {
+    return keptCoefficients;
+  }
+
+  /**
+   * Gets the total number of coefficients across the three channels.
+   *
+   * @return The total number of coefficients.
+   */
+  public long getTotalCoefficients() {
+    return totalCoefficients;
+  }
+
+  /**
+   * Gets the PSNR of the compressed image against the source.
+   *
+   * @return The PSNR in decibels, or positive infinity if the images are identical.
+   */
+  public double getPsnr() {
+    return psnr;
+  }
+}
@@ -0,0 +1,472 @@
+package model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The HaarCoefficients class holds the 2D Haar wavelet coefficients of the red, green and blue
+ * channels of an image. The channels are zero padded to a square whose side is the next power of
+ * two, and the original dimensions are kept so that the image can be reconstructed.
+ */
+public class HaarCoefficients {
+
+  private final int height;
+  private final int width;
+  private final int size;
+  private final double[][][] channels;
+
+  /**
+   * Constructs a HaarCoefficients object from already transformed channel matrices.
+   *
+   * @param height   The height of the original image.
+   * @param width    The width of the original image.
+   * @param size     The side of the padded square, a power of two.
+   * @param channels The transformed red, green and blue matrices, each of size x size.
+   */
+  public HaarCoefficients(int height, int width, int size, double[][][] channels) {
+    this.height = height;
+    this.width = width;
+    this.size = size;
+    this.channels = channels;
+  }
+
+  /**
+   * Pads each channel of the image to the next power of two and applies the 2D Haar wavelet
+   * transformation to it.
+   *
+   * @param image The image to transform.
+   * @return The Haar coefficients of the image.
+   */
+  public static HaarCoefficients transform(Image image) {
+    return transform(image, Progress.current());
+  }
+
+  /**
+   * Pads each channel of the image to the next power of two and applies the 2D Haar wavelet
+   * transformation to it, advancing the given progress after every row and column of every pass.
+   *
+   * @param image    The image to transform.
+   * @param progress The progress of the operation.
+   * @return The Haar coefficients of the image.
+   * @throws java.util.concurrent.CancellationException If the progress is cancelled.
+   */
+  public static HaarCoefficients transform(Image image, Progress progress) {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int size = nextPowerOfTwo(Math.max(height, width));
+    double[][][] channels = new double[3][size][size];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int[] pixelArray = image.getImage(i, j);
+        if (pixelArray != null) {
+          channels[0][i][j] = pixelArray[0];
+          channels[1][i][j] = pixelArray[1];
+          channels[2][i][j] = pixelArray[2];
+        }
+      }
+    }
+    IntStream.range(0, 3).parallel().forEach(c -> haar2D(channels[c], size, progress));
+    return new HaarCoefficients(height, width, size, channels);
+  }
+
+  /**
+   * Gets the number of steps a transformation or an inverse transformation of the given size
+   * advances its progress by: one for every row and column of every pass, in each channel.
+   *
+   * @param size The side of the padded square, a power of two.
+   * @return The number of steps.
+   */
+  public static long transformSteps(int size) {
+    return 3L * 2 * (2L * size - 2);
+  }
+
+  /**
+   * Gets an estimate of the memory used by the coefficients of an image of the given size, in
+   * bytes. Every channel is padded to a square whose side is the next power of two, so an image
+   * just over a power of two needs about four times the memory of one just under it.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @return The estimated size of the coefficients.
+   */
+  public static long estimatedSize(int height, int width) {
+    long size = nextPowerOfTwo(Math.max(height, width));
+    return 3 * size * (16 + size * 8);
+  }
+
+  /**
+   * Returns the smallest power of two that is greater than or equal to the given value.
+   *
+   * @param value The value to round up.
+   * @return The next power of two.
+   */
+  public static int nextPowerOfTwo(int value) {
+    int nextPowerOfTwo = 1;
+    while (nextPowerOfTwo < value) {
+      nextPowerOfTwo *= 2;
+    }
+    return nextPowerOfTwo;
+  }
+
+  /**
+   * Returns a copy of these coefficients in which every coefficient whose magnitude is at or below
+   * the threshold for the given compression percentage is set to zero. The threshold is picked
+   * from the sorted distinct magnitudes across all three channels.
+   *
+   * @param compressionPercentage The percentage of compression to be applied.
+   * @return The thresholded coefficients.
+   */
+  public HaarCoefficients threshold(double compressionPercentage) {
+    return threshold(sortedMagnitudes(), compressionPercentage);
+  }
+
+  /**
+   * Returns a copy of these coefficients thresholded for the given compression percentage, using
+   * magnitudes that were already computed by {@link #sortedMagnitudes()}.
+   *
+   * @param magnitudes            The sorted distinct magnitudes of these coefficients.
+   * @param compressionPercentage The percentage of compression to be applied.
+   * @return The thresholded coefficients.
+   */
+  public HaarCoefficients threshold(double[] magnitudes, double compressionPercentage) {
+    int thresholdIndex = Math.abs((int) (magnitudes.length * compressionPercentage / 100.0) - 1);
+    return thresholdAt(magnitudes[Math.min(thresholdIndex, magnitudes.length - 1)]);
+  }
+
+  /**
+   * Returns a copy of these coefficients in which every coefficient whose magnitude is at or below
+   * the given value is set to zero.
+   *
+   * @param threshold The largest magnitude that is dropped.
+   * @return The thresholded coefficients.
+   */
+  public HaarCoefficients thresholdAt(double threshold) {
+    Progress progress = Progress.current();
+    double[][][] thresholded = new double[3][size][];
+    for (int c = 0; c < 3; c++) {
+      for (int i = 0; i < size; i++) {
+        progress.check();
+        double[] row = channels[c][i].clone();
+        for (int j = 0; j < size; j++) {
+          if (Math.abs(row[j]) <= threshold) {
+            row[j] = 0.0;
+          }
+        }
+        thresholded[c][i] = row;
+      }
+    }
+    return new HaarCoefficients(height, width, size, thresholded);
+  }
+
+  /**
+   * Collects the distinct magnitudes of all coefficients of the three channels in ascending order.
+   *
+   * @return The sorted distinct magnitudes.
+   */
+  public double[] sortedMagnitudes() {
+    double[] magnitudes = new double[3 * size * size];
+    int index = 0;
+    for (double[][] channel : channels) {
+      for (double[] row : channel) {
+        for (double value : row) {
+          magnitudes[index++] = Math.abs(value);
+        }
+      }
+    }
+    Arrays.parallelSort(magnitudes);
+    int distinct = 0;
+    for (int i = 0; i < magnitudes.length; i++) {
+      if (i == 0 || magnitudes[i] != magnitudes[distinct - 1]) {
+        magnitudes[distinct++] = magnitudes[i];
+      }
+    }
+    return Arrays.copyOf(magnitudes, distinct);
+  }
+
+  /**
+   * Applies the inverse 2D Haar wavelet transformation and converts the result back into an image
+   * of the original dimensions. Pixel values are rounded and clamped between 0 and 255. These
+   * coefficients are left unchanged.
+   *
+   * @return The reconstructed image.
+   */
+  public Image toImage() {
+    return toImage(Progress.current());
+  }
+
+  /**
+   * Applies the inverse 2D Haar wavelet transformation and converts the result back into an image
+   * of the original dimensions, advancing the given progress after every row and column of every
+   * pass.
+   *
+   * @param progress The progress of the operation.
+   * @return The reconstructed image.
+   * @throws java.util.concurrent.CancellationException If the progress is cancelled.
+   */
+  public Image toImage(Progress progress) {
+    double[][][] inverted = new double[3][][];
+    IntStream.range(0, 3).parallel().forEach(c -> {
+      double[][] matrix = new double[size][];
+      for (int i = 0; i < size; i++) {
+        matrix[i] = channels[c][i].clone();
+      }
+      inverseHaar2D(matrix, size, progress);
+      inverted[c] = matrix;
+    });
+
+    Image image = new Image(height, width);
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        image.setImage(i, j, clamp(inverted[0][i][j]), clamp(inverted[1][i][j]),
+                clamp(inverted[2][i][j]));
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Returns the coefficients of a thumbnail of the image, scaled down by a factor of two for every
+   * level. The coarse coefficients of a Haar transformation already describe the image at lower
+   * resolutions, so no inverse transformation is needed to find them: the top left square of side
+   * size / 2^level holds the transformation of the 2^level x 2^level block averages of the image,
+   * multiplied by 2^level.
+   *
+   * @param level The number of resolution levels to drop. Levels beyond the coarsest one are
+   *              treated as the coarsest one.
+   * @return The coefficients of the thumbnail.
+   */
+  public HaarCoefficients downscale(int level) {
+    level = Math.max(0, Math.min(level, maxLevel(size)));
+    int side = size >> level;
+    double[][][] coarse = new double[3][side][side];
+    for (int c = 0; c < 3; c++) {
+      for (int i = 0; i < side; i++) {
+        System.arraycopy(channels[c][i], 0, coarse[c][i], 0, side);
+      }
+    }
+    return scaleDown(height, width, coarse, level);
+  }
+
+  /**
+   * Builds thumbnail coefficients from the top left square of a transformation, dividing them by
+   * 2^level in place so that they describe the block averages of the image.
+   *
+   * @param height The height of the full size image.
+   * @param width  The width of the full size image.
+   * @param coarse The top left square of each channel, of side size / 2^level.
+   * @param level  The number of resolution levels that were dropped.
+   * @return The coefficients of the thumbnail.
+   */
+  public static HaarCoefficients scaleDown(int height, int width, double[][][] coarse,
+                                           int level) {
+    double scale = 1 << level;
+    for (double[][] channel : coarse) {
+      for (double[] row : channel) {
+        for (int j = 0; j < row.length; j++) {
+          row[j] /= scale;
+        }
+      }
+    }
+    int factor = 1 << level;
+    return new HaarCoefficients((height + factor - 1) / factor, (width + factor - 1) / factor,
+            coarse[0].length, coarse);
+  }
+
+  /**
+   * Returns the number of resolution levels of a transformation of the given size.
+   *
+   * @param size The side of the padded square, a power of two.
+   * @return The level at which a single coefficient is left.
+   */
+  public static int maxLevel(int size) {
+    return Integer.numberOfTrailingZeros(size);
+  }
+
+  /**
+   * Counts the coefficients that are not zero across the three channels.
+   *
+   * @return The number of non-zero coefficients.
+   */
+  public long countNonZero() {
+    long count = 0;
+    for (double[][] channel : channels) {
+      for (double[] row : channel) {
+        for (double value : row) {
+          if (value != 0.0) {
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the height of the original image.
+   *
+   * @return The height of the original image.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the original image.
+   *
+   * @return The width of the original image.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the side of the padded square the coefficients are stored in.
+   *
+   * @return The padded size, a power of two.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the coefficient matrix of a channel. The returned matrix is not copied.
+   *
+   * @param channel The channel index: 0 for red, 1 for green and 2 for blue.
+   * @return The size x size coefficient matrix of the channel.
+   */
+  public double[][] getChannel(int channel) {
+    return channels[channel];
+  }
+
+  /**
+   * Performs a 2D Haar wavelet transformation in place on the top left square of a matrix.
+   *
+   * @param matrix   The matrix to transform.
+   * @param size     The side of the square to transform, a power of two.
+   * @param progress The progress advanced after every row and column.
+   */
+  static void haar2D(double[][] matrix, int size, Progress progress) {
+    double[] buffer = new double[size];
+    int c = size;
+    while (c > 1) {
+      // Transforming rows
+      for (int i = 0; i < c; i++) {
+        transform(matrix[i], buffer, c);
+        System.arraycopy(buffer, 0, matrix[i], 0, c);
+        progress.advance();
+      }
+      // Transforming columns
+      double[] column = new double[c];
+      for (int j = 0; j < c; j++) {
+        for (int i = 0; i < c; i++) {
+          column[i] = matrix[i][j];
+        }
+        transform(column, buffer, c);
+        for (int i = 0; i < c; i++) {
+          matrix[i][j] = buffer[i];
+        }
+        progress.advance();
+      }
+      c /= 2;
+    }
+  }
+
+  /**
+   * Reverts the 2D Haar wavelet transformation in place on the top left square of a matrix.
+   *
+   * @param matrix   The transformed matrix.
+   * @param size     The side of the square to invert, a power of two.
+   * @param progress The progress advanced after every row and column.
+   */
+  static void inverseHaar2D(double[][] matrix, int size, Progress progress) {
+    double[] buffer = new double[size];
+    double[] column = new double[size];
+    int c = 2;
+    while (c <= size) {
+      // Inverse transform for the first 'c' columns
+      for (int j = 0; j < c; j++) {
+        for (int i = 0; i < c; i++) {
+          column[i] = matrix[i][j];
+        }
+        inverse(column, buffer, c);
+        for (int i = 0; i < c; i++) {
+          matrix[i][j] = buffer[i];
+        }
+        progress.advance();
+      }
+      for (int i = 0; i < c; i++) {
+        inverse(matrix[i], buffer, c);
+        System.arraycopy(buffer, 0, matrix[i], 0, c);
+        progress.advance();
+      }
+      c *= 2;
+    }
+  }
+
+  /**
+   * Transforms the first length values of a sequence into their averages followed by their
+   * differences.
+   *
+   * @param sequence The input sequence.
+   * @param result   The array the transformed values are written to.
+   * @param length   The number of values to transform, an even number.
+   */
+  private static void transform(double[] sequence, double[] result, int length) {
+    int middle = length / 2;
+    for (int i = 0; i < middle; i++) {
+      double firstValue = sequence[2 * i];
+      double secondValue = sequence[2 * i + 1];
+      result[i] = calculateNormalizedAverage(firstValue, secondValue);
+      result[middle + i] = calculateNormalizedDifference(firstValue, secondValue);
+    }
+  }
+
+  /**
+   * Reverts the transformation of the first length values of a sequence.
+   *
+   * @param sequence The transformed sequence.
+   * @param result   The array the original values are written to.
+   * @param length   The number of values to invert, an even number.
+   */
+  private static void inverse(double[] sequence, double[] result, int length) {
+    int middle = length / 2;
+    for (int i = 0; i < middle; i++) {
+      double a = sequence[i];
+      double b = sequence[middle + i];
+      result[2 * i] = calculateNormalizedAverage(a, b);
+      result[2 * i + 1] = calculateNormalizedDifference(a, b);
+    }
+  }
+
+  /**
+   * Calculates the normalized average of two double values.
+   *
+   * @param a The first double value
+   * @param b The second double value
+   * @return The normalized average of the two values
+   */
+  private static double calculateNormalizedAverage(double a, double b) {
+    return (a + b) / Math.sqrt(2);
+  }
+
+  /**
+   * Calculates the normalized difference between two double values.
+   *
+   * @param a The first double value
+   * @param b The second double value
+   * @return The normalized difference between the two values
+   */
+  private static double calculateNormalizedDifference(double a, double b) {
+    return (a - b) / Math.sqrt(2);
+  }
+
+  /**
+   * Rounds a reconstructed value and clamps it between 0 and 255.
+   *
+   * @param value The reconstructed value.
+   * @return The pixel value.
+   */
+  static int clamp(double value) {
+    return Math.min(255, Math.max(0, (int) Math.round(value)));
+  }
+}
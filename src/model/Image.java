@@ -4,10 +4,20 @@ package model;
  * The Image class represents a two-dimensional image with pixel information in RGB format.
  * It provides methods to set and retrieve pixel values, as well as other methods for pixel
  * manipulation.
+ *
+ * <p>The hash of the content of an image is kept once computed, until a pixel is set again. The
+ * arrays returned by {@link #getImage(int, int)} must not be changed once the hash is computed.
+ * The hash is published safely, so an image may be hashed and read from several threads at once.
  */
 public class Image {
 
+  private static final long PRIME_1 = 0x9E3779B97F4A7C15L;
+  private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
   private final int[][][] pixels;
+  private volatile Long contentHash;
+  private volatile boolean watched;
+  private volatile int version;
 
   /**
    * Constructs an Image object with the specified height and width.
@@ -19,6 +29,14 @@ public class Image {
     pixels = new int[height][width][3];
   }
 
+  /**
+   * Constructs an Image object without pixel storage of its own, for subclasses that keep their
+   * pixels elsewhere. Such subclasses override every method of this class.
+   */
+  protected Image() {
+    pixels = null;
+  }
+
   /**
    * Sets the RGB values for a pixel at the specified position (x, y).
    *
@@ -33,6 +51,7 @@ public class Image {
       pixels[x][y][0] = r;
       pixels[x][y][1] = g;
       pixels[x][y][2] = b;
+      contentChanged();
     }
   }
 
@@ -51,6 +70,22 @@ public class Image {
     }
   }
 
+  /**
+   * Reads the RGB values of a row of the image into an array, three interleaved values per pixel,
+   * without allocating, so that the whole image can be read in place whatever its kind.
+   *
+   * @param x      The x-coordinate of the row.
+   * @param target The array to fill, of at least three values per pixel of the row.
+   */
+  public void readRow(int x, int[] target) {
+    int[][] row = pixels[x];
+    for (int y = 0, k = 0; y < row.length; y++, k += 3) {
+      target[k] = row[y][0];
+      target[k + 1] = row[y][1];
+      target[k + 2] = row[y][2];
+    }
+  }
+
   /**
    * Gets the height of the image.
    *
@@ -69,4 +104,142 @@ public class Image {
     return pixels[0].length;
   }
 
-}
\ No newline at end of file
+  /**
+   * Gets a hash of the size and pixel values of the image. Images with the same size and values
+   * have the same hash, whatever their kind. The hash is computed once and kept until the image
+   * is changed, so asking for it again is free.
+   *
+   * @return The hash of the content of the image.
+   */
+  public long contentHash() {
+    Long hash = contentHash;
+    if (hash == null) {
+      hash = finish(computeContentHash());
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  /**
+   * Starts noticing changes to the image, without reading its pixels. The version returned
+   * differs from the one returned by {@link #version()} once a pixel has been set since.
+   *
+   * @return The version of the content of the image.
+   */
+  int watch() {
+    watched = true;
+    return version;
+  }
+
+  /**
+   * Gets the version of the content of the image, which changes when a pixel of a watched image
+   * is set.
+   *
+   * @return The version of the content of the image.
+   */
+  int version() {
+    return version;
+  }
+
+  /**
+   * Gets an estimate of the memory used by the pixels of the image, in bytes.
+   *
+   * @return The estimated size of the image.
+   */
+  public long estimatedSize() {
+    return estimatedSize(getHeight(), getWidth());
+  }
+
+  /**
+   * Gets an estimate of the memory used by the pixels of a plain image of the given size, in
+   * bytes: an array of three integers for every pixel, and an array of pixels for every row.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @return The estimated size of the image.
+   */
+  public static long estimatedSize(int height, int width) {
+    return (long) height * (16 + width * 36L);
+  }
+
+  /**
+   * Discards the hash kept for the content of the image, and moves a watched image on to a new
+   * version. Subclasses call it whenever a pixel is set.
+   */
+  protected void contentChanged() {
+    if (contentHash != null) {
+      contentHash = null;
+    }
+    if (watched) {
+      watched = false;
+      version++;
+    }
+  }
+
+  /**
+   * Computes the hash of the content of the image, by mixing the size of the image and then the
+   * values of every pixel, row after row, with {@link #mixPixel(long, int, int, int)}.
+   * Subclasses may read their pixels faster, as long as the result is the same.
+   *
+   * @return The hash of the content of the image, before its final mixing.
+   */
+  protected long computeContentHash() {
+    long hash = mixSize(getHeight(), getWidth());
+    for (int i = 0; i < getHeight(); i++) {
+      for (int j = 0; j < getWidth(); j++) {
+        int[] pixel = getImage(i, j);
+        hash = mixPixel(hash, pixel[0], pixel[1], pixel[2]);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Starts the hash of the content of an image with its size.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @return The hash of the size.
+   */
+  protected static long mixSize(int height, int width) {
+    return mix(PRIME_1, ((long) height << 32) | (width & 0xFFFFFFFFL));
+  }
+
+  /**
+   * Mixes the values of a pixel into the hash of the content of an image.
+   *
+   * @param hash The hash of the content so far.
+   * @param r    The red component value.
+   * @param g    The green component value.
+   * @param b    The blue component value.
+   * @return The hash including the pixel.
+   */
+  protected static long mixPixel(long hash, int r, int g, int b) {
+    return mix(mix(hash, r), ((long) g << 32) | (b & 0xFFFFFFFFL));
+  }
+
+  /**
+   * Mixes a value into a hash, with a multiply and rotate round as used by xxHash.
+   *
+   * @param hash  The hash so far.
+   * @param value The value to mix in.
+   * @return The new hash.
+   */
+  private static long mix(long hash, long value) {
+    return Long.rotateLeft(hash ^ value * PRIME_2, 31) * PRIME_1;
+  }
+
+  /**
+   * Spreads the bits of a hash, so that images differing in a few values get unrelated hashes.
+   *
+   * @param hash The hash to finish.
+   * @return The finished hash.
+   */
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    return hash ^ hash >>> 33;
+  }
+}
@@ -0,0 +1,106 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.stream.IntStream;
+
+/**
+ * The ImageConversion class converts between {@link Image} objects and {@link BufferedImage}
+ * objects. Pixels are moved a whole row at a time through the raster of the buffered image instead
+ * of one pixel at a time, and the rows of large images are converted in parallel.
+ */
+public class ImageConversion {
+
+  private static final int PARALLEL_THRESHOLD = 1 << 18;
+  private static final int BAND_HEIGHT = 32;
+
+  /**
+   * Converts an image into a buffered image of type {@link BufferedImage#TYPE_INT_RGB}. A
+   * {@link BufferedImageView} is not copied: its backing buffered image is returned. Any other
+   * image is copied into a new buffered image, keeping only the lowest eight bits of every
+   * channel.
+   *
+   * @param image The image to convert.
+   * @return The buffered image.
+   */
+  public static BufferedImage toBufferedImage(Image image) {
+    if (image instanceof BufferedImageView) {
+      return ((BufferedImageView) image).getBufferedImage();
+    }
+    int height = image.getHeight();
+    int width = image.getWidth();
+    BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    WritableRaster raster = bufferedImage.getRaster();
+    bands(height, width).forEach(band -> {
+      int[] row = new int[width];
+      for (int i = band * BAND_HEIGHT; i < Math.min(height, (band + 1) * BAND_HEIGHT); i++) {
+        for (int j = 0; j < width; j++) {
+          int[] pixel = image.getImage(i, j);
+          row[j] = (pixel[0] & 0xFF) << 16 | (pixel[1] & 0xFF) << 8 | (pixel[2] & 0xFF);
+        }
+        raster.setDataElements(0, i, width, 1, row);
+      }
+    });
+    return bufferedImage;
+  }
+
+  /**
+   * Converts a buffered image into a new image. Images stored as packed integers or as interleaved
+   * bytes are read directly from their raster; any other type goes through its color model, a row
+   * at a time. Alpha is dropped.
+   *
+   * @param bufferedImage The buffered image to convert.
+   * @return The image.
+   */
+  public static Image fromBufferedImage(BufferedImage bufferedImage) {
+    int height = bufferedImage.getHeight();
+    int width = bufferedImage.getWidth();
+    Image image = new Image(height, width);
+    Raster raster = bufferedImage.getRaster();
+    int type = bufferedImage.getType();
+    bands(height, width).forEach(band -> {
+      int top = band * BAND_HEIGHT;
+      int bottom = Math.min(height, top + BAND_HEIGHT);
+      if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR) {
+        int samples = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+        byte[] row = new byte[width * samples];
+        for (int i = top; i < bottom; i++) {
+          raster.getDataElements(0, i, width, 1, row);
+          for (int j = 0, index = 0; j < width; j++, index += samples) {
+            image.setImage(i, j, row[index] & 0xFF, row[index + 1] & 0xFF,
+                    row[index + 2] & 0xFF);
+          }
+        }
+      } else {
+        boolean packed = type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_ARGB;
+        int[] row = new int[width];
+        for (int i = top; i < bottom; i++) {
+          if (packed) {
+            raster.getDataElements(0, i, width, 1, row);
+          } else {
+            bufferedImage.getRGB(0, i, width, 1, row, 0, width);
+          }
+          for (int j = 0; j < width; j++) {
+            int rgb = row[j];
+            image.setImage(i, j, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+          }
+        }
+      }
+    });
+    return image;
+  }
+
+  /**
+   * Splits the rows of an image into bands of rows, in parallel when the image is large.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @return The indexes of the bands.
+   */
+  private static IntStream bands(int height, int width) {
+    IntStream bands = IntStream.range(0, (height + BAND_HEIGHT - 1) / BAND_HEIGHT);
+    return (long) height * width >= PARALLEL_THRESHOLD ? bands.parallel() : bands;
+  }
+}
@@ -3,15 +3,12 @@ package model;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.lang.ref.SoftReference;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * The ImageOperations class implements the ImageProcessor interface, providing various.
@@ -20,21 +17,67 @@ import java.util.stream.Collectors;
 
 public class ImageOperations implements ImageProcessor {
 
-  private static Map<String, Image> imageInstances = new HashMap<>();
-  protected int height;
-  protected int width;
-  protected int redComponentOfImage;
-  protected int greenComponentOfImage;
-  protected int blueComponentOfImage;
+  private static final Map<String, Image> SHARED_IMAGES = new ConcurrentHashMap<>();
+  private static final Map<String, SoftReference<HaarCoefficients>> SHARED_COEFFICIENTS
+          = new ConcurrentHashMap<>();
+  private final Map<String, Image> imageInstances;
+  private final Map<String, SoftReference<HaarCoefficients>> coefficientInstances;
+  private boolean packedImages;
 
   /**
-   * Constructs a new `ImageOperations` instance. Initializes the image storage if null.
+   * Constructs a new `ImageOperations` instance. Every instance made this way shares the same
+   * stored images. The operations keep no state of their own besides the stored images, which may
+   * be read and written from several threads, so operations on different images can run
+   * concurrently.
    */
   public ImageOperations() {
-    if (imageInstances == null) {
-      imageInstances = new HashMap<>();
-    }
+    this(SHARED_IMAGES, SHARED_COEFFICIENTS);
+  }
 
+  /**
+   * Constructs a new `ImageOperations` instance storing its images in the given maps.
+   *
+   * @param imageInstances       The images, by name.
+   * @param coefficientInstances The Haar coefficients kept with the images, by name.
+   */
+  private ImageOperations(Map<String, Image> imageInstances,
+                          Map<String, SoftReference<HaarCoefficients>> coefficientInstances) {
+    this.imageInstances = imageInstances;
+    this.coefficientInstances = coefficientInstances;
+  }
+
+  /**
+   * Constructs a new `ImageOperations` instance with its own stored images, which no other
+   * instance sees, so that several scripts can run at the same time without their image names
+   * clashing.
+   *
+   * @return The new instance, with no images.
+   */
+  public static ImageOperations isolated() {
+    return new ImageOperations(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Chooses how the images produced by the operations store their pixels. Packed images keep
+   * eight bits per channel in the integer array of a buffered image, so they can be displayed or
+   * saved without copying, but their values are clamped between 0 and 255.
+   *
+   * @param packedImages true to produce {@link BufferedImageView} images, false for plain images
+   */
+  @Override
+  public void setPackedImages(boolean packedImages) {
+    this.packedImages = packedImages;
+  }
+
+  /**
+   * Creates an empty image for the result of an operation, packed or plain as configured.
+   *
+   * @param height The height of the image
+   * @param width  The width of the image
+   * @return The new image
+   */
+  private Image createImage(int height, int width) {
+    return packedImages ? new BufferedImageView(height, width) : new Image(height, width);
   }
 
   /**
@@ -70,11 +113,14 @@ public class ImageOperations implements ImageProcessor {
   @Override
   public void flipImage(String sourceImageName, String destImageName, boolean isHorizontal) {
     Image sourceImage = getImageImage(sourceImageName);
-    height = sourceImage.getHeight();
-    width = sourceImage.getWidth();
-    Image flippedImage = new Image(height, width);
+    int height = sourceImage.getHeight();
+    int width = sourceImage.getWidth();
+    Image flippedImage = createImage(height, width);
 
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArrayPrimary;
         int[] pixelArraySecondary;
@@ -112,22 +158,22 @@ public class ImageOperations implements ImageProcessor {
   public void rgbSplit(String sourceImageName, String destRedImageName,
                        String destGreenImageName, String destBlueImageName) {
     Image sourceImage = getImageImage(sourceImageName);
-    height = sourceImage.getHeight();
-    width = sourceImage.getWidth();
-    Image redChannel = new Image(height, width);
-    Image greenChannel = new Image(height, width);
-    Image blueChannel = new Image(height, width);
+    int height = sourceImage.getHeight();
+    int width = sourceImage.getWidth();
+    Image redChannel = createImage(height, width);
+    Image greenChannel = createImage(height, width);
+    Image blueChannel = createImage(height, width);
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArray = sourceImage.getImage(i, j);
 
         if (pixelArray != null) {
-          redComponentOfImage = pixelArray[0];
-          greenComponentOfImage = pixelArray[1];
-          blueComponentOfImage = pixelArray[2];
-          redChannel.setImage(i, j, redComponentOfImage, 0, 0);
-          greenChannel.setImage(i, j, 0, greenComponentOfImage, 0);
-          blueChannel.setImage(i, j, 0, 0, blueComponentOfImage);
+          redChannel.setImage(i, j, pixelArray[0], 0, 0);
+          greenChannel.setImage(i, j, 0, pixelArray[1], 0);
+          blueChannel.setImage(i, j, 0, 0, pixelArray[2]);
         }
       }
     }
@@ -151,15 +197,16 @@ public class ImageOperations implements ImageProcessor {
     Image redChannel = getImageImage(sourceRedImageName);
     Image blueChannel = getImageImage(sourceBlueImageName);
     Image greenChannel = getImageImage(sourceGreenImageName);
-    height = redChannel.getHeight();
-    width = redChannel.getWidth();
-    Image colorImage = new Image(height, width);
+    int height = redChannel.getHeight();
+    int width = redChannel.getWidth();
+    Image colorImage = createImage(height, width);
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
-        redComponentOfImage = redChannel.getImage(i, j)[0];
-        greenComponentOfImage = greenChannel.getImage(i, j)[1];
-        blueComponentOfImage = blueChannel.getImage(i, j)[2];
-        colorImage.setImage(i, j, redComponentOfImage, greenComponentOfImage, blueComponentOfImage);
+        colorImage.setImage(i, j, redChannel.getImage(i, j)[0], greenChannel.getImage(i, j)[1],
+                blueChannel.getImage(i, j)[2]);
       }
     }
     addImage(destImageName, colorImage);
@@ -183,9 +230,12 @@ public class ImageOperations implements ImageProcessor {
     if (sourceImage != null) {
       int height = sourceImage.getHeight();
       int width = sourceImage.getWidth();
-      Image componentImage = new Image(height, width);
+      Image componentImage = createImage(height, width);
 
+      Progress progress = Progress.current();
+      progress.expect(height);
       for (int i = 0; i < height; i++) {
+        progress.advance();
         for (int j = 0; j < width; j++) {
           int[] pixelArray = sourceImage.getImage(i, j);
           if (pixelArray != null) {
@@ -215,9 +265,12 @@ public class ImageOperations implements ImageProcessor {
     Image sourceImage = getImageImage(sourceImageName);
     int height = sourceImage.getHeight();
     int width = sourceImage.getWidth();
-    Image adjustedImage = new Image(height, width);
+    Image adjustedImage = createImage(height, width);
 
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArray = sourceImage.getImage(i, j);
         if (pixelArray != null) {
@@ -251,12 +304,15 @@ public class ImageOperations implements ImageProcessor {
 
     int splitPoint = (splitKeyword.equals("split")) ? (width * splitPercentage / 100) : -1;
 
-    Image tempImage = new Image(height, width);
+    Image tempImage = createImage(height, width);
 
     int kernelSize = kernel.length;
     int kernelRadius = kernelSize / 2;
 
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] result = {0, 0, 0};
 
@@ -285,7 +341,7 @@ public class ImageOperations implements ImageProcessor {
       }
     }
 
-    Image filteredImage = new Image(height, width);
+    Image filteredImage = createImage(height, width);
     for (int i = 0; i < height; i++) {
       for (int j = 0; j < width; j++) {
         int[] pixelArray = tempImage.getImage(i, j);
@@ -307,11 +363,14 @@ public class ImageOperations implements ImageProcessor {
   @Override
   public void createComponent(String sourceImageName, String destImageName, double[] coefficients) {
     Image sourceImage = getImageImage(sourceImageName);
-    height = sourceImage.getHeight();
-    width = sourceImage.getWidth();
-    Image componentImage = new Image(height, width);
+    int height = sourceImage.getHeight();
+    int width = sourceImage.getWidth();
+    Image componentImage = createImage(height, width);
 
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArray = sourceImage.getImage(i, j);
         if (pixelArray != null) {
@@ -350,7 +409,12 @@ public class ImageOperations implements ImageProcessor {
    * @param pixel     The image to be added to the image processing system.
    */
   public void addImage(String imageName, Image pixel) {
-    imageInstances.put(imageName, pixel);
+    if (pixel == null) {
+      imageInstances.remove(imageName);
+    } else {
+      imageInstances.put(imageName, pixel);
+    }
+    coefficientInstances.remove(imageName);
   }
 
   /**
@@ -375,7 +439,8 @@ public class ImageOperations implements ImageProcessor {
     // Create and draw histogram for the original image
     createAndDrawHistogram(sourceImage, g, height);
 
-    Image destHist = bufferedImageToImage(histogramImage);
+    Image destHist = packedImages ? new BufferedImageView(histogramImage)
+            : bufferedImageToImage(histogramImage);
     addImage(destImageName, destHist);
   }
 
@@ -482,8 +547,11 @@ public class ImageOperations implements ImageProcessor {
     int[] correctedGreenHistogram = offsetChannel(greenHistogram, averagePeakValue);
     int[] correctedBlueHistogram = offsetChannel(blueHistogram, averagePeakValue);
     // Apply offset to the color-corrected image
-    Image colorCorrectedImage = new Image(height, width);
+    Image colorCorrectedImage = createImage(height, width);
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int x = 0; x < height; x++) {
+      progress.advance();
       for (int y = 0; y < width; y++) {
         int[] pixel = sourceImage.getImage(x, y);
         if (pixel != null) {
@@ -570,8 +638,11 @@ public class ImageOperations implements ImageProcessor {
     int width = sourceImage.getWidth();
     int height = sourceImage.getHeight();
     int splitPoint = (splitKeyword.equals("split")) ? (width * splitPercentage / 100) : -1;
-    Image levelAdjustedImage = new Image(height, width);
+    Image levelAdjustedImage = createImage(height, width);
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArray = sourceImage.getImage(i, j);
         if (pixelArray != null) {
@@ -645,19 +716,7 @@ public class ImageOperations implements ImageProcessor {
    * @throws IllegalArgumentException If the provided BufferedImage is null
    */
   private Image bufferedImageToImage(BufferedImage bufferedImage) {
-    int width = bufferedImage.getWidth();
-    int height = bufferedImage.getHeight();
-    Image image = new Image(height, width);
-
-    for (int x = 0; x < height; x++) {
-      for (int y = 0; y < width; y++) {
-        Color color = new Color(bufferedImage.getRGB(y, x));
-        int[] pixel = {color.getRed(), color.getGreen(), color.getBlue()};
-        image.setImage(x, y, pixel[0], pixel[1], pixel[2]);
-      }
-    }
-
-    return image;
+    return ImageConversion.fromBufferedImage(bufferedImage);
   }
 
 
@@ -680,9 +739,12 @@ public class ImageOperations implements ImageProcessor {
     int width = sourceImage.getWidth();
     int splitPoint = (splitKeyword.equals("split")) ? (width * splitPercentage / 100) : -1;
 
-    Image transformedImage = new Image(height, width);
+    Image transformedImage = createImage(height, width);
 
+    Progress progress = Progress.current();
+    progress.expect(height);
     for (int i = 0; i < height; i++) {
+      progress.advance();
       for (int j = 0; j < width; j++) {
         int[] pixelArray = sourceImage.getImage(i, j);
         if (pixelArray != null) {
@@ -714,6 +776,8 @@ public class ImageOperations implements ImageProcessor {
 
   /**
    * Compresses the source image by applying Haar wavelet transformation and thresholding.
+   * The thresholded coefficients are kept alongside the compressed image so that they can be
+   * stored or decoded again without repeating the transformation.
    *
    * @param compressionPercentage The percentage of compression to be applied
    * @param sourceImageName       The filename of the source image
@@ -723,409 +787,213 @@ public class ImageOperations implements ImageProcessor {
   public void compressImage(Double compressionPercentage,
                             String sourceImageName, String destImageName) {
     Image sourceImage = getImageImage(sourceImageName);
-    ArrayList<int[][]> channels = rgbSplitToArrayLists(sourceImage);
-
-    List<List<Double>> redMatrixOriginal = convertToDoubleArrayList(channels.get(0));
-    List<List<Double>> greenMatrixOriginal = convertToDoubleArrayList(channels.get(1));
-    List<List<Double>> blueMatrixOriginal = convertToDoubleArrayList(channels.get(2));
-
-    int originalRows = sourceImage.getHeight();
-    int originalCols = sourceImage.getWidth();
-    int maxDimension = Math.max(originalRows, originalCols);
-    int nextPowerOfTwo = 1;
-    while (nextPowerOfTwo < maxDimension) {
-      nextPowerOfTwo *= 2;
-    }
-
-
-    List<List<Double>> redMatrixPadded = padImage(redMatrixOriginal, nextPowerOfTwo);
-    List<List<Double>> greenMatrixPadded = padImage(greenMatrixOriginal, nextPowerOfTwo);
-    List<List<Double>> blueMatrixPadded = padImage(blueMatrixOriginal, nextPowerOfTwo);
-
-    List<List<Double>> redMatrixTransformed = haar2D(redMatrixPadded, nextPowerOfTwo);
-    List<List<Double>> greenMatrixTransformed = haar2D(greenMatrixPadded, nextPowerOfTwo);
-    List<List<Double>> blueMatrixTransformed = haar2D(blueMatrixPadded, nextPowerOfTwo);
-
-    List<List<List<Double>>> thresholdedMatrices = applyThreshold(redMatrixTransformed,
-            greenMatrixTransformed, blueMatrixTransformed, compressionPercentage);
-
-    List<List<Double>> redMatrixThresholded = thresholdedMatrices.get(0);
-    List<List<Double>> greenMatrixThresholded = thresholdedMatrices.get(1);
-    List<List<Double>> blueMatrixThresholded = thresholdedMatrices.get(2);
-
-    List<List<Double>> redMatrixInverted = inversehaar2D(redMatrixThresholded, nextPowerOfTwo);
-    List<List<Double>> greenMatrixInverted = inversehaar2D(greenMatrixThresholded, nextPowerOfTwo);
-    List<List<Double>> blueMatrixInverted = inversehaar2D(blueMatrixThresholded, nextPowerOfTwo);
-
-
-    List<List<Double>> redMatrixUnpadded
-            = unpadImage(redMatrixInverted, originalRows, originalCols);
-    List<List<Double>> greenMatrixUnpadded
-            = unpadImage(greenMatrixInverted, originalRows, originalCols);
-    List<List<Double>> blueMatrixUnpadded
-            = unpadImage(blueMatrixInverted, originalRows, originalCols);
-
-    List<List<Integer>> finalRedMatrix
-            = clampPixelValues(roundAndConvertToInt(redMatrixUnpadded));
-    List<List<Integer>> finalGreenMatrix
-            = clampPixelValues(roundAndConvertToInt(greenMatrixUnpadded));
-    List<List<Integer>> finalBlueMatrix
-            = clampPixelValues(roundAndConvertToInt(blueMatrixUnpadded));
-
-    addImage(destImageName, combineChannels(finalRedMatrix, finalGreenMatrix, finalBlueMatrix,
-            sourceImage.getHeight(), sourceImage.getWidth()));
+    Progress progress = Progress.current();
+    progress.expect(2 * HaarCoefficients.transformSteps(HaarCoefficients.nextPowerOfTwo(
+            Math.max(sourceImage.getHeight(), sourceImage.getWidth()))));
+    HaarCoefficients coefficients
+            = HaarCoefficients.transform(sourceImage, progress).threshold(compressionPercentage);
+    addImage(destImageName, coefficients.toImage(progress));
+    addCoefficients(destImageName, coefficients);
   }
 
-
   /**
-   * Performs a transformation on a sequence by calculating averages and differences.
+   * Gets the number of percentages of a sweep compressed at the same time.
    *
-   * @param sequence The input sequence to be transformed
-   * @return A list containing the transformed sequence
+   * @param percentages The number of percentages of the sweep
+   * @return The number of percentages compressed at the same time, at most one per processor
    */
-  private List<Double> transform(List<Double> sequence) {
-    List<Double> avg = new ArrayList<>();
-    List<Double> diff = new ArrayList<>();
-    for (int i = 0; i < sequence.size() - 1; i += 2) {
-      double first_value = sequence.get(i);
-      double second_value = sequence.get(i + 1);
-      double average = calculateNormalizedAverage(first_value, second_value);
-      double difference = calculateNormalizedDifference(first_value, second_value);
-      avg.add(average);
-      diff.add(difference);
-    }
-    avg.addAll(diff);
-    return avg;
+  public static int sweepParallelism(int percentages) {
+    return Math.max(1, Math.min(percentages, Runtime.getRuntime().availableProcessors()));
   }
 
   /**
-   * Reverts the transformation applied to a sequence to retrieve the original sequence.
+   * Compresses the source image at several compression percentages. The Haar wavelet
+   * transformation and the sorted coefficient magnitudes of the source are computed once; each
+   * percentage only needs thresholding and an inverse transformation, which run in parallel, at
+   * most {@link #sweepParallelism} at a time. When the results are only measured, the thresholded
+   * coefficients and compressed image of a percentage are dropped as soon as it is measured.
    *
-   * @param sequence The transformed sequence
-   * @return The reverted original sequence
+   * @param percentages     The compression percentages to apply
+   * @param sourceImageName The name of the source image
+   * @param destImagePrefix The prefix of the compressed image names, which are stored as
+   *                        prefix-percentage, or null to only measure the results
+   * @return The size and error of the compressed image for each percentage, in the given order
    */
-  private List<Double> inverse(List<Double> sequence) {
-    List<Double> avg = new ArrayList<>();
-    List<Double> diff = new ArrayList<>();
-    int middle = sequence.size() / 2;
-    int j = middle;
-    for (int i = 0; i < middle; i++) {
-      double a = sequence.get(i);
-      double b = sequence.get(j);
-      double average = calculateNormalizedAverage(a, b);
-      double difference = calculateNormalizedDifference(a, b);
-
-      avg.add(average);
-      diff.add(difference);
-      j++;
-    }
-
-    List<Double> result = new ArrayList<>();
-    for (int k = 0; k < avg.size(); k++) {
-      result.add(avg.get(k));
-      result.add(diff.get(k));
-    }
-
-    return result;
-  }
-
-  /**
-   * Performs a 2D Haar wavelet transformation on a matrix of sequences.
-   *
-   * @param sequence The input matrix containing sequences
-   * @param size     The size of the matrix
-   * @return The transformed matrix after the 2D Haar wavelet transformation
-   */
-  private List<List<Double>> haar2D(List<List<Double>> sequence, int size) {
-    int c = size;
-    while (c > 1) {
-      // Transforming rows
-      for (int i = 0; i < c; i++) {
-        List<Double> row = sequence.get(i).subList(0, c);
-        List<Double> transformedRow = transform(row);
-        for (int j = 0; j < c; j++) {
-          sequence.get(i).set(j, transformedRow.get(j));
-        }
-      }
-      // Transforming columns
-      for (int j = 0; j < c; j++) {
-        List<Double> column = new ArrayList<>();
-        for (int i = 0; i < c; i++) {
-          column.add(sequence.get(i).get(j));
-        }
-        List<Double> transformedColumn = transform(column);
-        for (int i = 0; i < c; i++) {
-          sequence.get(i).set(j, transformedColumn.get(i));
-        }
-      }
-      c /= 2;
-    }
-    return sequence;
-  }
-
-  /**
-   * Reverts the 2D Haar wavelet transformation on a matrix of sequences.
-   *
-   * @param sequence The transformed matrix
-   * @param size     The size of the matrix
-   * @return The original matrix after inverse Haar transformation
-   */
-  private List<List<Double>> inversehaar2D(List<List<Double>> sequence, int size) {
-    int c = 2;
-    while (c <= size) {
-      // Inverse transform for the first 'c' columns of X
-      for (int j = 0; j < c; j++) {
-        List<Double> column = new ArrayList<>();
-        for (int i = 0; i < c; i++) {
-          column.add(sequence.get(i).get(j));
-        }
-        List<Double> invertedColumn = inverse(column);
-        for (int i = 0; i < c; i++) {
-          sequence.get(i).set(j, invertedColumn.get(i));
-        }
-      }
-      for (int i = 0; i < c; i++) {
-        List<Double> row = sequence.get(i).subList(0, c);
-        List<Double> invertedRow = inverse(row);
-        for (int j = 0; j < c; j++) {
-          sequence.get(i).set(j, invertedRow.get(j));
-        }
-      }
-      c *= 2;
+  @Override
+  public List<CompressionResult> compressSweep(double[] percentages, String sourceImageName,
+                                               String destImagePrefix) {
+    Image sourceImage = getImageImage(sourceImageName);
+    Progress progress = Progress.current();
+    progress.expect((1 + percentages.length) * HaarCoefficients.transformSteps(
+            HaarCoefficients.nextPowerOfTwo(
+                    Math.max(sourceImage.getHeight(), sourceImage.getWidth()))));
+    HaarCoefficients transformed = HaarCoefficients.transform(sourceImage, progress);
+    double[] magnitudes = transformed.sortedMagnitudes();
+    long totalCoefficients = 3L * transformed.getSize() * transformed.getSize();
+
+    boolean store = destImagePrefix != null;
+    HaarCoefficients[] thresholded = new HaarCoefficients[store ? percentages.length : 0];
+    Image[] compressed = new Image[store ? percentages.length : 0];
+    CompressionResult[] results = new CompressionResult[percentages.length];
+    int parallelism = sweepParallelism(percentages.length);
+    for (int start = 0; start < percentages.length; start += parallelism) {
+      IntStream.range(start, Math.min(percentages.length, start + parallelism)).parallel()
+              .forEach(k -> {
+                HaarCoefficients coefficients = transformed.threshold(magnitudes, percentages[k]);
+                Image image = coefficients.toImage(progress);
+                results[k] = new CompressionResult(percentages[k], coefficients.countNonZero(),
+                        totalCoefficients, ImageQuality.psnr(sourceImage, image));
+                if (store) {
+                  thresholded[k] = coefficients;
+                  compressed[k] = image;
+                }
+              });
     }
-    return sequence;
-  }
 
-  /**
-   * Applies a threshold to the transformed matrices based on the compression percentage.
-   *
-   * @param transformedRedMatrix   Transformed red channel matrix
-   * @param transformedGreenMatrix Transformed green channel matrix
-   * @param transformedBlueMatrix  Transformed blue channel matrix
-   * @param compressionPercentage  The percentage of compression to be applied
-   * @return List of thresholded matrices
-   */
-  private List<List<List<Double>>> applyThreshold(List<List<Double>> transformedRedMatrix,
-                                                  List<List<Double>> transformedGreenMatrix,
-                                                  List<List<Double>> transformedBlueMatrix,
-                                                  double compressionPercentage) {
-    Set<Double> absValues = new TreeSet<>();
-    for (List<Double> channel : transformedRedMatrix) {
-      absValues.addAll(channel.stream().map(Math::abs).collect(Collectors.toList()));
-    }
-    for (List<Double> channel : transformedGreenMatrix) {
-      absValues.addAll(channel.stream().map(Math::abs).collect(Collectors.toList()));
-    }
-    for (List<Double> channel : transformedBlueMatrix) {
-      absValues.addAll(channel.stream().map(Math::abs).collect(Collectors.toList()));
-    }
-    ArrayList<Double> absList = new ArrayList<>(absValues);
-    Collections.sort(absList);
-    int thresholdIndex = Math.abs((int) (absList.size() * compressionPercentage / 100.0) - 1);
-    double threshold = absList.get(thresholdIndex);
-    for (List<List<Double>> channelMatrix : List.of(transformedRedMatrix, transformedGreenMatrix,
-            transformedBlueMatrix)) {
-      for (List<Double> channel : channelMatrix) {
-        for (int i = 0; i < channel.size(); i++) {
-          double currentValue = channel.get(i);
-          if (Math.abs(currentValue) <= threshold) {
-            channel.set(i, 0.0);
-          }
-        }
+    if (store) {
+      for (int k = 0; k < percentages.length; k++) {
+        String destImageName = destImagePrefix + "-" + percentageLabel(percentages[k]);
+        addImage(destImageName, compressed[k]);
+        addCoefficients(destImageName, thresholded[k]);
       }
     }
-    List<List<List<Double>>> thresholdedMatrices = new ArrayList<>();
-    thresholdedMatrices.add(transformedRedMatrix);
-    thresholdedMatrices.add(transformedGreenMatrix);
-    thresholdedMatrices.add(transformedBlueMatrix);
-
-    return thresholdedMatrices;
+    return Arrays.asList(results);
   }
 
-
   /**
-   * Splits the RGB channels of an image into separate arrays and stores them in an ArrayList.
+   * Compresses the source image as much as possible while keeping its quality at or above a
+   * target. The source is transformed once; a binary search over its sorted coefficient
+   * magnitudes then looks for the largest threshold whose result still meets the target. Quality
+   * drops almost monotonically as the threshold grows, so the search may settle slightly below
+   * the true optimum but never returns a result that misses the target. If even the smallest
+   * threshold misses it, every coefficient is kept.
    *
-   * @param sourceImage The source image from which RGB channels are extracted
-   * @return An ArrayList containing the red, green, and blue channel arrays
+   * @param metric          The quality metric, either "psnr" or "ssim"
+   * @param target          The lowest acceptable quality, in decibels for PSNR
+   * @param sourceImageName The name of the source image
+   * @param destImageName   The name of the compressed image
+   * @return The size and error of the compressed image, with the equivalent compression
+   *         percentage
    */
-  private ArrayList<int[][]> rgbSplitToArrayLists(Image sourceImage) {
-    int height = sourceImage.getHeight();
-    int width = sourceImage.getWidth();
-    ArrayList<int[][]> channels = new ArrayList<>();
-
-    int[][] redChannel = new int[height][width];
-    int[][] greenChannel = new int[height][width];
-    int[][] blueChannel = new int[height][width];
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int[] pixelArray = sourceImage.getImage(i, j);
-        if (pixelArray != null) {
-          redChannel[i][j] = pixelArray[0];
-          greenChannel[i][j] = pixelArray[1];
-          blueChannel[i][j] = pixelArray[2];
-        }
+  @Override
+  public CompressionResult compressToQuality(String metric, double target,
+                                             String sourceImageName, String destImageName) {
+    Image sourceImage = getImageImage(sourceImageName);
+    Progress progress = Progress.current();
+    int size = HaarCoefficients.nextPowerOfTwo(
+            Math.max(sourceImage.getHeight(), sourceImage.getWidth()));
+    int searches = 64 - Long.numberOfLeadingZeros(3L * size * size);
+    progress.expect((2 + searches) * HaarCoefficients.transformSteps(size));
+    HaarCoefficients transformed = HaarCoefficients.transform(sourceImage, progress);
+    double[] magnitudes = transformed.sortedMagnitudes();
+
+    HaarCoefficients best = transformed;
+    Image bestImage = null;
+    int bestIndex = -1;
+    int low = 0;
+    int high = magnitudes.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      HaarCoefficients candidate = transformed.thresholdAt(magnitudes[middle]);
+      Image candidateImage = candidate.toImage();
+      if (ImageQuality.measure(metric, sourceImage, candidateImage) >= target) {
+        best = candidate;
+        bestImage = candidateImage;
+        bestIndex = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
       }
     }
-    channels.add(redChannel);
-    channels.add(greenChannel);
-    channels.add(blueChannel);
-    return channels;
-  }
-
-  /**
-   * Converts a 2D integer array to a List of Lists containing Double values.
-   *
-   * @param array The 2D integer array to be converted
-   * @return A List of Lists containing Double values converted from the input array
-   */
-  private List<List<Double>> convertToDoubleArrayList(int[][] array) {
-    List<List<Double>> resultList = new ArrayList<>();
-    for (int[] row : array) {
-      List<Double> newRow
-              = Arrays.stream(row).asDoubleStream().boxed().collect(Collectors.toList());
-      resultList.add(newRow);
-    }
-    return resultList;
-  }
 
-  /**
-   * Combines the red, green, and blue matrices into a single Image object.
-   *
-   * @param redMatrix   The red channel matrix
-   * @param greenMatrix The green channel matrix
-   * @param blueMatrix  The blue channel matrix
-   * @param height      The height of the combined image
-   * @param width       The width of the combined image
-   * @return An Image object containing the combined RGB channels
-   */
-  private Image combineChannels(List<List<Integer>> redMatrix,
-                                List<List<Integer>> greenMatrix,
-                                List<List<Integer>> blueMatrix,
-                                int height, int width) {
-    Image combinedImage = new Image(height, width);
-
-    for (int i = 0; i < height && i < redMatrix.size(); i++) {
-      for (int j = 0; j < width && j < redMatrix.get(i).size(); j++) {
-        int red = redMatrix.get(i).get(j);
-        int green = greenMatrix.get(i).get(j);
-        int blue = blueMatrix.get(i).get(j);
-        // Check if the pixel is within the bounds of the original image before setting values
-        if (i < combinedImage.getHeight() && j < combinedImage.getWidth()) {
-          combinedImage.setImage(i, j, red, green, blue);
-        }
-      }
+    if (bestIndex == -1) {
+      bestImage = transformed.toImage();
     }
-    return combinedImage;
+    addImage(destImageName, bestImage);
+    addCoefficients(destImageName, best);
+    double percentage = (bestIndex + 1) * 100.0 / magnitudes.length;
+    return new CompressionResult(percentage, best.countNonZero(),
+            3L * transformed.getSize() * transformed.getSize(),
+            ImageQuality.psnr(sourceImage, bestImage));
   }
 
   /**
-   * Clamps pixel values of a pixel matrix between 0 and 255.
+   * Measures the quality of an image against a reference image.
    *
-   * @param pixelMatrix The pixel matrix to clamp values for
-   * @return The pixel matrix with clamped values
+   * @param metric             The quality metric, either "psnr" or "ssim"
+   * @param referenceImageName The name of the reference image
+   * @param imageName          The name of the image to measure
+   * @return The PSNR in decibels or the mean SSIM
    */
-  private List<List<Integer>> clampPixelValues(List<List<Integer>> pixelMatrix) {
-    for (List<Integer> row : pixelMatrix) {
-      for (int i = 0; i < row.size(); i++) {
-        int clampedValue = Math.min(255, Math.max(0, row.get(i)));
-        row.set(i, clampedValue);
-      }
-    }
-    return pixelMatrix;
+  @Override
+  public double measureQuality(String metric, String referenceImageName, String imageName) {
+    return ImageQuality.measure(metric, getImageImage(referenceImageName),
+            getImageImage(imageName));
   }
 
   /**
-   * Pads an image matrix with zeros to the next power of two in both dimensions.
+   * Formats a compression percentage for use in an image name, without a fractional part when
+   * it is a whole number.
    *
-   * @param image          The image matrix to be padded
-   * @param nextPowerOfTwo The next power of two value for padding
-   * @return The padded image matrix
+   * @param percentage The compression percentage
+   * @return The formatted percentage
    */
-  private List<List<Double>> padImage(List<List<Double>> image, int nextPowerOfTwo) {
-    int rows = image.size();
-    int cols = image.get(0).size();
-
-    // Pad the image to the next power of two
-    List<List<Double>> paddedImage = new ArrayList<>();
-    for (int i = 0; i < nextPowerOfTwo; i++) {
-      if (i < rows) {
-        List<Double> row = new ArrayList<>(image.get(i));
-        while (row.size() < nextPowerOfTwo) {
-          row.add(0.0); // Pad with zeros
-        }
-        paddedImage.add(row);
-      } else {
-        // Pad rows with zeros until the image becomes square
-        List<Double> zeroRow = new ArrayList<>(Collections.nCopies(nextPowerOfTwo, 0.0));
-        paddedImage.add(zeroRow);
-      }
+  private String percentageLabel(double percentage) {
+    if (percentage == Math.rint(percentage)) {
+      return String.valueOf((long) percentage);
     }
-
-    return paddedImage;
+    return String.valueOf(percentage);
   }
 
-
   /**
-   * Removes padding from an image matrix based on original dimensions.
+   * Creates a thumbnail of the source image, scaled down by a factor of two for every level, by
+   * stopping the inverse Haar wavelet transformation early. The coefficients kept by a previous
+   * compression are used when available; otherwise the source image is transformed first.
    *
-   * @param image        The padded image matrix
-   * @param originalRows The original number of rows
-   * @param originalCols The original number of columns
-   * @return The unpadded image matrix
+   * @param level           The number of resolution levels to drop
+   * @param sourceImageName The name of the source image
+   * @param destImageName   The name of the thumbnail image
    */
-  private List<List<Double>> unpadImage(List<List<Double>> image,
-                                        int originalRows, int originalCols) {
-    List<List<Double>> unpaddedImage = new ArrayList<>();
-    for (int i = 0; i < originalRows; i++) {
-      unpaddedImage.add(new ArrayList<>(image.get(i).subList(0, originalCols)));
+  @Override
+  public void createThumbnail(int level, String sourceImageName, String destImageName) {
+    HaarCoefficients coefficients = getCoefficients(sourceImageName);
+    Image sourceImage = coefficients == null ? getImageImage(sourceImageName) : null;
+    int size = coefficients != null ? coefficients.getSize() : HaarCoefficients.nextPowerOfTwo(
+            Math.max(sourceImage.getHeight(), sourceImage.getWidth()));
+    int side = size >> Math.max(0, Math.min(level, HaarCoefficients.maxLevel(size)));
+    Progress progress = Progress.current();
+    progress.expect((coefficients == null ? HaarCoefficients.transformSteps(size) : 0)
+            + HaarCoefficients.transformSteps(side));
+    if (coefficients == null) {
+      coefficients = HaarCoefficients.transform(sourceImage, progress);
     }
-    return unpaddedImage;
-  }
-
-  /**
-   * Calculates the normalized average of two double values.
-   *
-   * @param a The first double value
-   * @param b The second double value
-   * @return The normalized average of the two values
-   */
-  private double calculateNormalizedAverage(double a, double b) {
-    return (a + b) / Math.sqrt(2);
+    HaarCoefficients thumbnail = coefficients.downscale(level);
+    addImage(destImageName, thumbnail.toImage(progress));
+    addCoefficients(destImageName, thumbnail);
   }
 
   /**
-   * Calculates the normalized difference between two double values.
+   * Associates Haar coefficients with an image name. The coefficients are only softly referenced
+   * and are discarded whenever a new image is added under the same name.
    *
-   * @param a The first double value
-   * @param b The second double value
-   * @return The normalized difference between the two values
+   * @param imageName    The name of the image the coefficients belong to.
+   * @param coefficients The Haar coefficients of the image.
    */
-  private double calculateNormalizedDifference(double a, double b) {
-    return (a - b) / Math.sqrt(2);
+  @Override
+  public void addCoefficients(String imageName, HaarCoefficients coefficients) {
+    coefficientInstances.put(imageName, new SoftReference<>(coefficients));
   }
 
   /**
-   * Rounds and converts a matrix of Double values to Integer values.
+   * Retrieves the Haar coefficients kept for an image, if they are still available.
    *
-   * @param originalMatrix The original matrix of Double values
-   * @return A matrix containing rounded Integer values from the input matrix
+   * @param imageName The name of the image.
+   * @return The Haar coefficients of the image, or null if none are kept.
    */
-  private List<List<Integer>> roundAndConvertToInt(List<List<Double>> originalMatrix) {
-    List<List<Integer>> roundedMatrix = new ArrayList<>();
-
-    for (List<Double> row : originalMatrix) {
-      List<Integer> roundedRow = new ArrayList<>();
-      for (Double element : row) {
-        int roundedElement = (int) Math.round(element);
-        roundedRow.add(roundedElement);
-      }
-      roundedMatrix.add(roundedRow);
-    }
-    return roundedMatrix;
+  @Override
+  public HaarCoefficients getCoefficients(String imageName) {
+    SoftReference<HaarCoefficients> reference = coefficientInstances.get(imageName);
+    return reference == null ? null : reference.get();
   }
 
-
-
 }
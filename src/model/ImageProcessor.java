@@ -1,11 +1,27 @@
 package model;
 
+import java.util.List;
+
 /**
  * The ImageProcessor interface defines a set of image processing operations that can be applied to
  * images. Classes implementing this interface must provide concrete implementations for these
  * methods.
+ *
+ * <p>Operations that go over every row of an image, or transform it, report to the
+ * {@link Progress} bound to the calling thread, and throw a
+ * {@link java.util.concurrent.CancellationException} without storing a result when it is
+ * cancelled or its time is up.
  */
 public interface ImageProcessor {
+  /**
+   * Chooses how the images produced by the operations store their pixels. Packed images keep
+   * eight bits per channel in a buffered image, so they can be displayed or saved without
+   * copying, but their values are clamped between 0 and 255.
+   *
+   * @param packedImages true to produce packed images, false for plain images.
+   */
+  void setPackedImages(boolean packedImages);
+
   /**
    * Splits the source image into its RGB channels and saves them as separate images.
    *
@@ -97,6 +113,73 @@ public interface ImageProcessor {
    */
   void compressImage(Double compressionPercentage, String sourceImageName, String destImageName);
 
+  /**
+   * Compresses the source image at several compression percentages. The Haar wavelet
+   * transformation of the source is computed once and each percentage only needs thresholding
+   * and an inverse transformation, which run in parallel.
+   *
+   * @param percentages     The compression percentages to apply
+   * @param sourceImageName The name of the source image
+   * @param destImagePrefix The prefix of the compressed image names, which are stored as
+   *                        prefix-percentage, or null to only measure the results
+   * @return The size and error of the compressed image for each percentage, in the given order
+   */
+  List<CompressionResult> compressSweep(double[] percentages, String sourceImageName,
+                                        String destImagePrefix);
+
+  /**
+   * Compresses the source image as much as possible while keeping its quality at or above a
+   * target. The threshold is found by a binary search over the sorted coefficient magnitudes of
+   * a single Haar wavelet transformation of the source.
+   *
+   * @param metric          The quality metric, either "psnr" or "ssim"
+   * @param target          The lowest acceptable quality, in decibels for PSNR
+   * @param sourceImageName The name of the source image
+   * @param destImageName   The name of the compressed image
+   * @return The size and error of the compressed image, with the equivalent compression
+   *         percentage
+   */
+  CompressionResult compressToQuality(String metric, double target, String sourceImageName,
+                                      String destImageName);
+
+  /**
+   * Measures the quality of an image against a reference image.
+   *
+   * @param metric             The quality metric, either "psnr" or "ssim"
+   * @param referenceImageName The name of the reference image
+   * @param imageName          The name of the image to measure
+   * @return The PSNR in decibels or the mean SSIM
+   */
+  double measureQuality(String metric, String referenceImageName, String imageName);
+
+  /**
+   * Creates a thumbnail of the source image, scaled down by a factor of two for every level, by
+   * stopping the inverse Haar wavelet transformation early. The coefficients kept by a previous
+   * compression are used when available.
+   *
+   * @param level           The number of resolution levels to drop
+   * @param sourceImageName The name of the source image
+   * @param destImageName   The name of the thumbnail image
+   */
+  void createThumbnail(int level, String sourceImageName, String destImageName);
+
+  /**
+   * Associates Haar wavelet coefficients with an image name, so that they can later be stored
+   * without transforming the image again.
+   *
+   * @param imageName    The name of the image the coefficients belong to
+   * @param coefficients The Haar coefficients of the image
+   */
+  void addCoefficients(String imageName, HaarCoefficients coefficients);
+
+  /**
+   * Retrieves the Haar wavelet coefficients associated with an image name.
+   *
+   * @param imageName The name of the image
+   * @return The Haar coefficients of the image, or null if none are available
+   */
+  HaarCoefficients getCoefficients(String imageName);
+
   /**
    * Applies a sepia tone transformation to the specified portion of an image.
    *
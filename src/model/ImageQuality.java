@@ -0,0 +1,170 @@
+package model;
+
+import java.util.stream.IntStream;
+
+/**
+ * The ImageQuality class measures how close an image is to a reference image. The measures work
+ * row by row in parallel and read whole rows with {@link Image#readRow(int, int[])} into buffers
+ * allocated once per task, so that they do not allocate per pixel, whatever the kind of image.
+ */
+public class ImageQuality {
+
+  private static final double MAX_VALUE = 255.0;
+  private static final double C1 = (0.01 * MAX_VALUE) * (0.01 * MAX_VALUE);
+  private static final double C2 = (0.03 * MAX_VALUE) * (0.03 * MAX_VALUE);
+  private static final int WINDOW = 8;
+  private static final int STRIDE = 4;
+
+  /**
+   * Calculates the mean squared error between two images of the same dimensions, over the red,
+   * green and blue channels.
+   *
+   * @param reference The reference image.
+   * @param image     The image to compare with the reference.
+   * @return The mean squared error.
+   * @throws IllegalArgumentException If the images do not have the same dimensions.
+   */
+  public static double meanSquaredError(Image reference, Image image) {
+    checkDimensions(reference, image);
+    int height = reference.getHeight();
+    int width = reference.getWidth();
+    long sum = IntStream.range(0, height).parallel().mapToLong(i -> {
+      int[] expected = new int[3 * width];
+      int[] actual = new int[3 * width];
+      reference.readRow(i, expected);
+      image.readRow(i, actual);
+      long rowSum = 0;
+      for (int k = 0; k < 3 * width; k++) {
+        long difference = expected[k] - actual[k];
+        rowSum += difference * difference;
+      }
+      return rowSum;
+    }).sum();
+    return sum / (3.0 * height * width);
+  }
+
+  /**
+   * Calculates the peak signal to noise ratio of an image against a reference, in decibels.
+   *
+   * @param reference The reference image.
+   * @param image     The image to compare with the reference.
+   * @return The PSNR in decibels, or positive infinity if the images are identical.
+   * @throws IllegalArgumentException If the images do not have the same dimensions.
+   */
+  public static double psnr(Image reference, Image image) {
+    double mse = meanSquaredError(reference, image);
+    if (mse == 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return 10 * Math.log10(MAX_VALUE * MAX_VALUE / mse);
+  }
+
+  /**
+   * Calculates the mean structural similarity (SSIM) of an image against a reference. The index
+   * is evaluated on 8x8 windows placed every 4 pixels, separately for the red, green and blue
+   * channels, and averaged over all windows and channels. Images smaller than a window are
+   * treated as a single window. The rows of a row of windows are read once, and every pixel of a
+   * window is read once for all three channels.
+   *
+   * @param reference The reference image.
+   * @param image     The image to compare with the reference.
+   * @return The mean SSIM, 1 when the images are identical.
+   * @throws IllegalArgumentException If the images do not have the same dimensions.
+   */
+  public static double ssim(Image reference, Image image) {
+    checkDimensions(reference, image);
+    int height = reference.getHeight();
+    int width = reference.getWidth();
+    int windowHeight = Math.min(WINDOW, height);
+    int windowWidth = Math.min(WINDOW, width);
+    int rows = (height - windowHeight) / STRIDE + 1;
+    int columns = (width - windowWidth) / STRIDE + 1;
+    double count = windowHeight * windowWidth;
+
+    double sum = IntStream.range(0, rows).parallel().mapToDouble(r -> {
+      int top = r * STRIDE;
+      int[][] referenceRows = new int[windowHeight][3 * width];
+      int[][] imageRows = new int[windowHeight][3 * width];
+      for (int i = 0; i < windowHeight; i++) {
+        reference.readRow(top + i, referenceRows[i]);
+        image.readRow(top + i, imageRows[i]);
+      }
+      double[] sumX = new double[3];
+      double[] sumY = new double[3];
+      double[] sumXX = new double[3];
+      double[] sumYY = new double[3];
+      double[] sumXY = new double[3];
+      double rowSum = 0;
+      for (int w = 0; w < columns; w++) {
+        int left = w * STRIDE;
+        for (int c = 0; c < 3; c++) {
+          sumX[c] = 0;
+          sumY[c] = 0;
+          sumXX[c] = 0;
+          sumYY[c] = 0;
+          sumXY[c] = 0;
+        }
+        for (int i = 0; i < windowHeight; i++) {
+          int[] referenceRow = referenceRows[i];
+          int[] imageRow = imageRows[i];
+          for (int k = 3 * left; k < 3 * (left + windowWidth); k += 3) {
+            for (int c = 0; c < 3; c++) {
+              double x = referenceRow[k + c];
+              double y = imageRow[k + c];
+              sumX[c] += x;
+              sumY[c] += y;
+              sumXX[c] += x * x;
+              sumYY[c] += y * y;
+              sumXY[c] += x * y;
+            }
+          }
+        }
+        for (int c = 0; c < 3; c++) {
+          double meanX = sumX[c] / count;
+          double meanY = sumY[c] / count;
+          double varianceX = sumXX[c] / count - meanX * meanX;
+          double varianceY = sumYY[c] / count - meanY * meanY;
+          double covariance = sumXY[c] / count - meanX * meanY;
+          rowSum += (2 * meanX * meanY + C1) * (2 * covariance + C2)
+                  / ((meanX * meanX + meanY * meanY + C1) * (varianceX + varianceY + C2));
+        }
+      }
+      return rowSum;
+    }).sum();
+    return sum / (3.0 * rows * columns);
+  }
+
+  /**
+   * Measures an image against a reference with the named metric.
+   *
+   * @param metric    The metric to use, either "psnr" or "ssim".
+   * @param reference The reference image.
+   * @param image     The image to compare with the reference.
+   * @return The PSNR in decibels or the mean SSIM.
+   * @throws IllegalArgumentException If the metric is unknown or the images do not have the same
+   *                                  dimensions.
+   */
+  public static double measure(String metric, Image reference, Image image) {
+    switch (metric) {
+      case "psnr":
+        return psnr(reference, image);
+      case "ssim":
+        return ssim(reference, image);
+      default:
+        throw new IllegalArgumentException("Unknown quality metric: " + metric + ".");
+    }
+  }
+
+  /**
+   * Checks that two images have the same dimensions.
+   *
+   * @param reference The reference image.
+   * @param image     The image to compare with the reference.
+   * @throws IllegalArgumentException If the images do not have the same dimensions.
+   */
+  private static void checkDimensions(Image reference, Image image) {
+    if (reference.getHeight() != image.getHeight() || reference.getWidth() != image.getWidth()) {
+      throw new IllegalArgumentException("The images must have the same dimensions.");
+    }
+  }
+}
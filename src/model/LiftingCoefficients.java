@@ -0,0 +1,317 @@
+package model;
+
+import java.util.stream.IntStream;
+
+/**
+ * The LiftingCoefficients class holds the integer Haar wavelet coefficients of the red, green and
+ * blue channels of an image, computed with the lifting form of the Haar transformation known as
+ * the S-transform. Every pair of values a, b is replaced by its floored average
+ * floor((a + b) / 2) and its difference a - b, which is exactly invertible in integer arithmetic.
+ * Unlike {@link HaarCoefficients}, the channels are not padded: odd rows and columns carry their
+ * last value over to the next level, and an image is reconstructed bit for bit.
+ *
+ * <p>Each level transforms the rows and then the columns of the low pass region left by the
+ * previous level, which shrinks to ceil(height / 2) x ceil(width / 2), until one value is left.
+ */
+public class LiftingCoefficients {
+
+  private final int height;
+  private final int width;
+  private final int[][][] channels;
+
+  /**
+   * Constructs a LiftingCoefficients object from already transformed channel matrices.
+   *
+   * @param height   The height of the image.
+   * @param width    The width of the image.
+   * @param channels The transformed red, green and blue matrices, each of height x width.
+   */
+  public LiftingCoefficients(int height, int width, int[][][] channels) {
+    this.height = height;
+    this.width = width;
+    this.channels = channels;
+  }
+
+  /**
+   * Applies the integer Haar lifting transformation to each channel of the image.
+   *
+   * @param image The image to transform.
+   * @return The integer Haar coefficients of the image.
+   */
+  public static LiftingCoefficients transform(Image image) {
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int[][][] channels = new int[3][height][width];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int[] pixelArray = image.getImage(i, j);
+        channels[0][i][j] = pixelArray[0];
+        channels[1][i][j] = pixelArray[1];
+        channels[2][i][j] = pixelArray[2];
+      }
+    }
+    IntStream.range(0, 3).parallel().forEach(c -> forward(channels[c], height, width));
+    return new LiftingCoefficients(height, width, channels);
+  }
+
+  /**
+   * Reconstructs the image exactly. These coefficients are left unchanged.
+   *
+   * @return The reconstructed image.
+   */
+  public Image toImage() {
+    return toImage(0);
+  }
+
+  /**
+   * Reconstructs the image scaled down by a factor of two for every level, by stopping the inverse
+   * transformation early. The low pass region left at that level holds the nested floored block
+   * averages of the image. These coefficients are left unchanged.
+   *
+   * @param level The number of resolution levels to drop. Levels beyond the coarsest one are
+   *              treated as the coarsest one.
+   * @return The reconstructed image, of ceil(height / 2^level) x ceil(width / 2^level) pixels.
+   */
+  public Image toImage(int level) {
+    level = Math.max(0, Math.min(level, maxLevel(height, width)));
+    int[][][] inverted = new int[3][][];
+    int stop = level;
+    IntStream.range(0, 3).parallel().forEach(c -> {
+      int[][] matrix = new int[height][];
+      for (int i = 0; i < height; i++) {
+        matrix[i] = channels[c][i].clone();
+      }
+      inverse(matrix, height, width, stop);
+      inverted[c] = matrix;
+    });
+
+    int factor = 1 << level;
+    int thumbnailHeight = level == 0 ? height : ceilDiv(height, factor);
+    int thumbnailWidth = level == 0 ? width : ceilDiv(width, factor);
+    Image image = new Image(thumbnailHeight, thumbnailWidth);
+    for (int i = 0; i < thumbnailHeight; i++) {
+      for (int j = 0; j < thumbnailWidth; j++) {
+        image.setImage(i, j, inverted[0][i][j], inverted[1][i][j], inverted[2][i][j]);
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Returns the number of levels the transformation of an image of the given dimensions has.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @return The level at which a single value is left.
+   */
+  public static int maxLevel(int height, int width) {
+    int levels = 0;
+    while (height > 1 || width > 1) {
+      height = ceilDiv(height, 2);
+      width = ceilDiv(width, 2);
+      levels++;
+    }
+    return levels;
+  }
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return The height of the image.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return The width of the image.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the coefficient matrix of one channel. The matrix is not copied.
+   *
+   * @param channel The channel index: 0 for red, 1 for green and 2 for blue.
+   * @return The height x width coefficient matrix of the channel.
+   */
+  public int[][] getChannel(int channel) {
+    return channels[channel];
+  }
+
+  /**
+   * Applies the integer Haar lifting transformation to a matrix in place, level by level.
+   *
+   * @param matrix The matrix to transform.
+   * @param height The number of rows of the matrix.
+   * @param width  The number of columns of the matrix.
+   */
+  static void forward(int[][] matrix, int height, int width) {
+    int[] buffer = new int[width];
+    int[][] rows = new int[height][];
+    int h = height;
+    int w = width;
+    while (h > 1 || w > 1) {
+      if (w > 1) {
+        for (int i = 0; i < h; i++) {
+          forwardRow(matrix[i], w, buffer);
+        }
+      }
+      if (h > 1) {
+        forwardColumns(matrix, h, w, rows);
+      }
+      h = ceilDiv(h, 2);
+      w = ceilDiv(w, 2);
+    }
+  }
+
+  /**
+   * Reverts the integer Haar lifting transformation of a matrix in place, down to the given level.
+   *
+   * @param matrix The matrix to invert.
+   * @param height The number of rows of the matrix.
+   * @param width  The number of columns of the matrix.
+   * @param level  The level to stop at; 0 reconstructs the full matrix.
+   */
+  static void inverse(int[][] matrix, int height, int width, int level) {
+    int levels = maxLevel(height, width);
+    int[] heights = new int[levels];
+    int[] widths = new int[levels];
+    int h = height;
+    int w = width;
+    for (int k = 0; k < levels; k++) {
+      heights[k] = h;
+      widths[k] = w;
+      h = ceilDiv(h, 2);
+      w = ceilDiv(w, 2);
+    }
+
+    int[] buffer = new int[width];
+    int[][] rows = new int[height][];
+    for (int k = levels - 1; k >= level; k--) {
+      if (heights[k] > 1) {
+        inverseColumns(matrix, heights[k], widths[k], rows);
+      }
+      if (widths[k] > 1) {
+        for (int i = 0; i < heights[k]; i++) {
+          inverseRow(matrix[i], widths[k], buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Transforms the first length values of a row, leaving the averages in the first half and the
+   * differences in the second half. An odd last value is kept as the last average.
+   *
+   * @param row    The row to transform.
+   * @param length The number of values to transform.
+   * @param buffer Scratch space of at least length values.
+   */
+  private static void forwardRow(int[] row, int length, int[] buffer) {
+    int low = (length + 1) / 2;
+    int pairs = length / 2;
+    for (int k = 0; k < pairs; k++) {
+      int difference = row[2 * k] - row[2 * k + 1];
+      buffer[k] = row[2 * k + 1] + (difference >> 1);
+      buffer[low + k] = difference;
+    }
+    if (low > pairs) {
+      buffer[pairs] = row[length - 1];
+    }
+    System.arraycopy(buffer, 0, row, 0, length);
+  }
+
+  /**
+   * Reverts {@link #forwardRow(int[], int, int[])}.
+   *
+   * @param row    The row to invert.
+   * @param length The number of values to invert.
+   * @param buffer Scratch space of at least length values.
+   */
+  private static void inverseRow(int[] row, int length, int[] buffer) {
+    int low = (length + 1) / 2;
+    int pairs = length / 2;
+    for (int k = 0; k < pairs; k++) {
+      int difference = row[low + k];
+      int second = row[k] - (difference >> 1);
+      buffer[2 * k] = difference + second;
+      buffer[2 * k + 1] = second;
+    }
+    if (low > pairs) {
+      buffer[length - 1] = row[pairs];
+    }
+    System.arraycopy(buffer, 0, row, 0, length);
+  }
+
+  /**
+   * Transforms the first height rows of a matrix along its columns, within the first width
+   * columns. Each pair of rows is combined in place and the rows are then reordered by reference,
+   * so that the averages come first and no values are copied.
+   *
+   * @param matrix The matrix to transform.
+   * @param height The number of rows to transform.
+   * @param width  The number of columns to transform.
+   * @param rows   Scratch space for at least height row references.
+   */
+  private static void forwardColumns(int[][] matrix, int height, int width, int[][] rows) {
+    int low = (height + 1) / 2;
+    int pairs = height / 2;
+    for (int k = 0; k < pairs; k++) {
+      int[] first = matrix[2 * k];
+      int[] second = matrix[2 * k + 1];
+      for (int j = 0; j < width; j++) {
+        int difference = first[j] - second[j];
+        second[j] += difference >> 1;
+        first[j] = difference;
+      }
+      rows[k] = second;
+      rows[low + k] = first;
+    }
+    if (low > pairs) {
+      rows[pairs] = matrix[height - 1];
+    }
+    System.arraycopy(rows, 0, matrix, 0, height);
+  }
+
+  /**
+   * Reverts {@link #forwardColumns(int[][], int, int, int[][])}.
+   *
+   * @param matrix The matrix to invert.
+   * @param height The number of rows to invert.
+   * @param width  The number of columns to invert.
+   * @param rows   Scratch space for at least height row references.
+   */
+  private static void inverseColumns(int[][] matrix, int height, int width, int[][] rows) {
+    int low = (height + 1) / 2;
+    int pairs = height / 2;
+    for (int k = 0; k < pairs; k++) {
+      int[] average = matrix[k];
+      int[] difference = matrix[low + k];
+      for (int j = 0; j < width; j++) {
+        average[j] -= difference[j] >> 1;
+        difference[j] += average[j];
+      }
+      rows[2 * k] = difference;
+      rows[2 * k + 1] = average;
+    }
+    if (low > pairs) {
+      rows[height - 1] = matrix[pairs];
+    }
+    System.arraycopy(rows, 0, matrix, 0, height);
+  }
+
+  /**
+   * Divides two positive numbers, rounding up.
+   *
+   * @param value   The dividend.
+   * @param divisor The divisor.
+   * @return The rounded up quotient.
+   */
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+}
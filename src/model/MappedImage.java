@@ -0,0 +1,150 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The MappedImage class is an {@link Image} whose pixels live in a byte buffer, three interleaved
+ * bytes of red, green and blue per pixel, row after row. The buffer is typically a memory mapping
+ * of an uncompressed image file, so the image can be used without decoding or copying the file:
+ * pixels are read from the mapping only when they are needed.
+ *
+ * <p>Each channel is stored in eight bits, so values written to the image are clamped between 0
+ * and 255. The arrays returned by {@link #getImage(int, int)} are copies of the pixel: changing
+ * them does not change the image.
+ */
+public class MappedImage extends Image {
+
+  private final ByteBuffer data;
+  private final int offset;
+  private final int height;
+  private final int width;
+
+  /**
+   * Constructs an image backed by a region of the given buffer, without copying it. Changes to
+   * the image are written to the buffer.
+   *
+   * @param height The height of the image.
+   * @param width  The width of the image.
+   * @param data   The buffer holding the pixels.
+   * @param offset The position of the first pixel in the buffer.
+   * @throws IllegalArgumentException If the buffer is too small for the image.
+   */
+  public MappedImage(int height, int width, ByteBuffer data, int offset) {
+    super();
+    if (offset < 0 || (long) height * width * 3 > data.capacity() - (long) offset) {
+      throw new IllegalArgumentException("The buffer is too small for the image.");
+    }
+    this.data = data;
+    this.offset = offset;
+    this.height = height;
+    this.width = width;
+  }
+
+  /**
+   * Sets the RGB values for a pixel at the specified position (x, y), clamped between 0 and 255.
+   *
+   * @param x The x-coordinate of the pixel.
+   * @param y The y-coordinate of the pixel.
+   * @param r The red component value (0-255).
+   * @param g The green component value (0-255).
+   * @param b The blue component value (0-255).
+   */
+  @Override
+  public void setImage(int x, int y, int r, int g, int b) {
+    if (x >= 0 && x < height && y >= 0 && y < width) {
+      int index = offset + (x * width + y) * 3;
+      data.put(index, (byte) clamp(r));
+      data.put(index + 1, (byte) clamp(g));
+      data.put(index + 2, (byte) clamp(b));
+      contentChanged();
+    }
+  }
+
+  /**
+   * Retrieves a copy of the RGB values for a pixel at the specified position (x, y).
+   *
+   * @param x The x-coordinate of the pixel.
+   * @param y The y-coordinate of the pixel.
+   * @return An integer array representing the RGB values [r, g, b] of the pixel.
+   */
+  @Override
+  public int[] getImage(int x, int y) {
+    if (x >= 0 && x < height && y >= 0 && y < width) {
+      int index = offset + (x * width + y) * 3;
+      return new int[]{data.get(index) & 0xFF, data.get(index + 1) & 0xFF,
+          data.get(index + 2) & 0xFF};
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the RGB values of a row of the image into an array straight from the buffer.
+   *
+   * @param x      The x-coordinate of the row.
+   * @param target The array to fill, of at least three values per pixel of the row.
+   */
+  @Override
+  public void readRow(int x, int[] target) {
+    int index = offset + x * width * 3;
+    for (int k = 0; k < width * 3; k++) {
+      target[k] = data.get(index + k) & 0xFF;
+    }
+  }
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return The height of the image.
+   */
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return The width of the image.
+   */
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets an estimate of the memory used by the pixels of the image, in bytes.
+   *
+   * @return The estimated size of the image.
+   */
+  @Override
+  public long estimatedSize() {
+    return (long) height * width * 3;
+  }
+
+  /**
+   * Computes the hash of the content of the image straight from the buffer.
+   *
+   * @return The hash of the content of the image, before its final mixing.
+   */
+  @Override
+  protected long computeContentHash() {
+    long hash = mixSize(height, width);
+    int end = offset + height * width * 3;
+    for (int index = offset; index < end; index += 3) {
+      hash = mixPixel(hash, data.get(index) & 0xFF, data.get(index + 1) & 0xFF,
+          data.get(index + 2) & 0xFF);
+    }
+    return hash;
+  }
+
+  /**
+   * Clamps a channel value between 0 and 255.
+   *
+   * @param value The value to clamp.
+   * @return The clamped value.
+   */
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
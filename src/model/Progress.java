@@ -0,0 +1,138 @@
+package model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * The Progress class lets a long operation be stopped while it runs, and tells how far it has
+ * got. A controller binds a progress to the thread running an operation; the operation finds it
+ * with {@link #current()}, says how many rows or passes it will do with {@link #expect}, and calls
+ * {@link #advance()} after each of them. Advancing throws a {@link CancellationException} once the
+ * progress has been cancelled or its time is up, so an operation stops within one row of being
+ * asked to, and leaves no result behind.
+ *
+ * <p>Operations that split their work over several threads find the progress before they split
+ * it, since it is only bound to the thread that started them. Progress is reported to a listener
+ * in whole percents, each at most once, in increasing order.
+ */
+public class Progress {
+
+  private static final ThreadLocal<Progress> CURRENT = new ThreadLocal<>();
+  private static final Progress NONE = new Progress(0, null);
+
+  private final long timeoutMillis;
+  private final long deadline;
+  private final IntConsumer listener;
+  private final AtomicLong done = new AtomicLong();
+  private final AtomicInteger reported = new AtomicInteger(-1);
+  private volatile long total;
+  private volatile String stopped;
+
+  /**
+   * Constructs a progress, starting its time now.
+   *
+   * @param timeoutMillis The time the operation may take, in milliseconds, or 0 for no limit.
+   * @param listener      The listener told the percentage done, or null to not report it.
+   * @throws IllegalArgumentException If the time is negative.
+   */
+  public Progress(long timeoutMillis, IntConsumer listener) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("The timeout should not be negative.");
+    }
+    this.timeoutMillis = timeoutMillis;
+    this.deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+    this.listener = listener;
+  }
+
+  /**
+   * Gets the progress bound to the current thread.
+   *
+   * @return The progress of the operation the thread runs, or a progress that is never cancelled
+   *         and reports nothing if none is bound.
+   */
+  public static Progress current() {
+    Progress progress = CURRENT.get();
+    return progress == null ? NONE : progress;
+  }
+
+  /**
+   * Binds a progress to the current thread, so that the operations it runs report to it.
+   *
+   * @param progress The progress, or null to unbind it.
+   * @return The progress bound before, or null if there was none, to bind again afterwards.
+   */
+  public static Progress bind(Progress progress) {
+    Progress previous = CURRENT.get();
+    if (progress == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(progress);
+    }
+    return previous;
+  }
+
+  /**
+   * Asks the operation to stop. It stops the next time it advances.
+   */
+  public void cancel() {
+    if (stopped == null) {
+      stopped = "Operation cancelled.";
+    }
+  }
+
+  /**
+   * Tells whether the operation was asked to stop, or ran out of time.
+   *
+   * @return Whether the progress was cancelled.
+   */
+  public boolean isCancelled() {
+    return stopped != null;
+  }
+
+  /**
+   * Sets the number of steps the operation will take, and starts counting them again.
+   *
+   * @param steps The number of steps, such as rows or passes.
+   */
+  public void expect(long steps) {
+    if (listener != null) {
+      total = steps;
+      done.set(0);
+    }
+  }
+
+  /**
+   * Counts one step of the operation and reports the percentage done, after checking that the
+   * operation may go on. It may be called from several threads at once.
+   *
+   * @throws CancellationException If the progress was cancelled or its time is up.
+   */
+  public void advance() {
+    check();
+    if (listener != null) {
+      long steps = total;
+      if (steps > 0) {
+        int percent = (int) Math.min(100, done.incrementAndGet() * 100 / steps);
+        if (reported.getAndAccumulate(percent, Math::max) < percent) {
+          listener.accept(percent);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that the operation may go on.
+   *
+   * @throws CancellationException If the progress was cancelled or its time is up.
+   */
+  public void check() {
+    if (stopped == null && timeoutMillis > 0 && System.nanoTime() - deadline > 0) {
+      stopped = "Operation timed out after " + timeoutMillis + " ms.";
+    }
+    if (stopped != null) {
+      throw new CancellationException(stopped);
+    }
+  }
+}
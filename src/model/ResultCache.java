@@ -0,0 +1,194 @@
+package model;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ResultCache class keeps the images produced by image operations, keyed by the operation,
+ * its parameters and the content hashes of its input images, so that repeating an operation on
+ * the same images returns the stored results instead of computing them again. The cache holds at
+ * most a given number of bytes of images; the least recently used results are evicted first.
+ *
+ * <p>The size of the default cache is set in megabytes by the {@value #CAPACITY_PROPERTY} system
+ * property; there is no default cache unless it is set to a positive size. The cache is safe to
+ * use from several threads.
+ */
+public class ResultCache {
+
+  /**
+   * The system property setting the size of the default cache, in megabytes.
+   */
+  public static final String CAPACITY_PROPERTY = "image.result.cache.mb";
+
+  private final long capacity;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param capacity The most bytes of images the cache holds.
+   */
+  public ResultCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns a new cache of the size set by the {@value #CAPACITY_PROPERTY} system property.
+   *
+   * @return The default cache, or null if the property is not set or is not positive.
+   * @throws NumberFormatException If the property is not a whole number.
+   */
+  public static ResultCache fromSystemProperty() {
+    String megabytes = System.getProperty(CAPACITY_PROPERTY);
+    long capacity = megabytes == null || megabytes.isEmpty() ? 0 : Long.parseLong(megabytes);
+    return capacity <= 0 ? null : new ResultCache(capacity << 20);
+  }
+
+  /**
+   * Gets the results stored for a key, if the stored images have not been changed since.
+   *
+   * @param key The operation, parameters and input hashes.
+   * @return The results, or null if there are none.
+   */
+  synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && !entry.isIntact()) {
+      remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return entry;
+  }
+
+  /**
+   * Stores the results for a key, evicting the least recently used results while the cache is
+   * over its size. Results larger than the whole cache are not stored.
+   *
+   * @param key   The operation, parameters and input hashes.
+   * @param entry The results.
+   */
+  synchronized void put(String key, Entry entry) {
+    if (entry.size > capacity) {
+      return;
+    }
+    remove(key);
+    entries.put(key, entry);
+    size += entry.size;
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while (size > capacity && eldest.hasNext()) {
+      size -= eldest.next().getValue().size;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Gets the number of lookups that found results.
+   *
+   * @return The number of hits.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of lookups that found no results.
+   *
+   * @return The number of misses.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of bytes of images held.
+   *
+   * @return The estimated size of the stored images.
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Removes the results stored for a key.
+   *
+   * @param key The key.
+   */
+  private void remove(String key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      size -= removed.size;
+    }
+  }
+
+  /**
+   * The results of an operation: the images it produced, their versions when they were stored,
+   * and the Haar coefficients it kept, if any. The versions are taken without reading the pixels,
+   * so storing results costs nothing on top of computing them.
+   */
+  static class Entry {
+
+    private final Image[] images;
+    private final int[] versions;
+    private final SoftReference<HaarCoefficients> coefficients;
+    private final long size;
+
+    /**
+     * Constructs the results of an operation.
+     *
+     * @param images       The images produced, in the order of their names.
+     * @param coefficients The Haar coefficients kept with the only image, or null.
+     */
+    Entry(Image[] images, HaarCoefficients coefficients) {
+      this.images = images;
+      this.versions = new int[images.length];
+      long total = 0;
+      for (int k = 0; k < images.length; k++) {
+        versions[k] = images[k].watch();
+        total += images[k].estimatedSize();
+      }
+      this.coefficients = coefficients == null ? null : new SoftReference<>(coefficients);
+      this.size = total;
+    }
+
+    /**
+     * Gets the images produced.
+     *
+     * @return The images, in the order of their names.
+     */
+    Image[] getImages() {
+      return images;
+    }
+
+    /**
+     * Gets the Haar coefficients kept with the image, if they are still available.
+     *
+     * @return The coefficients, or null.
+     */
+    HaarCoefficients getCoefficients() {
+      return coefficients == null ? null : coefficients.get();
+    }
+
+    /**
+     * Checks that none of the images has been changed since it was stored.
+     *
+     * @return true if every image still has its stored version.
+     */
+    private boolean isIntact() {
+      for (int k = 0; k < images.length; k++) {
+        if (images[k].version() != versions[k]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -18,8 +18,10 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 
 /**
@@ -46,6 +48,7 @@ public class GUIViewer extends JFrame {
   private final ActionListener verticalFlipAction;
   private final ActionListener sharpenAction;
   private final ActionListener adjustLevelsAction;
+  private final ActionListener cancelAction;
   protected JTextField sharpeAdjustLevelsPercentage;
   private JTextField compressionValueField;
   private JTextField blurSplitPercentage;
@@ -62,6 +65,7 @@ public class GUIViewer extends JFrame {
   private String destImage;
   private String imagePath;
   private JLabel saveStatus;
+  private JProgressBar progressBar;
 
   /**
    * Constructs a GUIViewer with specified action listeners for various image processing
@@ -75,6 +79,25 @@ public class GUIViewer extends JFrame {
       ActionListener sharpenAction, ActionListener brightenAction,
       ActionListener colorCorrectAction, ActionListener adjustLevelsAction,
       ActionListener greyAction, ActionListener sepiaAction, ActionListener saveAction) {
+    this(loadAction, histogramAction, redAction, greenAction, blueAction, lumaAction,
+        horizontalFlipAction, verticalFlipAction, compressAction, blurAction, sharpenAction,
+        brightenAction, colorCorrectAction, adjustLevelsAction, greyAction, sepiaAction,
+        saveAction, null);
+  }
+
+  /**
+   * Constructs a GUIViewer with specified action listeners for various image processing
+   * operations, and a button that stops the running command.
+   */
+
+  public GUIViewer(ActionListener loadAction, ActionListener histogramAction,
+      ActionListener redAction, ActionListener greenAction, ActionListener blueAction,
+      ActionListener lumaAction, ActionListener horizontalFlipAction,
+      ActionListener verticalFlipAction, ActionListener compressAction, ActionListener blurAction,
+      ActionListener sharpenAction, ActionListener brightenAction,
+      ActionListener colorCorrectAction, ActionListener adjustLevelsAction,
+      ActionListener greyAction, ActionListener sepiaAction, ActionListener saveAction,
+      ActionListener cancelAction) {
     this.loadAction = loadAction;
     this.histogramAction = histogramAction;
     this.redAction = redAction;
@@ -92,6 +115,7 @@ public class GUIViewer extends JFrame {
     this.compressAction = compressAction;
     this.sepiaAction = sepiaAction;
     this.saveAction = saveAction;
+    this.cancelAction = cancelAction;
     this.destImage = destImage;
     setTitle("Image Viewer");
     initializeUI();
@@ -214,6 +238,18 @@ public class GUIViewer extends JFrame {
     operationsPanel.add(buttonsLinePanel);
 
     buttonsPanel.add(operationsPanel);
+
+    progressBar = new JProgressBar(0, 100);
+    progressBar.setStringPainted(true);
+    progressBar.setString("Ready");
+    if (cancelAction == null) {
+      panel.add(progressBar);
+    } else {
+      JPanel progressPanel = new JPanel(new BorderLayout(10, 0));
+      progressPanel.add(progressBar, BorderLayout.CENTER);
+      progressPanel.add(createButton("Cancel", cancelAction), BorderLayout.EAST);
+      panel.add(progressPanel);
+    }
     frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
     frame.setVisible(true);
     pack();
@@ -485,8 +521,10 @@ public class GUIViewer extends JFrame {
       imagePath = file.getAbsolutePath();
       String extension = imagePath.substring(imagePath.lastIndexOf(".") + 1);
       if (!extension.equalsIgnoreCase("ppm") && !extension.equalsIgnoreCase("jpeg")
-          && !extension.equalsIgnoreCase("png") && !extension.equalsIgnoreCase("jpg")) {
-        displayErrorMessage("Invalid file format. Please save as .ppm, .jpg, .jpeg, or .png.");
+          && !extension.equalsIgnoreCase("png") && !extension.equalsIgnoreCase("jpg")
+          && !extension.equalsIgnoreCase("haar")) {
+        displayErrorMessage(
+            "Invalid file format. Please save as .ppm, .jpg, .jpeg, .png, or .haar.");
         return;
       }
       saveAction.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED,
@@ -505,6 +543,10 @@ public class GUIViewer extends JFrame {
    * @param destImageName The name of the destination image.
    */
   public void displayImage(BufferedImage image, String destImageName) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> displayImage(image, destImageName));
+      return;
+    }
     if (image != null) {
       imagePanel.removeAll();
       ImageIcon icon = new ImageIcon(image);
@@ -534,6 +576,10 @@ public class GUIViewer extends JFrame {
    * @param image The BufferedImage of the histogram to display.
    */
   public void displayHistogram(BufferedImage image) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> displayHistogram(image));
+      return;
+    }
     if (image != null) {
       histogramPanel.removeAll();
       ImageIcon icon = new ImageIcon(image);
@@ -643,6 +689,43 @@ public class GUIViewer extends JFrame {
    * @param errorMessage The error message to display.
    */
   public void displayErrorMessage(String errorMessage) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> displayErrorMessage(errorMessage));
+      return;
+    }
     JOptionPane.showMessageDialog(this, errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
   }
-}
\ No newline at end of file
+
+  /**
+   * Displays how far a running command has got on the progress bar. The bar is painted on the
+   * event dispatch thread, whichever thread runs the command.
+   *
+   * @param command The name of the command.
+   * @param percent The percentage of the command done, between 0 and 100.
+   */
+  public void displayProgress(String command, int percent) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> displayProgress(command, percent));
+      return;
+    }
+    if (progressBar != null) {
+      progressBar.setValue(percent);
+      progressBar.setString(command + ": " + percent + "%");
+    }
+  }
+
+  /**
+   * Empties the progress bar once a command has ended, whether it finished, failed or was
+   * cancelled.
+   */
+  public void resetProgress() {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(this::resetProgress);
+      return;
+    }
+    if (progressBar != null) {
+      progressBar.setValue(0);
+      progressBar.setString("Ready");
+    }
+  }
+}
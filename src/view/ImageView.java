@@ -34,4 +34,12 @@ public interface ImageView {
    */
   void showErrorMessage(String errorMessage);
 
+  /**
+   * Displays how far a running command has got.
+   *
+   * @param command The name of the command.
+   * @param percent The percentage of the command done, between 0 and 100.
+   */
+  void showProgress(String command, int percent);
+
 }
@@ -73,5 +73,18 @@ public class ImageViewer implements ImageView {
     }
   }
 
+  /**
+   * Displays how far a running command has got on the progress bar of the GUI. Nothing is
+   * displayed in text mode.
+   *
+   * @param command The name of the command.
+   * @param percent The percentage of the command done, between 0 and 100.
+   */
+  public void showProgress(String command, int percent) {
+    if (guiViewer != null) {
+      guiViewer.displayProgress(command, percent);
+    }
+  }
+
 
 }
@@ -2,7 +2,12 @@ package controller;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import controller.commands.BlueComponentImageCommand;
 import controller.commands.BlurImageCommand;
@@ -13,6 +18,7 @@ import controller.commands.GreenComponentImageCommand;
 import controller.commands.GreyscaleImageCommand;
 import controller.commands.HistogramImageCommand;
 import controller.commands.HorizontalFlipImageCommand;
+import controller.commands.ImageCommand;
 import controller.commands.IntensityComponentImageCommand;
 import controller.commands.LevelsAdjustment;
 import controller.commands.LoadImageCommand;
@@ -25,13 +31,34 @@ import controller.commands.SepiaImageCommand;
 import controller.commands.SharpenImageCommand;
 import controller.commands.ValueComponentImageCommand;
 import controller.commands.VerticalFlipImageCommand;
+import controller.io.DecodeCache;
+import controller.io.HaarFormat;
+import controller.io.StepCache;
 import java.awt.event.ActionEvent;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.swing.JButton;
+import model.HaarCoefficients;
+import model.Image;
 import model.ImageOperations;
 import model.ImageProcessor;
+import model.MappedImage;
 import org.junit.Before;
 import org.junit.Test;
 import view.ImageViewer;
@@ -86,6 +113,779 @@ public class ImageControllerTest {
   }
 
 
+  /**
+   * Tests that a script run on several threads, with names read, written and reused by later
+   * commands, shows the same output in the same order and produces the same images as when it
+   * runs one line at a time.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_ConcurrentMatchesSequential() throws IOException {
+    File ppmFile = File.createTempFile("dag", ".ppm");
+    ppmFile.deleteOnExit();
+    File scriptFile = File.createTempFile("dag", ".txt");
+    scriptFile.deleteOnExit();
+    Image image = new Image(60, 80);
+    for (int i = 0; i < 60; i++) {
+      for (int j = 0; j < 80; j++) {
+        image.setImage(i, j, i * 4, j * 3, (i * j) % 256);
+      }
+    }
+    mockProcessor.addImage("dag-source", image);
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", ppmFile.getPath(), "dag-source"});
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("# comment\nload " + ppmFile.getPath() + " dag-a\n"
+          + "brighten 10 dag-a dag-b\nblur dag-a dag-c\nhorizontal-flip dag-b dag-d\n"
+          + "brighten 5 dag-a dag-a\nsharpen dag-a dag-e\ngreyscale dag-a dag-b\n"
+          + "histogram dag-b dag-g\ncompare dag-a dag-g\n");
+    }
+    String[] names = {"dag-a", "dag-b", "dag-c", "dag-d", "dag-e", "dag-g"};
+
+    String[] outputs = new String[2];
+    Image[][] results = new Image[2][names.length];
+    PrintStream standardError = System.err;
+    for (int run = 0; run < 2; run++) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      PrintStream printStream = new PrintStream(output, true);
+      System.setErr(printStream);
+      ImageController controller = new ImageController(new ImageViewer(printStream));
+      controller.setScriptThreads(run == 0 ? 1 : 4);
+      controller.runScript(scriptFile.getPath());
+      System.setErr(standardError);
+      outputs[run] = output.toString();
+      for (int k = 0; k < names.length; k++) {
+        results[run][k] = mockProcessor.getImage(names[k]);
+        mockProcessor.addImage(names[k], null);
+      }
+    }
+
+    assertEquals(outputs[0], outputs[1]);
+    assertTrue(outputs[1].contains("The images must have the same dimensions."));
+    for (int k = 0; k < names.length; k++) {
+      assertNotNull(results[1][k]);
+      for (int i = 0; i < results[0][k].getHeight(); i++) {
+        for (int j = 0; j < results[0][k].getWidth(); j++) {
+          assertArrayEquals(results[0][k].getImage(i, j), results[1][k].getImage(i, j));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that a script run on several threads writes no file once an earlier command has
+   * failed, even a save that does not depend on the failed command and could have started while
+   * it ran.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_ConcurrentSaveWaitsForEarlierSteps() throws IOException {
+    File scriptFile = File.createTempFile("held", ".txt");
+    scriptFile.deleteOnExit();
+    File output = new File(scriptFile.getParentFile(), scriptFile.getName() + ".ppm");
+    output.deleteOnExit();
+    Image image = new Image(2, 2);
+    image.setImage(0, 0, 10, 20, 30);
+    mockProcessor.addImage("held-source", image);
+    mockProcessor.addImage("held-large", new Image(1000, 1000));
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("blur held-large held-blurred\nsave " + output.getPath() + " held-source\n");
+    }
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    PrintStream standardError = System.err;
+    System.setErr(new PrintStream(errors, true));
+    ImageController controller = new ImageController(mockViewer);
+    controller.setScriptThreads(4);
+    controller.setCommandTimeout(30);
+    controller.runScript(scriptFile.getPath());
+    System.setErr(standardError);
+    mockProcessor.addImage("held-large", null);
+    assertTrue(errors.toString().contains("blur: Operation timed out after 30 ms."));
+    assertFalse(output.exists());
+  }
+
+  /**
+   * Tests that a script with errors is reported as a whole, with the line of every error, before
+   * any of its commands is run, and that a compiled script is kept and run again on new images
+   * until the script changes.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_CompiledPlan() throws IOException {
+    File scriptFile = File.createTempFile("plan", ".txt");
+    scriptFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("brighten 10 plan-in plan-a\n# comment\n\nblur plan-a plan-b split x\n"
+          + "brightn 5 plan-a plan-c\nlevels-adjust 20 10 255 plan-a plan-d\n"
+          + "save out.bmp plan-b\n");
+    }
+    Image image = new Image(2, 2);
+    image.setImage(0, 0, 10, 20, 30);
+    mockProcessor.addImage("plan-in", image);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, true);
+    PrintStream standardError = System.err;
+    System.setErr(printStream);
+    ImageController controller = new ImageController(new ImageViewer(printStream));
+    controller.runScript(scriptFile.getPath());
+    System.setErr(standardError);
+
+    assertEquals("Line 4: Invalid split value. Please provide a valid number.\n"
+        + "Line 5: Unknown command: brightn\n"
+        + "Line 6: Invalid input: Ensure 0 <= b < m < w <= 255.\n"
+        + "Line 7: Unsupported image format. "
+        + "Can only save PPM, PGM, PNG, JPG, JPEG, QOI, RAW or HAAR images.\n"
+        + "The script was not run.", output.toString().trim().replace("\r", ""));
+    assertNull(mockProcessor.getImage("plan-a"));
+
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("brighten 10 plan-in plan-a\nblur plan-a plan-b split 50\n");
+    }
+    ScriptPlan plan = controller.compileScript(scriptFile.getPath());
+    assertTrue(plan.getErrors().isEmpty());
+    assertSame(plan, controller.compileScript(scriptFile.getPath()));
+    controller.runPlan(plan);
+    assertArrayEquals(new int[]{20, 30, 40}, mockProcessor.getImage("plan-a").getImage(0, 0));
+
+    image.setImage(0, 0, 100, 110, 120);
+    mockProcessor.addImage("plan-in", image);
+    controller.runPlan(plan);
+    assertArrayEquals(new int[]{110, 120, 130}, mockProcessor.getImage("plan-a").getImage(0, 0));
+
+    mockProcessor.addImage("plan-in", null);
+    output.reset();
+    System.setErr(printStream);
+    controller.runPlan(plan);
+    System.setErr(standardError);
+    assertEquals("Line 1: Image plan-in not found.\nThe script was not run.",
+        output.toString().trim().replace("\r", ""));
+    mockProcessor.addImage("plan-a", null);
+    mockProcessor.addImage("plan-b", null);
+  }
+
+  /**
+   * Tests that a lazy script only computes the images that are saved or materialized, directly
+   * or through other commands, while the same script run eagerly computes them all.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_LazySkipsUnusedImages() throws IOException {
+    File savedFile = File.createTempFile("lazy", ".ppm");
+    savedFile.deleteOnExit();
+    File scriptFile = File.createTempFile("lazy", ".txt");
+    scriptFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("brighten 10 lazy-in lazy-a\nblur lazy-a lazy-dead\n"
+          + "sharpen lazy-dead lazy-dead2\nbrighten 5 lazy-a lazy-b\n"
+          + "horizontal-flip lazy-in lazy-c\nsave " + savedFile.getPath() + " lazy-b\n"
+          + "vertical-flip lazy-c lazy-kept\nmaterialize lazy-kept\n"
+          + "greyscale lazy-b lazy-b\n");
+    }
+    Image image = new Image(3, 4);
+    image.setImage(1, 2, 10, 20, 30);
+    mockProcessor.addImage("lazy-in", image);
+    String[] names = {"lazy-a", "lazy-dead", "lazy-dead2", "lazy-b", "lazy-c", "lazy-kept"};
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, true);
+    ImageController controller = new ImageController(new ImageViewer(printStream));
+    controller.setLazyScripts(true);
+    controller.runScript(scriptFile.getPath());
+
+    assertTrue(output.toString().startsWith("Lazy evaluation: running 6 of 9 commands."));
+    assertFalse(output.toString().contains("blur"));
+    assertNull(mockProcessor.getImage("lazy-dead"));
+    assertNull(mockProcessor.getImage("lazy-dead2"));
+    assertArrayEquals(new int[]{25, 35, 45}, mockProcessor.getImage("lazy-b").getImage(1, 2));
+    assertArrayEquals(new int[]{10, 20, 30}, mockProcessor.getImage("lazy-kept").getImage(1, 1));
+    assertTrue(savedFile.length() > 0);
+    for (String name : names) {
+      mockProcessor.addImage(name, null);
+    }
+
+    controller.setLazyScripts(false);
+    controller.runScript(scriptFile.getPath());
+    for (String name : names) {
+      assertNotNull(mockProcessor.getImage(name));
+      mockProcessor.addImage(name, null);
+    }
+  }
+
+  /**
+   * Test that running a script again incrementally skips the commands whose arguments and inputs
+   * have not changed, restoring their images and coefficients, and only runs the commands that
+   * depend on a changed line.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_IncrementalSkipsUnchangedCommands() throws IOException {
+    File savedFile = File.createTempFile("incremental", ".ppm");
+    savedFile.deleteOnExit();
+    File scriptFile = File.createTempFile("incremental", ".txt");
+    scriptFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("brighten 10 inc-in inc-a\ncompress 50 inc-a inc-c\nblur inc-a inc-b\n"
+          + "save " + savedFile.getPath() + " inc-b\n");
+    }
+    Image image = new Image(4, 4);
+    image.setImage(1, 2, 10, 20, 30);
+    mockProcessor.addImage("inc-in", image);
+    String[] names = {"inc-a", "inc-b", "inc-c"};
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, true);
+    ImageController controller = new ImageController(new ImageViewer(printStream));
+    controller.setIncrementalDirectory(
+        Files.createTempDirectory("incremental").toString());
+    controller.runScript(scriptFile.getPath());
+    String first = output.toString();
+    assertTrue(first.endsWith("Incremental run: 0 of 4 commands were up to date."
+        + System.lineSeparator()));
+    int[] blurred = mockProcessor.getImage("inc-b").getImage(1, 2).clone();
+    for (String name : names) {
+      mockProcessor.addImage(name, null);
+    }
+
+    output.reset();
+    controller.runScript(scriptFile.getPath());
+    String second = output.toString();
+    assertTrue(second.endsWith("Incremental run: 4 of 4 commands were up to date."
+        + System.lineSeparator()));
+    assertEquals(first.substring(0, first.lastIndexOf("Incremental")),
+        second.substring(0, second.lastIndexOf("Incremental")));
+    assertArrayEquals(blurred, mockProcessor.getImage("inc-b").getImage(1, 2));
+    assertNotNull(mockProcessor.getCoefficients("inc-c"));
+
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("brighten 10 inc-in inc-a\ncompress 50 inc-a inc-c\nsharpen inc-a inc-b\n"
+          + "save " + savedFile.getPath() + " inc-b\n");
+    }
+    output.reset();
+    controller.runScript(scriptFile.getPath());
+    assertTrue(output.toString().endsWith("Incremental run: 2 of 4 commands were up to date."
+        + System.lineSeparator()));
+    for (String name : names) {
+      mockProcessor.addImage(name, null);
+    }
+    mockProcessor.addImage("inc-in", null);
+  }
+
+  /**
+   * Test that a script reading files ahead and writing them behind shows its output in order,
+   * reloads a file only after it is saved, and saves the image given when the save is reached
+   * even if its name is reused right after.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_PipelinedLoadsAndSaves() throws IOException {
+    File first = File.createTempFile("pipelined", ".ppm");
+    first.deleteOnExit();
+    File second = File.createTempFile("pipelined", ".ppm");
+    second.deleteOnExit();
+    Files.write(first.toPath(), "P3\n1 1\n255\n10 20 30\n".getBytes(StandardCharsets.US_ASCII));
+    File scriptFile = File.createTempFile("pipelined", ".txt");
+    scriptFile.deleteOnExit();
+    String[] lines = {"load " + first.getPath() + " pipe-a",
+        "load " + first.getPath() + " pipe-b",
+        "brighten 5 pipe-a pipe-c",
+        "save " + second.getPath() + " pipe-c",
+        "brighten 100 pipe-a pipe-c",
+        "load " + second.getPath() + " pipe-d",
+        "save " + second.getPath() + " pipe-c"};
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write(String.join("\n", lines) + "\n");
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, true);
+    ImageController controller = new ImageController(new ImageViewer(printStream));
+    controller.runScript(scriptFile.getPath());
+
+    String[] messages = {"PPM Image Loaded.", "PPM Image Loaded.",
+        "Image Brightened by 5", "Image Saved.", "Image Brightened by 100", "PPM Image Loaded.",
+        "Image Saved."};
+    StringBuilder expected = new StringBuilder();
+    for (int k = 0; k < lines.length; k++) {
+      expected.append(lines[k]).append(System.lineSeparator()).append(messages[k])
+          .append(System.lineSeparator());
+    }
+    assertEquals(expected.toString(), output.toString());
+    assertArrayEquals(new int[]{10, 20, 30}, mockProcessor.getImage("pipe-b").getImage(0, 0));
+    assertArrayEquals(new int[]{15, 25, 35}, mockProcessor.getImage("pipe-d").getImage(0, 0));
+    controller.executeCommand("load " + second.getPath() + " pipe-e");
+    assertArrayEquals(new int[]{110, 120, 130}, mockProcessor.getImage("pipe-e").getImage(0, 0));
+    for (String name : new String[]{"pipe-a", "pipe-b", "pipe-c", "pipe-d", "pipe-e"}) {
+      mockProcessor.addImage(name, null);
+    }
+  }
+
+  /**
+   * Test that an incremental script still reads its files ahead and writes them behind: its loads
+   * and saves are recognised through the wrapper that skips cached commands, and the script runs
+   * the same, from the cache or not.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunScript_PipelinedIncremental() throws IOException {
+    File input = File.createTempFile("pipelined-inc", ".ppm");
+    input.deleteOnExit();
+    File saved = File.createTempFile("pipelined-inc", ".ppm");
+    saved.deleteOnExit();
+    Files.write(input.toPath(), "P3\n1 1\n255\n10 20 30\n".getBytes(StandardCharsets.US_ASCII));
+    File scriptFile = File.createTempFile("pipelined-inc", ".txt");
+    scriptFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(scriptFile)) {
+      writer.write("load " + input.getPath() + " pinc-a\nload " + input.getPath() + " pinc-b\n"
+          + "brighten 5 pinc-a pinc-c\nsave " + saved.getPath() + " pinc-c\n");
+    }
+    String directory = Files.createTempDirectory("pipelined-inc").toString();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageController controller = new ImageController(
+        new ImageViewer(new PrintStream(output, true)));
+    controller.setIncrementalDirectory(directory);
+    controller.runScript(scriptFile.getPath());
+    assertTrue(output.toString().endsWith("Incremental run: 0 of 4 commands were up to date."
+        + System.lineSeparator()));
+    output.reset();
+    controller.runScript(scriptFile.getPath());
+    assertTrue(output.toString().endsWith("Incremental run: 4 of 4 commands were up to date."
+        + System.lineSeparator()));
+    assertArrayEquals(new int[]{10, 20, 30}, mockProcessor.getImage("pinc-b").getImage(0, 0));
+    controller.executeCommand("load " + saved.getPath() + " pinc-d");
+    assertArrayEquals(new int[]{15, 25, 35}, mockProcessor.getImage("pinc-d").getImage(0, 0));
+
+    List<ScriptPlan.Step> steps = new IncrementalBuild(new StepCache(Paths.get(directory)))
+        .wrap(controller.compileScript(scriptFile.getPath()).getSteps());
+    assertTrue(PipelinedRunner.commandOf(steps.get(0)) instanceof LoadImageCommand);
+    assertTrue(PipelinedRunner.commandOf(steps.get(1)) instanceof LoadImageCommand);
+    assertTrue(PipelinedRunner.commandOf(steps.get(3)) instanceof SaveImageCommand);
+    for (String name : new String[]{"pinc-a", "pinc-b", "pinc-c", "pinc-d"}) {
+      mockProcessor.addImage(name, null);
+    }
+  }
+
+  /**
+   * Test that a server runs the commands of concurrent clients, each in a session with its own
+   * images, and sends their messages back.
+   *
+   * @throws Exception If there is an error during image processing or communication.
+   */
+  @Test
+  public void testServer_RunsIsolatedSessions() throws Exception {
+    File input = File.createTempFile("server", ".ppm");
+    input.deleteOnExit();
+    Files.write(input.toPath(), "P3\n1 1\n255\n10 20 30\n".getBytes(StandardCharsets.US_ASCII));
+    File[] saved = {File.createTempFile("server-a", ".ppm"),
+        File.createTempFile("server-b", ".ppm")};
+    int[] changes = {10, 50};
+    try (ImageServer server = new ImageServer(0, 2)) {
+      Thread serving = new Thread(() -> {
+        try {
+          server.serve();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      serving.start();
+      ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[2];
+      int[] errors = new int[2];
+      Thread[] clients = new Thread[2];
+      for (int k = 0; k < 2; k++) {
+        int client = k;
+        outputs[k] = new ByteArrayOutputStream();
+        String commands = "load " + input.getPath() + " srv-img\n"
+            + "brighten " + changes[k] + " srv-img srv-img\n"
+            + "save " + saved[k].getPath() + " srv-img\n";
+        clients[k] = new Thread(() -> {
+          try {
+            errors[client] = ImageClient.run(server.getPort(),
+                new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(outputs[client], true), new PrintStream(outputs[client], true));
+          } catch (IOException e) {
+            errors[client] = -1;
+          }
+        });
+        clients[k].start();
+      }
+      for (Thread client : clients) {
+        client.join(10000);
+      }
+      for (int k = 0; k < 2; k++) {
+        assertEquals(0, errors[k]);
+        assertEquals("PPM Image Loaded.\nImage Brightened by " + changes[k] + "\nImage Saved.\n",
+            outputs[k].toString().replace(System.lineSeparator(), "\n"));
+      }
+      assertNull(mockProcessor.getImage("srv-img"));
+
+      ImageController controller = new ImageController(mockViewer);
+      for (int k = 0; k < 2; k++) {
+        controller.executeCommand("load " + saved[k].getPath() + " srv-check");
+        int value = 10 + changes[k];
+        assertArrayEquals(new int[]{value, value + 10, value + 20},
+            mockProcessor.getImage("srv-check").getImage(0, 0));
+      }
+      mockProcessor.addImage("srv-check", null);
+    }
+    for (File file : saved) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Test that an error thrown by a command of a session, such as running out of memory, is
+   * reported as the failure of that command, and that the commands after it still run.
+   *
+   * @throws Exception If there is an error during image processing or communication.
+   */
+  @Test
+  public void testServer_ErrorFailsOnlyItsCommand() throws Exception {
+    File huge = File.createTempFile("server-huge", ".ppm");
+    huge.deleteOnExit();
+    Files.write(huge.toPath(),
+        "P3\n2147483000 2147483000\n255\n1 2 3\n".getBytes(StandardCharsets.US_ASCII));
+    File input = File.createTempFile("server-small", ".ppm");
+    input.deleteOnExit();
+    Files.write(input.toPath(), "P3\n1 1\n255\n10 20 30\n".getBytes(StandardCharsets.US_ASCII));
+    try (ImageServer server = new ImageServer(0, 1)) {
+      Thread serving = new Thread(() -> {
+        try {
+          server.serve();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      serving.start();
+      String commands = "load " + huge.getPath() + " srv-huge\n"
+          + "load " + input.getPath() + " srv-small\n";
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+      int errors = ImageClient.run(server.getPort(),
+          new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)),
+          new PrintStream(output, true), new PrintStream(errorOutput, true));
+
+      assertEquals(1, errors);
+      assertTrue(errorOutput.toString().startsWith(
+          "Command failed: java.lang.OutOfMemoryError"));
+      assertTrue(output.toString().trim().endsWith("PPM Image Loaded."));
+    }
+  }
+
+  /**
+   * Test that a command waits while the commands running need too much of the memory budget, and
+   * runs once they end, and that a load estimates its memory from the header of its file.
+   *
+   * @throws Exception If there is an error during image processing or waiting.
+   */
+  @Test
+  public void testAdmission_QueuesCommandsOverBudget() throws Exception {
+    AdmissionController admission = new AdmissionController(100);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    boolean[] ran = new boolean[1];
+    ImageCommand large = admission.admit(new ImageCommand() {
+      /**
+       * Holds its memory until the test lets it finish.
+       */
+      @Override
+      public void execute(ImageProcessor processor, ImageViewer viewer, String[] args)
+          throws IOException {
+        started.countDown();
+        try {
+          finish.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+
+      /**
+       * Needs most of the budget.
+       */
+      @Override
+      public long estimateMemory(ImageProcessor processor, String[] args) {
+        return 80;
+      }
+    });
+    ImageCommand small = admission.admit(new ImageCommand() {
+      /**
+       * Records that it ran.
+       */
+      @Override
+      public void execute(ImageProcessor processor, ImageViewer viewer, String[] args) {
+        ran[0] = true;
+      }
+
+      /**
+       * Needs more than what is left of the budget.
+       */
+      @Override
+      public long estimateMemory(ImageProcessor processor, String[] args) {
+        return 50;
+      }
+    });
+    Thread first = new Thread(() -> {
+      try {
+        large.execute(mockProcessor, mockViewer, new String[]{"large"});
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    first.start();
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    Thread second = new Thread(() -> {
+      try {
+        small.execute(mockProcessor, mockViewer, new String[]{"small"});
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    second.start();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (admission.getQueued() == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, admission.getQueued());
+    assertEquals(80, admission.getInUse());
+    assertFalse(ran[0]);
+
+    finish.countDown();
+    first.join(10000);
+    second.join(10000);
+    assertTrue(ran[0]);
+    assertEquals(0, admission.getInUse());
+    assertEquals(0, admission.getRunning());
+    assertEquals(2, admission.getAdmitted());
+
+    File input = File.createTempFile("admission", ".ppm");
+    input.deleteOnExit();
+    Files.write(input.toPath(), "P3\n3 2\n255\n0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n"
+        .getBytes(StandardCharsets.US_ASCII));
+    assertEquals(Image.estimatedSize(2, 3), new LoadImageCommand().estimateMemory(mockProcessor,
+        new String[]{"load", input.getPath(), "admission-img"}));
+  }
+
+  /**
+   * Test that a command waiting for memory stops waiting once it runs out of time, and gives up
+   * its place in the queue to the commands behind it.
+   *
+   * @throws Exception If there is an error during image processing or waiting.
+   */
+  @Test
+  public void testAdmission_TimeoutStopsWaitingCommand() throws Exception {
+    AdmissionController admission = new AdmissionController(100);
+    admission.acquire(100);
+    mockProcessor.addImage("waiting-image", new Image(20, 20));
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    PrintStream standardError = System.err;
+    System.setErr(new PrintStream(errors, true));
+    ImageController controller = new ImageController(mockViewer);
+    controller.setAdmission(admission);
+    controller.setCommandTimeout(100);
+    Thread waiting = new Thread(() -> {
+      try {
+        controller.executeCommand("brighten 10 waiting-image waiting-brighter");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    waiting.start();
+    waiting.join(10000);
+    System.setErr(standardError);
+
+    assertFalse(waiting.isAlive());
+    assertTrue(errors.toString().contains("brighten: Operation timed out after 100 ms."));
+    assertEquals(0, admission.getQueued());
+    assertNull(mockProcessor.getImage("waiting-brighter"));
+    admission.release(100);
+    Thread next = new Thread(() -> {
+      try {
+        admission.acquire(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    next.start();
+    next.join(10000);
+    assertFalse(next.isAlive());
+    assertEquals(1, admission.getRunning());
+    mockProcessor.addImage("waiting-image", null);
+  }
+
+  /**
+   * Test that a command shows its progress while it runs, and that cancelling it stops it part
+   * of the way through with an error and without storing its result.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testCancel_StopsRunningCommand() throws IOException {
+    List<Integer> percents = Collections.synchronizedList(new ArrayList<>());
+    List<String> errors = new ArrayList<>();
+    ImageController[] controller = new ImageController[1];
+    ImageViewer viewer = new ImageViewer(new PrintStream(new ByteArrayOutputStream())) {
+      /**
+       * Records the progress, and cancels a compression half way.
+       */
+      @Override
+      public void showProgress(String command, int percent) {
+        percents.add(percent);
+        if (command.equals("compress") && percent >= 50) {
+          controller[0].cancel();
+        }
+      }
+
+      /**
+       * Records the error.
+       */
+      @Override
+      public void showErrorMessage(String errorMessage) {
+        errors.add(errorMessage);
+      }
+    };
+    ImageOperations images = ImageOperations.isolated();
+    images.addImage("cancel-src", new Image(64, 64));
+    controller[0] = new ImageController(viewer, images);
+
+    controller[0].executeCommand("compress 50 cancel-src cancel-dst");
+    assertEquals(Collections.singletonList("compress: Operation cancelled."), errors);
+    assertNull(images.getImage("cancel-dst"));
+    assertTrue(Collections.max(percents) >= 50);
+    assertTrue(Collections.max(percents) < 100);
+
+    percents.clear();
+    controller[0].executeCommand("horizontal-flip cancel-src cancel-dst");
+    assertEquals(1, errors.size());
+    assertNotNull(images.getImage("cancel-dst"));
+    assertEquals(50, (int) percents.get(31));
+  }
+
+  /**
+   * Test that a batch runs the script template on every input file, each with its own images,
+   * writes one output per file and reports the files that failed.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunBatch_RunsTemplateOnEveryFile() throws IOException {
+    File inputs = Files.createTempDirectory("batch-in").toFile();
+    File outputs = Files.createTempDirectory("batch-out").toFile();
+    Files.write(new File(inputs, "a.ppm").toPath(),
+        "P3\n2 1\n255\n10 20 30 40 50 60\n".getBytes(StandardCharsets.US_ASCII));
+    Files.write(new File(inputs, "b.ppm").toPath(),
+        "P3\n1 1\n255\n100 100 100\n".getBytes(StandardCharsets.US_ASCII));
+    Files.write(new File(inputs, "c.ppm").toPath(), "P3\n".getBytes(StandardCharsets.US_ASCII));
+    Files.write(new File(inputs, "notes.txt").toPath(), new byte[0]);
+    File template = File.createTempFile("batch", ".txt");
+    template.deleteOnExit();
+    try (FileWriter writer = new FileWriter(template)) {
+      writer.write("load {input} batch-img\nbrighten 10 batch-img batch-img\n"
+          + "save {output} batch-img\n");
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, true);
+    ImageController controller = new ImageController(new ImageViewer(printStream));
+    PrintStream originalErr = System.err;
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errors, true));
+    try {
+      controller.runBatch(template.getPath(), inputs.getPath(),
+          outputs.getPath() + File.separator + "{name}-bright.ppm", 2);
+    } finally {
+      System.setErr(originalErr);
+    }
+
+    assertTrue(output.toString().contains("Batch of 3 files on 2 workers: 2 succeeded, 1 failed"));
+    assertTrue(errors.toString().contains("c.ppm: failed after"));
+    assertTrue(new File(outputs, "a-bright.ppm").length() > 0);
+    assertTrue(new File(outputs, "b-bright.ppm").length() > 0);
+    assertFalse(new File(outputs, "c-bright.ppm").exists());
+    assertNull(mockProcessor.getImage("batch-img"));
+    for (File dir : new File[]{inputs, outputs}) {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a script run from a line of a batch template runs on the images of its file, so
+   * that the template can use the images it loads.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testRunBatch_NestedScriptUsesImagesOfFile() throws IOException {
+    File inputs = Files.createTempDirectory("nested-in").toFile();
+    File outputs = Files.createTempDirectory("nested-out").toFile();
+    Files.write(new File(inputs, "a.ppm").toPath(),
+        "P3\n1 1\n255\n10 20 30\n".getBytes(StandardCharsets.US_ASCII));
+    File inner = File.createTempFile("inner", ".txt");
+    inner.deleteOnExit();
+    Files.write(inner.toPath(), ("load " + new File(inputs, "a.ppm").getPath()
+        + " nested-img\nbrighten 5 nested-img nested-img\n").getBytes(StandardCharsets.UTF_8));
+    File template = File.createTempFile("nested", ".txt");
+    template.deleteOnExit();
+    Files.write(template.toPath(), ("-file " + inner.getPath() + "\nsave {output} nested-img\n")
+        .getBytes(StandardCharsets.UTF_8));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageController controller = new ImageController(new ImageViewer(
+        new PrintStream(output, true)));
+    controller.runBatch(template.getPath(), inputs.getPath(),
+        outputs.getPath() + File.separator + "{name}.ppm", 1);
+
+    assertTrue(output.toString().contains("1 succeeded, 0 failed"));
+    assertNull(mockProcessor.getImage("nested-img"));
+    controller.executeCommand("load " + new File(outputs, "a.ppm").getPath() + " nested-check");
+    assertArrayEquals(new int[]{15, 25, 35}, mockProcessor.getImage("nested-check").getImage(0, 0));
+    mockProcessor.addImage("nested-check", null);
+    for (File dir : new File[]{inputs, outputs}) {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Tests that binding a command parses its arguments once: the bound command is of the same
+   * kind, runs with the values parsed when it was bound, and invalid arguments fail to bind with
+   * the message the command validates them with.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testBind_ParsesArgumentsOnce() throws IOException {
+    Image image = new Image(1, 1);
+    image.setImage(0, 0, 10, 20, 30);
+    mockProcessor.addImage("bind-in", image);
+    ImageCommand bound = new BrightenImageCommand().bind(
+        new String[]{"brighten", "10", "bind-in", "bind-out"});
+    assertTrue(bound instanceof BrightenImageCommand);
+    bound.execute(mockProcessor, mockViewer,
+        new String[]{"brighten", "not-parsed", "bind-in", "bind-out"});
+    assertArrayEquals(new int[]{20, 30, 40}, mockProcessor.getImage("bind-out").getImage(0, 0));
+
+    assertTrue(new SaveImageCommand().bind(new String[]{"save", "-binary", "out.ppm", "a"})
+        instanceof SaveImageCommand);
+    String[] invalid = {"levels-adjust", "20", "10", "255", "a", "b"};
+    try {
+      new LevelsAdjustment().bind(invalid);
+      fail("Invalid arguments should not bind.");
+    } catch (IllegalArgumentException e) {
+      assertEquals(new LevelsAdjustment().validate(invalid), e.getMessage());
+    }
+  }
+
   /**
    * Test executing a command to load a PPM image.
    *
@@ -102,6 +902,62 @@ public class ImageControllerTest {
     assertEquals("PPM Image Loaded.", output);
   }
 
+  /**
+   * Test that a PPM image with comments between any of its numbers is loaded correctly.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testExecute_LoadPPMImageWithComments() throws IOException {
+    File ppmFile = File.createTempFile("comments", ".ppm");
+    ppmFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(ppmFile)) {
+      writer.write("P3 # plain\n2 # width\n1\n#max\n255\n10 20 30#first\n40\n# blue\n50 60\n");
+    }
+    new LoadImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"load", ppmFile.getPath(), "image"});
+
+    assertEquals("PPM Image Loaded.", outputStream.toString().trim());
+    Image image = mockProcessor.getImage("image");
+    assertEquals(1, image.getHeight());
+    assertEquals(2, image.getWidth());
+    assertArrayEquals(new int[]{10, 20, 30}, image.getImage(0, 0));
+    assertArrayEquals(new int[]{40, 50, 60}, image.getImage(0, 1));
+  }
+
+  /**
+   * Test that a PPM file whose magic number runs into the next number is rejected, while one
+   * followed directly by a comment is loaded.
+   *
+   * @throws IOException If there is an error during image processing.
+   */
+  @Test
+  public void testExecute_LoadPPMImageWithMalformedMagic() throws IOException {
+    File malformedFile = File.createTempFile("malformed", ".ppm");
+    malformedFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(malformedFile)) {
+      writer.write("P32 2 255\n1 2 3 4 5 6 7 8 9 10 11 12\n");
+    }
+    File commentFile = File.createTempFile("comment", ".ppm");
+    commentFile.deleteOnExit();
+    try (FileWriter writer = new FileWriter(commentFile)) {
+      writer.write("P3#plain\n1 1 255\n7 8 9\n");
+    }
+    ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errorStream));
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", malformedFile.getPath(), "malformed"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", commentFile.getPath(), "comment"});
+    System.setErr(System.err);
+
+    assertEquals("Invalid PPM file: unexpected character '2' after P3.",
+        errorStream.toString().trim());
+    assertNull(mockProcessor.getImage("malformed"));
+    assertArrayEquals(new int[]{7, 8, 9}, mockProcessor.getImage("comment").getImage(0, 0));
+  }
+
 
   /**
    * Test executing a command to load an IO image.
@@ -695,6 +1551,496 @@ public class ImageControllerTest {
     assertEquals(expectedOutputs, actualOutputs);
   }
 
+  /**
+   * Tests that a compressed image saved as HAAR coefficients loads back close to the compressed
+   * image and is smaller on disk than the source PPM file.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SaveAndLoadHaarImage() throws IOException {
+    File haarFile = File.createTempFile("compressed", ".haar");
+    haarFile.deleteOnExit();
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", imagePath, "image"});
+    new CompressImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"compress", "80", "image", "compressed"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", haarFile.getPath(), "compressed"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", haarFile.getPath(), "decoded"});
+
+    String[] expectedOutputs = {"PPM Image Loaded.", "Successfully Compressed the Image.",
+        "Image Saved.", "HAAR Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    assertTrue(haarFile.length() < new File(imagePath).length());
+
+    Image compressed = mockProcessor.getImage("compressed");
+    Image decoded = mockProcessor.getImage("decoded");
+    assertEquals(compressed.getHeight(), decoded.getHeight());
+    assertEquals(compressed.getWidth(), decoded.getWidth());
+    for (int i = 0; i < compressed.getHeight(); i++) {
+      for (int j = 0; j < compressed.getWidth(); j++) {
+        for (int c = 0; c < 3; c++) {
+          assertTrue(Math.abs(compressed.getImage(i, j)[c] - decoded.getImage(i, j)[c]) <= 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that JPEG files are encoded as JPEG with the requested quality, and that PNG files
+   * written with a chosen deflate level and filter load back unchanged.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SaveJPEGAndPNGWithOptions() throws IOException {
+    File jpegFile = File.createTempFile("quality", ".jpg");
+    jpegFile.deleteOnExit();
+    File pngFile = File.createTempFile("deflate", ".png");
+    pngFile.deleteOnExit();
+    ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errorStream));
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", imagePath, "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", "-quality", "0.5", jpegFile.getPath(), "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", "-deflate", "1", "-filter", "paeth", pngFile.getPath(), "image"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", pngFile.getPath(), "decoded"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", "-quality", "1.5", jpegFile.getPath(), "image"});
+    System.setErr(System.err);
+
+    String[] expectedOutputs = {"PPM Image Loaded.", "Image Saved.", "Image Saved.",
+        "IO Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    assertEquals("Invalid 'save' option. The JPEG quality should be between 0 and 1.",
+        errorStream.toString().trim());
+    byte[] jpegStart = new byte[2];
+    try (FileInputStream in = new FileInputStream(jpegFile)) {
+      assertEquals(2, in.read(jpegStart));
+    }
+    assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xD8}, jpegStart);
+    Image image = mockProcessor.getImage("image");
+    Image decoded = mockProcessor.getImage("decoded");
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        assertArrayEquals(image.getImage(i, j), decoded.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Tests that a PNG file encoded by several threads holds a single IDAT chunk and loads back
+   * unchanged.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SavePNGWithThreads() throws IOException {
+    File pngFile = File.createTempFile("threads", ".png");
+    pngFile.deleteOnExit();
+    Image image = new Image(250, 300);
+    for (int i = 0; i < 250; i++) {
+      for (int j = 0; j < 300; j++) {
+        image.setImage(i, j, (i * j) % 256, (i + 3 * j) % 256, (i ^ j) % 256);
+      }
+    }
+    mockProcessor.addImage("image", image);
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", "-threads", "3", pngFile.getPath(), "image"});
+    new LoadImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"load", pngFile.getPath(), "decoded"});
+
+    String[] expectedOutputs = {"Image Saved.", "IO Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    String content = new String(Files.readAllBytes(pngFile.toPath()),
+        StandardCharsets.ISO_8859_1);
+    assertEquals(content.indexOf("IDAT"), content.lastIndexOf("IDAT"));
+    Image decoded = mockProcessor.getImage("decoded");
+    for (int i = 0; i < 250; i++) {
+      for (int j = 0; j < 300; j++) {
+        assertArrayEquals(image.getImage(i, j), decoded.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Tests that saving PNG files with several threads reuses a pool of encoding threads, one per
+   * processor at most, instead of starting new ones for every save.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SavePNGReusesEncodingThreads() throws IOException {
+    File pngFile = File.createTempFile("reused", ".png");
+    pngFile.deleteOnExit();
+    mockProcessor.addImage("image", new Image(200, 1000));
+    String[] args = {"save", "-threads", "4", pngFile.getPath(), "image"};
+    for (int k = 0; k < 5; k++) {
+      new SaveImageCommand().execute(mockProcessor, mockViewer, args);
+    }
+
+    long started = Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("png-encoder")).count();
+    assertTrue(started >= 1);
+    assertTrue(started <= Runtime.getRuntime().availableProcessors());
+    assertEquals(5, outputStream.toString().trim().split("\\R").length);
+  }
+
+  /**
+   * Tests that an image saved as a QOI file, with runs, small and large differences and repeated
+   * colors, loads back unchanged.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SaveAndLoadQOIImage() throws IOException {
+    File qoiFile = File.createTempFile("image", ".qoi");
+    qoiFile.deleteOnExit();
+    Image image = new Image(90, 130);
+    for (int i = 0; i < 90; i++) {
+      for (int j = 0; j < 130; j++) {
+        if (i < 30) {
+          image.setImage(i, j, 200, 10, 10);
+        } else if (i < 60) {
+          image.setImage(i, j, (i + j) % 256, (2 * i + j) % 256, (i + 2 * j) % 256);
+        } else {
+          image.setImage(i, j, (i * j * 37) % 256, (i ^ j) * 5 % 256, j % 4 * 80);
+        }
+      }
+    }
+    mockProcessor.addImage("image", image);
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", qoiFile.getPath(), "image"});
+    new LoadImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"load", qoiFile.getPath(), "decoded"});
+
+    String[] expectedOutputs = {"Image Saved.", "QOI Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    byte[] content = Files.readAllBytes(qoiFile.toPath());
+    assertEquals("qoif", new String(content, 0, 4, StandardCharsets.US_ASCII));
+    assertEquals(1, content[content.length - 1]);
+    assertTrue(content.length < 90 * 130 * 3);
+    Image decoded = mockProcessor.getImage("decoded");
+    for (int i = 0; i < 90; i++) {
+      for (int j = 0; j < 130; j++) {
+        assertArrayEquals(image.getImage(i, j), decoded.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Tests that a decoded image is mapped from the decode cache while its file is unchanged and
+   * decoded again once it changes, and that a corrupted RAW file is rejected.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_LoadWithDecodeCache() throws IOException {
+    File pngFile = File.createTempFile("cached", ".png");
+    pngFile.deleteOnExit();
+    File cacheDirectory = Files.createTempDirectory("cache").toFile();
+    cacheDirectory.deleteOnExit();
+    Image image = new Image(40, 50);
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 50; j++) {
+        image.setImage(i, j, i * 6, j * 5, (i + j) % 256);
+      }
+    }
+    mockProcessor.addImage("image", image);
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", pngFile.getPath(), "image"});
+    LoadImageCommand loadCommand = new LoadImageCommand(
+        new DecodeCache(cacheDirectory.toPath()));
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", pngFile.getPath(), "decoded"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", pngFile.getPath(), "cached"});
+    assertTrue(pngFile.setLastModified(pngFile.lastModified() - 10000));
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", pngFile.getPath(), "changed"});
+
+    File[] entries = cacheDirectory.listFiles();
+    assertEquals(1, entries.length);
+    entries[0].deleteOnExit();
+    assertFalse(mockProcessor.getImage("decoded") instanceof MappedImage);
+    assertTrue(mockProcessor.getImage("cached") instanceof MappedImage);
+    assertFalse(mockProcessor.getImage("changed") instanceof MappedImage);
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 50; j++) {
+        assertArrayEquals(image.getImage(i, j), mockProcessor.getImage("cached").getImage(i, j));
+      }
+    }
+
+    byte[] content = Files.readAllBytes(entries[0].toPath());
+    content[content.length - 1] ^= 1;
+    File rawFile = File.createTempFile("corrupt", ".raw");
+    rawFile.deleteOnExit();
+    Files.write(rawFile.toPath(), content);
+    outputStream.reset();
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", entries[0].getPath(), "raw"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", rawFile.getPath(), "corrupt"});
+    assertEquals("RAW Image Loaded.", outputStream.toString().trim());
+    assertNull(mockProcessor.getImage("corrupt"));
+  }
+
+  /**
+   * Tests that the decode cache deletes the entry used least recently once its entries no longer
+   * fit in its size.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_DecodeCacheEvictsLeastRecentlyUsed() throws IOException {
+    File firstFile = File.createTempFile("first", ".png");
+    firstFile.deleteOnExit();
+    File secondFile = File.createTempFile("second", ".png");
+    secondFile.deleteOnExit();
+    File cacheDirectory = Files.createTempDirectory("cache").toFile();
+    cacheDirectory.deleteOnExit();
+    mockProcessor.addImage("image", new Image(30, 20));
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", firstFile.getPath(), "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", secondFile.getPath(), "image"});
+    new LoadImageCommand(new DecodeCache(cacheDirectory.toPath())).execute(mockProcessor,
+        mockViewer, new String[]{"load", firstFile.getPath(), "first"});
+    File[] entries = cacheDirectory.listFiles();
+    assertEquals(1, entries.length);
+    entries[0].deleteOnExit();
+    assertTrue(entries[0].setLastModified(entries[0].lastModified() - 10000));
+
+    LoadImageCommand loadCommand = new LoadImageCommand(
+        new DecodeCache(cacheDirectory.toPath(), entries[0].length()));
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", secondFile.getPath(), "second"});
+
+    File[] remaining = cacheDirectory.listFiles();
+    assertEquals(1, remaining.length);
+    remaining[0].deleteOnExit();
+    assertFalse(entries[0].exists());
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", secondFile.getPath(), "cached"});
+    assertTrue(mockProcessor.getImage("cached") instanceof MappedImage);
+  }
+
+  /**
+   * Tests that a subsampled region of plain PPM, binary PPM and PNG files loads as the same
+   * pixels of the image, and that a region outside the image is rejected.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_LoadSubsampledRegion() throws IOException {
+    File plainFile = File.createTempFile("plain", ".ppm");
+    plainFile.deleteOnExit();
+    File binaryFile = File.createTempFile("binary", ".ppm");
+    binaryFile.deleteOnExit();
+    File pngFile = File.createTempFile("region", ".png");
+    pngFile.deleteOnExit();
+    Image image = new Image(30, 40);
+    for (int i = 0; i < 30; i++) {
+      for (int j = 0; j < 40; j++) {
+        image.setImage(i, j, i * 8, j * 6, (i * j) % 256);
+      }
+    }
+    mockProcessor.addImage("image", image);
+    SaveImageCommand saveCommand = new SaveImageCommand();
+    saveCommand.execute(mockProcessor, mockViewer,
+        new String[]{"save", plainFile.getPath(), "image"});
+    saveCommand.execute(mockProcessor, mockViewer,
+        new String[]{"save", "-binary", binaryFile.getPath(), "image"});
+    saveCommand.execute(mockProcessor, mockViewer,
+        new String[]{"save", pngFile.getPath(), "image"});
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    String[] paths = {plainFile.getPath(), binaryFile.getPath(), pngFile.getPath()};
+    for (String path : paths) {
+      loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", "-subsample", "3",
+          "2", "-region", "5", "4", "100", "13", path, "part"});
+      Image part = mockProcessor.getImage("part");
+      assertEquals(7, part.getHeight());
+      assertEquals(12, part.getWidth());
+      for (int i = 0; i < 7; i++) {
+        for (int j = 0; j < 12; j++) {
+          assertArrayEquals(image.getImage(4 + i * 2, 5 + j * 3), part.getImage(i, j));
+        }
+      }
+    }
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", "-region", "50", "0", "10", "10", pngFile.getPath(), "outside"});
+
+    String[] expectedOutputs = {"Image Saved.", "Image Saved.", "Image Saved.",
+        "PPM Image Loaded.", "PPM Image Loaded.", "IO Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    assertNull(mockProcessor.getImage("outside"));
+  }
+
+  /**
+   * Tests that a load bound to a region, as in a compiled script, clips the region to each file it
+   * loads, so that loading a larger file again is not limited to the size of the first one.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testBind_LoadRegionClippedPerFile() throws IOException {
+    File pngFile = File.createTempFile("replaced", ".png");
+    pngFile.deleteOnExit();
+    String[] args = {"load", "-region", "0", "0", "100", "100", pngFile.getPath(), "part"};
+    ImageCommand loadCommand = new LoadImageCommand().bind(args);
+    SaveImageCommand saveCommand = new SaveImageCommand();
+    mockProcessor.addImage("small", new Image(10, 20));
+    saveCommand.execute(mockProcessor, mockViewer,
+        new String[]{"save", pngFile.getPath(), "small"});
+    loadCommand.execute(mockProcessor, mockViewer, args);
+    assertEquals(10, mockProcessor.getImage("part").getHeight());
+    assertEquals(20, mockProcessor.getImage("part").getWidth());
+
+    mockProcessor.addImage("large", new Image(40, 50));
+    saveCommand.execute(mockProcessor, mockViewer,
+        new String[]{"save", pngFile.getPath(), "large"});
+    loadCommand.execute(mockProcessor, mockViewer, args);
+    assertEquals(40, mockProcessor.getImage("part").getHeight());
+    assertEquals(50, mockProcessor.getImage("part").getWidth());
+  }
+
+  /**
+   * Tests that images saved as binary PPM and PGM files load back unchanged.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SaveAndLoadBinaryPPMImage() throws IOException {
+    File ppmFile = File.createTempFile("binary", ".ppm");
+    ppmFile.deleteOnExit();
+    File pgmFile = File.createTempFile("binary", ".pgm");
+    pgmFile.deleteOnExit();
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", imagePath, "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", "-binary", ppmFile.getPath(), "image"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", ppmFile.getPath(), "decoded"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", pgmFile.getPath(), "image"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", pgmFile.getPath(), "grey"});
+
+    String[] expectedOutputs = {"PPM Image Loaded.", "Image Saved.", "PPM Image Loaded.",
+        "Image Saved.", "PGM Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    Image image = mockProcessor.getImage("image");
+    assertEquals(image.getHeight() * image.getWidth() * 3 + 15, ppmFile.length(), 15);
+    Image decoded = mockProcessor.getImage("decoded");
+    Image grey = mockProcessor.getImage("grey");
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        assertArrayEquals(image.getImage(i, j), decoded.getImage(i, j));
+        int red = image.getImage(i, j)[0];
+        assertArrayEquals(new int[]{red, red, red}, grey.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Tests that an image without compressed coefficients is saved to a HAAR file losslessly.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_SaveAndLoadLosslessHaarImage() throws IOException {
+    File haarFile = File.createTempFile("lossless", ".haar");
+    haarFile.deleteOnExit();
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", imagePath, "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", haarFile.getPath(), "image"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", haarFile.getPath(), "decoded"});
+
+    String[] expectedOutputs = {"PPM Image Loaded.", "Image Saved.", "HAAR Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    Image image = mockProcessor.getImage("image");
+    Image decoded = mockProcessor.getImage("decoded");
+    assertEquals(image.getHeight(), decoded.getHeight());
+    assertEquals(image.getWidth(), decoded.getWidth());
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        assertArrayEquals(image.getImage(i, j), decoded.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Tests that a HAAR file whose header holds dimensions too large to load, or a quantization step
+   * that is not a positive number, is rejected before its coefficients are allocated, and that
+   * such a step cannot be written.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testHaarFormat_RejectsBadHeaders() throws IOException {
+    HaarFormat format = new HaarFormat();
+    Object[][] headers = {{1, 1, 1 << 30, 0.5, "Invalid HAAR file: bad dimensions."},
+        {1, 1, 1, 0.0, "Invalid HAAR file: bad quantization step."},
+        {1, 1, 1, Double.NaN, "Invalid HAAR file: bad quantization step."}};
+    for (Object[] header : headers) {
+      File haarFile = File.createTempFile("corrupt", ".haar");
+      haarFile.deleteOnExit();
+      try (DataOutputStream out = new DataOutputStream(new FileOutputStream(haarFile))) {
+        out.write(new byte[]{'H', 'A', 'A', 'R', 1, 0});
+        out.writeInt((Integer) header[0]);
+        out.writeInt((Integer) header[1]);
+        out.writeInt((Integer) header[2]);
+        out.writeDouble((Double) header[3]);
+      }
+      try {
+        format.read(haarFile.getPath());
+        fail("The header should be rejected.");
+      } catch (IOException e) {
+        assertEquals(header[4], e.getMessage());
+      }
+    }
+
+    File haarFile = File.createTempFile("step", ".haar");
+    haarFile.deleteOnExit();
+    try {
+      format.write(HaarCoefficients.transform(new Image(2, 2)), haarFile.getPath(), 0);
+      fail("A zero step should be rejected.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("The quantization step should be a positive number.", e.getMessage());
+    }
+  }
+
+  /**
+   * Tests that loading a HAAR file with a level gives a thumbnail scaled down by 2^level.
+   *
+   * @throws IOException if an I/O exception occurs during the test.
+   */
+  @Test
+  public void testExecute_LoadHaarImageWithLevel() throws IOException {
+    File haarFile = File.createTempFile("thumbnail", ".haar");
+    haarFile.deleteOnExit();
+    LoadImageCommand loadCommand = new LoadImageCommand();
+    loadCommand.execute(mockProcessor, mockViewer, new String[]{"load", imagePath, "image"});
+    new SaveImageCommand().execute(mockProcessor, mockViewer,
+        new String[]{"save", haarFile.getPath(), "image"});
+    loadCommand.execute(mockProcessor, mockViewer,
+        new String[]{"load", "-level", "2", haarFile.getPath(), "preview"});
+
+    String[] expectedOutputs = {"PPM Image Loaded.", "Image Saved.", "HAAR Image Loaded."};
+    assertArrayEquals(expectedOutputs, outputStream.toString().trim().split("\\R"));
+    Image image = mockProcessor.getImage("image");
+    Image preview = mockProcessor.getImage("preview");
+    assertEquals((image.getHeight() + 3) / 4, preview.getHeight());
+    assertEquals((image.getWidth() + 3) / 4, preview.getWidth());
+  }
+
   /**
    * Validates the execution of the 'SepiaImageCommand' with a valid split value.
    *
@@ -1676,7 +3022,7 @@ public class ImageControllerTest {
     System.setErr(originalErr);
     String errorMessage = errStream.toString().trim();
     String expectedErrorMessage = "Unsupported image format. "
-        + "Can only save PPM, PNG, JPG or JPEG images.";
+        + "Can only save PPM, PGM, PNG, JPG, JPEG, QOI, RAW or HAAR images.";
     assertEquals(expectedErrorMessage, errorMessage);
   }
 
@@ -3,13 +3,17 @@ package model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * This class defines a set of test cases for the ImageOperations class. It contains methods to
@@ -870,6 +874,236 @@ public class ImageOperationsTest {
     assertEquals(expected, actual);
   }
 
+  /**
+   * Test that a compression sweep gives the same images as compressing at each percentage.
+   */
+  @Test
+  public void testImageCompressionSweep() {
+    String sourceImageName = "sourceImage";
+    int[][] sourcePixels = {
+            {12, 40, 200, 7, 90}, {0, 255, 31, 64, 128}, {77, 5, 18, 240, 3},
+            {100, 101, 102, 103, 104}, {9, 250, 60, 45, 180}
+    };
+    processor.addImage(sourceImageName, createImageFromArray(5, 5, sourcePixels));
+    double[] percentages = {0, 25, 60, 95};
+    List<CompressionResult> results
+            = processor.compressSweep(percentages, sourceImageName, "sweep");
+
+    assertEquals(percentages.length, results.size());
+    for (int k = 0; k < percentages.length; k++) {
+      processor.compressImage(percentages[k], sourceImageName, "single");
+      Image single = processor.getImage("single");
+      Image swept = processor.getImage("sweep-" + (int) percentages[k]);
+      for (int i = 0; i < 5; i++) {
+        for (int j = 0; j < 5; j++) {
+          assertArrayEquals(single.getImage(i, j), swept.getImage(i, j));
+        }
+      }
+      assertEquals(3 * 8 * 8, results.get(k).getTotalCoefficients());
+      assertEquals(ImageQuality.psnr(processor.getImage(sourceImageName), single),
+              results.get(k).getPsnr(), 1e-9);
+    }
+    assertTrue(results.get(3).getKeptCoefficients() < results.get(0).getKeptCoefficients());
+  }
+
+  /**
+   * Test that a compression sweep that only measures its results, with more percentages than are
+   * compressed at the same time, gives the same results as one that stores its images.
+   */
+  @Test
+  public void testImageCompressionSweepMeasureOnly() {
+    String sourceImageName = "sourceImage";
+    int[][] sourcePixels = {
+            {12, 40, 200, 7, 90}, {0, 255, 31, 64, 128}, {77, 5, 18, 240, 3},
+            {100, 101, 102, 103, 104}, {9, 250, 60, 45, 180}
+    };
+    processor.addImage(sourceImageName, createImageFromArray(5, 5, sourcePixels));
+    double[] percentages = new double[3 * ImageOperations.sweepParallelism(100) + 1];
+    for (int k = 0; k < percentages.length; k++) {
+      percentages[k] = k * 95.0 / percentages.length;
+    }
+    List<CompressionResult> stored
+            = processor.compressSweep(percentages, sourceImageName, "stored");
+    List<CompressionResult> measured
+            = processor.compressSweep(percentages, sourceImageName, null);
+
+    assertEquals(percentages.length, measured.size());
+    for (int k = 0; k < percentages.length; k++) {
+      assertEquals(stored.get(k).getKeptCoefficients(), measured.get(k).getKeptCoefficients());
+      assertEquals(stored.get(k).getPsnr(), measured.get(k).getPsnr(), 1e-9);
+    }
+  }
+
+  /**
+   * Test that compressing to a target quality meets the target, and that an image is a perfect
+   * match for itself.
+   */
+  @Test
+  public void testImageCompressionToQuality() {
+    String sourceImageName = "sourceImage";
+    int[][] sourcePixels = {
+            {12, 40, 200, 7, 90}, {0, 255, 31, 64, 128}, {77, 5, 18, 240, 3},
+            {100, 101, 102, 103, 104}, {9, 250, 60, 45, 180}
+    };
+    processor.addImage(sourceImageName, createImageFromArray(5, 5, sourcePixels));
+    assertEquals(1.0, processor.measureQuality("ssim", sourceImageName, sourceImageName), 1e-9);
+
+    CompressionResult psnrResult
+            = processor.compressToQuality("psnr", 30, sourceImageName, "psnrImage");
+    assertTrue(processor.measureQuality("psnr", sourceImageName, "psnrImage") >= 30);
+    assertEquals(psnrResult.getPsnr(),
+            processor.measureQuality("psnr", sourceImageName, "psnrImage"), 1e-9);
+    assertTrue(psnrResult.getKeptCoefficients() < psnrResult.getTotalCoefficients());
+
+    processor.compressToQuality("ssim", 0.9, sourceImageName, "ssimImage");
+    assertTrue(processor.measureQuality("ssim", sourceImageName, "ssimImage") >= 0.9);
+  }
+
+  /**
+   * Test that the integer lifting transformation reconstructs an image with odd dimensions
+   * exactly, and that stopping it early gives the block averages.
+   */
+  @Test
+  public void testLosslessLiftingTransform() {
+    int[][] sourcePixels = {
+            {12, 40, 200, 7, 90, 1, 300}, {0, 255, 31, 64, 128, 99, 17},
+            {77, 5, 18, 240, 3, 150, 151}, {100, 101, 102, 103, 104, 105, 106},
+            {9, 250, 60, 45, 180, 0, 255}
+    };
+    Image source = createImageFromArray(7, 5, sourcePixels);
+    LiftingCoefficients coefficients = LiftingCoefficients.transform(source);
+    Image decoded = coefficients.toImage();
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < 7; j++) {
+        assertArrayEquals(source.getImage(i, j), decoded.getImage(i, j));
+      }
+    }
+
+    Image thumbnail = coefficients.toImage(1);
+    assertEquals(3, thumbnail.getHeight());
+    assertEquals(4, thumbnail.getWidth());
+    assertArrayEquals(new int[]{76, 76, 76}, thumbnail.getImage(0, 0));
+    assertArrayEquals(new int[]{129, 129, 129}, thumbnail.getImage(2, 0));
+  }
+
+  /**
+   * Test that converting an image to a buffered image and back keeps the lowest eight bits of
+   * every channel, whatever the type of the buffered image.
+   */
+  @Test
+  public void testBufferedImageConversion() {
+    Image image = new Image(2, 3);
+    image.setImage(0, 0, 0, 128, 255);
+    image.setImage(0, 1, 300, 7, 64);
+    image.setImage(1, 2, 12, 34, 56);
+    BufferedImage bufferedImage = ImageConversion.toBufferedImage(image);
+    assertEquals(0x2C0740, bufferedImage.getRGB(1, 0) & 0xFFFFFF);
+
+    BufferedImage bgrImage = new BufferedImage(3, 2, BufferedImage.TYPE_3BYTE_BGR);
+    bgrImage.getGraphics().drawImage(bufferedImage, 0, 0, null);
+    for (BufferedImage source : new BufferedImage[]{bufferedImage, bgrImage}) {
+      Image converted = ImageConversion.fromBufferedImage(source);
+      assertArrayEquals(new int[]{0, 128, 255}, converted.getImage(0, 0));
+      assertArrayEquals(new int[]{44, 7, 64}, converted.getImage(0, 1));
+      assertArrayEquals(new int[]{12, 34, 56}, converted.getImage(1, 2));
+      assertArrayEquals(new int[]{0, 0, 0}, converted.getImage(1, 0));
+    }
+  }
+
+  /**
+   * Test that a buffered image view shares its pixels with its buffered image, and that packed
+   * operation results match plain ones.
+   */
+  @Test
+  public void testBufferedImageView() {
+    BufferedImage bufferedImage = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+    BufferedImageView view = new BufferedImageView(bufferedImage);
+    view.setImage(1, 2, 300, -5, 77);
+    assertEquals(0xFF004D, bufferedImage.getRGB(2, 1) & 0xFFFFFF);
+    bufferedImage.setRGB(0, 0, 0x102030);
+    assertArrayEquals(new int[]{16, 32, 48}, view.getImage(0, 0));
+    assertNull(view.getImage(2, 0));
+    assertSame(bufferedImage, ImageConversion.toBufferedImage(view));
+
+    int[][] sourcePixels = {{100, 150, 200}, {50, 75, 100}, {25, 50, 75}};
+    processor.addImage("sourceImage", createImageFromArray(3, 3, sourcePixels));
+    processor.flipImage("sourceImage", "plainImage", true);
+    processor.setPackedImages(true);
+    processor.flipImage("sourceImage", "packedImage", true);
+    processor.setPackedImages(false);
+    Image packed = processor.getImage("packedImage");
+    assertTrue(packed instanceof BufferedImageView);
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        assertArrayEquals(processor.getImage("plainImage").getImage(i, j), packed.getImage(i, j));
+      }
+    }
+  }
+
+  /**
+   * Test that the rows read from plain, packed and mapped images hold the values of their pixels,
+   * and that the quality measures give the same results for every kind of image.
+   */
+  @Test
+  public void testReadRowAndQualityOfEveryImageKind() {
+    int height = 11;
+    int width = 13;
+    Image plain = new Image(height, width);
+    Image other = new Image(height, width);
+    BufferedImageView packed = new BufferedImageView(height, width);
+    MappedImage mapped = new MappedImage(height, width,
+            ByteBuffer.allocate(height * width * 3), 0);
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int r = (i * 37 + j * 11) % 256;
+        int g = (i * j * 7) % 256;
+        int b = (i + j * 29) % 256;
+        plain.setImage(i, j, r, g, b);
+        packed.setImage(i, j, r, g, b);
+        mapped.setImage(i, j, r, g, b);
+        other.setImage(i, j, (r + i) % 256, g, (b + 3 * j) % 256);
+      }
+    }
+
+    for (Image image : new Image[]{plain, packed, mapped}) {
+      int[] row = new int[3 * width];
+      for (int i = 0; i < height; i++) {
+        image.readRow(i, row);
+        for (int j = 0; j < width; j++) {
+          assertArrayEquals(plain.getImage(i, j), Arrays.copyOfRange(row, 3 * j, 3 * j + 3));
+        }
+      }
+      assertEquals(ImageQuality.psnr(plain, other), ImageQuality.psnr(image, other), 1e-12);
+      assertEquals(ImageQuality.ssim(plain, other), ImageQuality.ssim(image, other), 1e-12);
+    }
+  }
+
+  /**
+   * Test that a thumbnail built from the Haar coefficients holds the block averages of the image.
+   */
+  @Test
+  public void testImageThumbnail() {
+    String sourceImageName = "sourceImage";
+    String destImageName = "destImage";
+    int[][] sourcePixels = {
+            {10, 20, 100, 100}, {30, 40, 100, 100},
+            {0, 0, 255, 255}, {0, 8, 255, 255}
+    };
+    processor.addImage(sourceImageName, createImageFromArray(4, 4, sourcePixels));
+    processor.createThumbnail(1, sourceImageName, destImageName);
+    Image destImage = processor.getImage(destImageName);
+
+    assertEquals(2, destImage.getHeight());
+    assertEquals(2, destImage.getWidth());
+    int[][] expectedPixels = {{25, 100}, {2, 255}};
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 2; j++) {
+        int[] expectedPixel = {expectedPixels[i][j], expectedPixels[i][j], expectedPixels[i][j]};
+        assertArrayEquals(expectedPixel, destImage.getImage(i, j));
+      }
+    }
+  }
+
 
   /**
    * Test to check multiple operations on an image.
@@ -917,10 +1151,99 @@ public class ImageOperationsTest {
     }
   }
 
-}
-
-
-
+  /**
+   * Test that a caching processor returns the stored result of an operation repeated on an image
+   * with the same content under another name, computes it again once the image is changed, and
+   * evicts the least recently used results beyond its size.
+   */
+  @Test
+  public void testCachingProcessorReusesResults() {
+    int[][] sourcePixels = {{100, 150, 200}, {50, 75, 100}};
+    ResultCache cache = new ResultCache(1 << 20);
+    ImageProcessor caching = new CachingImageProcessor(processor, cache);
+    caching.addImage("cacheSource", createImageFromArray(3, 2, sourcePixels));
+    caching.addImage("cacheCopy", createImageFromArray(3, 2, sourcePixels));
+    assertEquals(processor.getImage("cacheSource").contentHash(),
+        processor.getImage("cacheCopy").contentHash());
+    assertEquals(processor.getImage("cacheSource").contentHash(),
+        new BufferedImageView(ImageConversion.toBufferedImage(
+            processor.getImage("cacheSource"))).contentHash());
+
+    caching.adjustBrightness(10, "cacheSource", "cacheBright");
+    caching.adjustBrightness(10, "cacheCopy", "cacheBrightCopy");
+    assertEquals(1, cache.getHits());
+    assertSame(processor.getImage("cacheBright"), processor.getImage("cacheBrightCopy"));
+    assertArrayEquals(new int[]{110, 110, 110}, processor.getImage("cacheBright").getImage(0, 0));
+
+    caching.adjustBrightness(20, "cacheCopy", "cacheBrightCopy");
+    processor.getImage("cacheCopy").setImage(0, 0, 0, 0, 0);
+    caching.adjustBrightness(10, "cacheCopy", "cacheBrightCopy");
+    assertEquals(1, cache.getHits());
+    assertArrayEquals(new int[]{10, 10, 10},
+        processor.getImage("cacheBrightCopy").getImage(0, 0));
+
+    caching.rgbSplit("cacheSource", "cacheRed", "cacheGreen", "cacheBlue");
+    caching.rgbSplit("cacheSource", "cacheRed2", "cacheGreen2", "cacheBlue2");
+    assertEquals(2, cache.getHits());
+    assertSame(processor.getImage("cacheBlue"), processor.getImage("cacheBlue2"));
+
+    ResultCache small = new ResultCache(processor.getImage("cacheSource").estimatedSize());
+    ImageProcessor evicting = new CachingImageProcessor(processor, small);
+    evicting.flipImage("cacheSource", "cacheFlip", true);
+    evicting.flipImage("cacheSource", "cacheFlop", false);
+    evicting.flipImage("cacheSource", "cacheFlip", true);
+    assertEquals(0, small.getHits());
+    assertEquals(processor.getImage("cacheSource").estimatedSize(), small.getSize());
+  }
 
+  /**
+   * Test that there is no result cache unless its size is set, that a stored result changed in
+   * place is computed again, and that an image hashed from several threads at once gets the same
+   * hash on every thread.
+   */
+  @Test
+  public void testResultCacheIsOptInAndNoticesChangedResults() throws Exception {
+    String previous = System.clearProperty(ResultCache.CAPACITY_PROPERTY);
+    try {
+      assertNull(ResultCache.fromSystemProperty());
+      System.setProperty(ResultCache.CAPACITY_PROPERTY, "1");
+      assertEquals(0, ResultCache.fromSystemProperty().getSize());
+    } finally {
+      if (previous == null) {
+        System.clearProperty(ResultCache.CAPACITY_PROPERTY);
+      } else {
+        System.setProperty(ResultCache.CAPACITY_PROPERTY, previous);
+      }
+    }
 
+    int[][] sourcePixels = {{100, 150, 200}, {50, 75, 100}};
+    ResultCache cache = new ResultCache(1 << 20);
+    ImageProcessor caching = new CachingImageProcessor(processor, cache);
+    caching.addImage("optInSource", createImageFromArray(3, 2, sourcePixels));
+    caching.adjustBrightness(10, "optInSource", "optInBright");
+    processor.getImage("optInBright").setImage(0, 0, 1, 2, 3);
+    caching.adjustBrightness(10, "optInSource", "optInBrightAgain");
+    assertEquals(0, cache.getHits());
+    assertArrayEquals(new int[]{110, 110, 110},
+        processor.getImage("optInBrightAgain").getImage(0, 0));
+    caching.adjustBrightness(10, "optInSource", "optInBrightCopy");
+    assertEquals(1, cache.getHits());
+
+    Image shared = createImageFromArray(3, 2, sourcePixels);
+    long expected = createImageFromArray(3, 2, sourcePixels).contentHash();
+    long[] hashes = new long[4];
+    Thread[] threads = new Thread[hashes.length];
+    for (int k = 0; k < threads.length; k++) {
+      int index = k;
+      threads[k] = new Thread(() -> hashes[index] = shared.contentHash());
+      threads[k].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (long hash : hashes) {
+      assertEquals(expected, hash);
+    }
+  }
 
+}